@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client.lite;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking Table interface to remote tables accessed via REST gateway.
+ *
+ * Every operation returns immediately with a {@link CompletableFuture} that is completed from
+ * the I/O threads of the underlying non-blocking HTTP transport. Retries are scheduled on a
+ * timer rather than by sleeping, so a handful of threads can hold thousands of requests in flight.
+ * Failures complete the future exceptionally with an {@link IOException}.
+ *
+ * Use RemoteHTableBuilder.buildAsync() for construction
+ */
+public interface AsyncRemoteHTable extends AutoCloseable, Closeable
+{
+	  /**
+	   * Gets the fully qualified table name instance of this table.
+	   */
+	String getName();
+
+	  /**
+	   * Extracts certain cells from a given row.
+	   * @param get The object that specifies what data to fetch and from which row.
+	   * @return The data coming from the specified row, if it exists.  If the row
+	   * specified doesn't exist, the {@link Result} instance returned won't
+	   * contain any cells, as indicated by {@link Result#isEmpty()}.
+	   */
+	CompletableFuture<Result> get(Get get);
+
+	  /**
+	   * Extracts specified cells from the given rows, as a batch.
+	   *
+	   * @param gets The objects that specify what data to fetch and from which rows.
+	   * @return The data coming from the specified rows, if it exists.
+	   */
+	CompletableFuture<Result[]> get(List<Get> gets);
+
+	  /**
+	   * Puts some data in the table.
+	   *
+	   * @param put The data to put.
+	   */
+	  CompletableFuture<Void> put(Put put);
+
+	  /**
+	   * Batch puts the specified data into the table.
+	   *
+	   * @param puts The list of mutations to apply.
+	   */
+	  CompletableFuture<Void> put(List<Put> puts);
+
+	  /**
+	   * Deletes the specified cells/row.
+	   *
+	   * @param delete The object that specifies what to delete.
+	   */
+	  CompletableFuture<Void> delete(Delete delete);
+
+	  /**
+	   * Atomically checks if a row/family/qualifier value matches the expected
+	   * value. If it does, it adds the put.
+	   *
+	   * @param row to check
+	   * @param family column family to check
+	   * @param qualifier column qualifier to check
+	   * @param value the expected value
+	   * @param put data to put if check succeeds
+	   * @return true if the new put was executed, false otherwise
+	   */
+	  CompletableFuture<Boolean> checkAndPut(byte[] row, byte[] family, byte[] qualifier, byte[] value, Put put);
+
+	  /**
+	   * Atomically checks if a row/family/qualifier value matches the expected
+	   * value. If it does, it adds the delete.
+	   *
+	   * @param row to check
+	   * @param family column family to check
+	   * @param qualifier column qualifier to check
+	   * @param value the expected value
+	   * @param delete data to delete if check succeeds
+	   * @return true if the new delete was executed, false otherwise
+	   */
+	  CompletableFuture<Boolean> checkAndDelete(byte[] row, byte[] family, byte[] qualifier, byte[] value, Delete delete);
+
+	  /**
+	   * Completes once the connections opened in advance when the table was built
+	   * are established and authenticated, at once if warm-up is disabled.
+	   * Completes exceptionally if no gateway could be reached. Implementations
+	   * that open no connections in advance are ready at once.
+	   */
+	  default CompletableFuture<Void> ready()
+	  {
+	      return CompletableFuture.completedFuture(null);
+	  }
+
+	  /**
+	   * Releases the non-blocking transport and its connections. Requests still in
+	   * flight are cancelled.
+	   *
+	   * @throws IOException if a remote or network exception occurs.
+	   */
+	  void close() throws IOException;
+}
@@ -0,0 +1,36 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client.lite;
+
+/**
+ * Decides how long to wait before retrying a request the gateway rejected as
+ * overloaded (e.g. 509 or 503) or that failed with a retryable I/O error.
+ *
+ * Implementations must be thread-safe, a single policy is shared by all
+ * operations of a table.
+ *
+ * @see ExponentialBackoff
+ */
+public interface BackoffPolicy
+{
+	/**
+	 * @param retry the number of the retry about to be made, starting at 1
+	 * @return milliseconds to wait before the retry
+	 */
+	long getDelay(int retry);
+}
@@ -26,7 +26,20 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import org.apache.hadoop.hbase.client.lite.impl.Client;
+import org.apache.hadoop.hbase.client.lite.impl.Cluster;
+import org.apache.hadoop.hbase.client.lite.impl.ConcurrencyLimiter;
+import org.apache.hadoop.hbase.client.lite.impl.DrainableConnectionManager;
+import org.apache.hadoop.hbase.client.lite.impl.Http2Transport;
+import org.apache.hadoop.hbase.client.lite.impl.HttpClientTransport;
+import org.apache.hadoop.hbase.client.lite.impl.RetryBudget;
+import org.apache.hadoop.hbase.client.lite.impl.RetryPolicy;
+import org.apache.hadoop.hbase.client.lite.impl.Transport;
 import org.apache.http.auth.AuthSchemeProvider;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.Credentials;
@@ -34,12 +47,17 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.AuthSchemes;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.config.Lookup;
+import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
 import org.apache.http.impl.auth.SPNegoSchemeFactory;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
 import org.apache.http.ssl.SSLContextBuilder;
 
 public abstract class BaseHBaseBuilder 
@@ -49,6 +67,21 @@ public abstract class BaseHBaseBuilder
 	public static final int DEFAULT_MAX_RETRIES = 10;
 	public static final long DEFAULT_SLEEP_TIME = 1000;
 	public static final int DEFAULT_CONNECTION_TIMEOUT = 1000;
+	public static final int DEFAULT_MAX_CONNECTIONS = 256;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 64;
+	public static final long DEFAULT_CONNECTION_IDLE_TIMEOUT = 30000;
+	public static final long DEFAULT_CONNECTION_TIME_TO_LIVE = -1;
+	public static final int DEFAULT_HOST_FAILURE_THRESHOLD = 3;
+	public static final long DEFAULT_HOST_EJECTION_TIME = 30000;
+	public static final double DEFAULT_RETRY_BUDGET_RATIO = RetryBudget.DEFAULT_RETRY_RATIO;
+	public static final int DEFAULT_MAX_CONCURRENT_STREAMS = 100;
+	public static final int DEFAULT_MAX_RESPONSE_SIZE = Client.DEFAULT_MAX_RESPONSE_SIZE;
+	public static final int DEFAULT_REQUEST_COMPRESSION_THRESHOLD = Client.DEFAULT_REQUEST_COMPRESSION_THRESHOLD;
+	public static final int DEFAULT_WARM_UP_CONNECTIONS = 0;
+	public static final int DEFAULT_TLS_SESSION_CACHE_SIZE = 1024;
+	public static final int DEFAULT_TLS_SESSION_TIMEOUT = 3600;
+	public static final long DEFAULT_HOST_REFRESH_INTERVAL = 30000;
+	public static final long DEFAULT_OPERATION_TIMEOUT = Client.DEFAULT_OPERATION_TIMEOUT;
 	
 	/**
 	 * Number of times to attempt request
@@ -58,6 +91,14 @@ public abstract class BaseHBaseBuilder
 	 * Sleet time between requests on connection failure
 	 */
 	protected long sleepTime = DEFAULT_SLEEP_TIME;
+	/**
+	 * Delay before each retry, exponential backoff with full jitter from sleepTime if not set
+	 */
+	protected BackoffPolicy backoffPolicy;
+	/**
+	 * Retries allowed per request across all operations of the client
+	 */
+	protected double retryBudgetRatio = DEFAULT_RETRY_BUDGET_RATIO;
 	/**
 	 * Protocol used in creation of URL, i.e. http or https
 	 */
@@ -66,10 +107,62 @@ public abstract class BaseHBaseBuilder
 	 * Connection timeout in milliseconds
 	 */
 	protected int connectionTimeout = DEFAULT_CONNECTION_TIMEOUT; 
+	/**
+	 * Milliseconds an operation may take across all attempts, failovers and retries, 0 for no deadline
+	 */
+	protected long operationTimeout = DEFAULT_OPERATION_TIMEOUT;
+	/**
+	 * Most requests in flight to a single host under the adaptive limit, 0 for no limit
+	 */
+	protected int concurrencyLimit = 0;
+	/**
+	 * Milliseconds a request waits for a slot once every host is at its limit
+	 */
+	protected long concurrencyQueueTimeout = 0;
+	/**
+	 * Receives the telemetry of the client
+	 */
+	protected ClientMetrics metrics = ClientMetrics.NOOP;
+	/**
+	 * Told of the phases of every operation, null for none
+	 */
+	protected RequestListener requestListener;
+	/**
+	 * Maximum number of pooled connections across all hosts
+	 */
+	protected int maxConnections = DEFAULT_MAX_CONNECTIONS;
+	/**
+	 * Maximum number of pooled connections to a single host
+	 */
+	protected int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+	/**
+	 * Pooled connections idle for longer than this many milliseconds are closed
+	 */
+	protected long connectionIdleTimeout = DEFAULT_CONNECTION_IDLE_TIMEOUT;
+	/**
+	 * Pooled connections older than this many milliseconds are closed, -1 for no limit
+	 */
+	protected long connectionTimeToLive = DEFAULT_CONNECTION_TIME_TO_LIVE;
+	/**
+	 * Consecutive connection failures before a host is ejected from selection
+	 */
+	protected int hostFailureThreshold = DEFAULT_HOST_FAILURE_THRESHOLD;
+	/**
+	 * Milliseconds an ejected host waits before a single probe request is sent to it
+	 */
+	protected long hostEjectionTime = DEFAULT_HOST_EJECTION_TIME;
 	/**
 	 * List of host names and port, i.e. hostname1:8080
 	 */
 	protected List<String> hosts = new ArrayList<String>();
+	/**
+	 * Source of the hosts polled while the client runs, null if the hosts are fixed
+	 */
+	protected HostProvider hostProvider;
+	/**
+	 * Milliseconds between polls of the host provider
+	 */
+	protected long hostRefreshInterval = DEFAULT_HOST_REFRESH_INTERVAL;
 	/**
 	 * Extra headers added to the request
 	 */
@@ -98,8 +191,149 @@ public abstract class BaseHBaseBuilder
 	 * Allow use of self-signed SSL certificates
 	 */
 	protected boolean allowSelfSignedCerts;
+	/**
+	 * Multiplex requests over HTTP/2 (h2c for http) using the optional HttpClient 5
+	 */
+	protected boolean useHttp2;
+	/**
+	 * Maximum number of HTTP/2 requests in flight to each host, over its single connection
+	 */
+	protected int maxConcurrentStreams = DEFAULT_MAX_CONCURRENT_STREAMS;
+	/**
+	 * Largest response body, in bytes, that will be decoded
+	 */
+	protected int maxResponseSize = DEFAULT_MAX_RESPONSE_SIZE;
+	/**
+	 * Ask the gateway for gzip or deflate coded responses
+	 */
+	protected boolean compressResponses = true;
+	/**
+	 * Size in bytes from which request bodies are gzipped, negative to never compress
+	 */
+	protected int requestCompressionThreshold = DEFAULT_REQUEST_COMPRESSION_THRESHOLD;
+	/**
+	 * Connections opened to each host when built, 0 to disable warm-up
+	 */
+	protected int warmUpConnections = DEFAULT_WARM_UP_CONNECTIONS;
+	/**
+	 * Number of TLS sessions kept for resumption
+	 */
+	protected int tlsSessionCacheSize = DEFAULT_TLS_SESSION_CACHE_SIZE;
+	/**
+	 * Seconds a TLS session may be resumed
+	 */
+	protected int tlsSessionTimeout = DEFAULT_TLS_SESSION_TIMEOUT;
+	/**
+	 * Shared by the clients built so that they resume each other's TLS sessions
+	 */
+	private SSLContext sslContext;
+	
+	protected void configure(Client client)
+	{
+		client.setMaxResponseSize(maxResponseSize);
+		client.setCompressResponses(compressResponses);
+		client.setRequestCompressionThreshold(requestCompressionThreshold);
+		client.setOperationTimeout(operationTimeout);
+		client.setMetrics(metrics);
+		if (concurrencyLimit > 0)
+		{
+			client.setConcurrencyLimiter(new ConcurrencyLimiter(concurrencyLimit, concurrencyQueueTimeout));
+		}
+	}
 	
-	protected HttpClient buildHttpClient() throws IOException 
+	/**
+	 * Add the hosts to the cluster of the client, then hand the cluster to the host provider if any
+	 */
+	protected void configureHosts(Client client)
+	throws IOException
+	{
+		if (hosts.isEmpty() && (hostProvider == null))
+		{
+			throw new IllegalArgumentException("At least one host required.");
+		}
+		
+		for(String host : hosts)
+		{
+			client.getCluster().add(host);
+		}
+		
+		if (hostProvider != null)
+		{
+			client.setHostProvider(hostProvider, hostRefreshInterval);
+		}
+	}
+	
+	protected Cluster buildCluster()
+	{
+		return new Cluster().setFailureThreshold(hostFailureThreshold).setEjectionTime(hostEjectionTime);
+	}
+	
+	protected RetryPolicy buildRetryPolicy()
+	{
+		BackoffPolicy backoff = backoffPolicy;
+		
+		if (backoff == null)
+		{
+			backoff = new ExponentialBackoff(sleepTime, Math.max(sleepTime, RetryPolicy.DEFAULT_MAX_BACKOFF_TIME));
+		}
+		
+		RetryPolicy retryPolicy = new RetryPolicy(maxRetries, backoff, new RetryBudget(retryBudgetRatio, RetryBudget.DEFAULT_MIN_RETRIES_PER_SECOND));
+		retryPolicy.setMetrics(metrics);
+		retryPolicy.setRequestListener(requestListener);
+		
+		return retryPolicy;
+	}
+	
+	/**
+	 * Transport for the blocking Client, HTTP/1.1 over HttpClient 4 unless HTTP/2 was requested
+	 */
+	protected Transport buildTransport() throws IOException
+	{
+		if (useHttp2)
+		{
+			if (useKerberos || (jaasEntryName != null))
+			{
+				throw new IllegalArgumentException("Kerberos is not supported over HTTP/2.");
+			}
+			
+			if (httpClient != null)
+			{
+				throw new IllegalArgumentException("An external HttpClient cannot be used over HTTP/2.");
+			}
+			
+			return new Http2Transport(connectionTimeout, maxConcurrentStreams, maxResponseSize, buildSSLContext());
+		}
+		
+		if (httpClient != null)
+		{
+			return new HttpClientTransport(httpClient);
+		}
+		
+		DrainableConnectionManager connectionManager = buildConnectionManager();
+		
+		return new HttpClientTransport(buildHttpClient(connectionManager), connectionManager);
+	}
+	
+	/**
+	 * Pooled connections shared by all threads using the table
+	 */
+	protected DrainableConnectionManager buildConnectionManager() throws IOException
+	{
+		SSLContext sslContext = buildSSLContext();
+		SSLConnectionSocketFactory sslsf = (sslContext == null) ? SSLConnectionSocketFactory.getSocketFactory() : new SSLConnectionSocketFactory(sslContext);
+		
+		Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory> create()
+																	.register("http", PlainConnectionSocketFactory.getSocketFactory())
+																	.register("https", sslsf)
+																	.build();
+		DrainableConnectionManager connectionManager = new DrainableConnectionManager(socketFactoryRegistry, connectionTimeToLive, TimeUnit.MILLISECONDS);
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+		
+		return connectionManager;
+	}
+	
+	protected HttpClient buildHttpClient(DrainableConnectionManager connectionManager) throws IOException 
 	{
 		// Establish timeout configuration
 		RequestConfig config = RequestConfig.custom()
@@ -110,6 +344,8 @@ public abstract class BaseHBaseBuilder
 		HttpClientBuilder builder = HttpClientBuilder.create();
 		
 		builder.setDefaultRequestConfig(config);
+		// Content coding is negotiated and decoded by Client for every transport
+		builder.disableContentCompression();
 		
 		// Enable Kerberos authentication
 		if (useKerberos || (jaasEntryName != null))
@@ -121,19 +357,80 @@ public abstract class BaseHBaseBuilder
 			BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
 			credentialsProvider.setCredentials(new AuthScope(null, -1, null), CREDENTIALS);
 			builder.setDefaultCredentialsProvider(credentialsProvider);
+			// The hadoop.auth cookie is replayed per host by Client
+			builder.disableCookieManagement();
 		}
 		
-		// Only allow for self-signed certificates of single chain depth
-		if (allowSelfSignedCerts && ("https".equalsIgnoreCase(protocol)))
+		builder.setConnectionManager(connectionManager);
+		builder.evictExpiredConnections();
+		if (connectionIdleTimeout > 0)
+		{
+			builder.evictIdleConnections(connectionIdleTimeout, TimeUnit.MILLISECONDS);
+		}
+		
+		return builder.build();
+	}
+	
+	/**
+	 * Non-blocking HttpClient used by AsyncRemoteHTable.  SPNEGO is not registered as
+	 * authentication is performed through the auth cookie obtained by Client.
+	 */
+	protected CloseableHttpAsyncClient buildHttpAsyncClient() throws IOException
+	{
+		// Establish timeout configuration
+		RequestConfig config = RequestConfig.custom()
+				.setConnectTimeout(connectionTimeout)
+				.setConnectionRequestTimeout(connectionTimeout)
+				.setSocketTimeout(connectionTimeout).build();
+		
+		HttpAsyncClientBuilder builder = HttpAsyncClientBuilder.create();
+		
+		builder.setDefaultRequestConfig(config);
+		builder.setMaxConnTotal(maxConnections);
+		builder.setMaxConnPerRoute(maxConnectionsPerHost);
+		// The hadoop.auth cookie is replayed per host by AsyncRemoteHTable
+		builder.disableCookieManagement();
+		
+		SSLContext sslContext = buildSSLContext();
+		
+		if (sslContext != null)
+		{
+			builder.setSSLContext(sslContext);
+		}
+		
+		return builder.build();
+	}
+	
+	/**
+	 * @return SSLContext trusting self-signed certificates if allowed, otherwise null for the default
+	 */
+	protected SSLContext buildSSLContext() throws IOException
+	{
+		if (!"https".equalsIgnoreCase(protocol))
+		{
+			return null;
+		}
+		
+		if (sslContext == null)
 		{
 			SSLContextBuilder sslBuilder = new SSLContextBuilder();
 			
 			try
 			{
-				sslBuilder.loadTrustMaterial(null, TrustSelfSignedStrategy.INSTANCE);
-				SSLConnectionSocketFactory sslsf = new SSLConnectionSocketFactory(sslBuilder.build());
-		
-				builder.setSSLSocketFactory(sslsf);
+				// Only allow for self-signed certificates of single chain depth
+				if (allowSelfSignedCerts)
+				{
+					sslBuilder.loadTrustMaterial(null, TrustSelfSignedStrategy.INSTANCE);
+				}
+				
+				SSLContext context = sslBuilder.build();
+				
+				// Sessions are cached per host and port, later connections resume them with an abbreviated handshake
+				SSLSessionContext sessions = context.getClientSessionContext();
+				sessions.setSessionCacheSize(tlsSessionCacheSize);
+				sessions.setSessionTimeout(tlsSessionTimeout);
+				
+				sslContext = context;
 			}
 			catch (GeneralSecurityException ex)
 			{
@@ -141,7 +438,7 @@ public abstract class BaseHBaseBuilder
 			}
 		}
 		
-		return builder.build();
+		return sslContext;
 	}
 	
 	private static class NullCredentials implements Credentials {
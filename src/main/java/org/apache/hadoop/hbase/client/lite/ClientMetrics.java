@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client.lite;
+
+/**
+ * Receives the telemetry of a table or admin client: every HTTP exchange with
+ * a gateway, every operation across its retries, the retries themselves and
+ * the bytes on the wire.  Every method defaults to doing nothing, so an
+ * implementation only overrides what it records.
+ *
+ * Methods are called on the thread performing the request, or on an I/O
+ * thread of the non-blocking table, and must be thread-safe and cheap.
+ *
+ * @see org.apache.hadoop.hbase.client.lite.impl.DefaultClientMetrics
+ */
+public interface ClientMetrics
+{
+	/**
+	 * Records nothing, the default
+	 */
+	ClientMetrics NOOP = new ClientMetrics()
+	{
+	};
+	
+	/**
+	 * Kind of operation a request belongs to
+	 */
+	enum Operation
+	{
+		GET, MULTIGET, EXISTS, PUT, MULTIPUT, DELETE, CHECK_AND_MUTATE, SCANNER_OPEN, SCANNER_NEXT,
+		SCANNER_CLOSE, ADMIN, OTHER
+	}
+	
+	/**
+	 * A single HTTP exchange with a gateway completed or failed.
+	 * 
+	 * @param operation the operation the exchange belongs to
+	 * @param host the gateway in 'host:port' format
+	 * @param status the HTTP status code, 0 if no response was received
+	 * @param nanos time from sending the request to receiving the response headers
+	 */
+	default void onRequest(Operation operation, String host, int status, long nanos)
+	{
+	}
+	
+	/**
+	 * An operation completed, successfully or not, after all of its attempts.
+	 * 
+	 * @param operation the operation
+	 * @param nanos time taken across all attempts, failovers and retries
+	 * @param failed true if the operation ended with an exception
+	 */
+	default void onOperation(Operation operation, long nanos, boolean failed)
+	{
+	}
+	
+	/**
+	 * A batch operation completed, successfully or not, after all of its requests.
+	 * 
+	 * @param operation the operation
+	 * @param rows number of rows in the batch
+	 * @param failedRows number of rows not applied or fetched
+	 * @param nanos time taken by the whole batch
+	 */
+	default void onBatch(Operation operation, int rows, int failedRows, long nanos)
+	{
+	}
+	
+	/**
+	 * An operation is about to be retried.
+	 */
+	default void onRetry(Operation operation)
+	{
+	}
+	
+	/**
+	 * A request body was sent, compressed size if compressed.
+	 */
+	default void onBytesSent(Operation operation, String host, long bytes)
+	{
+	}
+	
+	/**
+	 * A response body was received, compressed size if compressed.
+	 */
+	default void onBytesReceived(Operation operation, String host, long bytes)
+	{
+	}
+}
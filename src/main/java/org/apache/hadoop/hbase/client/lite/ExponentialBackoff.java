@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client.lite;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter: the delay before retry n is chosen
+ * uniformly between 0 and min(maxDelay, baseDelay * 2^(n-1)). Randomizing the
+ * whole interval keeps clients that were rejected together from retrying
+ * together.
+ */
+public class ExponentialBackoff implements BackoffPolicy
+{
+	private final long baseDelay;
+	private final long maxDelay;
+	
+	/**
+	 * @param baseDelay upper bound in milliseconds of the delay before the first retry
+	 * @param maxDelay upper bound in milliseconds of any delay
+	 */
+	public ExponentialBackoff(long baseDelay, long maxDelay)
+	{
+		if (baseDelay < 0 || maxDelay < baseDelay)
+		{
+			throw new IllegalArgumentException("Require 0 <= baseDelay <= maxDelay");
+		}
+		
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+	}
+	
+	@Override
+	public long getDelay(int retry)
+	{
+		long cap = baseDelay;
+		
+		for (int i = 1; i < retry && cap < maxDelay; i++)
+		{
+			cap <<= 1;
+		}
+		
+		cap = Math.min(cap, maxDelay);
+		
+		return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+	}
+	
+	public long getBaseDelay()
+	{
+		return baseDelay;
+	}
+	
+	public long getMaxDelay()
+	{
+		return maxDelay;
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client.lite;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the hosts from a text file, one 'host:port' per line.  Blank lines and
+ * lines starting with '#' are ignored.  The file is only read again once its
+ * modification time has changed.
+ */
+public class FileHostProvider implements HostProvider
+{
+	private final Path path;
+	
+	private long lastModified = -1;
+	
+	private List<String> hosts = Collections.emptyList();
+	
+	public FileHostProvider(Path path)
+	{
+		this.path = path;
+	}
+	
+	@Override
+	public synchronized List<String> getHosts()
+	throws IOException
+	{
+		long modified = Files.getLastModifiedTime(path).toMillis();
+		
+		if (modified != lastModified)
+		{
+			List<String> result = new ArrayList<String>();
+			
+			for(String line : Files.readAllLines(path, StandardCharsets.UTF_8))
+			{
+				line = line.trim();
+				
+				if (!line.isEmpty() && !line.startsWith("#"))
+				{
+					result.add(line);
+				}
+			}
+			
+			hosts = Collections.unmodifiableList(result);
+			lastModified = modified;
+		}
+		
+		return hosts;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "FileHostProvider{path=" + path + "}";
+	}
+}
@@ -58,6 +58,8 @@ public class Get {
  private byte [] row = null;
  private int maxVersions = 1;
  private TimeRange tr = new TimeRange();
+ private Boolean compressResponse = null;
+ private long operationTimeout = -1;
  private Map<byte [], NavigableSet<byte []>> familyMap = new TreeMap<>(Bytes.BYTES_COMPARATOR);
 
  /**
@@ -203,6 +205,44 @@ public class Get {
    return this.tr;
  }
 
+ /**
+  * Override the client's response compression setting for this get. In a
+  * multi-get the setting of the first get applies.
+  * @param compressResponse true to accept a compressed response, false to
+  * ask for an uncompressed one, null to use the client's setting
+  * @return this
+  */
+ public Get setCompressResponse(Boolean compressResponse) {
+   this.compressResponse = compressResponse;
+   return this;
+ }
+
+ /**
+  * @return the response compression override, null if none
+  */
+ public Boolean getCompressResponse() {
+   return this.compressResponse;
+ }
+
+ /**
+  * Override the client's operation timeout for this get. In a multi-get the
+  * setting of the first get applies.
+  * @param operationTimeout milliseconds the get may take across all of its
+  * attempts, 0 for no deadline, negative to use the client's setting
+  * @return this
+  */
+ public Get setOperationTimeout(long operationTimeout) {
+   this.operationTimeout = operationTimeout;
+   return this;
+ }
+
+ /**
+  * @return the operation timeout override, negative if none
+  */
+ public long getOperationTimeout() {
+   return this.operationTimeout;
+ }
+
  /**
   * Method for retrieving the keys in the familyMap
   * @return keys in the current familyMap
@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client.lite;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Source of the REST gateways of a table or admin client, polled on a schedule
+ * so that gateways may be added or removed without restarting the client.  A
+ * lambda will do for any callback, e.g. a service registry lookup.
+ *
+ * Hosts no longer returned are drained: requests in flight complete normally
+ * and their idle connections are closed afterwards.
+ *
+ * @see FileHostProvider
+ */
+@FunctionalInterface
+public interface HostProvider
+{
+	/**
+	 * @return the current hosts in 'host:port' format, an empty list is ignored
+	 * @throws IOException if the hosts could not be obtained, the previous hosts are kept
+	 */
+	List<String> getHosts() throws IOException;
+}
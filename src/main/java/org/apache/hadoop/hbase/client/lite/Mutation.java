@@ -31,6 +31,8 @@ import org.apache.hadoop.hbase.client.lite.impl.KeyValue;
 public abstract class Mutation {
   protected byte [] row = null;
   protected long ts = HConstants.LATEST_TIMESTAMP;
+  protected Boolean compressRequest = null;
+  protected long operationTimeout = -1;
 
   // A Map sorted by column family.
   protected NavigableMap<byte [], List<Cell>> familyMap = new TreeMap<>(Bytes.BYTES_COMPARATOR);
@@ -167,6 +169,44 @@ public abstract class Mutation {
     return this.ts;
   }
 
+  /**
+   * Override the client's request compression threshold for this mutation.
+   * In a batch the setting of the first mutation applies.
+   * @param compressRequest true to always gzip the request body, false to
+   * never, null to compress bodies above the client's threshold
+   * @return this
+   */
+  public Mutation setCompressRequest(Boolean compressRequest) {
+    this.compressRequest = compressRequest;
+    return this;
+  }
+
+  /**
+   * @return the request compression override, null if none
+   */
+  public Boolean getCompressRequest() {
+    return this.compressRequest;
+  }
+
+  /**
+   * Override the client's operation timeout for this mutation. In a batch
+   * the setting of the first mutation applies.
+   * @param operationTimeout milliseconds the mutation may take across all of
+   * its attempts, 0 for no deadline, negative to use the client's setting
+   * @return this
+   */
+  public Mutation setOperationTimeout(long operationTimeout) {
+    this.operationTimeout = operationTimeout;
+    return this;
+  }
+
+  /**
+   * @return the operation timeout override, negative if none
+   */
+  public long getOperationTimeout() {
+    return this.operationTimeout;
+  }
+
   /**
    * Number of KeyValues carried by this Mutation.
    * @return the total number of KeyValues
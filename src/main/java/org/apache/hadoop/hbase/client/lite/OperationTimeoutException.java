@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client.lite;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an operation has not completed within its deadline, whether the
+ * time went on attempts, failover between hosts or waiting to retry.  The
+ * operation is not retried further; a mutation may or may not have been applied.
+ */
+public class OperationTimeoutException extends IOException
+{
+	private static final long serialVersionUID = 1L;
+	
+	private final long timeout;
+	
+	/**
+	 * @param message the detail message
+	 * @param timeout the deadline of the operation in milliseconds
+	 * @param cause the failure of the last attempt, may be null
+	 */
+	public OperationTimeoutException(String message, long timeout, Throwable cause)
+	{
+		super(message, cause);
+		
+		this.timeout = timeout;
+	}
+	
+	/**
+	 * @return the deadline of the operation in milliseconds
+	 */
+	public long getTimeout()
+	{
+		return timeout;
+	}
+}
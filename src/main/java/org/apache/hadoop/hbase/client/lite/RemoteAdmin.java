@@ -19,6 +19,7 @@ package org.apache.hadoop.hbase.client.lite;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Access minimal Admin functionality for HBase REST Server
@@ -44,4 +45,15 @@ public interface RemoteAdmin {
 	  * @throws IOException if the endpoint does not exist, there is a timeout, or some other general failure mode
 	  */
 	 List<String> getTableList() throws IOException;
+
+	 /**
+	  * Completes once the connections opened in advance when the admin was built
+	  * are established and authenticated, at once if warm-up is disabled.
+	  * Completes exceptionally if no gateway could be reached. Implementations
+	  * that open no connections in advance are ready at once.
+	  */
+	 default CompletableFuture<Void> ready()
+	 {
+	     return CompletableFuture.completedFuture(null);
+	 }
 }
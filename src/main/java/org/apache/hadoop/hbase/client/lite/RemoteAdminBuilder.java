@@ -23,6 +23,7 @@ import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.hadoop.hbase.client.lite.impl.Client;
 import org.apache.hadoop.hbase.client.lite.impl.Cluster;
+import org.apache.hadoop.hbase.client.lite.impl.Transport;
 import org.apache.hadoop.hbase.client.lite.impl.RemoteAdminImpl;
 import org.apache.http.client.HttpClient;
 
@@ -72,27 +73,12 @@ public class RemoteAdminBuilder extends BaseHBaseBuilder
 	public RemoteAdmin build()
 	throws IOException
 	{
-		Cluster cluster = new Cluster();
-		HttpClient tempHttpClient = httpClient;
+		Cluster cluster = buildCluster();
+		Transport transport = buildTransport();
 		
-		if (tempHttpClient == null)
-		{
-			tempHttpClient = buildHttpClient();
-		}
-		
-		Client client = new Client(cluster, protocol, tempHttpClient, useKerberos, jaasEntryName, userPrincipal, keyTabLocation);
-		
-		if (hosts.isEmpty())
-		{
-			throw new IllegalArgumentException("At least one host required.");
-		}
-		else
-		{
-			for(String host : hosts)
-			{
-				cluster.add(host);
-			}
-		}
+		Client client = new Client(cluster, protocol, transport, (httpClient == null), useKerberos, jaasEntryName, userPrincipal, keyTabLocation);
+		configure(client);
+		configureHosts(client);
 		
 		if (!extraHeaders.isEmpty())
 		{
@@ -102,7 +88,12 @@ public class RemoteAdminBuilder extends BaseHBaseBuilder
 			}
 		}
 		
-		RemoteAdminImpl result = new RemoteAdminImpl(client, accessToken, maxRetries, sleepTime);
+		RemoteAdminImpl result = new RemoteAdminImpl(client, accessToken, buildRetryPolicy());
+		
+		if (warmUpConnections > 0)
+		{
+			client.warmUp(warmUpConnections);
+		}
 
 		return result;
 	}
@@ -230,6 +221,32 @@ public class RemoteAdminBuilder extends BaseHBaseBuilder
 		return this;
 	}
 	
+	/**
+	 * Delay before each retry of a rejected or failed request, replacing the default
+	 * exponential backoff with full jitter starting from the sleep time
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withBackoffPolicy(BackoffPolicy backoffPolicy)
+	{
+		this.backoffPolicy = backoffPolicy;
+		
+		return this;
+	}
+	
+	/**
+	 * Retries allowed per request across all operations, once exhausted failures are
+	 * returned without retry until more requests have been made (default 0.2)
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withRetryBudget(double retryBudgetRatio)
+	{
+		this.retryBudgetRatio = retryBudgetRatio;
+		
+		return this;
+	}
+	
 	/**
 	 * Connection timeout in milliseconds
 	 * 
@@ -241,7 +258,225 @@ public class RemoteAdminBuilder extends BaseHBaseBuilder
 		
 		return this;
 	}
+
+	/**
+	 * Deadline in milliseconds of an operation across all attempts, failovers and retries, an
+	 * OperationTimeoutException is thrown once it has passed.  Timeouts of each attempt are
+	 * shortened to the time left (default 0, none)
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withOperationTimeout(long operationTimeout)
+	{
+		this.operationTimeout = operationTimeout;
+		
+		return this;
+	}
+
+	/**
+	 * Adaptively limit the requests in flight to each host, so that a gateway is kept near the load
+	 * it can serve rather than pushed into answering 509.  The limit of a host grows while it
+	 * answers promptly and is cut on 509, 429 or 503 responses, timeouts or rising latency.  A
+	 * request over the limit goes to another host, or waits up to queueTimeoutMillis for a slot once
+	 * every host is at its limit before failing with a ConcurrencyLimitExceededException (default none)
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withAdaptiveConcurrencyLimit(int maxPerHost, long queueTimeoutMillis)
+	{
+		this.concurrencyLimit = maxPerHost;
+		this.concurrencyQueueTimeout = queueTimeoutMillis;
+		
+		return this;
+	}
+
+	/**
+	 * Record the latency, status and size of every request and the latency and retries of every
+	 * operation, by operation type and gateway.  DefaultClientMetrics keeps histograms in memory
+	 * and exports them over JMX (default none)
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withMetrics(ClientMetrics metrics)
+	{
+		this.metrics = metrics;
+		
+		return this;
+	}
+
+	/**
+	 * Tell a listener how long each phase of every blocking operation took: waiting for retries,
+	 * authentication, connection lease and connect, writing, server time, body transfer and decoding.
+	 * SlowRequestLogger logs those slower than a threshold (default none)
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withRequestListener(RequestListener requestListener)
+	{
+		this.requestListener = requestListener;
+		
+		return this;
+	}
 	
+	/**
+	 * Maximum number of pooled connections across all hosts
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withMaxConnections(int maxConnections)
+	{
+		this.maxConnections = maxConnections;
+		
+		return this;
+	}
+
+	/**
+	 * Maximum number of pooled connections to a single host
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withMaxConnectionsPerHost(int maxConnectionsPerHost)
+	{
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		
+		return this;
+	}
+
+	/**
+	 * Pooled connections idle for longer than this many milliseconds are closed, 0 to keep idle connections
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withConnectionIdleTimeout(long connectionIdleTimeout)
+	{
+		this.connectionIdleTimeout = connectionIdleTimeout;
+		
+		return this;
+	}
+
+	/**
+	 * Pooled connections older than this many milliseconds are closed, -1 for no limit
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withConnectionTimeToLive(long connectionTimeToLive)
+	{
+		this.connectionTimeToLive = connectionTimeToLive;
+		
+		return this;
+	}
+
+	/**
+	 * Consecutive connection failures before a host is ejected from selection
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withHostFailureThreshold(int hostFailureThreshold)
+	{
+		this.hostFailureThreshold = hostFailureThreshold;
+		
+		return this;
+	}
+
+	/**
+	 * Milliseconds an ejected host waits before a single probe request is sent to it
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withHostEjectionTime(long hostEjectionTime)
+	{
+		this.hostEjectionTime = hostEjectionTime;
+		
+		return this;
+	}
+
+	/**
+	 * Multiplex requests as HTTP/2 streams over a single connection per host, h2c with
+	 * prior knowledge for http and ALPN for https.  Requires the optional
+	 * org.apache.httpcomponents.client5:httpclient5 dependency and does not support Kerberos.
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withHttp2(boolean useHttp2)
+	{
+		this.useHttp2 = useHttp2;
+		
+		return this;
+	}
+
+	/**
+	 * Maximum number of HTTP/2 requests in flight to each host, over its single connection; more wait for a stream (default 100)
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withMaxConcurrentStreams(int maxConcurrentStreams)
+	{
+		this.maxConcurrentStreams = maxConcurrentStreams;
+		
+		return this;
+	}
+
+	/**
+	 * Largest response body, in bytes, that will be decoded (default 256 MB)
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withMaxResponseSize(int maxResponseSize)
+	{
+		this.maxResponseSize = maxResponseSize;
+		
+		return this;
+	}
+
+	/**
+	 * Ask the gateway for gzip or deflate coded responses (default true)
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withResponseCompression(boolean compressResponses)
+	{
+		this.compressResponses = compressResponses;
+		
+		return this;
+	}
+
+	/**
+	 * Gzip request bodies of at least the given number of bytes, negative to never compress (default -1)
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withRequestCompression(int requestCompressionThreshold)
+	{
+		this.requestCompressionThreshold = requestCompressionThreshold;
+		
+		return this;
+	}
+
+	/**
+	 * Open and authenticate connections to every host in the background when built, see ready() (default 0, disabled)
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withWarmUp(int connectionsPerHost)
+	{
+		this.warmUpConnections = connectionsPerHost;
+		
+		return this;
+	}
+
+	/**
+	 * Size of the TLS session cache and seconds a session may be resumed (default 1024 sessions, 3600 seconds)
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withTlsSessionCache(int size, int timeoutSeconds)
+	{
+		this.tlsSessionCacheSize = size;
+		this.tlsSessionTimeout = timeoutSeconds;
+		
+		return this;
+	}
+
 	/**
 	 * Allow use of self-signed SSL certificates
 	 * 
@@ -268,6 +503,23 @@ public class RemoteAdminBuilder extends BaseHBaseBuilder
 		return this;
 	}
 	
+	/**
+	 * Poll a provider for the hosts while the client runs, hosts it no longer returns are drained
+	 * and the hosts returned when built replace those added with addHost() (default none)
+	 * 
+	 * @param hostProvider Source of the hosts, e.g. FileHostProvider or a lambda
+	 * @param refreshIntervalMillis Milliseconds between polls, 0 to poll once when built (default 30000)
+	 * 
+  	 * @return RemoteAdminBuilder
+	 */
+	public RemoteAdminBuilder withHostProvider(HostProvider hostProvider, long refreshIntervalMillis)
+	{
+		this.hostProvider = hostProvider;
+		this.hostRefreshInterval = refreshIntervalMillis;
+		
+		return this;
+	}
+	
 	/**
 	 * Extra headers added to the request
 	 * 
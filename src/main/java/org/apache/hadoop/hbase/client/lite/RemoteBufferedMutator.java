@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client.lite;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Buffers puts and deletes to a remote table and sends them in the background, many rows per
+ * request, instead of one request per mutation.
+ *
+ * Mutations from any number of threads are collected until the write buffer holds a given number
+ * of bytes or the oldest mutation has waited for the linger time, and are then flushed by
+ * background threads: consecutive puts as a multiput, consecutive deletes as a batch delete.  When
+ * the buffer is full and the maximum number of flushes are in progress, {@link #mutate(Mutation)}
+ * blocks until a flush completes.
+ *
+ * Rows are spread over the flush threads by key, the mutations of a row are applied in the order
+ * they were buffered.
+ *
+ * Mutations that failed after retries are handed to the {@link ExceptionListener}, or, without
+ * one, reported by the next call to {@link #mutate(Mutation)}, {@link #flush()} or {@link #close()}.
+ * The mutations must not be modified once they have been passed in.
+ *
+ * Use RemoteHTableBuilder.buildBufferedMutator() for construction
+ */
+public interface RemoteBufferedMutator extends AutoCloseable, Closeable
+{
+	/**
+	 * Told of the mutations of a flush that could not be applied.
+	 */
+	@FunctionalInterface
+	interface ExceptionListener
+	{
+		/**
+		 * Called on a thread of the mutator's own, one failure after the other. The listener may
+		 * resubmit the mutations or flush, it does not hold up the flush threads.
+		 * 
+		 * @param failed the mutations not applied, in the order they were buffered
+		 * @param cause the failure of the first of them
+		 * @param mutator the mutator, to which the mutations may be resubmitted
+		 */
+		void onException(List<Mutation> failed, IOException cause, RemoteBufferedMutator mutator);
+	}
+	
+	/**
+	 * Gets the fully qualified table name instance of the table that this mutator writes to.
+	 */
+	String getName();
+
+	/**
+	 * Buffers a put or delete, blocking while the buffer is full.
+	 *
+	 * @param mutation the data to apply
+	 * @throws IOException if an earlier flush failed and there is no listener, or the mutator is closed
+	 */
+	void mutate(Mutation mutation) throws IOException;
+
+	/**
+	 * Buffers puts and deletes, blocking while the buffer is full.
+	 *
+	 * @param mutations the data to apply, in order
+	 * @throws IOException if an earlier flush failed and there is no listener, or the mutator is closed
+	 */
+	void mutate(List<? extends Mutation> mutations) throws IOException;
+
+	/**
+	 * Sends the buffered mutations and waits until every flush started so far has completed.
+	 *
+	 * @throws IOException if a flush failed and there is no listener
+	 */
+	void flush() throws IOException;
+
+	/**
+	 * @return bytes buffered before a flush is started
+	 */
+	long getWriteBufferSize();
+
+	/**
+	 * Flushes the buffered mutations and releases the connections.
+	 *
+	 * @throws IOException if a flush failed and there is no listener
+	 */
+	void close() throws IOException;
+}
@@ -20,6 +20,7 @@ package org.apache.hadoop.hbase.client.lite;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Minimal Table interface to remote tables accessed via REST gateway
@@ -212,6 +213,17 @@ public interface RemoteHTable extends AutoCloseable, Closeable
 	   */
 	  boolean checkAndDelete(byte[] row, byte[] family, byte[] qualifier, byte[] value, Delete delete) throws IOException;
 	  
+	  /**
+	   * Completes once the connections opened in advance when the table was built
+	   * are established and authenticated, at once if warm-up is disabled.
+	   * Completes exceptionally if no gateway could be reached. Implementations
+	   * that open no connections in advance are ready at once.
+	   */
+	  default CompletableFuture<Void> ready()
+	  {
+	      return CompletableFuture.completedFuture(null);
+	  }
+
 	  /**
 	   * Releases any resources held or pending changes in internal buffers.
 	   *
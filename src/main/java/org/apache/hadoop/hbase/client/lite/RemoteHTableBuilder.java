@@ -18,13 +18,21 @@
 package org.apache.hadoop.hbase.client.lite;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.hbase.client.lite.impl.AsyncRemoteHTableImpl;
+import org.apache.hadoop.hbase.client.lite.impl.BatchExecutor;
 import org.apache.hadoop.hbase.client.lite.impl.Client;
 import org.apache.hadoop.hbase.client.lite.impl.Cluster;
+import org.apache.hadoop.hbase.client.lite.impl.Transport;
+import org.apache.hadoop.hbase.client.lite.impl.RemoteBufferedMutatorImpl;
 import org.apache.hadoop.hbase.client.lite.impl.RemoteHTableImpl;
+import org.apache.hadoop.hbase.client.lite.impl.RequestCoalescer;
+import org.apache.hadoop.hbase.client.lite.impl.RequestHedger;
 import org.apache.http.client.HttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 
 /**
  * Fluent API for construction of RemoteHTable.
@@ -57,10 +65,75 @@ import org.apache.http.client.HttpClient;
  */
 public class RemoteHTableBuilder extends BaseHBaseBuilder
 {
+	public static final double DEFAULT_MAX_HEDGE_RATIO = 0.1;
+	public static final long DEFAULT_WRITE_BUFFER_SIZE = RemoteBufferedMutatorImpl.DEFAULT_WRITE_BUFFER_SIZE;
+	public static final long DEFAULT_WRITE_BUFFER_LINGER = RemoteBufferedMutatorImpl.DEFAULT_LINGER;
+	public static final int DEFAULT_MAX_CONCURRENT_FLUSHES = RemoteBufferedMutatorImpl.DEFAULT_MAX_FLUSHES;
+	public static final int DEFAULT_BATCH_PARALLELISM = BatchExecutor.DEFAULT_PARALLELISM;
+	public static final long DEFAULT_MAX_CHUNK_SIZE = RemoteHTableImpl.DEFAULT_MAX_CHUNK_SIZE;
+	public static final int DEFAULT_MAX_CHUNK_ROWS = RemoteHTableImpl.DEFAULT_MAX_CHUNK_ROWS;
+	public static final int DEFAULT_MAX_URL_LENGTH = RemoteHTableImpl.DEFAULT_MAX_URL_LENGTH;
+	
 	/**
 	 * Name of the table for operation execution
 	 */
 	private String tableName;
+	/**
+	 * Milliseconds before a read is hedged against another host, -1 to disable
+	 */
+	private long hedgeDelay = -1;
+	/**
+	 * Latency percentile used as hedge delay, 0 to disable
+	 */
+	private double hedgePercentile;
+	/**
+	 * Maximum fraction of reads which may be hedged
+	 */
+	private double maxHedgeRatio = DEFAULT_MAX_HEDGE_RATIO;
+	/**
+	 * Share one request between identical concurrent gets
+	 */
+	private boolean coalesceGets;
+	/**
+	 * Bytes a buffered mutator collects before flushing
+	 */
+	private long writeBufferSize = DEFAULT_WRITE_BUFFER_SIZE;
+	/**
+	 * Milliseconds a mutation may wait in the write buffer, 0 to only flush full buffers
+	 */
+	private long writeBufferLinger = DEFAULT_WRITE_BUFFER_LINGER;
+	/**
+	 * Flushes a buffered mutator has in flight before callers are blocked
+	 */
+	private int maxConcurrentFlushes = DEFAULT_MAX_CONCURRENT_FLUSHES;
+	/**
+	 * Told of mutations a buffered mutator failed to apply, null to report them to the caller
+	 */
+	private RemoteBufferedMutator.ExceptionListener mutationExceptionListener;
+	/**
+	 * Requests of a batch operation in flight at once
+	 */
+	private int batchParallelism = DEFAULT_BATCH_PARALLELISM;
+	/**
+	 * Most bytes of cells in a single multiput request
+	 */
+	private long maxChunkSize = DEFAULT_MAX_CHUNK_SIZE;
+	/**
+	 * Most rows in a single multiput request
+	 */
+	private int maxChunkRows = DEFAULT_MAX_CHUNK_ROWS;
+	/**
+	 * Most characters in the URI of a multiget request
+	 */
+	private int maxUrlLength = DEFAULT_MAX_URL_LENGTH;
+	/**
+	 * Whether the gateway applies the columns and time range of a multiget
+	 */
+	private boolean multiGetColumns = true;
+	/**
+	 * Completes the futures of a non-blocking table, null for a pool owned by the table
+	 */
+	private Executor asyncCallbackExecutor;
 	
 	private RemoteHTableBuilder(final String tableName)
 	{
@@ -77,28 +150,84 @@ public class RemoteHTableBuilder extends BaseHBaseBuilder
 	public RemoteHTable build()
 	throws IOException
 	{
-		Cluster cluster = new Cluster();
-		HttpClient tempHttpClient = httpClient;
+		Client client = buildClient();
+		RequestHedger hedger = null;
 		
-		if (tempHttpClient == null)
+		if ((hedgeDelay >= 0) || (hedgePercentile > 0))
 		{
-			tempHttpClient = buildHttpClient();
+			hedger = new RequestHedger(hedgeDelay, hedgePercentile, maxHedgeRatio);
 		}
 		
-		Client client = new Client(cluster, protocol, tempHttpClient, useKerberos, jaasEntryName, userPrincipal, keyTabLocation);
+		RequestCoalescer coalescer = coalesceGets ? new RequestCoalescer() : null;
+		
+		RemoteHTableImpl result = new RemoteHTableImpl(client, tableName, buildRetryPolicy(), hedger, coalescer);
+		result.setMaxChunkSize(maxChunkSize, maxChunkRows);
+		result.setMaxUrlLength(maxUrlLength);
+		result.setMultiGetColumns(multiGetColumns);
 		
-		if (hosts.isEmpty())
+		if (batchParallelism > 1)
+		{
+			result.setBatchExecutor(new BatchExecutor(batchParallelism));
+		}
+		
+		if (warmUpConnections > 0)
+		{
+			client.warmUp(warmUpConnections);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Build a non-blocking table sharing the configuration of this builder.  An externally
+	 * configured HttpClient is only used for authentication of the non-blocking transport.
+	 */
+	public AsyncRemoteHTable buildAsync()
+	throws IOException
+	{
+		if (hosts.isEmpty() && (hostProvider == null))
 		{
 			throw new IllegalArgumentException("At least one host required.");
 		}
-		else
+		
+		CloseableHttpAsyncClient asyncClient = buildHttpAsyncClient();
+		Client client = buildClient();
+		
+		AsyncRemoteHTableImpl result = new AsyncRemoteHTableImpl(client, asyncClient, tableName, buildRetryPolicy(),
+			asyncCallbackExecutor);
+		result.setMaxUrlLength(maxUrlLength);
+		result.setMultiGetColumns(multiGetColumns);
+		
+		if (warmUpConnections > 0)
 		{
-			for(String host : hosts)
-			{
-				cluster.add(host);
-			}
+			result.warmUp(warmUpConnections);
 		}
 		
+		return result;
+	}
+
+	/**
+	 * Build a write buffer for the table, which sends puts and deletes in the background many
+	 * rows per request.  The mutator owns its connections and releases them when closed.
+	 */
+	public RemoteBufferedMutator buildBufferedMutator()
+	throws IOException
+	{
+		RemoteHTableImpl table = (RemoteHTableImpl) build();
+		
+		return new RemoteBufferedMutatorImpl(table, writeBufferSize, writeBufferLinger, maxConcurrentFlushes, mutationExceptionListener);
+	}
+
+	private Client buildClient()
+	throws IOException
+	{
+		Cluster cluster = buildCluster();
+		Transport transport = buildTransport();
+		
+		Client client = new Client(cluster, protocol, transport, (httpClient == null), useKerberos, jaasEntryName, userPrincipal, keyTabLocation);
+		configure(client);
+		configureHosts(client);
+		
 		if (!extraHeaders.isEmpty())
 		{
 			for(String header: extraHeaders.keySet())
@@ -107,11 +236,9 @@ public class RemoteHTableBuilder extends BaseHBaseBuilder
 			}
 		}
 		
-		RemoteHTableImpl result = new RemoteHTableImpl(client, tableName, maxRetries, sleepTime);
-
-		return result;
+		return client;
 	}
-
+	
 	/**
 	 * Protocol used in creation of URL
 	 * 
@@ -228,6 +355,32 @@ public class RemoteHTableBuilder extends BaseHBaseBuilder
 		return this;
 	}
 	
+	/**
+	 * Delay before each retry of a rejected or failed request, replacing the default
+	 * exponential backoff with full jitter starting from the sleep time
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withBackoffPolicy(BackoffPolicy backoffPolicy)
+	{
+		this.backoffPolicy = backoffPolicy;
+		
+		return this;
+	}
+	
+	/**
+	 * Retries allowed per request across all operations, once exhausted failures are
+	 * returned without retry until more requests have been made (default 0.2)
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withRetryBudget(double retryBudgetRatio)
+	{
+		this.retryBudgetRatio = retryBudgetRatio;
+		
+		return this;
+	}
+	
 	/**
 	 * Connection timeout in milliseconds
 	 * 
@@ -240,6 +393,423 @@ public class RemoteHTableBuilder extends BaseHBaseBuilder
 		return this;
 	}
 
+	/**
+	 * Deadline in milliseconds of an operation across all attempts, failovers and retries, an
+	 * OperationTimeoutException is thrown once it has passed.  Timeouts of each attempt are
+	 * shortened to the time left.  May be overridden per Get, Scan, Put or Delete (default 0, none)
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withOperationTimeout(long operationTimeout)
+	{
+		this.operationTimeout = operationTimeout;
+		
+		return this;
+	}
+
+	/**
+	 * Adaptively limit the requests in flight to each host, so that a gateway is kept near the load
+	 * it can serve rather than pushed into answering 509.  The limit of a host grows while it
+	 * answers promptly and is cut on 509, 429 or 503 responses, timeouts or rising latency.  A
+	 * request over the limit goes to another host, or waits up to queueTimeoutMillis for a slot once
+	 * every host is at its limit before failing with a ConcurrencyLimitExceededException (default none)
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withAdaptiveConcurrencyLimit(int maxPerHost, long queueTimeoutMillis)
+	{
+		this.concurrencyLimit = maxPerHost;
+		this.concurrencyQueueTimeout = queueTimeoutMillis;
+		
+		return this;
+	}
+
+	/**
+	 * Record the latency, status and size of every request and the latency and retries of every
+	 * operation, by operation type and gateway.  DefaultClientMetrics keeps histograms in memory
+	 * and exports them over JMX (default none)
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withMetrics(ClientMetrics metrics)
+	{
+		this.metrics = metrics;
+		
+		return this;
+	}
+
+	/**
+	 * Tell a listener how long each phase of every blocking operation took: waiting for retries,
+	 * authentication, connection lease and connect, writing, server time, body transfer and decoding.
+	 * SlowRequestLogger logs those slower than a threshold (default none)
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withRequestListener(RequestListener requestListener)
+	{
+		this.requestListener = requestListener;
+		
+		return this;
+	}
+
+	/**
+	 * Maximum number of pooled connections across all hosts
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withMaxConnections(int maxConnections)
+	{
+		this.maxConnections = maxConnections;
+		
+		return this;
+	}
+
+	/**
+	 * Maximum number of pooled connections to a single host
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withMaxConnectionsPerHost(int maxConnectionsPerHost)
+	{
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		
+		return this;
+	}
+
+	/**
+	 * Pooled connections idle for longer than this many milliseconds are closed, 0 to keep idle connections
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withConnectionIdleTimeout(long connectionIdleTimeout)
+	{
+		this.connectionIdleTimeout = connectionIdleTimeout;
+		
+		return this;
+	}
+
+	/**
+	 * Pooled connections older than this many milliseconds are closed, -1 for no limit
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withConnectionTimeToLive(long connectionTimeToLive)
+	{
+		this.connectionTimeToLive = connectionTimeToLive;
+		
+		return this;
+	}
+
+	/**
+	 * Requests of a batch operation, such as the chunks of a large multiput, sent concurrently.
+	 * The requests are spread over the hosts by the usual host selection (default 8)
+	 * 
+	 * @param batchParallelism requests in flight at once, 1 to send them in turn
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withBatchParallelism(int batchParallelism)
+	{
+		this.batchParallelism = batchParallelism;
+		
+		return this;
+	}
+
+	/**
+	 * Most a single multiput request may carry, put(List) splits larger lists into chunks sent
+	 * as separate requests and retried separately (default 4 MB and 10000 rows)
+	 * 
+	 * @param maxChunkSize most bytes of cells in a request
+	 * @param maxChunkRows most rows in a request
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withMaxChunkSize(long maxChunkSize, int maxChunkRows)
+	{
+		this.maxChunkSize = maxChunkSize;
+		this.maxChunkRows = maxChunkRows;
+		
+		return this;
+	}
+
+	/**
+	 * Most characters in the URI of a multiget request, as accepted by the gateway and any proxy
+	 * in front of it.  Batch gets and existence checks with more rows are sent as several
+	 * requests (default 4096)
+	 * 
+	 * @param maxUrlLength length limit of a request URI
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withMaxUrlLength(int maxUrlLength)
+	{
+		this.maxUrlLength = maxUrlLength;
+		
+		return this;
+	}
+
+	/**
+	 * Whether the gateway applies the columns and time range of a multiget, as gateways of
+	 * HBase 1.4, 2.0 and later do (HBASE-15870).  Older gateways ignore them and return every
+	 * column, so against those batch gets and existence checks restricted to columns or a time
+	 * range must be fetched one row per request (default true)
+	 * 
+	 * @param multiGetColumns false for gateways older than HBase 1.4
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withMultiGetColumns(boolean multiGetColumns)
+	{
+		this.multiGetColumns = multiGetColumns;
+		
+		return this;
+	}
+
+	/**
+	 * Executor on which a non-blocking table decodes responses and completes its futures, and
+	 * therefore runs continuations that are not async.  It is not shut down with the table
+	 * (default a pool of one thread per processor, owned by the table)
+	 * 
+	 * @param executor runs response handling off the I/O dispatcher
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withAsyncCallbackExecutor(Executor executor)
+	{
+		this.asyncCallbackExecutor = executor;
+		
+		return this;
+	}
+
+	/**
+	 * Bytes of mutations a buffered mutator collects before sending them (default 2 MB)
+	 * 
+	 * @param writeBufferSize size of the write buffer in bytes
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withWriteBufferSize(long writeBufferSize)
+	{
+		this.writeBufferSize = writeBufferSize;
+		
+		return this;
+	}
+
+	/**
+	 * Milliseconds a mutation may wait in the write buffer of a buffered mutator before it is
+	 * sent with whatever else has been buffered, 0 to only send full buffers (default 1000)
+	 * 
+	 * @param writeBufferLingerMillis linger time in milliseconds
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withWriteBufferLinger(long writeBufferLingerMillis)
+	{
+		this.writeBufferLinger = writeBufferLingerMillis;
+		
+		return this;
+	}
+
+	/**
+	 * Flushes a buffered mutator sends concurrently, once they are all in flight and the
+	 * buffer is full callers are blocked (default 4).  Each row is always sent by the same
+	 * flush thread, keeping the mutations of a row in order
+	 * 
+	 * @param maxConcurrentFlushes number of flush threads
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withMaxConcurrentFlushes(int maxConcurrentFlushes)
+	{
+		this.maxConcurrentFlushes = maxConcurrentFlushes;
+		
+		return this;
+	}
+
+	/**
+	 * Listener told of the mutations a buffered mutator could not apply.  Without one the
+	 * failure is thrown by the next call to the mutator.
+	 * 
+	 * @param listener receives the failed mutations on a thread of the mutator's own
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withMutationExceptionListener(RemoteBufferedMutator.ExceptionListener listener)
+	{
+		this.mutationExceptionListener = listener;
+		
+		return this;
+	}
+
+	/**
+	 * Hedge get, exists and scanner creation: once a request has not completed within
+	 * the delay a duplicate is sent to another host and the first response is used.
+	 * Requires multiple hosts.
+	 * 
+	 * @param hedgeDelayMillis milliseconds to wait before sending the duplicate request
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withHedgedReads(long hedgeDelayMillis)
+	{
+		this.hedgeDelay = hedgeDelayMillis;
+		
+		return this;
+	}
+
+	/**
+	 * Hedge get, exists and scanner creation once a request takes longer than the given
+	 * percentile of recently observed latencies, i.e. 95 or 99.  Requires multiple hosts.
+	 * 
+	 * @param percentile latency percentile, greater than 0 and less than 100
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withHedgedReadsAtPercentile(double percentile)
+	{
+		this.hedgePercentile = percentile;
+		
+		return this;
+	}
+
+	/**
+	 * Maximum fraction of reads which may be hedged, bounding the extra load during a
+	 * cluster-wide slowdown (default 0.1)
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withMaxHedgeRatio(double maxHedgeRatio)
+	{
+		this.maxHedgeRatio = maxHedgeRatio;
+		
+		return this;
+	}
+
+	/**
+	 * Coalesce identical concurrent gets: a get arriving while the same get is in flight waits
+	 * for it and receives a copy of its Result instead of sending its own request.  Nothing is
+	 * cached once the request has completed (default false)
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withGetCoalescing(boolean coalesceGets)
+	{
+		this.coalesceGets = coalesceGets;
+		
+		return this;
+	}
+
+	/**
+	 * Consecutive failures, connection failures or 5xx responses other than 509, before a host is ejected from selection
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withHostFailureThreshold(int hostFailureThreshold)
+	{
+		this.hostFailureThreshold = hostFailureThreshold;
+		
+		return this;
+	}
+
+	/**
+	 * Milliseconds an ejected host waits before a single probe request is sent to it
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withHostEjectionTime(long hostEjectionTime)
+	{
+		this.hostEjectionTime = hostEjectionTime;
+		
+		return this;
+	}
+
+	/**
+	 * Multiplex requests as HTTP/2 streams over a single connection per host, h2c with
+	 * prior knowledge for http and ALPN for https.  Requires the optional
+	 * org.apache.httpcomponents.client5:httpclient5 dependency and does not support Kerberos.
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withHttp2(boolean useHttp2)
+	{
+		this.useHttp2 = useHttp2;
+		
+		return this;
+	}
+
+	/**
+	 * Maximum number of HTTP/2 requests in flight to each host, over its single connection; more wait for a stream (default 100)
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withMaxConcurrentStreams(int maxConcurrentStreams)
+	{
+		this.maxConcurrentStreams = maxConcurrentStreams;
+		
+		return this;
+	}
+
+	/**
+	 * Largest response body, in bytes, that will be decoded (default 256 MB)
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withMaxResponseSize(int maxResponseSize)
+	{
+		this.maxResponseSize = maxResponseSize;
+		
+		return this;
+	}
+
+	/**
+	 * Ask the gateway for gzip or deflate coded responses (default true)
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withResponseCompression(boolean compressResponses)
+	{
+		this.compressResponses = compressResponses;
+		
+		return this;
+	}
+
+	/**
+	 * Gzip request bodies of at least the given number of bytes, negative to never compress (default -1)
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withRequestCompression(int requestCompressionThreshold)
+	{
+		this.requestCompressionThreshold = requestCompressionThreshold;
+		
+		return this;
+	}
+
+	/**
+	 * Open and authenticate connections to every host in the background when built, see ready() (default 0, disabled)
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withWarmUp(int connectionsPerHost)
+	{
+		this.warmUpConnections = connectionsPerHost;
+		
+		return this;
+	}
+
+	/**
+	 * Size of the TLS session cache and seconds a session may be resumed (default 1024 sessions, 3600 seconds)
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withTlsSessionCache(int size, int timeoutSeconds)
+	{
+		this.tlsSessionCacheSize = size;
+		this.tlsSessionTimeout = timeoutSeconds;
+		
+		return this;
+	}
+
 	/**
 	 * Allow use of self-signed SSL certificates
 	 * 
@@ -266,6 +836,23 @@ public class RemoteHTableBuilder extends BaseHBaseBuilder
 		return this;
 	}
 	
+	/**
+	 * Poll a provider for the hosts while the client runs, hosts it no longer returns are drained
+	 * and the hosts returned when built replace those added with addHost() (default none)
+	 * 
+	 * @param hostProvider Source of the hosts, e.g. FileHostProvider or a lambda
+	 * @param refreshIntervalMillis Milliseconds between polls, 0 to poll once when built (default 30000)
+	 * 
+  	 * @return RemoteHTableBuilder
+	 */
+	public RemoteHTableBuilder withHostProvider(HostProvider hostProvider, long refreshIntervalMillis)
+	{
+		this.hostProvider = hostProvider;
+		this.hostRefreshInterval = refreshIntervalMillis;
+		
+		return this;
+	}
+	
 	/**
 	 * Extra headers added to the request
 	 * 
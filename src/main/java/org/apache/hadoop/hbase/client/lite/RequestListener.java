@@ -0,0 +1,37 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client.lite;
+
+/**
+ * Told of every completed operation of a blocking table or admin client with
+ * the time each phase of its final attempt took, so that a slow call can be
+ * broken down without a profiler.
+ *
+ * The listener is called on the thread that performed the operation, after the
+ * response has been decoded, and must be thread-safe and cheap.
+ *
+ * @see SlowRequestLogger
+ */
+@FunctionalInterface
+public interface RequestListener
+{
+	/**
+	 * @param timing the phases of the operation, only valid during the call
+	 */
+	void onRequestComplete(RequestTiming timing);
+}
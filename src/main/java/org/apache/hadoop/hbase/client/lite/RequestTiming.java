@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client.lite;
+
+/**
+ * Timestamps, from System.nanoTime(), of the phases of an operation and its
+ * final attempt, passed to a {@link RequestListener}.  A phase that did not
+ * happen, e.g. connecting when a pooled connection was reused, has a
+ * timestamp of 0 and a duration of 0.
+ *
+ * The phases follow each other in this order:
+ * <ul>
+ * <li>start: the operation was handed to the client, earlier attempts and
+ * retry waits lie between it and the final attempt</li>
+ * <li>attempt: the final exchange began, the request is built.  Exchanges
+ * rejected with 401 and sent again with new credentials lie before it and are
+ * counted as authentication</li>
+ * <li>leased: a connection was leased from the pool</li>
+ * <li>connected: a new connection was established, including TLS</li>
+ * <li>written: the request body was serialized and written</li>
+ * <li>first byte: the response headers arrived, the rest is server time</li>
+ * <li>body read: the response body was read to the end.  Cells are decoded as
+ * the body streams in, so this includes all but the last of the decoding</li>
+ * <li>end: the result was handed back</li>
+ * </ul>
+ */
+public interface RequestTiming
+{
+	ClientMetrics.Operation getOperation();
+	
+	/**
+	 * @return the gateway of the final attempt in 'host:port' format, null if none was reached
+	 */
+	String getHost();
+	
+	/**
+	 * @return the HTTP status code of the final attempt, 0 if no response was received
+	 */
+	int getStatus();
+	
+	/**
+	 * @return number of HTTP exchanges, across failovers and retries
+	 */
+	int getAttempts();
+	
+	/**
+	 * @return the failure of the operation, null if it succeeded
+	 */
+	Throwable getFailure();
+	
+	/**
+	 * @return bytes of the request body of the final attempt, -1 if unknown
+	 */
+	long getRequestBytes();
+	
+	/**
+	 * @return bytes of the response body, as received before decompression, -1 if unknown
+	 */
+	long getResponseBytes();
+	
+	/**
+	 * @return nanoseconds spent on exchanges rejected with 401 before the final
+	 *         one, i.e. for a rejected auth cookie, between start and attempt
+	 */
+	long getAuthNanos();
+	
+	long getStartNanos();
+	
+	long getAttemptNanos();
+	
+	long getLeasedNanos();
+	
+	long getConnectedNanos();
+	
+	long getWrittenNanos();
+	
+	long getFirstByteNanos();
+	
+	long getBodyReadNanos();
+	
+	long getEndNanos();
+	
+	/**
+	 * @return nanoseconds the operation took in all
+	 */
+	default long getTotalNanos()
+	{
+		return getEndNanos() - getStartNanos();
+	}
+}
@@ -25,6 +25,7 @@ import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
 * Interface for client-side scanning. Go to {@link Table} to obtain instances.
@@ -101,6 +102,25 @@ public interface ResultScanner extends Closeable, Iterable<Result> {
    return resultSets.toArray(new Result[0]);
  }
 
+ /**
+  * Pass the next nbRows rows to a consumer as they are read, without collecting them first.
+  * The default implementation collects them with {@link #next(int)}.
+  * @param nbRows most rows to pass
+  * @param consumer receives the rows in order, on the calling thread
+  * @return number of rows passed, zero once the scan is done
+  * @throws IOException e
+  */
+ default int next(int nbRows, Consumer<? super Result> consumer) throws IOException {
+   Result[] results = next(nbRows);
+   if (results == null) {
+     return 0;
+   }
+   for (Result result : results) {
+     consumer.accept(result);
+   }
+   return results.length;
+ }
+
  /**
   * Closes the scanner and releases any resources it has allocated
   */
@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client.lite;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown by a batch operation sent as several requests when some of the requests still failed
+ * after retries.  The requests that succeeded were applied; the mutations listed here, in the
+ * order they were passed in, were not or may not have been and should be resubmitted.
+ *
+ * Each failed mutation is reported with the failure of the request it was sent in and the index
+ * of that request within the batch, so the mutations of one request share a cause.
+ */
+public class RetriesExhaustedWithDetailsException extends IOException
+{
+	private static final long serialVersionUID = 1L;
+	
+	private final List<Throwable> exceptions;
+	private final List<? extends Mutation> actions;
+	private final int[] requests;
+	private final int failedRequests;
+	private final int totalRequests;
+	
+	/**
+	 * @param exceptions the failure of each mutation not applied
+	 * @param actions the mutations not applied
+	 * @param requests the index of the request each mutation was sent in
+	 * @param failedRequests number of requests that failed
+	 * @param totalRequests number of requests the batch was sent as
+	 */
+	public RetriesExhaustedWithDetailsException(List<Throwable> exceptions, List<? extends Mutation> actions,
+			int[] requests, int failedRequests, int totalRequests)
+	{
+		super("Failed " + failedRequests + " of " + totalRequests + " requests, " + actions.size() + " mutations not applied" +
+				(exceptions.isEmpty() ? "" : ": " + exceptions.get(0)), exceptions.isEmpty() ? null : exceptions.get(0));
+		
+		this.exceptions = exceptions;
+		this.actions = actions;
+		this.requests = requests;
+		this.failedRequests = failedRequests;
+		this.totalRequests = totalRequests;
+	}
+	
+	/**
+	 * @return number of mutations not applied
+	 */
+	public int getNumExceptions()
+	{
+		return exceptions.size();
+	}
+	
+	/**
+	 * @param i index of a failed mutation
+	 * @return the failure of the request the mutation was sent in
+	 */
+	public Throwable getCause(int i)
+	{
+		return exceptions.get(i);
+	}
+	
+	/**
+	 * @param i index of a failed mutation
+	 * @return the mutation, to be resubmitted
+	 */
+	public Mutation getRow(int i)
+	{
+		return actions.get(i);
+	}
+	
+	/**
+	 * @param i index of a failed mutation
+	 * @return index within the batch of the request the mutation was sent in
+	 */
+	public int getRequest(int i)
+	{
+		return requests[i];
+	}
+	
+	/**
+	 * @return the failure of each mutation not applied
+	 */
+	public List<Throwable> getCauses()
+	{
+		return Collections.unmodifiableList(exceptions);
+	}
+	
+	/**
+	 * @return the mutations not applied, in the order they were passed in
+	 */
+	public List<? extends Mutation> getRows()
+	{
+		return Collections.unmodifiableList(actions);
+	}
+	
+	/**
+	 * @return number of requests that failed
+	 */
+	public int getFailedRequests()
+	{
+		return failedRequests;
+	}
+	
+	/**
+	 * @return number of requests the batch was sent as
+	 */
+	public int getTotalRequests()
+	{
+		return totalRequests;
+	}
+}
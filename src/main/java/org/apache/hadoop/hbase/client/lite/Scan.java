@@ -73,6 +73,8 @@ public class Scan {
  private long maxResultSize = -1;
  private boolean reversed = false;
  private TimeRange tr = new TimeRange();
+ private Boolean compressResponse = null;
+ private long operationTimeout = -1;
  private Map<byte [], NavigableSet<byte []>> familyMap =
    new TreeMap<byte [], NavigableSet<byte []>>(Bytes.BYTES_COMPARATOR);
 
@@ -520,6 +522,44 @@ public class Scan {
    return reversed;
  }
 
+ /**
+  * Override the client's response compression setting for the pages of
+  * this scan.
+  * @param compressResponse true to accept compressed pages, false to ask for
+  * uncompressed ones, null to use the client's setting
+  * @return this
+  */
+ public Scan setCompressResponse(Boolean compressResponse) {
+   this.compressResponse = compressResponse;
+   return this;
+ }
+
+ /**
+  * @return the response compression override, null if none
+  */
+ public Boolean getCompressResponse() {
+   return this.compressResponse;
+ }
+
+ /**
+  * Override the client's operation timeout for the opening of this scan and
+  * each of its pages.
+  * @param operationTimeout milliseconds a request of the scan may take across
+  * all of its attempts, 0 for no deadline, negative to use the client's setting
+  * @return this
+  */
+ public Scan setOperationTimeout(long operationTimeout) {
+   this.operationTimeout = operationTimeout;
+   return this;
+ }
+
+ /**
+  * @return the operation timeout override, negative if none
+  */
+ public long getOperationTimeout() {
+   return this.operationTimeout;
+ }
+
  /**
   * Compile the table and column family (i.e. schema) information
   * into a String. Useful for parsing and aggregation by debugging,
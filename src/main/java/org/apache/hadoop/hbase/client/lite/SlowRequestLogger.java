@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client.lite;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.client.lite.ClientMetrics.Operation;
+
+/**
+ * Logs a breakdown by phase of the operations that took longer than a
+ * threshold, e.g.
+ * <pre>
+ * Slow GET to host1:8080 200 in 812.4 ms: wait 0.0, auth 0.0, lease 0.1, connect 3.2,
+ * write 0.0, server 790.6, body 17.9, decode 0.5 ms, -1 B sent, 48213 B received, 1 attempt(s)
+ * </pre>
+ * Thresholds may differ by operation.  When slow requests are frequent only a
+ * sample of them need be logged.
+ */
+public class SlowRequestLogger implements RequestListener
+{
+	private static final Log LOG = LogFactory.getLog(SlowRequestLogger.class);
+	
+	private final long thresholdNanos;
+	
+	private final Map<Operation, Long> thresholds = new EnumMap<Operation, Long>(Operation.class);
+	
+	private final double sampleRate;
+	
+	private final AtomicLong slow = new AtomicLong();
+	
+	/**
+	 * Log every operation slower than the threshold
+	 * 
+	 * @param thresholdMillis operations taking longer are logged
+	 */
+	public SlowRequestLogger(long thresholdMillis)
+	{
+		this(thresholdMillis, 1.0);
+	}
+	
+	/**
+	 * @param thresholdMillis operations taking longer are logged
+	 * @param sampleRate fraction of the slow operations that are logged, between 0 and 1
+	 */
+	public SlowRequestLogger(long thresholdMillis, double sampleRate)
+	{
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+		this.sampleRate = sampleRate;
+	}
+	
+	/**
+	 * Use a threshold of its own for one operation type, i.e. longer for scans.
+	 * Not thread-safe, to be called before the logger is handed to a builder.
+	 * 
+	 * @return SlowRequestLogger
+	 */
+	public SlowRequestLogger withThreshold(Operation operation, long thresholdMillis)
+	{
+		thresholds.put(operation, TimeUnit.MILLISECONDS.toNanos(thresholdMillis));
+		
+		return this;
+	}
+	
+	@Override
+	public void onRequestComplete(RequestTiming timing)
+	{
+		Long threshold = thresholds.get(timing.getOperation());
+		
+		if (timing.getTotalNanos() < (threshold != null ? threshold : thresholdNanos))
+		{
+			return;
+		}
+		
+		slow.incrementAndGet();
+		
+		if ((sampleRate < 1.0) && (ThreadLocalRandom.current().nextDouble() >= sampleRate))
+		{
+			return;
+		}
+		
+		if (LOG.isWarnEnabled())
+		{
+			LOG.warn(format(timing));
+		}
+	}
+	
+	/**
+	 * @return number of operations over their threshold, logged or not
+	 */
+	public long getSlowCount()
+	{
+		return slow.get();
+	}
+	
+	/**
+	 * @return a one line breakdown of the operation by phase
+	 */
+	public static String format(RequestTiming timing)
+	{
+		StringBuilder sb = new StringBuilder(256);
+		
+		sb.append("Slow ").append(timing.getOperation());
+		
+		if (timing.getHost() != null)
+		{
+			sb.append(" to ").append(timing.getHost());
+		}
+		
+		sb.append(' ').append(timing.getStatus());
+		sb.append(" in ");
+		appendMillis(sb, timing.getTotalNanos());
+		sb.append(" ms");
+		
+		if (timing.getFailure() != null)
+		{
+			sb.append(" (").append(timing.getFailure()).append(')');
+		}
+		
+		// Each phase runs from the last timestamp recorded before it
+		long last = timing.getStartNanos();
+		
+		sb.append(": wait ");
+		// Authentication round trips lie between the start and the final exchange
+		last = appendPhase(sb, last + timing.getAuthNanos(), timing.getAttemptNanos());
+		sb.append(", auth ");
+		appendMillis(sb, timing.getAuthNanos());
+		sb.append(", lease ");
+		last = appendPhase(sb, last, timing.getLeasedNanos());
+		sb.append(", connect ");
+		last = appendPhase(sb, last, timing.getConnectedNanos());
+		sb.append(", write ");
+		last = appendPhase(sb, last, timing.getWrittenNanos());
+		sb.append(", server ");
+		last = appendPhase(sb, last, timing.getFirstByteNanos());
+		sb.append(", body ");
+		last = appendPhase(sb, last, timing.getBodyReadNanos());
+		sb.append(", decode ");
+		appendPhase(sb, last, timing.getEndNanos());
+		sb.append(" ms, ");
+		
+		sb.append(timing.getRequestBytes()).append(" B sent, ");
+		sb.append(timing.getResponseBytes()).append(" B received, ");
+		sb.append(timing.getAttempts()).append(" attempt(s)");
+		
+		return sb.toString();
+	}
+	
+	private static long appendPhase(StringBuilder sb, long from, long to)
+	{
+		if ((to == 0) || (from == 0))
+		{
+			appendMillis(sb, 0);
+			
+			return to == 0 ? from : to;
+		}
+		
+		appendMillis(sb, Math.max(0, to - from));
+		
+		return to;
+	}
+	
+	private static void appendMillis(StringBuilder sb, long nanos)
+	{
+		long tenths = (nanos + 50000) / 100000;
+		
+		sb.append(tenths / 10).append('.').append(tenths % 10);
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "SlowRequestLogger{threshold=" + TimeUnit.NANOSECONDS.toMillis(thresholdNanos) +
+			" ms, thresholds=" + thresholds + ", sampleRate=" + sampleRate + "}";
+	}
+}
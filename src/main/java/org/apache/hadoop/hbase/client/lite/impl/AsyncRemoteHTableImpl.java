@@ -0,0 +1,707 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.client.lite.AsyncRemoteHTable;
+import org.apache.hadoop.hbase.client.lite.ClientMetrics;
+import org.apache.hadoop.hbase.client.lite.ClientMetrics.Operation;
+import org.apache.hadoop.hbase.client.lite.Delete;
+import org.apache.hadoop.hbase.client.lite.Get;
+import org.apache.hadoop.hbase.client.lite.Put;
+import org.apache.hadoop.hbase.client.lite.Result;
+import org.apache.hadoop.hbase.client.lite.TimeRange;
+import org.apache.hadoop.hbase.client.lite.impl.RetryPolicy.ResponseHandler;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.util.EntityUtils;
+
+/**
+* Non-blocking HTable interface to remote tables accessed via REST gateway.
+*
+* Requests are executed on a non-blocking HttpAsyncClient. An I/O failure moves
+* on to the next gateway of the cluster. Rejected and failed requests are
+* retried by the same {@link RetryPolicy} as the blocking table, from a timer
+* instead of by sleeping on a caller thread.
+*
+* Responses are decoded, and the returned futures completed, on a callback
+* executor rather than on the I/O dispatcher, so that a large response or a
+* slow continuation of the caller does not hold up the other connections.
+*
+* SPNEGO is not performed by the non-blocking transport. When Kerberos is in
+* use the synchronous {@link Client} authenticates once per gateway and the
+* resulting auth cookie is replayed on every non-blocking request.
+*/
+public class AsyncRemoteHTableImpl implements AsyncRemoteHTable {
+
+ private static final Log LOG = LogFactory.getLog(AsyncRemoteHTable.class);
+
+ private final Client client;
+ private final CloseableHttpAsyncClient asyncClient;
+ private final String name;
+ private final RetryPolicy retryPolicy;
+ private final ScheduledExecutorService timer;
+ private final ExecutorService authExecutor;
+ /**
+  * Decodes responses and completes the futures, and so runs the caller's
+  * non-async continuations
+  */
+ private final Executor callbackExecutor;
+ private final boolean ownsCallbackExecutor;
+ private volatile boolean closed = false;
+ private volatile int maxUrlLength = RemoteHTableImpl.DEFAULT_MAX_URL_LENGTH;
+ /**
+  * Whether the gateway applies the columns and time range of a multiget
+  */
+ private volatile boolean multiGetColumns = true;
+ private volatile CompletableFuture<Void> ready = CompletableFuture.completedFuture(null);
+
+ /**
+  * Constructor
+  * @param client synchronous client sharing the cluster, headers and credentials
+  * @param asyncClient non-blocking transport, started and owned by this table
+  */
+ public AsyncRemoteHTableImpl(Client client, CloseableHttpAsyncClient asyncClient, String name,
+     int maxRetries, long sleepTime) {
+   this(client, asyncClient, name, new RetryPolicy(maxRetries, sleepTime));
+ }
+
+ /**
+  * Constructor
+  * @param client synchronous client sharing the cluster, headers and credentials
+  * @param asyncClient non-blocking transport, started and owned by this table
+  * @param retryPolicy retries rejected and failed requests
+  */
+ public AsyncRemoteHTableImpl(Client client, CloseableHttpAsyncClient asyncClient, String name,
+     RetryPolicy retryPolicy) {
+   this(client, asyncClient, name, retryPolicy, null);
+ }
+
+ /**
+  * Constructor
+  * @param client synchronous client sharing the cluster, headers and credentials
+  * @param asyncClient non-blocking transport, started and owned by this table
+  * @param retryPolicy retries rejected and failed requests
+  * @param callbackExecutor decodes responses and completes the futures, not
+  * shut down by the table; null for a pool of one thread per processor
+  */
+ public AsyncRemoteHTableImpl(Client client, CloseableHttpAsyncClient asyncClient, String name,
+     RetryPolicy retryPolicy, Executor callbackExecutor) {
+   this.client = client;
+   this.asyncClient = asyncClient;
+   this.name = name;
+   this.retryPolicy = retryPolicy;
+   this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+     Thread t = new Thread(r, "hbase-lite-async-retry");
+     t.setDaemon(true);
+     return t;
+   });
+   this.authExecutor = Executors.newCachedThreadPool(r -> {
+     Thread t = new Thread(r, "hbase-lite-async-auth");
+     t.setDaemon(true);
+     return t;
+   });
+   this.ownsCallbackExecutor = callbackExecutor == null;
+   this.callbackExecutor = callbackExecutor != null ? callbackExecutor :
+     Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+       Thread t = new Thread(r, "hbase-lite-async-callback");
+       t.setDaemon(true);
+       return t;
+     });
+   this.asyncClient.start();
+ }
+
+ @Override
+ public String getName() {
+   return name;
+ }
+
+ /**
+  * @param maxUrlLength most characters in the URI of a multiget request,
+  * more rows are fetched with several requests
+  */
+ public void setMaxUrlLength(int maxUrlLength) {
+   if (maxUrlLength <= 0) {
+     throw new IllegalArgumentException("URL length must be positive");
+   }
+   this.maxUrlLength = maxUrlLength;
+ }
+
+ /**
+  * @param multiGetColumns true if the gateway applies columns and time ranges
+  * to multigets (HBase 1.4, 2.0 or later), false to fetch gets restricted to
+  * columns or a time range one row per request
+  */
+ public void setMultiGetColumns(boolean multiGetColumns) {
+   this.multiGetColumns = multiGetColumns;
+ }
+
+ @Override
+ public CompletableFuture<Result> get(Get get) {
+   TimeRange range = get.getTimeRange();
+   String spec = RemoteHTableImpl.buildRowSpec(name, get.getRow(), get.getFamilyMap(),
+     range.getMin(), range.getMax(), get.getMaxVersions());
+   return getResults(Operation.GET, spec, get.getCompressResponse(),
+       client.getOperationTimeout(get.getOperationTimeout())).thenApply(results -> {
+     if (results.length > 0) {
+       if (results.length > 1) {
+         LOG.warn("too many results for get (" + results.length + ")");
+       }
+       return results[0];
+     } else {
+       return new ResultImpl();
+     }
+   });
+ }
+
+ /**
+  * Planned like the blocking multi-get, the requests are all sent at once.
+  * The results are in the order of the gets, empty for missing rows.
+  */
+ @Override
+ public CompletableFuture<Result[]> get(List<Get> gets) {
+   Result[] results = new Result[gets.size()];
+   if (gets.isEmpty()) {
+     return CompletableFuture.completedFuture(results);
+   }
+   List<MultiGetPlanner.Request> requests;
+   try {
+     requests = MultiGetPlanner.plan(name, gets, 0, maxUrlLength,
+       multiGetColumns);
+   } catch (RuntimeException e) {
+     return failed(e);
+   }
+   Boolean compressResponse = gets.get(0).getCompressResponse();
+   long timeout = client.getOperationTimeout(gets.get(0).getOperationTimeout());
+   CompletableFuture<?>[] futures = new CompletableFuture<?>[requests.size()];
+   for (int i = 0; i < futures.length; i++) {
+     MultiGetPlanner.Request request = requests.get(i);
+     futures[i] = getResults(Operation.MULTIGET, request.spec, compressResponse, timeout)
+       .thenAccept(rows -> request.forEach(rows, gets,
+         (row, index) -> results[index] = row != null ? row : new ResultImpl()));
+   }
+   return CompletableFuture.allOf(futures).thenApply(v -> results);
+ }
+
+ @Override
+ public CompletableFuture<Void> put(Put put) {
+   HttpEntity entity = client.encode(new MutationEntity(put), put.getCompressRequest());
+   StringBuilder sb = new StringBuilder();
+   sb.append('/');
+   sb.append(name);
+   sb.append('/');
+   PercentEncoder.encode(sb, put.getRow());
+   return execute(Operation.PUT, "put", false, client.getOperationTimeout(put.getOperationTimeout()),
+       sb.toString(), put(entity), response -> {
+     int code = response.getCode();
+     if (code != 200) {
+       throw new IOException("put request failed with " + code);
+     }
+     return null;
+   });
+ }
+
+ @Override
+ public CompletableFuture<Void> put(List<Put> puts) {
+   // The gateway accepts multiple rows in a cell set and ignores the row
+   // specification in the URI
+   HttpEntity entity = client.encode(new MutationEntity(puts),
+     puts.isEmpty() ? null : puts.get(0).getCompressRequest());
+   StringBuilder sb = new StringBuilder();
+   sb.append('/');
+   sb.append(name);
+   sb.append("/$multiput"); // can be any nonexistent row
+   return execute(Operation.MULTIPUT, "multiput", false,
+       client.getOperationTimeout(puts.isEmpty() ? -1 : puts.get(0).getOperationTimeout()),
+       sb.toString(), put(entity), response -> {
+     int code = response.getCode();
+     if (code != 200) {
+       throw new IOException("multiput request failed with " + code);
+     }
+     return null;
+   });
+ }
+
+ @Override
+ public CompletableFuture<Void> delete(Delete delete) {
+   String spec = RemoteHTableImpl.buildRowSpec(name, delete.getRow(), delete.getFamilyCellMap(),
+     delete.getTimeStamp(), delete.getTimeStamp(), 1);
+   return execute(Operation.DELETE, "delete", true, client.getOperationTimeout(delete.getOperationTimeout()),
+       spec, HttpDelete::new, response -> {
+     int code = response.getCode();
+     if (code != 200) {
+       throw new IOException("delete request failed with " + code);
+     }
+     return null;
+   });
+ }
+
+ @Override
+ public CompletableFuture<Boolean> checkAndPut(byte[] row, byte[] family, byte[] qualifier,
+     byte[] value, Put put) {
+   try {
+     // column to check-the-value
+     put.add(new KeyValue(row, family, qualifier, value));
+   } catch (IOException e) {
+     return failed(e);
+   }
+   return checkAndMutate("checkAndPut", put, "put");
+ }
+
+ @Override
+ public CompletableFuture<Boolean> checkAndDelete(byte[] row, byte[] family, byte[] qualifier,
+     byte[] value, Delete delete) {
+   Put put = new Put(row);
+   put.setFamilyCellMap(delete.getFamilyCellMap());
+   put.setCompressRequest(delete.getCompressRequest());
+   put.setOperationTimeout(delete.getOperationTimeout());
+   try {
+     // column to check-the-value
+     put.add(new KeyValue(row, family, qualifier, value));
+   } catch (IOException e) {
+     return failed(e);
+   }
+   return checkAndMutate("checkAndDelete", put, "delete");
+ }
+
+ /**
+  * Open connections of the non-blocking client to every host in the
+  * background, authenticating with each host first if required. Each request
+  * is made once against its host, without failover or retries.
+  * @param connectionsPerHost number of connections to open to each host
+  * @return the readiness future, also returned by {@link #ready()}
+  */
+ public CompletableFuture<Void> warmUp(int connectionsPerHost) {
+   String[] hosts = client.getCluster().getHosts();
+   List<CompletableFuture<Boolean>> requests = new ArrayList<>();
+   for (String host : hosts) {
+     for (int i = 0; i < connectionsPerHost; i++) {
+       Call<Boolean> call = new Call<>("warm-up", true, "/version/rest", uri -> {
+         HttpGet method = new HttpGet(uri);
+         method.setHeader("Accept", Constants.MIMETYPE_PROTOBUF);
+         return method;
+       }, response -> {
+         if (response.getCode() == HttpStatus.SC_UNAUTHORIZED) {
+           throw new IOException("Authentication with " + host + " failed");
+         }
+         return true;
+       });
+       call.hosts = new String[] { host };
+       call.singleAttempt = true;
+       attempt(call);
+       requests.add(call.future.handle((warmed, t) -> t == null));
+     }
+   }
+   if (requests.isEmpty()) {
+     return ready;
+   }
+   ready = CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[requests.size()]))
+     .thenRun(() -> {
+       if (requests.stream().noneMatch(CompletableFuture::join)) {
+         throw new CompletionException(new IOException("Warm-up failed on every host"));
+       }
+     });
+   return ready;
+ }
+
+ @Override
+ public CompletableFuture<Void> ready() {
+   return ready;
+ }
+
+ @Override
+ public void close() throws IOException {
+   closed = true;
+   timer.shutdownNow();
+   authExecutor.shutdownNow();
+   try {
+     asyncClient.close();
+   } finally {
+     if (ownsCallbackExecutor) {
+       ((ExecutorService) callbackExecutor).shutdown();
+     }
+     client.shutdown();
+   }
+ }
+
+ private CompletableFuture<Boolean> checkAndMutate(String op, Put put, String check) {
+   HttpEntity entity = client.encode(new MutationEntity(put), put.getCompressRequest());
+   StringBuilder sb = new StringBuilder();
+   sb.append('/');
+   sb.append(name);
+   sb.append('/');
+   PercentEncoder.encode(sb, put.getRow());
+   sb.append("?check=");
+   sb.append(check);
+   return execute(Operation.CHECK_AND_MUTATE, op, false,
+       client.getOperationTimeout(put.getOperationTimeout()),
+       sb.toString(), put(entity), response -> {
+     int code = response.getCode();
+     switch (code) {
+     case 200:
+       return true;
+     case 304: // NOT-MODIFIED
+       return false;
+     default:
+       throw new IOException(op + " request failed with " + code);
+     }
+   });
+ }
+
+ private CompletableFuture<ResultImpl[]> getResults(Operation operation, String spec,
+     Boolean compressResponse, long timeout) {
+   Header[] headers = RemoteHTableImpl.acceptHeaders(compressResponse);
+   return execute(operation, "get", true, timeout, spec, uri -> {
+     HttpGet method = new HttpGet(uri);
+     method.setHeaders(headers);
+     return method;
+   }, response -> {
+     int code = response.getCode();
+     switch (code) {
+     case 200:
+       return CellSetDecoder.decode(response, client.getMaxResponseSize());
+     case 404:
+       return new ResultImpl[0];
+     default:
+       throw new IOException("get request returned " + code);
+     }
+   });
+ }
+
+ private static <T> CompletableFuture<T> failed(Throwable t) {
+   CompletableFuture<T> future = new CompletableFuture<>();
+   future.completeExceptionally(t);
+   return future;
+ }
+
+ private static RequestFactory put(HttpEntity entity) {
+   return uri -> {
+     HttpPut method = new HttpPut(uri);
+     method.setHeader("Content-Type", Constants.MIMETYPE_PROTOBUF);
+     method.setEntity(entity);
+     return method;
+   };
+ }
+
+ /*
+  * An operation with a deadline is failed by the timer once it passes,
+  * aborting the exchange in flight.
+  */
+ private <T> CompletableFuture<T> execute(Operation operation, String op, boolean idempotent,
+     long timeout, String path, RequestFactory factory, ResponseHandler<T> handler) {
+   Call<T> call = new Call<>(op, idempotent, path, factory, handler);
+   call.operation = operation;
+   retryPolicy.onRequest();
+   ClientMetrics metrics = retryPolicy.getMetrics();
+   if (metrics != ClientMetrics.NOOP) {
+     long start = System.nanoTime();
+     call.future.whenComplete((result, t) ->
+       metrics.onOperation(operation, System.nanoTime() - start, t != null));
+   }
+   call.deadline = Deadline.after(timeout);
+   if (call.deadline != null) {
+     try {
+       ScheduledFuture<?> expiry = timer.schedule(() -> {
+         if (call.future.completeExceptionally(call.deadline.timeout(op + " request", null))) {
+           Future<HttpResponse> inFlight = call.inFlight;
+           if (inFlight != null) {
+             inFlight.cancel(true);
+           }
+         }
+       }, call.deadline.remaining(), TimeUnit.MILLISECONDS);
+       call.future.whenComplete((result, t) -> expiry.cancel(false));
+     } catch (RejectedExecutionException e) {
+       return failed(new IOException("table " + name + " is closed"));
+     }
+   }
+   // Abort the exchange in flight if the caller gives up on the result
+   call.future.whenComplete((result, t) -> {
+     Future<HttpResponse> inFlight = call.inFlight;
+     if (call.future.isCancelled() && inFlight != null) {
+       inFlight.cancel(true);
+     }
+   });
+   attempt(call);
+   return call.future;
+ }
+
+ private <T> void attempt(Call<T> call) {
+   if (call.future.isDone()) {
+     // Timed out or cancelled while waiting
+     return;
+   }
+   if (closed) {
+     call.future.completeExceptionally(new IOException("table " + name + " is closed"));
+     return;
+   }
+   if (call.hosts == null) {
+     // Each round of attempts follows the cluster's latency-aware order
+     call.hosts = client.getCluster().selectHosts();
+     call.failovers = 0;
+   }
+   if (call.hosts.length == 0) {
+     call.future.completeExceptionally(new IOException("Cluster is empty"));
+     return;
+   }
+   String host = call.hosts[call.failovers];
+   if (client.getCredentialManager() != null &&
+       client.getCookieStore().getCookieHeader(host) == null) {
+     // Perform SPNEGO on the synchronous client to obtain the auth cookie
+     try {
+       authExecutor.execute(() -> {
+         HostStats stats = client.getCluster().getHostStats(host);
+         long start = stats.begin();
+         try {
+           client.authenticate(host);
+           stats.succeeded(start);
+         } catch (IOException e) {
+           stats.failed(client.getCluster().getFailureThreshold());
+           failover(call, e);
+           return;
+         }
+         send(call, host);
+       });
+     } catch (RejectedExecutionException e) {
+       call.future.completeExceptionally(new IOException("table " + name + " is closed"));
+     }
+     return;
+   }
+   send(call, host);
+ }
+
+ private <T> void send(Call<T> call, String host) {
+   HttpUriRequest method = call.factory.create(client.resolve(host, call.uri));
+   for (Map.Entry<String, String> e: client.getExtraHeaders().entrySet()) {
+     method.addHeader(e.getKey(), e.getValue());
+   }
+   if (client.isCompressResponses() && !method.containsHeader(ContentCoding.ACCEPT_ENCODING)) {
+     method.addHeader(ContentCoding.ACCEPT_ENCODING, ContentCoding.ACCEPTED);
+   }
+   String cookie = client.getCookieStore().getCookieHeader(host);
+   if (cookie != null) {
+     method.setHeader("Cookie", cookie);
+   }
+   ClientMetrics metrics = client.getMetrics();
+   if (metrics != ClientMetrics.NOOP && method instanceof HttpEntityEnclosingRequest) {
+     HttpEntityEnclosingRequest request = (HttpEntityEnclosingRequest) method;
+     if (request.getEntity() != null) {
+       request.setEntity(new CountingEntity(request.getEntity(),
+         bytes -> metrics.onBytesSent(call.operation, host, bytes)));
+     }
+   }
+   long startTime = System.currentTimeMillis();
+   HostStats stats = client.getCluster().getHostStats(host);
+   long start = stats.begin();
+   call.inFlight = asyncClient.execute(method, new FutureCallback<HttpResponse>() {
+     @Override
+     public void completed(HttpResponse resp) {
+       int code = resp.getStatusLine().getStatusCode();
+       stats.completed(start, code, client.getCluster().getFailureThreshold());
+       metrics.onRequest(call.operation, host, code, System.nanoTime() - start);
+       dispatch(call, () -> handle(call, host, method, resp, code, startTime));
+     }
+
+     @Override
+     public void failed(Exception ex) {
+       stats.failed(client.getCluster().getFailureThreshold());
+       metrics.onRequest(call.operation, host, 0, System.nanoTime() - start);
+       dispatch(call, () -> failover(call, ex));
+     }
+
+     @Override
+     public void cancelled() {
+       stats.cancelled();
+       dispatch(call, () -> call.future.cancel(false));
+     }
+   });
+ }
+
+ /*
+  * Runs on the callback executor: the response is decoded and the future
+  * completed there, never on the I/O dispatcher.
+  */
+ private void dispatch(Call<?> call, Runnable task) {
+   try {
+     callbackExecutor.execute(task);
+   } catch (RejectedExecutionException e) {
+     call.future.completeExceptionally(new IOException("table " + name + " is closed"));
+   }
+ }
+
+ private <T> void handle(Call<T> call, String host, HttpUriRequest method, HttpResponse resp,
+     int code, long startTime) {
+   ClientMetrics metrics = client.getMetrics();
+   try {
+     client.getCookieStore().update(host, resp);
+     if (metrics != ClientMetrics.NOOP && resp.getEntity() != null) {
+       resp.setEntity(new CountingEntity(resp.getEntity(),
+         bytes -> metrics.onBytesReceived(call.operation, host, bytes)));
+     }
+     ContentCoding.decode(resp);
+     HttpEntity entity = resp.getEntity();
+     byte[] body = entity == null ? null : EntityUtils.toByteArray(entity);
+     if (LOG.isTraceEnabled()) {
+       LOG.trace(method.getMethod() + " " + method.getURI() + " " + code + " " +
+         resp.getStatusLine().getReasonPhrase() + " in " +
+         (System.currentTimeMillis() - startTime) + " ms");
+     }
+     if (code == HttpStatus.SC_UNAUTHORIZED && client.getCredentialManager() != null &&
+         !call.reauthenticated) {
+       // Cookie was rejected, authenticate again and retry once
+       call.reauthenticated = true;
+       client.getCookieStore().reject(host);
+       attempt(call);
+       return;
+     }
+     if (RetryPolicy.isRetryable(code, call.idempotent)) {
+       retry(call, RetryPolicy.getRetryAfter(resp.getAllHeaders()), null);
+       return;
+     }
+     call.future.complete(call.handler.handle(new Response(code, resp.getAllHeaders(), body)));
+   } catch (Exception e) {
+     call.future.completeExceptionally(e);
+   }
+ }
+
+ /*
+  * An I/O failure moves on to the next gateway until every member of the
+  * cluster has been tried once, then the whole round may be retried.
+  */
+ private <T> void failover(Call<T> call, Exception ex) {
+   if (!(ex instanceof IOException)) {
+     call.future.completeExceptionally(new IOException(ex));
+   } else if (call.singleAttempt) {
+     call.future.completeExceptionally(ex);
+   } else if (++call.failovers < call.hosts.length && !closed) {
+     attempt(call);
+   } else if (RetryPolicy.isRetryable((IOException) ex, call.idempotent)) {
+     retry(call, -1, (IOException) ex);
+   } else {
+     call.future.completeExceptionally(ex);
+   }
+ }
+
+ /*
+  * Schedule the next round of attempts on the timer, with a fresh choice of
+  * gateways, unless the retry policy gives up.
+  */
+ private <T> void retry(Call<T> call, long retryAfter, IOException failure) {
+   if (call.singleAttempt) {
+     call.future.completeExceptionally(failure != null ? failure :
+       new IOException(call.op + " request rejected"));
+     return;
+   }
+   long delay;
+   try {
+     delay = retryPolicy.nextDelay(call.op + " request", ++call.retries, retryAfter, failure);
+   } catch (IOException e) {
+     call.future.completeExceptionally(e);
+     return;
+   }
+   if (call.deadline != null && delay >= call.deadline.remaining()) {
+     // Waiting would only end in a timeout
+     call.future.completeExceptionally(call.deadline.timeout(call.op + " request", failure));
+     return;
+   }
+   retryPolicy.getMetrics().onRetry(call.operation);
+   call.hosts = null;
+   try {
+     timer.schedule(() -> attempt(call), delay, TimeUnit.MILLISECONDS);
+   } catch (RejectedExecutionException e) {
+     call.future.completeExceptionally(new IOException("table " + name + " is closed"));
+   }
+ }
+
+ /**
+  * Creates the request for an attempt against a complete URI
+  */
+ interface RequestFactory {
+   HttpUriRequest create(URI uri);
+ }
+
+ /**
+  * State of a single operation across its retries and failovers
+  */
+ static final class Call<T> {
+   final String op;
+   /**
+    * Kind of operation, for the metrics
+    */
+   Operation operation = Operation.OTHER;
+   final boolean idempotent;
+   final String path;
+   /**
+    * The path parsed once for all attempts
+    */
+   final URI uri;
+   final RequestFactory factory;
+   final ResponseHandler<T> handler;
+   final CompletableFuture<T> future = new CompletableFuture<>();
+   volatile Future<HttpResponse> inFlight;
+   String[] hosts;
+   int failovers = 0;
+   int retries = 0;
+   boolean reauthenticated = false;
+   /**
+    * Deadline of the operation, null if none
+    */
+   Deadline deadline;
+   /**
+    * No failover or retries, used to reach a given host
+    */
+   boolean singleAttempt = false;
+
+   Call(String op, boolean idempotent, String path, RequestFactory factory,
+       ResponseHandler<T> handler) {
+     this.op = op;
+     this.idempotent = idempotent;
+     this.path = path;
+     this.uri = URI.create(path);
+     this.factory = factory;
+     this.handler = handler;
+   }
+ }
+}
@@ -0,0 +1,165 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.utils.DateUtils;
+
+/**
+* Per-host store for the signed <tt>hadoop.auth</tt> cookie returned by the
+* REST gateway after a successful SPNEGO authentication. Replaying the cookie
+* lets later requests skip the 401 challenge and the Negotiate exchange until
+* the cookie expires or is rejected by the gateway.
+*/
+public class AuthCookieStore {
+ public static final String AUTH_COOKIE = "hadoop.auth";
+
+ /**
+  * Lifetime assumed for a cookie that carries no expiry information
+  */
+ private static final long DEFAULT_LIFETIME_MS = 10 * 60 * 1000L;
+ /**
+  * Cookies are dropped this long before they expire to allow for clock skew
+  */
+ private static final long EXPIRY_MARGIN_MS = 30 * 1000L;
+
+ private final Map<String, AuthCookie> cookies = new ConcurrentHashMap<>();
+ private final AtomicLong hits = new AtomicLong();
+ private final AtomicLong rejections = new AtomicLong();
+
+ /**
+  * @param host the gateway in 'host:port' format
+  * @return the <tt>Cookie</tt> header value to send, or null if no valid cookie is held
+  */
+ public String getCookieHeader(String host) {
+   AuthCookie cookie = cookies.get(host);
+   if (cookie == null) {
+     return null;
+   }
+   if (cookie.expires <= System.currentTimeMillis() + EXPIRY_MARGIN_MS) {
+     cookies.remove(host, cookie);
+     return null;
+   }
+   hits.incrementAndGet();
+   return AUTH_COOKIE + "=" + cookie.value;
+ }
+
+ /**
+  * Record the auth cookie set by the gateway, if any.
+  * @param host the gateway in 'host:port' format
+  * @param resp the response received from the gateway
+  */
+ public void update(String host, HttpResponse resp) {
+   for (Header header : resp.getHeaders("Set-Cookie")) {
+     String value = header.getValue();
+     if (!value.startsWith(AUTH_COOKIE + "=")) {
+       continue;
+     }
+     String[] parts = value.split(";");
+     String token = parts[0].substring(AUTH_COOKIE.length() + 1).trim();
+     if (token.isEmpty() || token.equals("\"\"")) {
+       // The gateway clears the cookie when it no longer accepts it
+       cookies.remove(host);
+       continue;
+     }
+     cookies.put(host, new AuthCookie(token, getExpiry(token, parts)));
+   }
+ }
+
+ /**
+  * Forget the cookie held for a host after the gateway rejected it.
+  * @param host the gateway in 'host:port' format
+  */
+ public void reject(String host) {
+   if (cookies.remove(host) != null) {
+     rejections.incrementAndGet();
+   }
+ }
+
+ /**
+  * @return number of requests that carried a stored cookie
+  */
+ public long getHitCount() {
+   return hits.get();
+ }
+
+ /**
+  * @return number of stored cookies rejected by a gateway
+  */
+ public long getRejectionCount() {
+   return rejections.get();
+ }
+
+ /*
+  * The signed token itself carries the expiry as "e=<millis>", this is what
+  * the gateway validates so it is preferred over the cookie attributes.
+  */
+ private static long getExpiry(String token, String[] attributes) {
+   String unquoted = token.startsWith("\"") && token.endsWith("\"") ?
+       token.substring(1, token.length() - 1) : token;
+   for (String field : unquoted.split("&")) {
+     if (field.startsWith("e=")) {
+       try {
+         return Long.parseLong(field.substring(2));
+       } catch (NumberFormatException e) {
+         break;
+       }
+     }
+   }
+   for (int i = 1; i < attributes.length; i++) {
+     String attribute = attributes[i].trim();
+     int eq = attribute.indexOf('=');
+     if (eq < 0) {
+       continue;
+     }
+     String name = attribute.substring(0, eq);
+     String value = attribute.substring(eq + 1);
+     if (name.equalsIgnoreCase("Max-Age")) {
+       try {
+         return System.currentTimeMillis() + Long.parseLong(value) * 1000L;
+       } catch (NumberFormatException e) {
+         // fall through to the default lifetime
+       }
+     } else if (name.equalsIgnoreCase("Expires")) {
+       Date date = DateUtils.parseDate(value);
+       if (date != null) {
+         return date.getTime();
+       }
+     }
+   }
+   return System.currentTimeMillis() + DEFAULT_LIFETIME_MS;
+ }
+
+ private static final class AuthCookie {
+   final String value;
+   final long expires;
+
+   AuthCookie(String value, long expires) {
+     this.value = value;
+     this.expires = expires;
+   }
+ }
+}
@@ -0,0 +1,133 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+* Runs the requests of a batch operation, such as the chunks of a multiput,
+* concurrently on a bounded number of threads, the calling thread being one of
+* them. Spreading the requests over the gateways is left to the cluster,
+* whose host selection steers a request away from gateways that already have
+* requests in flight.
+*
+* The requests share the deadline of the batch, so the operation timeout
+* bounds the whole batch rather than each of its requests. A failed request
+* does not stop the others: failures are collected by request for the caller
+* to report.
+*/
+public class BatchExecutor {
+ public static final int DEFAULT_PARALLELISM = 8;
+
+ /**
+  * One request of a batch
+  */
+ @FunctionalInterface
+ interface Task {
+   void run(int index) throws IOException;
+ }
+
+ private final int parallelism;
+ private final ExecutorService executor;
+
+ /**
+  * @param parallelism most requests of a batch in flight at once, 1 to send them in turn
+  */
+ public BatchExecutor(int parallelism) {
+   if (parallelism < 1) {
+     throw new IllegalArgumentException("Parallelism must be at least 1");
+   }
+   this.parallelism = parallelism;
+   this.executor = parallelism == 1 ? null : Executors.newCachedThreadPool(r -> {
+     Thread t = new Thread(r, "hbase-lite-batch");
+     t.setDaemon(true);
+     return t;
+   });
+ }
+
+ /**
+  * @return most requests of a batch in flight at once
+  */
+ public int getParallelism() {
+   return parallelism;
+ }
+
+ /**
+  * Run the requests of a batch and wait for all of them.
+  * @param count number of requests
+  * @param timeout milliseconds the whole batch may take, 0 or less for no deadline
+  * @param task sends the request of the given index, with a timeout of 0 or
+  * what is left of the deadline so that it falls under that of the batch
+  * @return the failure of each request, null for those that succeeded
+  * @throws InterruptedIOException if interrupted while waiting for the batch
+  */
+ IOException[] execute(int count, long timeout, Task task) throws InterruptedIOException {
+   IOException[] failures = new IOException[count];
+   Deadline deadline = timeout > 0 ? Deadline.after(timeout) : Deadline.current();
+   AtomicInteger next = new AtomicInteger();
+   int workers = executor == null ? 1 : Math.min(parallelism, count);
+   CountDownLatch done = new CountDownLatch(workers - 1);
+   for (int i = 1; i < workers; i++) {
+     executor.execute(() -> {
+       try {
+         work(deadline, next, count, task, failures);
+       } finally {
+         done.countDown();
+       }
+     });
+   }
+   work(deadline, next, count, task, failures);
+   try {
+     done.await();
+   } catch (InterruptedException e) {
+     throw (InterruptedIOException)new InterruptedIOException().initCause(e);
+   }
+   return failures;
+ }
+
+ void shutdown() {
+   if (executor != null) {
+     executor.shutdown();
+   }
+ }
+
+ private static void work(Deadline deadline, AtomicInteger next, int count, Task task,
+     IOException[] failures) {
+   Deadline previous = Deadline.set(deadline);
+   try {
+     for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+       try {
+         task.run(i);
+       } catch (IOException e) {
+         failures[i] = e;
+       } catch (RuntimeException e) {
+         failures[i] = new IOException(e);
+       }
+     }
+   } finally {
+     Deadline.set(previous);
+   }
+ }
+}
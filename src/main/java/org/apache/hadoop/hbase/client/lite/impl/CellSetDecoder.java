@@ -0,0 +1,199 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.apache.hadoop.hbase.client.lite.Cell;
+
+import com.google.protobuf.CodedInputStream;
+
+/**
+* Decodes a protobuf <tt>CellSet</tt> directly from a response stream into
+* results, one row at a time, without building the message or the
+* intermediate {@link org.apache.hadoop.hbase.client.lite.impl.model.CellSetModel}.
+* Only the cells of the row being decoded are held in addition to the results
+* already handed to the caller.
+*/
+final class CellSetDecoder {
+ // Tags of the length delimited fields, (field number << 3) | 2
+ private static final int CELLSET_ROWS = 10;
+ private static final int ROW_KEY = 10;
+ private static final int ROW_VALUES = 18;
+ private static final int CELL_COLUMN = 18;
+ private static final int CELL_DATA = 34;
+ // Tag of the varint timestamp, (3 << 3) | 0
+ private static final int CELL_TIMESTAMP = 24;
+
+ private CellSetDecoder() {
+ }
+
+ /**
+  * Decode the rows of a response, reading the body from its stream if the
+  * response was not buffered. The stream is closed once decoded.
+  * @param response a 200 response to a protobuf get or scanner request
+  * @param sizeLimit maximum number of bytes to decode
+  * @return the rows of the response
+  * @throws IOException if the body is malformed or larger than the limit
+  */
+ static ResultImpl[] decode(Response response, int sizeLimit) throws IOException {
+   List<ResultImpl> results = new ArrayList<>();
+   decode(response, sizeLimit, results::add);
+   return results.toArray(new ResultImpl[results.size()]);
+ }
+
+ /**
+  * Decode the rows of a response, passing each to the consumer as soon as it
+  * has been read from the response stream. The stream is closed once decoded,
+  * which releases the connection of a compressed body.
+  * @param response a 200 response to a protobuf get or scanner request
+  * @param sizeLimit maximum number of bytes to decode
+  * @param rows receives the rows in order
+  * @return the number of rows decoded
+  * @throws IOException if the body is malformed or larger than the limit
+  */
+ static int decode(Response response, int sizeLimit, Consumer<? super ResultImpl> rows)
+     throws IOException {
+   InputStream in = response.getStream();
+   if (in == null) {
+     byte[] body = response.getBody();
+     if (body == null) {
+       return 0;
+     }
+     in = new ByteArrayInputStream(body);
+   }
+   int count;
+   try {
+     count = decode(in, sizeLimit, rows);
+   } catch (IOException | RuntimeException e) {
+     // The rest of a body past the limit is not worth reading to reuse the connection
+     response.abandon();
+     throw e;
+   }
+   // A gzip stream ends at its trailer without reading the end of the raw body,
+   // closing it does so and returns the connection to the pool
+   in.close();
+   return count;
+ }
+
+ /**
+  * Decode a <tt>CellSet</tt>, passing each row to the consumer as soon as it
+  * has been read.
+  * @param in the serialized message, read to the end but not closed
+  * @param sizeLimit maximum number of bytes to decode
+  * @param rows receives the rows in order
+  * @return the number of rows decoded
+  * @throws IOException if the message is malformed or larger than the limit
+  */
+ static int decode(InputStream in, int sizeLimit, Consumer<? super ResultImpl> rows)
+     throws IOException {
+   CodedInputStream input = CodedInputStream.newInstance(in);
+   input.setSizeLimit(sizeLimit);
+   int count = 0;
+   for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+     if (tag == CELLSET_ROWS) {
+       int limit = input.pushLimit(input.readRawVarint32());
+       rows.accept(readRow(input));
+       input.popLimit(limit);
+       count++;
+     } else if (!input.skipField(tag)) {
+       break;
+     }
+   }
+   return count;
+ }
+
+ private static ResultImpl readRow(CodedInputStream input) throws IOException {
+   byte[] key = null;
+   List<Cell> cells = new ArrayList<>();
+   // Cells encoded ahead of the key, never the case for messages written in field order
+   List<byte[][]> pending = null;
+   for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+     if (tag == ROW_KEY) {
+       key = readBytes(input);
+     } else if (tag == ROW_VALUES) {
+       int limit = input.pushLimit(input.readRawVarint32());
+       byte[] column = HConstants.EMPTY_BYTE_ARRAY;
+       byte[] data = HConstants.EMPTY_BYTE_ARRAY;
+       long timestamp = HConstants.LATEST_TIMESTAMP;
+       for (int t = input.readTag(); t != 0; t = input.readTag()) {
+         if (t == CELL_COLUMN) {
+           column = readBytes(input);
+         } else if (t == CELL_DATA) {
+           data = readBytes(input);
+         } else if (t == CELL_TIMESTAMP) {
+           timestamp = input.readInt64();
+         } else if (!input.skipField(t)) {
+           break;
+         }
+       }
+       input.popLimit(limit);
+       if (key != null) {
+         cells.add(toKeyValue(key, column, timestamp, data));
+       } else {
+         if (pending == null) {
+           pending = new ArrayList<>();
+         }
+         pending.add(new byte[][] { column, Bytes.toBytes(timestamp), data });
+       }
+     } else if (!input.skipField(tag)) {
+       break;
+     }
+   }
+   if (pending != null) {
+     if (key == null) {
+       key = HConstants.EMPTY_BYTE_ARRAY;
+     }
+     for (byte[][] cell : pending) {
+       cells.add(toKeyValue(key, cell[0], Bytes.toLong(cell[1]), cell[2]));
+     }
+   }
+   return ResultImpl.create(cells);
+ }
+
+ private static byte[] readBytes(CodedInputStream input) throws IOException {
+   return input.readRawBytes(input.readRawVarint32());
+ }
+
+ /*
+  * Split 'family:qualifier' in place rather than copying both halves out
+  * of the column first.
+  */
+ private static KeyValue toKeyValue(byte[] row, byte[] column, long timestamp, byte[] value) {
+   int index = -1;
+   for (int i = 0; i < column.length; i++) {
+     if (column[i] == CellUtil.COLUMN_FAMILY_DELIMITER) {
+       index = i;
+       break;
+     }
+   }
+   int familyLength = index < 0 ? column.length : index;
+   int qualifierOffset = index < 0 ? column.length : index + 1;
+   return new KeyValue(row, 0, row.length,
+     column, 0, familyLength,
+     column, qualifierOffset, column.length - qualifierOffset,
+     timestamp, KeyValue.Type.Put, value, 0, value.length);
+ }
+}
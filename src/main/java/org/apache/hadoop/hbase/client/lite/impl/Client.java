@@ -19,31 +19,37 @@
 
 package org.apache.hadoop.hbase.client.lite.impl;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.Principal;
+import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.security.auth.Subject;
-import javax.security.auth.kerberos.KerberosPrincipal;
-import javax.security.auth.login.AppConfigurationEntry;
-import javax.security.auth.login.Configuration;
-import javax.security.auth.login.LoginContext;
 import javax.security.auth.login.LoginException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.client.lite.ClientMetrics;
+import org.apache.hadoop.hbase.client.lite.ClientMetrics.Operation;
+import org.apache.hadoop.hbase.client.lite.ConcurrencyLimitExceededException;
+import org.apache.hadoop.hbase.client.lite.HostProvider;
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
@@ -51,64 +57,416 @@ import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.message.BasicHeader;
 import org.apache.http.util.EntityUtils;
 
 /**
 * A wrapper around HttpClient which provides some useful function and
 * semantics for interacting with the REST gateway.
+*
+* A Client holds no per-request state and may be shared by any number of
+* threads, provided the wrapped HttpClient uses a pooling connection manager.
 */
 public class Client {
  public static final Header[] EMPTY_HEADER_ARRAY = new Header[0];
+ /**
+  * Default limit on the size of a decoded response body
+  */
+ public static final int DEFAULT_MAX_RESPONSE_SIZE = 256 * 1024 * 1024;
+ /**
+  * Request bodies are not compressed by default
+  */
+ public static final int DEFAULT_REQUEST_COMPRESSION_THRESHOLD = -1;
+ /**
+  * Operations have no deadline by default
+  */
+ public static final long DEFAULT_OPERATION_TIMEOUT = 0;
 
  private static final Log LOG = LogFactory.getLog(Client.class);
+ private static final int MAX_WARM_UP_THREADS = 64;
  
- private HttpClient httpClient;
- private Cluster cluster;
- private HttpResponse resp;
- private HttpGet httpGet = null;
- private String protocol;
+ private final Transport transport;
+ private final Cluster cluster;
+ private final String protocol;
  /**
-  * Kerberos Keytab file location (optional)
+  * Close the transport and its connections on shutdown
   */
- private String keyTabLocation;
+ private final boolean ownsTransport;
  /**
-  * Kerberos User Principal (optional)
+  * Shared Kerberos login, null unless Kerberos or JAAS is in use
   */
- private String userPrincipal;
+ private final KerberosCredentialManager credentialManager;
  /**
-  * Execute Http Request using Kerberos context
+  * Gateway auth cookies, replayed until they expire or are rejected
   */
- private boolean useKerberos = false;
- /**
-  * Name of entry in external JAAS configuration for Kerberos configuration?
-  */
- private String jaasEntryName;
+ private final AuthCookieStore cookieStore = new AuthCookieStore();
  
  private Map<String, String> extraHeaders = new ConcurrentHashMap<>();
+ /**
+  * 'protocol://host:port' of each host, parsed once
+  */
+ private final Map<String, URI> baseUris = new ConcurrentHashMap<>();
+
+ private volatile int maxResponseSize = DEFAULT_MAX_RESPONSE_SIZE;
+ /**
+  * Completes when warm-up has finished
+  */
+ private volatile CompletableFuture<Void> ready = CompletableFuture.completedFuture(null);
+ private volatile boolean compressResponses = true;
+ private volatile int requestCompressionThreshold = DEFAULT_REQUEST_COMPRESSION_THRESHOLD;
+ private volatile long operationTimeout = DEFAULT_OPERATION_TIMEOUT;
+ private volatile ConcurrencyLimiter limiter;
+ private volatile ClientMetrics metrics = ClientMetrics.NOOP;
+ /**
+  * Keeps the cluster in line with a host provider, null if the hosts are fixed
+  */
+ private HostRefresher hostRefresher;
 
  public Client(Cluster cluster, String protocol, HttpClient httpClient, boolean useKerberos, String jaasEntryName, String userPrincipal, String keyTabLocation) {
+	 this(cluster, protocol, httpClient, false, useKerberos, jaasEntryName, userPrincipal, keyTabLocation);
+ }
+
+ /**
+  * Constructor
+  * @param ownsHttpClient true if the HttpClient was created for this Client and
+  * should be closed, along with its connection pool, on shutdown
+  */
+ public Client(Cluster cluster, String protocol, HttpClient httpClient, boolean ownsHttpClient, boolean useKerberos, String jaasEntryName, String userPrincipal, String keyTabLocation) {
+	 this(cluster, protocol, new HttpClientTransport(httpClient), ownsHttpClient, useKerberos, jaasEntryName, userPrincipal, keyTabLocation);
+ }
+
+ /**
+  * Constructor
+  * @param transport carries the requests, i.e. HttpClientTransport or Http2Transport
+  * @param ownsTransport true if the transport was created for this Client and
+  * should be closed, along with its connections, on shutdown
+  */
+ public Client(Cluster cluster, String protocol, Transport transport, boolean ownsTransport, boolean useKerberos, String jaasEntryName, String userPrincipal, String keyTabLocation) {
 	 this.cluster = cluster;
 	 this.protocol = protocol;
-	 this.httpClient = httpClient;
-	 this.jaasEntryName = jaasEntryName;
-	 this.useKerberos = useKerberos;
-	 this.userPrincipal = userPrincipal;
-	 this.keyTabLocation = keyTabLocation;
+	 this.transport = transport;
+	 this.ownsTransport = ownsTransport;
+	 if (useKerberos || (jaasEntryName != null)) {
+		 this.credentialManager = new KerberosCredentialManager(jaasEntryName, userPrincipal, keyTabLocation);
+	 } else {
+		 this.credentialManager = null;
+	 }
  }
  
  /**
   * Shut down the client. Close any open persistent connections.
   */
  public void shutdown() {
+   synchronized (this) {
+     if (hostRefresher != null) {
+       hostRefresher.shutdown();
+     }
+   }
+   if (credentialManager != null) {
+     credentialManager.shutdown();
+   }
+   if (ownsTransport) {
+     try {
+       transport.close();
+     } catch (IOException e) {
+       LOG.warn(e.getMessage(), e);
+     }
+   }
+ }
+
+ /**
+  * @return the per-host store of gateway auth cookies
+  */
+ public AuthCookieStore getCookieStore() {
+   return cookieStore;
+ }
+
+ /**
+  * @return the Kerberos credential manager, null if Kerberos is not in use
+  */
+ public KerberosCredentialManager getCredentialManager() {
+   return credentialManager;
  }
 
  /**
-  * @return the wrapped HttpClient
+  * @return the wrapped HttpClient, null if the transport is not based on HttpClient 4
   */
  public HttpClient getHttpClient() {
-   return httpClient;
+   if (transport instanceof HttpClientTransport) {
+     return ((HttpClientTransport) transport).getHttpClient();
+   }
+   return null;
+ }
+
+ /**
+  * @return the transport carrying the requests
+  */
+ public Transport getTransport() {
+   return transport;
+ }
+
+ /**
+  * @return the cluster definition
+  */
+ public Cluster getCluster() {
+   return cluster;
+ }
+
+ /**
+  * @return the largest response body, in bytes, that will be decoded
+  */
+ public int getMaxResponseSize() {
+   return maxResponseSize;
+ }
+
+ /**
+  * @param maxResponseSize the largest response body, in bytes, that will be decoded
+  */
+ public void setMaxResponseSize(int maxResponseSize) {
+   this.maxResponseSize = maxResponseSize;
+ }
+
+ /**
+  * @return true if gzip and deflate coded responses are asked for
+  */
+ public boolean isCompressResponses() {
+   return compressResponses;
+ }
+
+ /**
+  * @param compressResponses true to send <tt>Accept-Encoding: gzip, deflate</tt>,
+  * coded responses are decoded as they are read either way
+  */
+ public void setCompressResponses(boolean compressResponses) {
+   this.compressResponses = compressResponses;
+ }
+
+ /**
+  * @return the size in bytes from which request bodies are gzipped, negative if never
+  */
+ public int getRequestCompressionThreshold() {
+   return requestCompressionThreshold;
+ }
+
+ /**
+  * @param requestCompressionThreshold the size in bytes from which request
+  * bodies are gzipped, negative to never compress them
+  */
+ public void setRequestCompressionThreshold(int requestCompressionThreshold) {
+   this.requestCompressionThreshold = requestCompressionThreshold;
+ }
+
+ /**
+  * @return milliseconds an operation may take across all of its attempts, 0 if unbounded
+  */
+ public long getOperationTimeout() {
+   return operationTimeout;
+ }
+
+ /**
+  * @param operationTimeout milliseconds an operation may take across all of
+  * its attempts, failovers and retries, 0 for no deadline
+  */
+ public void setOperationTimeout(long operationTimeout) {
+   this.operationTimeout = operationTimeout;
+ }
+
+ /**
+  * @param override the timeout of a single operation, negative if not set
+  * @return the override if set, the operation timeout of the client otherwise
+  */
+ public long getOperationTimeout(long override) {
+   return override >= 0 ? override : operationTimeout;
+ }
+
+ /**
+  * @return the limiter of requests in flight to each host, null if unlimited
+  */
+ public ConcurrencyLimiter getConcurrencyLimiter() {
+   return limiter;
+ }
+
+ /**
+  * @param limiter adaptive limit of requests in flight to each host, null for none
+  */
+ public void setConcurrencyLimiter(ConcurrencyLimiter limiter) {
+   this.limiter = limiter;
+ }
+
+ /**
+  * @return receives the latency, status and size of every exchange
+  */
+ public ClientMetrics getMetrics() {
+   return metrics;
+ }
+
+ /**
+  * @param metrics receives the latency, status and size of every exchange
+  */
+ public void setMetrics(ClientMetrics metrics) {
+   this.metrics = metrics != null ? metrics : ClientMetrics.NOOP;
+ }
+
+ /**
+  * Compress a request body according to the request compression threshold
+  * @param entity the request body
+  * @param compress true or false to override the threshold, null to apply it
+  * @return the entity to send
+  */
+ public HttpEntity encode(HttpEntity entity, Boolean compress) {
+   return ContentCoding.encode(entity, requestCompressionThreshold, compress);
+ }
+
+ /**
+  * Take the hosts of the cluster from a provider, at once and then on a
+  * background thread every refresh interval. Hosts the provider no longer
+  * returns are drained: requests in flight complete, then the idle
+  * connections to the host are closed. A failed refresh keeps the hosts.
+  * @param provider the source of the hosts
+  * @param refreshInterval milliseconds between refreshes, 0 to only refresh now
+  * @throws IOException if the first refresh failed
+  */
+ public synchronized void setHostProvider(HostProvider provider, long refreshInterval)
+     throws IOException {
+   HostRefresher refresher = new HostRefresher(cluster, provider, transport);
+   refresher.refresh();
+   if (hostRefresher != null) {
+     hostRefresher.shutdown();
+   }
+   if (refreshInterval > 0) {
+     refresher.start(refreshInterval);
+   }
+   hostRefresher = refresher;
+ }
+
+ /**
+  * @return the protocol used in creation of URLs, i.e. http or https
+  */
+ public String getProtocol() {
+   return protocol;
+ }
+
+ /**
+  * @param host the service location in 'host:port' format
+  * @return the URI of the host to which a path is appended, i.e. http://host:port
+  */
+ public String getBaseUri(String host) {
+   return getBaseURI(host).toString();
+ }
+
+ /**
+  * @param host the service location in 'host:port' format
+  * @return the parsed URI of the host, i.e. http://host:port
+  * @throws IllegalArgumentException if the host is malformed
+  */
+ URI getBaseURI(String host) {
+   URI base = baseUris.get(host);
+   if (base == null) {
+     base = baseUris.computeIfAbsent(host, h -> URI.create(protocol + "://" + h));
+   }
+   return base;
+ }
+
+ /**
+  * Resolve a path against the base URI of a host. Neither is parsed again, so
+  * a path parsed once serves every attempt of a request.
+  * @param host the service location in 'host:port' format
+  * @param path the parsed path, absolute and already encoded
+  * @return the URI of the path on the host
+  * @throws IllegalArgumentException if the host is malformed
+  */
+ URI resolve(String host, URI path) {
+   return getBaseURI(host).resolve(path);
+ }
+
+ /**
+  * @return the extra headers applied to all http methods
+  */
+ public Map<String, String> getExtraHeaders() {
+   return extraHeaders;
+ }
+
+ /**
+  * Authenticate against a single gateway so that its auth cookie is held in
+  * the cookie store. Used by transports that cannot perform SPNEGO themselves.
+  * @param host the gateway in 'host:port' format
+  * @throws IOException
+  */
+ public void authenticate(String host) throws IOException {
+   String uri = protocol + "://" + host + "/version/rest";
+   HttpGet method = new HttpGet(uri);
+   try {
+     HttpResponse resp = executeURI(method, new Header[] {
+         new BasicHeader("Accept", Constants.MIMETYPE_PROTOBUF) }, uri);
+     EntityUtils.consumeQuietly(resp.getEntity());
+     if (resp.getStatusLine().getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+       throw new IOException("Authentication with " + host + " failed");
+     }
+   } finally {
+     method.releaseConnection();
+   }
+ }
+
+ /**
+  * Open connections to every host of the cluster in the background, so that
+  * TCP connect, TLS handshake and authentication are not paid by the first
+  * requests. The requests to a host are made concurrently so that the pool
+  * opens as many connections.
+  * @param connectionsPerHost number of connections to open to each host
+  * @return the readiness future, also returned by {@link #ready()}
+  */
+ public CompletableFuture<Void> warmUp(int connectionsPerHost) {
+   String[] hosts = cluster.getHosts();
+   int total = hosts.length * connectionsPerHost;
+   if (total <= 0) {
+     return ready;
+   }
+   ExecutorService executor = Executors.newFixedThreadPool(Math.min(total, MAX_WARM_UP_THREADS), r -> {
+     Thread t = new Thread(r, "hbase-lite-warmup");
+     t.setDaemon(true);
+     return t;
+   });
+   AtomicInteger warmed = new AtomicInteger();
+   AtomicReference<IOException> failure = new AtomicReference<>();
+   CompletableFuture<?>[] requests = new CompletableFuture<?>[total];
+   int i = 0;
+   for (String host : hosts) {
+     for (int j = 0; j < connectionsPerHost; j++) {
+       requests[i++] = CompletableFuture.runAsync(() -> {
+         HostStats stats = cluster.getHostStats(host);
+         long start = stats.begin();
+         try {
+           authenticate(host);
+           stats.succeeded(start);
+           warmed.incrementAndGet();
+         } catch (IOException e) {
+           stats.failed(cluster.getFailureThreshold());
+           failure.set(e);
+         }
+       }, executor);
+     }
+   }
+   executor.shutdown();
+   long startTime = System.currentTimeMillis();
+   ready = CompletableFuture.allOf(requests).thenRun(() -> {
+     if (LOG.isDebugEnabled()) {
+       LOG.debug("warmed up " + warmed.get() + " of " + total + " connections in " +
+         (System.currentTimeMillis() - startTime) + " ms");
+     }
+     if (warmed.get() == 0) {
+       throw new CompletionException(new IOException("Warm-up failed on every host", failure.get()));
+     }
+   });
+   return ready;
+ }
+
+ /**
+  * @return a future completing once warm-up has finished, complete at once
+  * if no warm-up was started
+  */
+ public CompletableFuture<Void> ready() {
+   return ready;
  }
 
  /**
@@ -121,11 +479,15 @@ public class Client {
  }
 
  /**
-  * Execute a transaction method given only the path. Will select at random
-  * one of the members of the supplied cluster definition and iterate through
-  * the list until a transaction can be successfully completed. The
-  * definition of success here is a complete HTTP transaction, irrespective
-  * of result code.
+  * Execute a transaction method given only the path. Will select one of the
+  * members of the supplied cluster definition by latency and load, and
+  * iterate through the remaining members until a transaction can be
+  * successfully completed. The definition of success here is a complete HTTP
+  * transaction, irrespective of result code. Transport failures and server
+  * errors other than 509 count against the member and may eject it from
+  * selection for a while.
+  * Within an operation that has a deadline no member is tried once it has
+  * passed, and the timeouts of each try are bounded by the time left.
   * @param cluster the cluster definition
   * @param method the transaction method
   * @param headers HTTP header values to send
@@ -135,48 +497,129 @@ public class Client {
   */
  public HttpResponse executePathOnly(Cluster cluster, HttpUriRequest method,
      Header[] headers, String path) throws IOException {
-   IOException lastException;
-   if (cluster.nodes.size() < 1) {
+   return executePathOnly(cluster, cluster.selectHosts(), method, headers, path, null);
+ }
+
+ /*
+  * Try the given hosts in order. An attempt aborted through the handle is not
+  * held against its host and ends the request without failing over.
+  */
+ private HttpResponse executePathOnly(Cluster cluster, String[] hosts, HttpUriRequest method,
+     Header[] headers, String path, RequestHandle handle) throws IOException {
+   IOException lastException = null;
+   if (hosts.length < 1) {
      throw new IOException("Cluster is empty");
    }
-   int start = (int)Math.round((cluster.nodes.size() - 1) * Math.random());
-   int i = start;
-   do {
-     cluster.lastHost = cluster.nodes.get(i);
+   URI relative;
+   try {
+     relative = new URI(path);
+   } catch (URISyntaxException use) {
+     throw new IOException(use);
+   }
+   Deadline deadline = Deadline.current();
+   ConcurrencyLimiter limiter = this.limiter;
+   int limited = 0;
+   for (String host : hosts) {
+     if (deadline != null && deadline.isExpired()) {
+       throw deadline.timeout(method.getMethod() + " " + path, lastException);
+     }
+     if (limiter != null && !limiter.acquire(host, 0)) {
+       if (++limited < hosts.length) {
+         continue;
+       }
+       // Every host is at its limit, wait for whichever frees a slot first
+       long wait = limiter.getQueueTimeout();
+       if (deadline != null) {
+         wait = Math.min(wait, deadline.remaining());
+       }
+       host = limiter.acquire(hosts, wait);
+       if (host == null) {
+         throw new ConcurrencyLimitExceededException("All " + hosts.length +
+           " hosts are at their concurrency limit");
+       }
+     }
+     URI uri;
      try {
-       StringBuilder sb = new StringBuilder();
-       sb.append(protocol);
-       sb.append("://");
-       sb.append(cluster.lastHost);
-       sb.append(path);
-       URI uri = new URI(sb.toString());
-       if (method instanceof HttpPut) {
-         HttpPut put = new HttpPut(uri);
-         put.setEntity(((HttpPut) method).getEntity());
-         put.setHeaders(method.getAllHeaders());
-         method = put;
-       } else if (method instanceof HttpGet) {
-         method = new HttpGet(uri);
-       } else if (method instanceof HttpHead) {
-         method = new HttpHead(uri);
-       } else if (method instanceof HttpDelete) {
-         method = new HttpDelete(uri);
-       } else if (method instanceof HttpPost) {
-         HttpPost post = new HttpPost(uri);
-         post.setEntity(((HttpPost) method).getEntity());
-         post.setHeaders(method.getAllHeaders());
-         method = post;
+       uri = resolve(host, relative);
+     } catch (IllegalArgumentException iae) {
+       if (limiter != null) {
+         limiter.onFailure(host, System.nanoTime(), false);
        }
-       return executeURI(method, headers, uri.toString());
+       lastException = new IOException(iae);
+       continue;
+     }
+     if (method instanceof HttpPut) {
+       HttpPut put = new HttpPut(uri);
+       put.setEntity(((HttpPut) method).getEntity());
+       put.setHeaders(method.getAllHeaders());
+       method = put;
+     } else if (method instanceof HttpGet) {
+       method = new HttpGet(uri);
+     } else if (method instanceof HttpHead) {
+       method = new HttpHead(uri);
+     } else if (method instanceof HttpDelete) {
+       method = new HttpDelete(uri);
+     } else if (method instanceof HttpPost) {
+       HttpPost post = new HttpPost(uri);
+       post.setEntity(((HttpPost) method).getEntity());
+       post.setHeaders(method.getAllHeaders());
+       method = post;
+     }
+     cluster.lastHost = host;
+     if (handle != null) {
+       handle.attach(method);
+     }
+     HostStats stats = cluster.getHostStats(host);
+     long start = stats.begin();
+     try {
+       HttpResponse resp = executeURI(method, headers, uri.toString());
+       stats.completed(start, resp.getStatusLine().getStatusCode(), cluster.getFailureThreshold());
+       if (limiter != null) {
+         releaseOnClose(limiter, host, start, resp);
+       }
+       return resp;
      } catch (IOException e) {
+       if (handle != null && handle.isAborted()) {
+         stats.cancelled();
+         if (limiter != null) {
+           limiter.onFailure(host, start, false);
+         }
+         throw e;
+       }
+       if (deadline != null && deadline.isExpired()) {
+         // Cut short by the deadline, which says nothing about the host
+         stats.cancelled();
+         if (limiter != null) {
+           limiter.onFailure(host, start, false);
+         }
+         throw deadline.timeout(method.getMethod() + " " + path, e);
+       }
+       stats.failed(cluster.getFailureThreshold());
+       if (limiter != null) {
+         limiter.onFailure(host, start, e instanceof SocketTimeoutException);
+       }
        lastException = e;
-     } catch (URISyntaxException use) {
-       lastException = new IOException(use);
      }
-   } while (++i != start && i < cluster.nodes.size());
+   }
    throw lastException;
  }
 
+ /*
+  * The slot of a request is released once its body has been read or the
+  * response closed, with the latency measured when the headers arrived.
+  */
+ private static void releaseOnClose(ConcurrencyLimiter limiter, String host, long start,
+     HttpResponse resp) {
+   int code = resp.getStatusLine().getStatusCode();
+   long latency = System.nanoTime() - start;
+   HttpEntity entity = resp.getEntity();
+   if (entity == null) {
+     limiter.onResponse(host, start, latency, code);
+   } else {
+     resp.setEntity(new ReleasingEntity(entity, () -> limiter.onResponse(host, start, latency, code)));
+   }
+ }
+
  /**
   * Execute a transaction method given a complete URI.
   * @param method the transaction method
@@ -195,60 +638,93 @@ public class Client {
        method.addHeader(header);
      }
    }
+   if (compressResponses && !method.containsHeader(ContentCoding.ACCEPT_ENCODING)) {
+     method.addHeader(ContentCoding.ACCEPT_ENCODING, ContentCoding.ACCEPTED);
+   }
    long startTime = System.currentTimeMillis();
-   if (resp != null) EntityUtils.consumeQuietly(resp.getEntity());
-   
-   boolean useJAAS = (jaasEntryName != null);
-   
-   if (useKerberos || useJAAS) {
-	   // Execute HTTP Operation within Kerberos Security Context
-	   try {
-	   	 LoginContext lc = null;
-	   	 
-	   	 // Use external JAAS configuration for location of principal and keytab
-		 if (useJAAS) {
-			lc = new LoginContext("Client");
-		 } else {
-			 // Either use explicit principal/keytab or previously set kinit principal
-		     ClientLoginConfig loginConfig = new ClientLoginConfig(keyTabLocation, userPrincipal, null);
-			 Set<Principal> princ = new HashSet<Principal>(1);
-			 if (userPrincipal != null) {
-				 princ.add(new KerberosPrincipal(userPrincipal));
-			 }
-			 
-			 Subject sub = new Subject(false, princ, new HashSet<Object>(), new HashSet<Object>());
-			 lc = new LoginContext("", sub, null, loginConfig);
-		 }
-		 
-		 lc.login();
-		 Subject serviceSubject = lc.getSubject();
-		 return Subject.doAs(serviceSubject, new PrivilegedExceptionAction<HttpResponse>() {
-				@Override
-				public HttpResponse run() throws IOException {
-					return httpClient.execute(method);
-				}
-			});
-	   }
-	   catch (LoginException ex)
-	   {
-		   if (useJAAS) { 
-			   if  (System.getProperty("java.security.auth.login.config",null) == null) {
-				   LOG.error("Missing JAAS Configuration, i.e. -Djava.security.auth.login.config=/etc/config/client_jaas.conf");
-			   } else {
-				   LOG.error("Using JAAS Config file: " + System.getProperty("java.security.auth.login.config",null));
-			   }
-		   } else if (useKerberos && userPrincipal == null) {
-			   LOG.error("UserPrincipal not specified.  Remember to kinit prior to execution.");
-		   }
- 
-		   throw new IOException(ex.getMessage(),ex);
-	   }
-	   catch (Exception ex) {
-		   throw new IOException(ex.getMessage(),ex);
-	   }
-   } else {
-     resp = httpClient.execute(method);
+
+   // Replay the gateway's auth cookie to skip the SPNEGO handshake
+   String host = method.getURI().getAuthority();
+   String cookie = cookieStore.getCookieHeader(host);
+   if (cookie != null) {
+     method.setHeader("Cookie", cookie);
+   }
+
+   ClientMetrics metrics = this.metrics;
+   Operation operation = RetryPolicy.currentOperation();
+   RequestTrace trace = RequestTrace.current();
+   if (trace != null) {
+     trace.attempt(host);
+   }
+   boolean counting = metrics != ClientMetrics.NOOP || trace != null;
+   HttpEntity entity = method instanceof HttpEntityEnclosingRequest ?
+     ((HttpEntityEnclosingRequest) method).getEntity() : null;
+   if (counting && entity != null) {
+     ((HttpEntityEnclosingRequest) method).setEntity(new CountingEntity(entity, bytes -> {
+       metrics.onBytesSent(operation, host, bytes);
+       if (trace != null) {
+         trace.written(bytes);
+       }
+     }));
+   }
+   Object event = FlightRecorderEvents.beginExchange();
+   long start = System.nanoTime();
+   HttpResponse resp;
+   try {
+     // Execute HTTP Operation within the shared Kerberos Security Context
+     Subject serviceSubject = credentialManager != null ? credentialManager.getSubject() : null;
+     resp = executeAs(serviceSubject, method);
+     if (resp.getStatusLine().getStatusCode() == HttpStatus.SC_UNAUTHORIZED && isRepeatable(method)) {
+       if (cookie != null) {
+         // Cookie was rejected, fall back to SPNEGO
+         EntityUtils.consumeQuietly(resp.getEntity());
+         cookieStore.reject(host);
+         method.removeHeaders("Cookie");
+         if (trace != null) {
+           trace.reauthenticate();
+         }
+         resp = executeAs(serviceSubject, method);
+       }
+       if (resp.getStatusLine().getStatusCode() == HttpStatus.SC_UNAUTHORIZED && credentialManager != null) {
+         // Credentials were rejected, login again and retry once
+         EntityUtils.consumeQuietly(resp.getEntity());
+         serviceSubject = credentialManager.relogin(serviceSubject);
+         if (trace != null) {
+           trace.reauthenticate();
+         }
+         resp = executeAs(serviceSubject, method);
+       }
+     }
+   } catch (LoginException ex) {
+     metrics.onRequest(operation, host, 0, System.nanoTime() - start);
+     commitExchange(event, operation, host, method, uri, 0, entity, null);
+     throw new IOException(ex.getMessage(),ex);
+   } catch (IOException e) {
+     metrics.onRequest(operation, host, 0, System.nanoTime() - start);
+     commitExchange(event, operation, host, method, uri, 0, entity, null);
+     throw e;
+   } finally {
+     if (counting && entity != null) {
+       // Failover sends the original entity to the next host
+       ((HttpEntityEnclosingRequest) method).setEntity(entity);
+     }
+   }
+   int code = resp.getStatusLine().getStatusCode();
+   metrics.onRequest(operation, host, code, System.nanoTime() - start);
+   commitExchange(event, operation, host, method, uri, code, entity, resp.getEntity());
+   if (trace != null) {
+     trace.firstByte(code);
    }
+   if (counting && resp.getEntity() != null) {
+     resp.setEntity(new CountingEntity(resp.getEntity(), bytes -> {
+       metrics.onBytesReceived(operation, host, bytes);
+       if (trace != null) {
+         trace.bodyRead(bytes);
+       }
+     }));
+   }
+   cookieStore.update(host, resp);
+   ContentCoding.decode(resp);
 
    long endTime = System.currentTimeMillis();
    if (LOG.isTraceEnabled()) {
@@ -258,6 +734,49 @@ public class Client {
    return resp;
  }
 
+ private static void commitExchange(Object event, Operation operation, String host,
+     HttpUriRequest method, String uri, int status, HttpEntity sent, HttpEntity received) {
+   if (event == null) {
+     return;
+   }
+   long requestBytes = sent == null ? 0 : sent.getContentLength();
+   if (requestBytes < 0 && sent instanceof MutationEntity) {
+     requestBytes = ((MutationEntity) sent).getSerializedSize();
+   }
+   FlightRecorderEvents.commitExchange(event, operation, host, method.getMethod(), uri, status,
+     requestBytes, received == null ? -1 : received.getContentLength());
+ }
+
+ private HttpResponse executeAs(Subject subject, HttpUriRequest method) throws IOException {
+   Deadline deadline = Deadline.current();
+   int timeout = deadline != null ? deadline.attemptTimeout() : 0;
+   if (subject == null) {
+     return transport.execute(method, timeout);
+   }
+   try {
+     return Subject.doAs(subject, new PrivilegedExceptionAction<HttpResponse>() {
+       @Override
+       public HttpResponse run() throws IOException {
+         return transport.execute(method, timeout);
+       }
+     });
+   } catch (PrivilegedActionException ex) {
+     Exception cause = ex.getException();
+     if (cause instanceof IOException) {
+       throw (IOException) cause;
+     }
+     throw new IOException(cause.getMessage(), cause);
+   }
+ }
+
+ private static boolean isRepeatable(HttpUriRequest method) {
+   if (method instanceof HttpEntityEnclosingRequest) {
+     HttpEntity entity = ((HttpEntityEnclosingRequest) method).getEntity();
+     return entity == null || entity.isRepeatable();
+   }
+   return true;
+ }
+
  /**
   * Execute a transaction method. Will call either <tt>executePathOnly</tt>
   * or <tt>executeURI</tt> depending on whether a path only is supplied in
@@ -299,13 +818,27 @@ public class Client {
      throws IOException {
    HttpHead method = new HttpHead(path);
    try {
-     HttpResponse resp = execute(cluster, method, null, path);
+     HttpResponse resp = execute(cluster, method, headers, path);
      return new Response(resp.getStatusLine().getStatusCode(), resp.getAllHeaders(), null);
    } finally {
      method.releaseConnection();
    }
  }
 
+ /**
+  * Send a HEAD request to the given hosts in order
+  * @param hosts the hosts to try, in 'host:port' format
+  * @param path the properly urlencoded path
+  * @param headers the HTTP headers to include in the request
+  * @param handle allows the request to be aborted from another thread
+  * @return a Response object with response detail
+  * @throws IOException
+  */
+ Response head(String[] hosts, String path, Header[] headers, RequestHandle handle)
+     throws IOException {
+   return exchange(hosts, new HttpHead(path), headers, path, handle);
+ }
+
  /**
   * Send a GET request
   * @param path the path or URI
@@ -412,13 +945,86 @@ public class Client {
   */
  public Response get(Cluster c, String path, Header[] headers)
      throws IOException {
-   if (httpGet != null) {
-     httpGet.releaseConnection();
+   HttpGet method = new HttpGet(path);
+   try {
+     HttpResponse resp = execute(c, method, headers, path);
+     headers = resp.getAllHeaders();
+     byte[] content = getResponseBody(resp);
+     return new Response(resp.getStatusLine().getStatusCode(), headers, content);
+   } finally {
+     method.releaseConnection();
+   }
+ }
+
+ /**
+  * Send a GET request to the given hosts in order
+  * @param hosts the hosts to try, in 'host:port' format
+  * @param path the properly urlencoded path
+  * @param headers the HTTP headers to include in the request
+  * @param handle allows the request to be aborted from another thread
+  * @return a Response object with response detail
+  * @throws IOException
+  */
+ Response get(String[] hosts, String path, Header[] headers, RequestHandle handle)
+     throws IOException {
+   return exchange(hosts, new HttpGet(path), headers, path, handle);
+ }
+
+ /**
+  * Send a GET request and leave the body on the connection. The body is read
+  * from {@link Response#getStream()} and the response must be closed.
+  * @param path the path or URI
+  * @param headers the HTTP headers to include in the request
+  * @return a Response object with response detail
+  * @throws IOException
+  */
+ public Response getAsStream(String path, Header[] headers) throws IOException {
+   HttpResponse resp = execute(cluster, new HttpGet(path), headers, path);
+   return streamed(resp);
+ }
+
+ /**
+  * Send a GET request to the given hosts in order and leave the body on the
+  * connection. The body is read from {@link Response#getStream()} and the
+  * response must be closed.
+  * @param hosts the hosts to try, in 'host:port' format
+  * @param path the properly urlencoded path
+  * @param headers the HTTP headers to include in the request
+  * @param handle allows the request to be aborted from another thread
+  * @return a Response object with response detail
+  * @throws IOException
+  */
+ Response getAsStream(String[] hosts, String path, Header[] headers, RequestHandle handle)
+     throws IOException {
+   HttpResponse resp;
+   try {
+     resp = executePathOnly(cluster, hosts, new HttpGet(path), headers, path, handle);
+   } catch (IOException e) {
+     handle.release();
+     throw e;
+   }
+   return streamed(resp);
+ }
+
+ private static Response streamed(HttpResponse resp) throws IOException {
+   HttpEntity entity = resp.getEntity();
+   return new Response(resp.getStatusLine().getStatusCode(), resp.getAllHeaders(), resp,
+     entity != null ? entity.getContent() : null);
+ }
+
+ /*
+  * Execute against the given hosts and buffer the response, returning the
+  * connection of whichever attempt was made last.
+  */
+ private Response exchange(String[] hosts, HttpUriRequest method, Header[] headers,
+     String path, RequestHandle handle) throws IOException {
+   try {
+     HttpResponse resp = executePathOnly(cluster, hosts, method, headers, path, handle);
+     byte[] content = getResponseBody(resp);
+     return new Response(resp.getStatusLine().getStatusCode(), resp.getAllHeaders(), content);
+   } finally {
+     handle.release();
    }
-   httpGet = new HttpGet(path);
-   HttpResponse resp = execute(c, httpGet, headers, path);
-   return new Response(resp.getStatusLine().getStatusCode(), resp.getAllHeaders(),
-       resp, resp.getEntity() == null ? null : resp.getEntity().getContent());
  }
 
  /**
@@ -511,12 +1117,44 @@ public class Client {
   */
  public Response put(Cluster cluster, String path, Header[] headers,
      byte[] content) throws IOException {
+   return put(cluster, path, headers, encode(new ByteArrayEntity(content), null));
+ }
+
+ /**
+  * Send a PUT request
+  * @param path the path or URI
+  * @param contentType the content MIME type
+  * @param entity the request body, sent as is, should be repeatable so that
+  * it can be sent again to another host
+  * @return a Response object with response detail
+  * @throws IOException
+  */
+ public Response put(String path, String contentType, HttpEntity entity)
+     throws IOException {
+   Header[] headers = new Header[1];
+   headers[0] = new BasicHeader("Content-Type", contentType);
+   return put(cluster, path, headers, entity);
+ }
+
+ /**
+  * Send a PUT request
+  * @param cluster the cluster definition
+  * @param path the path or URI
+  * @param headers the HTTP headers to include, <tt>Content-Type</tt> must be
+  * supplied
+  * @param entity the request body, sent as is, should be repeatable so that
+  * it can be sent again to another host
+  * @return a Response object with response detail
+  * @throws IOException
+  */
+ public Response put(Cluster cluster, String path, Header[] headers,
+     HttpEntity entity) throws IOException {
    HttpPut method = new HttpPut(path);
    try {
-     method.setEntity(new InputStreamEntity(new ByteArrayInputStream(content), content.length));
+     method.setEntity(entity);
      HttpResponse resp = execute(cluster, method, headers, path);
      headers = resp.getAllHeaders();
-     content = getResponseBody(resp);
+     byte[] content = getResponseBody(resp);
      return new Response(resp.getStatusLine().getStatusCode(), headers, content);
    } finally {
      method.releaseConnection();
@@ -615,7 +1253,7 @@ public class Client {
      byte[] content) throws IOException {
    HttpPost method = new HttpPost(path);
    try {
-     method.setEntity(new InputStreamEntity(new ByteArrayInputStream(content), content.length));
+     method.setEntity(encode(new ByteArrayEntity(content), null));
      HttpResponse resp = execute(cluster, method, headers, path);
      headers = resp.getAllHeaders();
      content = getResponseBody(resp);
@@ -625,6 +1263,24 @@ public class Client {
    }
  }
 
+ /**
+  * Send a POST request to the given hosts in order
+  * @param hosts the hosts to try, in 'host:port' format
+  * @param path the properly urlencoded path
+  * @param headers the HTTP headers to include, <tt>Content-Type</tt> must be
+  * supplied
+  * @param content the content bytes
+  * @param handle allows the request to be aborted from another thread
+  * @return a Response object with response detail
+  * @throws IOException
+  */
+ Response post(String[] hosts, String path, Header[] headers, byte[] content,
+     RequestHandle handle) throws IOException {
+   HttpPost method = new HttpPost(path);
+   method.setEntity(encode(new ByteArrayEntity(content), null));
+   return exchange(hosts, method, headers, path, handle);
+ }
+
  /**
   * Send a DELETE request
   * @param path the path or URI
@@ -684,48 +1340,4 @@ public class Client {
      method.releaseConnection();
    }
  }
-
- /**
-  * Used for Kerberos configuration
-  */
- private static class ClientLoginConfig extends Configuration {
-   private final String keyTabLocation;
-   private final String userPrincipal;
-   private final Map<String, Object> loginOptions;
-
-   public ClientLoginConfig(String keyTabLocation, String userPrincipal, Map<String, Object> loginOptions) {
-	   super();
-	   this.keyTabLocation = keyTabLocation;
-	   this.userPrincipal = userPrincipal;
-	   this.loginOptions = loginOptions;
-	}
-
-	@Override
-	public AppConfigurationEntry[] getAppConfigurationEntry(String name) {
-		Map<String, Object> options = new HashMap<String, Object>();
-
-		// if we don't have keytab or principal only option is to rely on
-		// credentials cache.
-		if ((keyTabLocation == null) || userPrincipal == null) {
-			// cache
-			options.put("useTicketCache", "true");
-		} else {
-			// keytab
-			options.put("useKeyTab", "true");
-			options.put("keyTab", this.keyTabLocation);
-			options.put("principal", this.userPrincipal);
-			options.put("storeKey", "true");
-		}
-		options.put("doNotPrompt", "true");
-		options.put("isInitiator", "true");
-
-		if (loginOptions != null) {
-			options.putAll(loginOptions);
-		}
-
-		return new AppConfigurationEntry[] { new AppConfigurationEntry(
-				"com.sun.security.auth.module.Krb5LoginModule",
-				AppConfigurationEntry.LoginModuleControlFlag.REQUIRED, options) };
-	}
-  }
 }
@@ -19,17 +19,43 @@
 package org.apache.hadoop.hbase.client.lite.impl;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
 * A list of 'host:port' addresses of HTTP servers operating as a single
 * entity, for example multiple redundant web service gateways.
+*
+* Requests are spread by power-of-two-choices on the latency and load tracked
+* in {@link HostStats}. A host failing repeatedly is ejected and only probed
+* again once its ejection time has passed.
+*
+* The nodes are held in a copy-on-write array, replaced as a whole by the
+* mutators, so that requests pick hosts without locking and never see a
+* partial update. A removed node is drained: requests in flight complete
+* and are tracked as usual, and the node is reported by {@link #drained(long)}
+* once idle so that its connections can be closed.
 */
 public class Cluster {
- protected List<String> nodes = 
-   Collections.synchronizedList(new ArrayList<String>());
- protected String lastHost;
+ public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+ public static final long DEFAULT_EJECTION_TIME = 30000;
+
+ protected volatile String lastHost;
+
+ /**
+  * Never modified once published, writers replace it under the cluster lock
+  */
+ private volatile String[] nodes = new String[0];
+ private final Map<String, HostStats> stats = new ConcurrentHashMap<>();
+ private final Map<String, Drain> draining = new ConcurrentHashMap<>();
+ private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+ private volatile long ejectionTime = DEFAULT_EJECTION_TIME;
 
  /**
   * Constructor
@@ -41,22 +67,35 @@ public class Cluster {
   * @param nodes a list of service locations, in 'host:port' format
   */
  public Cluster(List<String> nodes) {
-   this.nodes.addAll(nodes);
+   setHosts(nodes);
+ }
+
+ /**
+  * @return the nodes of the cluster, in 'host:port' format
+  */
+ public String[] getHosts() {
+   return nodes.clone();
  }
 
  /**
   * @return true if no locations have been added, false otherwise
   */
  public boolean isEmpty() {
-   return nodes.isEmpty();
+   return nodes.length == 0;
  }
 
  /**
   * Add a node to the cluster
   * @param node the service location in 'host:port' format
   */
- public Cluster add(String node) {
-   nodes.add(node);
+ public synchronized Cluster add(String node) {
+   String[] current = nodes;
+   if (indexOf(current, node) < 0) {
+     String[] next = Arrays.copyOf(current, current.length + 1);
+     next[current.length] = node;
+     undrain(node);
+     nodes = next;
+   }
    return this;
  }
 
@@ -77,8 +116,16 @@ public class Cluster {
   * Remove a node from the cluster
   * @param node the service location in 'host:port' format
   */
- public Cluster remove(String node) {
-   nodes.remove(node);
+ public synchronized Cluster remove(String node) {
+   String[] current = nodes;
+   int i = indexOf(current, node);
+   if (i >= 0) {
+     String[] next = new String[current.length - 1];
+     System.arraycopy(current, 0, next, 0, i);
+     System.arraycopy(current, i + 1, next, i, next.length - i);
+     nodes = next;
+     drain(node);
+   }
    return this;
  }
 
@@ -95,10 +142,208 @@ public class Cluster {
    return remove(sb.toString());
  }
 
+ /**
+  * Replace the nodes of the cluster in a single step. Nodes no longer listed
+  * are drained, nodes listed again keep their statistics.
+  * @param hosts the service locations in 'host:port' format
+  * @return the nodes removed
+  */
+ public synchronized List<String> setHosts(Collection<String> hosts) {
+   LinkedHashSet<String> next = new LinkedHashSet<>(hosts);
+   for (String node : next) {
+     undrain(node);
+   }
+   String[] current = nodes;
+   nodes = next.toArray(new String[next.size()]);
+   List<String> removed = new ArrayList<>();
+   for (String node : current) {
+     if (!next.contains(node)) {
+       drain(node);
+       removed.add(node);
+     }
+   }
+   return removed;
+ }
+
+ /**
+  * Collect the removed nodes that have finished draining. A node is
+  * reported once no request is in flight to it, or once it has been
+  * draining for the maximum time, and only once.
+  * @param maxDrainTime milliseconds after which a node is reported regardless
+  * @return the nodes whose idle connections may now be closed
+  */
+ public List<String> drained(long maxDrainTime) {
+   List<String> result = new ArrayList<>();
+   long now = System.currentTimeMillis();
+   for (Map.Entry<String, Drain> e : draining.entrySet()) {
+     Drain d = e.getValue();
+     if ((d.stats.getInFlight() <= 0 || now - d.since >= maxDrainTime) &&
+         draining.remove(e.getKey(), d)) {
+       result.add(e.getKey());
+     }
+   }
+   return result;
+ }
+
+ /*
+  * The stats are published to the draining map before they leave the live
+  * one, so that a concurrent request always finds them.
+  */
+ private void drain(String node) {
+   HostStats hs = stats.get(node);
+   draining.put(node, new Drain(hs != null ? hs : new HostStats(node)));
+   stats.remove(node);
+ }
+
+ private void undrain(String node) {
+   Drain d = draining.get(node);
+   if (d != null) {
+     stats.putIfAbsent(node, d.stats);
+     draining.remove(node, d);
+   }
+ }
+
+ private static int indexOf(String[] nodes, String node) {
+   for (int i = 0; i < nodes.length; i++) {
+     if (nodes[i].equals(node)) {
+       return i;
+     }
+   }
+   return -1;
+ }
+
+ /**
+  * @param failureThreshold consecutive failures before a host is ejected
+  */
+ public Cluster setFailureThreshold(int failureThreshold) {
+   this.failureThreshold = failureThreshold;
+   return this;
+ }
+
+ /**
+  * @return consecutive failures before a host is ejected
+  */
+ public int getFailureThreshold() {
+   return failureThreshold;
+ }
+
+ /**
+  * @param ejectionTime milliseconds an ejected host waits before it is probed
+  */
+ public Cluster setEjectionTime(long ejectionTime) {
+   this.ejectionTime = ejectionTime;
+   return this;
+ }
+
+ /**
+  * @return milliseconds an ejected host waits before it is probed
+  */
+ public long getEjectionTime() {
+   return ejectionTime;
+ }
+
+ /**
+  * @param node the service location in 'host:port' format
+  * @return the statistics tracked for the node
+  */
+ public HostStats getHostStats(String node) {
+   HostStats hs = stats.get(node);
+   if (hs == null) {
+     Drain d = draining.get(node);
+     hs = (d != null) ? d.stats : stats.computeIfAbsent(node, HostStats::new);
+   }
+   return hs;
+ }
+
+ /**
+  * @return the statistics of every node, in cluster order, for monitoring
+  */
+ public Map<String, HostStats> getHostStats() {
+   Map<String, HostStats> result = new LinkedHashMap<>();
+   for (String node : nodes) {
+     result.put(node, getHostStats(node));
+   }
+   return result;
+ }
+
+ /**
+  * Order in which the nodes should be tried for a single request. An ejected
+  * node due for a probe comes first, then the power-of-two-choices pick among
+  * the available nodes, the other available nodes by increasing cost, and
+  * finally the ejected nodes as a last resort.
+  * @return the nodes to try, empty if the cluster is empty
+  */
+ public String[] selectHosts() {
+   String[] snapshot = nodes;
+   int n = snapshot.length;
+   String[] order = new String[n];
+   if (n == 0) {
+     return order;
+   }
+   HostStats[] available = new HostStats[n];
+   double[] costs = new double[n];
+   int numAvailable = 0;
+   List<String> ejected = new ArrayList<>();
+   int i = 0;
+   for (String node : snapshot) {
+     HostStats hs = getHostStats(node);
+     if (hs.isAvailable()) {
+       costs[numAvailable] = hs.cost();
+       available[numAvailable++] = hs;
+     } else if (i == 0 && hs.tryProbe(ejectionTime)) {
+       order[i++] = node;
+     } else {
+       ejected.add(node);
+     }
+   }
+   if (numAvailable > 1) {
+     // Power of two choices, then move the pick to the front
+     ThreadLocalRandom random = ThreadLocalRandom.current();
+     int a = random.nextInt(numAvailable);
+     int b = random.nextInt(numAvailable - 1);
+     if (b >= a) {
+       b++;
+     }
+     swap(available, costs, 0, costs[a] <= costs[b] ? a : b);
+     // Failover order, costs were captured once so concurrent updates cannot upset the sort
+     for (int j = 2; j < numAvailable; j++) {
+       for (int k = j; k > 1 && costs[k] < costs[k - 1]; k--) {
+         swap(available, costs, k, k - 1);
+       }
+     }
+   }
+   for (int j = 0; j < numAvailable; j++) {
+     order[i++] = available[j].getHost();
+   }
+   for (String node : ejected) {
+     order[i++] = node;
+   }
+   lastHost = order[0];
+   return order;
+ }
+
+ private static void swap(HostStats[] hosts, double[] costs, int a, int b) {
+   HostStats hs = hosts[a];
+   hosts[a] = hosts[b];
+   hosts[b] = hs;
+   double cost = costs[a];
+   costs[a] = costs[b];
+   costs[b] = cost;
+ }
+
  @Override public String toString() {
    return "Cluster{" +
-       "nodes=" + nodes +
+       "nodes=" + Arrays.toString(nodes) +
        ", lastHost='" + lastHost + '\'' +
        '}';
  }
+
+ private static final class Drain {
+   final HostStats stats;
+   final long since = System.currentTimeMillis();
+
+   Drain(HostStats stats) {
+     this.stats = stats;
+   }
+ }
 }
@@ -0,0 +1,350 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* Adaptive limit on the requests in flight to each gateway, so that a gateway
+* is kept near the concurrency it can serve instead of being pushed past it
+* until it answers 509.
+*
+* The limit of a host follows AIMD: it grows by one per round trip's worth of
+* successful responses while it is being used, and is cut by a fraction when
+* the host signals overload. Overload is a 509, 429 or 503 response, a read
+* timeout, or the smoothed latency rising above a multiple of the lowest
+* latency recently observed. Only responses to requests sent after the last
+* cut can cut the limit again, so a burst of rejections counts once.
+*
+* A request over the limit of its host moves on to the next host. Once every
+* host is at its limit the request waits briefly for a slot on whichever host
+* frees one first, and is otherwise rejected.
+*
+* A slot is held until the body of the response has been read, a body
+* streamed to the caller still occupies the gateway. Latency is sampled when
+* the headers arrive, as the time the caller takes to read the body says
+* nothing about the gateway.
+*/
+public class ConcurrencyLimiter {
+ public static final int DEFAULT_INITIAL_LIMIT = 20;
+ public static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+
+ private static final int MIN_LIMIT = 1;
+ private static final double BACKOFF_RATIO = 0.9;
+ private static final double EWMA_ALPHA = 0.1;
+ /**
+  * Samples after which the lowest latency is forgotten, so that the
+  * baseline follows lasting changes in the workload
+  */
+ private static final int BASELINE_SAMPLES = 1000;
+
+ private static final int SC_TOO_MANY_REQUESTS = 429;
+ private static final int SC_BANDWIDTH_LIMIT_EXCEEDED = 509;
+
+ private final int initialLimit;
+ private final int maxLimit;
+ private final long queueTimeout;
+ private final double latencyTolerance;
+ private final Map<String, HostLimit> limits = new ConcurrentHashMap<>();
+ private final AtomicLong rejected = new AtomicLong();
+ /**
+  * Notified of every released slot while requests wait on several hosts
+  */
+ private final Object released = new Object();
+ private final AtomicInteger waiting = new AtomicInteger();
+
+ /**
+  * @param maxLimit most requests in flight to a single host
+  * @param queueTimeout milliseconds to wait for a slot once every host is at its limit
+  */
+ public ConcurrencyLimiter(int maxLimit, long queueTimeout) {
+   this(Math.min(DEFAULT_INITIAL_LIMIT, maxLimit), maxLimit, queueTimeout,
+     DEFAULT_LATENCY_TOLERANCE);
+ }
+
+ /**
+  * @param initialLimit requests in flight allowed to a host before anything is known of it
+  * @param maxLimit most requests in flight to a single host
+  * @param queueTimeout milliseconds to wait for a slot once every host is at its limit
+  * @param latencyTolerance smoothed latency, as a multiple of the lowest, taken as overload
+  */
+ public ConcurrencyLimiter(int initialLimit, int maxLimit, long queueTimeout,
+     double latencyTolerance) {
+   if (maxLimit < MIN_LIMIT) {
+     throw new IllegalArgumentException("The concurrency limit must be at least " + MIN_LIMIT);
+   }
+   this.initialLimit = Math.max(MIN_LIMIT, Math.min(initialLimit, maxLimit));
+   this.maxLimit = maxLimit;
+   this.queueTimeout = queueTimeout;
+   this.latencyTolerance = latencyTolerance;
+ }
+
+ /**
+  * Take a slot for a request to a host.
+  * @param host the service location in 'host:port' format
+  * @param wait milliseconds to wait for a slot, 0 to return at once
+  * @return true if the request may be sent, false if the host is at its limit
+  * @throws InterruptedIOException if interrupted while waiting
+  */
+ public boolean acquire(String host, long wait) throws InterruptedIOException {
+   try {
+     if (limit(host).acquire(TimeUnit.MILLISECONDS.toNanos(wait))) {
+       return true;
+     }
+   } catch (InterruptedException e) {
+     Thread.currentThread().interrupt();
+     throw (InterruptedIOException)new InterruptedIOException().initCause(e);
+   }
+   if (wait > 0) {
+     rejected.incrementAndGet();
+   }
+   return false;
+ }
+
+ /**
+  * Take a slot for a request on whichever of the hosts has or frees one first.
+  * @param hosts the service locations in 'host:port' format, in order of preference
+  * @param wait milliseconds to wait for a slot
+  * @return the host whose slot was taken, null if every host stayed at its limit
+  * @throws InterruptedIOException if interrupted while waiting
+  */
+ public String acquire(String[] hosts, long wait) throws InterruptedIOException {
+   long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait);
+   HostLimit[] hostLimits = new HostLimit[hosts.length];
+   for (int i = 0; i < hosts.length; i++) {
+     hostLimits[i] = limit(hosts[i]);
+   }
+   waiting.incrementAndGet();
+   for (HostLimit limit : hostLimits) {
+     limit.queued(1);
+   }
+   try {
+     synchronized (released) {
+       while (true) {
+         for (int i = 0; i < hosts.length; i++) {
+           if (hostLimits[i].acquire(0)) {
+             return hosts[i];
+           }
+         }
+         long left = end - System.nanoTime();
+         if (left <= 0) {
+           rejected.incrementAndGet();
+           return null;
+         }
+         TimeUnit.NANOSECONDS.timedWait(released, left);
+       }
+     }
+   } catch (InterruptedException e) {
+     Thread.currentThread().interrupt();
+     throw (InterruptedIOException)new InterruptedIOException().initCause(e);
+   } finally {
+     for (HostLimit limit : hostLimits) {
+       limit.queued(-1);
+     }
+     waiting.decrementAndGet();
+   }
+ }
+
+ /**
+  * Release the slot of a request that received a response.
+  * @param host the service location in 'host:port' format
+  * @param startNanos System.nanoTime() when the request was sent
+  * @param code the HTTP status code
+  */
+ public void onResponse(String host, long startNanos, int code) {
+   onResponse(host, startNanos, System.nanoTime() - startNanos, code);
+ }
+
+ /**
+  * Release the slot of a request whose response has been read.
+  * @param host the service location in 'host:port' format
+  * @param startNanos System.nanoTime() when the request was sent
+  * @param latencyNanos nanoseconds until the headers of the response arrived
+  * @param code the HTTP status code
+  */
+ public void onResponse(String host, long startNanos, long latencyNanos, int code) {
+   boolean overloaded = code == SC_BANDWIDTH_LIMIT_EXCEEDED || code == SC_TOO_MANY_REQUESTS ||
+     code == 503;
+   limit(host).release(startNanos, latencyNanos, overloaded, !overloaded);
+   signal();
+ }
+
+ /**
+  * Release the slot of a request that failed or was abandoned.
+  * @param host the service location in 'host:port' format
+  * @param startNanos System.nanoTime() when the request was sent
+  * @param timedOut true if the host did not answer in time, a sign of overload
+  */
+ public void onFailure(String host, long startNanos, boolean timedOut) {
+   limit(host).release(startNanos, 0, timedOut, false);
+   signal();
+ }
+
+ /*
+  * Wake the requests waiting on several hosts, called once the slot has
+  * been released so that a waiter cannot miss it.
+  */
+ private void signal() {
+   if (waiting.get() > 0) {
+     synchronized (released) {
+       released.notifyAll();
+     }
+   }
+ }
+
+ private HostLimit limit(String host) {
+   HostLimit limit = limits.get(host);
+   if (limit == null) {
+     limit = limits.computeIfAbsent(host, h -> new HostLimit(initialLimit));
+   }
+   return limit;
+ }
+
+ /**
+  * @return milliseconds a request waits for a slot once every host is at its limit
+  */
+ public long getQueueTimeout() {
+   return queueTimeout;
+ }
+
+ /**
+  * @return the current limit of a host
+  */
+ public int getLimit(String host) {
+   return limit(host).getLimit();
+ }
+
+ /**
+  * @return the requests in flight to a host
+  */
+ public int getInFlight(String host) {
+   return limit(host).getInFlight();
+ }
+
+ /**
+  * @return the requests waiting for a slot on a host
+  */
+ public int getQueueDepth(String host) {
+   return limit(host).getQueued();
+ }
+
+ /**
+  * @return number of requests rejected after waiting for a slot
+  */
+ public long getRejectedCount() {
+   return rejected.get();
+ }
+
+ @Override public String toString() {
+   return "ConcurrencyLimiter{" +
+       "limits=" + limits +
+       ", rejected=" + rejected.get() +
+       '}';
+ }
+
+ private final class HostLimit {
+   private double limit;
+   private int inFlight = 0;
+   private int queued = 0;
+   private long decreasedAt = System.nanoTime();
+   private double ewmaNanos = 0;
+   private long minNanos = Long.MAX_VALUE;
+   private int samples = 0;
+
+   HostLimit(int initialLimit) {
+     this.limit = initialLimit;
+   }
+
+   synchronized boolean acquire(long waitNanos) throws InterruptedException {
+     if (inFlight < (int) limit) {
+       inFlight++;
+       return true;
+     }
+     if (waitNanos <= 0) {
+       return false;
+     }
+     long end = System.nanoTime() + waitNanos;
+     queued++;
+     try {
+       while (inFlight >= (int) limit) {
+         long left = end - System.nanoTime();
+         if (left <= 0) {
+           return false;
+         }
+         TimeUnit.NANOSECONDS.timedWait(this, left);
+       }
+       inFlight++;
+       return true;
+     } finally {
+       queued--;
+     }
+   }
+
+   synchronized void queued(int delta) {
+     queued += delta;
+   }
+
+   synchronized void release(long startNanos, long latency, boolean overloaded, boolean sample) {
+     inFlight--;
+     long now = System.nanoTime();
+     if (sample) {
+       ewmaNanos = ewmaNanos == 0 ? latency : ewmaNanos + EWMA_ALPHA * (latency - ewmaNanos);
+       if (++samples >= BASELINE_SAMPLES) {
+         samples = 0;
+         minNanos = latency;
+       } else {
+         minNanos = Math.min(minNanos, latency);
+       }
+       overloaded = ewmaNanos > latencyTolerance * minNanos;
+     }
+     if (overloaded) {
+       if (startNanos - decreasedAt > 0) {
+         limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+         decreasedAt = now;
+       }
+     } else if (sample && inFlight + 1 >= limit / 2) {
+       // Grow only while the limit is in use, by one per limit's worth of responses
+       limit = Math.min(maxLimit, limit + 1.0 / limit);
+     }
+     notifyAll();
+   }
+
+   synchronized int getLimit() {
+     return (int) limit;
+   }
+
+   synchronized int getInFlight() {
+     return inFlight;
+   }
+
+   synchronized int getQueued() {
+     return queued;
+   }
+
+   @Override public synchronized String toString() {
+     return "{limit=" + (int) limit + ", inFlight=" + inFlight + ", queued=" + queued + '}';
+   }
+ }
+}
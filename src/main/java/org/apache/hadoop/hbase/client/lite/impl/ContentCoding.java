@@ -0,0 +1,169 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+/**
+* gzip and deflate content coding of request and response bodies, applied by
+* {@link Client} and the non-blocking table whichever transport is in use.
+* Responses are decompressed as they are read; requests are compressed as
+* they are written to the connection.
+*/
+final class ContentCoding {
+ static final String ACCEPT_ENCODING = "Accept-Encoding";
+ static final String CONTENT_ENCODING = "Content-Encoding";
+ /**
+  * Codings accepted from the gateway
+  */
+ static final String ACCEPTED = "gzip, deflate";
+ /**
+  * Asks the gateway not to compress a response
+  */
+ static final String IDENTITY = "identity";
+
+ private static final int BUFFER_SIZE = 8192;
+
+ private ContentCoding() {
+ }
+
+ /**
+  * Replace a gzip or deflate coded response entity by one that decompresses
+  * while it is read. The coding headers are removed, as HttpClient does, so a
+  * response already decoded by the transport is left alone.
+  * @param resp the response
+  * @throws IOException if the coding is not supported
+  */
+ static void decode(HttpResponse resp) throws IOException {
+   HttpEntity entity = resp.getEntity();
+   if (entity == null || entity.getContentLength() == 0) {
+     return;
+   }
+   Header header = entity.getContentEncoding();
+   if (header == null) {
+     header = resp.getFirstHeader(CONTENT_ENCODING);
+   }
+   if (header == null) {
+     return;
+   }
+   String coding = header.getValue().trim().toLowerCase(Locale.ROOT);
+   switch (coding) {
+   case "gzip":
+   case "x-gzip":
+     resp.setEntity(new GzipDecompressingEntity(entity));
+     break;
+   case "deflate":
+     resp.setEntity(new DeflateDecompressingEntity(entity));
+     break;
+   case "identity":
+     return;
+   default:
+     throw new IOException("Unsupported Content-Encoding: " + header.getValue());
+   }
+   resp.removeHeaders("Content-Length");
+   resp.removeHeaders(CONTENT_ENCODING);
+   resp.removeHeaders("Content-MD5");
+ }
+
+ /**
+  * Decide whether to compress a request body.
+  * @param entity the request body
+  * @param threshold minimum size in bytes to compress, negative to never compress
+  * @param compress true or false to override the threshold, null to apply it
+  * @return the entity to send
+  */
+ static HttpEntity encode(HttpEntity entity, int threshold, Boolean compress) {
+   if (entity == null || entity.getContentEncoding() != null) {
+     return entity;
+   }
+   boolean gzip;
+   if (compress != null) {
+     gzip = compress;
+   } else if (threshold < 0) {
+     gzip = false;
+   } else {
+     long size = entity.getContentLength();
+     if (size < 0 && entity instanceof MutationEntity) {
+       size = ((MutationEntity) entity).getSerializedSize();
+     }
+     // A body of unknown size is presumably worth compressing
+     gzip = size < 0 || size >= threshold;
+   }
+   return gzip ? new GzipEntity(entity) : entity;
+ }
+
+ /**
+  * Compresses the wrapped entity as it is written. Unlike HttpClient's
+  * GzipCompressingEntity it can also be read as a stream, which the HTTP/2
+  * transport and the non-blocking client need.
+  */
+ private static final class GzipEntity extends HttpEntityWrapper {
+   private static final Header GZIP = new BasicHeader(CONTENT_ENCODING, "gzip");
+
+   GzipEntity(HttpEntity wrapped) {
+     super(wrapped);
+   }
+
+   @Override
+   public Header getContentEncoding() {
+     return GZIP;
+   }
+
+   @Override
+   public long getContentLength() {
+     return -1;
+   }
+
+   @Override
+   public boolean isChunked() {
+     return true;
+   }
+
+   @Override
+   public InputStream getContent() throws IOException {
+     ByteArrayOutputStream out = new ByteArrayOutputStream();
+     writeTo(out);
+     return new ByteArrayInputStream(out.toByteArray());
+   }
+
+   @Override
+   public void writeTo(OutputStream out) throws IOException {
+     GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+     wrappedEntity.writeTo(gzip);
+     // Finish rather than close, the connection stays open
+     gzip.finish();
+     gzip.flush();
+   }
+ }
+}
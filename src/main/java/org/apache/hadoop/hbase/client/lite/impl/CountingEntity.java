@@ -0,0 +1,134 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.LongConsumer;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+* Counts the bytes of an entity as they are written to or read from the
+* connection, for {@link org.apache.hadoop.hbase.client.lite.ClientMetrics}.
+* The count is reported once the entity has been written, or once its
+* content has been read to the end or closed.
+*/
+final class CountingEntity extends HttpEntityWrapper {
+ private final LongConsumer sink;
+
+ CountingEntity(HttpEntity wrapped, LongConsumer sink) {
+   super(wrapped);
+   this.sink = sink;
+ }
+
+ @Override
+ public InputStream getContent() throws IOException {
+   InputStream in = wrappedEntity.getContent();
+   return in == null ? null : new CountingInputStream(in, sink);
+ }
+
+ @Override
+ public void writeTo(OutputStream out) throws IOException {
+   CountingOutputStream counting = new CountingOutputStream(out);
+   wrappedEntity.writeTo(counting);
+   sink.accept(counting.count);
+ }
+
+ private static final class CountingOutputStream extends FilterOutputStream {
+   long count = 0;
+
+   CountingOutputStream(OutputStream out) {
+     super(out);
+   }
+
+   @Override
+   public void write(int b) throws IOException {
+     out.write(b);
+     count++;
+   }
+
+   @Override
+   public void write(byte[] b, int off, int len) throws IOException {
+     out.write(b, off, len);
+     count += len;
+   }
+ }
+
+ private static final class CountingInputStream extends FilterInputStream {
+   private final LongConsumer sink;
+   private long count = 0;
+   private boolean reported = false;
+
+   CountingInputStream(InputStream in, LongConsumer sink) {
+     super(in);
+     this.sink = sink;
+   }
+
+   @Override
+   public int read() throws IOException {
+     int b = in.read();
+     if (b < 0) {
+       report();
+     } else {
+       count++;
+     }
+     return b;
+   }
+
+   @Override
+   public int read(byte[] b, int off, int len) throws IOException {
+     int n = in.read(b, off, len);
+     if (n < 0) {
+       report();
+     } else {
+       count += n;
+     }
+     return n;
+   }
+
+   @Override
+   public long skip(long n) throws IOException {
+     long skipped = in.skip(n);
+     count += skipped;
+     return skipped;
+   }
+
+   @Override
+   public void close() throws IOException {
+     try {
+       in.close();
+     } finally {
+       report();
+     }
+   }
+
+   private void report() {
+     if (!reported) {
+       reported = true;
+       sink.accept(count);
+     }
+   }
+ }
+}
@@ -0,0 +1,103 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.client.lite.OperationTimeoutException;
+
+/**
+* Point in time by which an operation must complete, across all of its
+* attempts, failovers and retries.
+*
+* The blocking client keeps the deadline of the operation in progress on the
+* calling thread, set by {@link RetryPolicy} and read by {@link Client} before
+* each attempt, so that it does not have to be passed through every request
+* method. The non-blocking table keeps it with the operation instead.
+*/
+final class Deadline {
+ private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+ private final long timeout;
+ private final long expiryNanos;
+
+ private Deadline(long timeout) {
+   this.timeout = timeout;
+   this.expiryNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+ }
+
+ /**
+  * @param timeout milliseconds from now, 0 or less for no deadline
+  * @return the deadline, null if there is none
+  */
+ static Deadline after(long timeout) {
+   return timeout > 0 ? new Deadline(timeout) : null;
+ }
+
+ /**
+  * @return the deadline of the calling thread's operation, null if none
+  */
+ static Deadline current() {
+   return CURRENT.get();
+ }
+
+ /**
+  * Make a deadline that of the calling thread's operation.
+  * @param deadline the deadline, null for none
+  * @return the previous deadline, to be restored when the operation ends
+  */
+ static Deadline set(Deadline deadline) {
+   Deadline previous = CURRENT.get();
+   if (deadline != null) {
+     CURRENT.set(deadline);
+   } else {
+     CURRENT.remove();
+   }
+   return previous;
+ }
+
+ /**
+  * @return milliseconds left, 0 or less once expired
+  */
+ long remaining() {
+   return TimeUnit.NANOSECONDS.toMillis(expiryNanos - System.nanoTime());
+ }
+
+ boolean isExpired() {
+   return expiryNanos - System.nanoTime() <= 0;
+ }
+
+ /**
+  * @return the time left as a socket, connect or pool timeout, at least 1 ms
+  */
+ int attemptTimeout() {
+   return (int) Math.max(1, Math.min(Integer.MAX_VALUE, remaining()));
+ }
+
+ /**
+  * @param description the operation, i.e. "get request"
+  * @param cause the failure of the last attempt, may be null
+  * @return the exception reporting the deadline as exceeded
+  */
+ OperationTimeoutException timeout(String description, Throwable cause) {
+   return new OperationTimeoutException(description + " exceeded its deadline of " + timeout +
+     " ms", timeout, cause);
+ }
+}
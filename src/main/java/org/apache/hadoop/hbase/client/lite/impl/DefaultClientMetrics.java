@@ -0,0 +1,183 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.client.lite.ClientMetrics;
+
+/**
+* Built-in {@link ClientMetrics} keeping counters and latency histograms per
+* operation type and per gateway in memory. Recording only touches striped
+* counters, so it costs tens of nanoseconds and never blocks.
+*
+* The figures may be read directly or exported over JMX with
+* {@link #registerMBeans(String)}, one MXBean per operation type under
+* <tt>org.apache.hadoop.hbase.client.lite:type=Operations,client=...</tt> and one
+* per gateway under <tt>type=Hosts</tt>.
+*/
+public class DefaultClientMetrics implements ClientMetrics, Closeable {
+ private static final Log LOG = LogFactory.getLog(DefaultClientMetrics.class);
+
+ public static final String JMX_DOMAIN = "org.apache.hadoop.hbase.client.lite";
+
+ private static final Operation[] OPERATIONS = Operation.values();
+
+ private final RequestMetrics[] operations = new RequestMetrics[OPERATIONS.length];
+ private final Map<String, RequestMetrics> hosts = new ConcurrentHashMap<>();
+ private final List<ObjectName> registered = Collections.synchronizedList(new ArrayList<>());
+ private volatile String jmxName;
+
+ public DefaultClientMetrics() {
+   for (int i = 0; i < operations.length; i++) {
+     operations[i] = new RequestMetrics();
+   }
+ }
+
+ @Override public void onRequest(Operation operation, String host, int status, long nanos) {
+   operations[operation.ordinal()].request(status, nanos);
+   host(host).request(status, nanos);
+ }
+
+ @Override public void onOperation(Operation operation, long nanos, boolean failed) {
+   operations[operation.ordinal()].operation(nanos, failed);
+ }
+
+ @Override public void onBatch(Operation operation, int rows, int failedRows, long nanos) {
+   operations[operation.ordinal()].batch(rows, failedRows, nanos);
+ }
+
+ @Override public void onRetry(Operation operation) {
+   operations[operation.ordinal()].retry();
+ }
+
+ @Override public void onBytesSent(Operation operation, String host, long bytes) {
+   operations[operation.ordinal()].sent(bytes);
+   host(host).sent(bytes);
+ }
+
+ @Override public void onBytesReceived(Operation operation, String host, long bytes) {
+   operations[operation.ordinal()].received(bytes);
+   host(host).received(bytes);
+ }
+
+ private RequestMetrics host(String host) {
+   RequestMetrics metrics = hosts.get(host);
+   if (metrics == null) {
+     metrics = hosts.computeIfAbsent(host, h -> {
+       RequestMetrics m = new RequestMetrics();
+       String name = jmxName;
+       if (name != null) {
+         register(m, name, "Hosts", h);
+       }
+       return m;
+     });
+   }
+   return metrics;
+ }
+
+ /**
+  * @return the metrics of an operation type
+  */
+ public RequestMetrics getOperationMetrics(Operation operation) {
+   return operations[operation.ordinal()];
+ }
+
+ /**
+  * @return the metrics of the gateways requests were sent to, by 'host:port'
+  */
+ public Map<String, RequestMetrics> getHostMetrics() {
+   return Collections.unmodifiableMap(hosts);
+ }
+
+ /**
+  * Export the metrics as MXBeans with the platform MBean server. Gateways
+  * seen later are exported as they appear.
+  * @param name distinguishes the client from others in the same JVM, i.e. the table name
+  */
+ public synchronized void registerMBeans(String name) {
+   if (jmxName != null) {
+     throw new IllegalStateException("Already registered as " + jmxName);
+   }
+   jmxName = name;
+   for (Operation operation : OPERATIONS) {
+     register(operations[operation.ordinal()], name, "Operations",
+       operation.name().toLowerCase(Locale.ROOT));
+   }
+   for (Map.Entry<String, RequestMetrics> e : hosts.entrySet()) {
+     register(e.getValue(), name, "Hosts", e.getKey());
+   }
+ }
+
+ private void register(RequestMetrics metrics, String client, String type, String name) {
+   MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+   try {
+     ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=" + type + ",client=" +
+       ObjectName.quote(client) + ",name=" + ObjectName.quote(name));
+     server.registerMBean(metrics, objectName);
+     registered.add(objectName);
+   } catch (JMException e) {
+     LOG.warn("Unable to register metrics of " + name + " with JMX", e);
+   }
+ }
+
+ /**
+  * Remove the MXBeans exported by {@link #registerMBeans(String)}.
+  */
+ @Override public synchronized void close() {
+   MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+   synchronized (registered) {
+     for (ObjectName objectName : registered) {
+       try {
+         server.unregisterMBean(objectName);
+       } catch (JMException e) {
+         LOG.debug("Unable to unregister " + objectName, e);
+       }
+     }
+     registered.clear();
+   }
+   jmxName = null;
+ }
+
+ @Override public String toString() {
+   StringBuilder sb = new StringBuilder("DefaultClientMetrics{");
+   for (Operation operation : OPERATIONS) {
+     RequestMetrics metrics = operations[operation.ordinal()];
+     if (metrics.getRequestCount() > 0 || metrics.getOperationCount() > 0) {
+       sb.append(operation).append('=').append(metrics).append(", ");
+     }
+   }
+   sb.append("hosts=").append(hosts).append('}');
+   return sb.toString();
+ }
+}
@@ -0,0 +1,98 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+
+/**
+* Pooling connection manager that can close the idle connections to a single
+* host, used to release the connections of a host removed from the
+* {@link Cluster} once it has drained. Leased connections are left alone,
+* once released they are closed by idle eviction.
+*
+* It also stamps the lease and connect phases of the request being traced
+* for a {@link org.apache.hadoop.hbase.client.lite.RequestListener}, both of
+* which happen on the thread executing the request.
+*/
+public class DrainableConnectionManager extends PoolingHttpClientConnectionManager {
+
+ public DrainableConnectionManager(Registry<ConnectionSocketFactory> socketFactoryRegistry,
+     long timeToLive, TimeUnit timeUnit) {
+   super(socketFactoryRegistry, null, null, null, timeToLive, timeUnit);
+ }
+
+ /**
+  * Close the pooled connections to a host that are not in use.
+  * @param host the service location in 'host:port' format
+  */
+ public void closeIdleConnections(String host) {
+   enumAvailable(entry -> {
+     HttpHost target = entry.getRoute().getTargetHost();
+     if (host.equalsIgnoreCase(target.toHostString())) {
+       entry.close();
+     }
+   });
+ }
+
+ @Override
+ public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+   ConnectionRequest request = super.requestConnection(route, state);
+   RequestTrace trace = RequestTrace.current();
+   if (trace == null) {
+     return request;
+   }
+   return new ConnectionRequest() {
+     @Override
+     public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+         throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+       HttpClientConnection connection = request.get(timeout, timeUnit);
+       trace.leased();
+       return connection;
+     }
+
+     @Override
+     public boolean cancel() {
+       return request.cancel();
+     }
+   };
+ }
+
+ @Override
+ public void connect(HttpClientConnection managedConn, HttpRoute route, int connectTimeout,
+     HttpContext context) throws IOException {
+   super.connect(managedConn, route, connectTimeout, context);
+   RequestTrace trace = RequestTrace.current();
+   if (trace != null) {
+     trace.connected();
+   }
+ }
+}
@@ -0,0 +1,96 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import org.apache.hadoop.hbase.client.lite.ClientMetrics.Operation;
+
+/**
+* Emits Java Flight Recorder events for HTTP exchanges, operations and scanner
+* pages, so that client latency can be lined up with GC and safepoints in the
+* same recording.
+*
+* This is the Java 8 version and does nothing. The jar is multi-release: on
+* Java 11 and later the class of the same name under
+* <tt>src/main/java11</tt>, packaged in <tt>META-INF/versions/11</tt>, is
+* loaded instead and commits <tt>jdk.jfr</tt> events. Both versions must keep
+* the same methods.
+*
+* Each <tt>begin</tt> method returns the event to pass to the matching
+* <tt>commit</tt>, or null when the event is not being recorded.
+*/
+final class FlightRecorderEvents {
+ private FlightRecorderEvents() {
+ }
+
+ static Object beginExchange() {
+   return null;
+ }
+
+ /**
+  * @param event returned by {@link #beginExchange()}
+  * @param operation the operation the exchange belongs to
+  * @param host the gateway in 'host:port' format
+  * @param method the HTTP method
+  * @param path the request path, its first segment is the table
+  * @param status the HTTP status code, 0 if no response was received
+  * @param requestBytes size of the request body, -1 if unknown
+  * @param responseBytes size of the response body, -1 if unknown
+  */
+ static void commitExchange(Object event, Operation operation, String host, String method,
+     String path, int status, long requestBytes, long responseBytes) {
+ }
+
+ static Object beginOperation() {
+   return null;
+ }
+
+ /**
+  * @param event returned by {@link #beginOperation()}
+  * @param operation the operation
+  * @param description i.e. "put request"
+  * @param retries number of retries made
+  * @param failed true if the operation ended with an exception
+  */
+ static void commitOperation(Object event, Operation operation, String description, int retries,
+     boolean failed) {
+ }
+
+ static Object beginScannerChunk() {
+   return null;
+ }
+
+ /**
+  * @param event returned by {@link #beginScannerChunk()}
+  * @param table the table scanned
+  * @param rows the rows of the page, null at the end of the scan
+  */
+ static void commitScannerChunk(Object event, String table, ResultImpl[] rows) {
+ }
+
+ /**
+  * @param event returned by {@link #beginScannerChunk()}
+  * @param table the table scanned
+  * @param rows number of rows of the page
+  * @param cells number of cells of the page
+  * @param bytes bytes of the keys and values of the cells
+  */
+ static void commitScannerChunk(Object event, String table, int rows, int cells, long bytes) {
+ }
+}
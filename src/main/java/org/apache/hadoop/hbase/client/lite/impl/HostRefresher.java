@@ -0,0 +1,123 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.client.lite.HostProvider;
+
+/**
+* Polls a {@link HostProvider} and applies its hosts to the {@link Cluster}
+* of a {@link Client}. Once a removed host has drained, its idle connections
+* are closed by the transport.
+*/
+final class HostRefresher {
+ private static final Log LOG = LogFactory.getLog(HostRefresher.class);
+ /**
+  * Milliseconds between checks of the hosts being drained
+  */
+ static final long DRAIN_CHECK_INTERVAL = 1000;
+ /**
+  * Requests still in flight after this many milliseconds no longer delay
+  * the closing of idle connections
+  */
+ static final long MAX_DRAIN_TIME = 60000;
+
+ private final Cluster cluster;
+ private final HostProvider provider;
+ private final Transport transport;
+ private volatile ScheduledExecutorService executor;
+
+ HostRefresher(Cluster cluster, HostProvider provider, Transport transport) {
+   this.cluster = cluster;
+   this.provider = provider;
+   this.transport = transport;
+ }
+
+ /**
+  * Refresh the hosts on a background thread.
+  * @param refreshInterval milliseconds between refreshes
+  */
+ void start(long refreshInterval) {
+   executor = Executors.newSingleThreadScheduledExecutor(r -> {
+     Thread t = new Thread(r, "hbase-lite-host-refresh");
+     t.setDaemon(true);
+     return t;
+   });
+   executor.scheduleWithFixedDelay(this::refreshQuietly, refreshInterval, refreshInterval,
+     TimeUnit.MILLISECONDS);
+   executor.scheduleWithFixedDelay(this::drain, DRAIN_CHECK_INTERVAL, DRAIN_CHECK_INTERVAL,
+     TimeUnit.MILLISECONDS);
+ }
+
+ /**
+  * Apply the hosts of the provider to the cluster. An empty list is refused
+  * rather than leaving the client without a host, e.g. on a truncated file.
+  * @throws IOException if the provider failed or had no hosts
+  */
+ void refresh() throws IOException {
+   List<String> hosts = provider.getHosts();
+   if (hosts == null || hosts.isEmpty()) {
+     throw new IOException(provider + " returned no hosts");
+   }
+   String[] before = cluster.getHosts();
+   List<String> removed = cluster.setHosts(hosts);
+   String[] after = cluster.getHosts();
+   if (!Arrays.equals(before, after) && LOG.isInfoEnabled()) {
+     LOG.info("hosts changed to " + Arrays.toString(after) +
+       (removed.isEmpty() ? "" : ", draining " + removed));
+   }
+ }
+
+ private void refreshQuietly() {
+   try {
+     refresh();
+   } catch (IOException | RuntimeException e) {
+     LOG.warn("host refresh failed, keeping " + Arrays.toString(cluster.getHosts()), e);
+   }
+ }
+
+ private void drain() {
+   for (String host : cluster.drained(MAX_DRAIN_TIME)) {
+     try {
+       transport.drain(host);
+       if (LOG.isDebugEnabled()) {
+         LOG.debug("drained " + host);
+       }
+     } catch (RuntimeException e) {
+       LOG.warn("failed to close the connections to " + host, e);
+     }
+   }
+ }
+
+ void shutdown() {
+   ScheduledExecutorService e = executor;
+   if (e != null) {
+     e.shutdownNow();
+   }
+ }
+}
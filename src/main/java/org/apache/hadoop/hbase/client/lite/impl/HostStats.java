@@ -0,0 +1,247 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+* Health and latency of a single gateway of a {@link Cluster}.
+*
+* Latency is an exponentially weighted moving average of the time taken to
+* receive a response. The host is ejected (circuit OPEN) after a number of
+* consecutive failures, transport failures and 5xx responses other than 509
+* alike; a gateway failing fast must not look like the fastest one. Once the ejection time has passed a single
+* request is let through as a probe (HALF_OPEN); its success readmits the
+* host, its failure ejects the host again.
+*/
+public class HostStats {
+ /**
+  * Weight given to the most recent latency sample
+  */
+ private static final double EWMA_ALPHA = 0.2;
+
+ public enum State {
+   CLOSED,
+   OPEN,
+   HALF_OPEN
+ }
+
+ private final String host;
+ private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+ private final AtomicLong ewmaNanos = new AtomicLong(Double.doubleToLongBits(0.0));
+ private final AtomicInteger inFlight = new AtomicInteger();
+ private final AtomicInteger consecutiveFailures = new AtomicInteger();
+ private final AtomicLong requests = new AtomicLong();
+ private final AtomicLong failures = new AtomicLong();
+ private final AtomicLong ejections = new AtomicLong();
+ private volatile long stateChanged = System.currentTimeMillis();
+
+ public HostStats(String host) {
+   this.host = host;
+ }
+
+ /**
+  * Record the start of a request to this host.
+  * @return the start time to pass to {@link #completed(long, int, int)}
+  */
+ public long begin() {
+   inFlight.incrementAndGet();
+   requests.incrementAndGet();
+   return System.nanoTime();
+ }
+
+ /**
+  * Record a response from this host. A server error counts as a failure and
+  * its latency is left out of the average, 509 (too many requests) means the
+  * host is busy rather than broken.
+  * @param startNanos the value returned by {@link #begin()}
+  * @param code the HTTP status code
+  * @param failureThreshold consecutive failures before the host is ejected
+  */
+ public void completed(long startNanos, int code, int failureThreshold) {
+   if (isServerError(code)) {
+     failed(failureThreshold);
+   } else {
+     succeeded(startNanos);
+   }
+ }
+
+ /**
+  * @param code an HTTP status code
+  * @return true if the code reports a failing gateway
+  */
+ static boolean isServerError(int code) {
+   return code >= 500 && code < 600 && code != 509;
+ }
+
+ /**
+  * Record a successful exchange with this host.
+  * @param startNanos the value returned by {@link #begin()}
+  */
+ public void succeeded(long startNanos) {
+   inFlight.decrementAndGet();
+   double sample = System.nanoTime() - startNanos;
+   long prev;
+   double next;
+   do {
+     prev = ewmaNanos.get();
+     double current = Double.longBitsToDouble(prev);
+     next = current == 0.0 ? sample : current + EWMA_ALPHA * (sample - current);
+   } while (!ewmaNanos.compareAndSet(prev, Double.doubleToLongBits(next)));
+   consecutiveFailures.set(0);
+   if (state.get() != State.CLOSED) {
+     setState(State.CLOSED);
+   }
+ }
+
+ /**
+  * Record a failure, ejecting the host once the threshold is reached.
+  * @param failureThreshold consecutive failures before the host is ejected
+  */
+ public void failed(int failureThreshold) {
+   inFlight.decrementAndGet();
+   failures.incrementAndGet();
+   int count = consecutiveFailures.incrementAndGet();
+   State current = state.get();
+   if (current == State.HALF_OPEN ||
+       (current == State.CLOSED && count >= failureThreshold)) {
+     if (state.compareAndSet(current, State.OPEN)) {
+       stateChanged = System.currentTimeMillis();
+       ejections.incrementAndGet();
+     }
+   }
+ }
+
+ /**
+  * Record a request abandoned by the caller, it says nothing about the host.
+  */
+ public void cancelled() {
+   inFlight.decrementAndGet();
+ }
+
+ /**
+  * @return true if the host may receive ordinary traffic
+  */
+ public boolean isAvailable() {
+   return state.get() == State.CLOSED;
+ }
+
+ /**
+  * Claim the single probe request of an ejected host once its ejection time
+  * has passed. A probe that never reports back is replaced after the same time.
+  * @param ejectionTime milliseconds a host stays ejected
+  * @return true if the caller's request is the probe
+  */
+ public boolean tryProbe(long ejectionTime) {
+   State current = state.get();
+   if (current == State.CLOSED ||
+       System.currentTimeMillis() - stateChanged < ejectionTime) {
+     return false;
+   }
+   if (state.compareAndSet(current, State.HALF_OPEN)) {
+     stateChanged = System.currentTimeMillis();
+     return true;
+   }
+   return false;
+ }
+
+ /**
+  * Relative cost of sending the next request to this host. Hosts without a
+  * latency sample yet are the cheapest so that they are tried.
+  */
+ double cost() {
+   return Double.longBitsToDouble(ewmaNanos.get()) * (inFlight.get() + 1);
+ }
+
+ private void setState(State newState) {
+   state.set(newState);
+   stateChanged = System.currentTimeMillis();
+ }
+
+ /**
+  * @return the gateway in 'host:port' format
+  */
+ public String getHost() {
+   return host;
+ }
+
+ /**
+  * @return the circuit breaker state
+  */
+ public State getState() {
+   return state.get();
+ }
+
+ /**
+  * @return moving average of the response latency in milliseconds
+  */
+ public double getLatencyMillis() {
+   return Double.longBitsToDouble(ewmaNanos.get()) / 1000000.0;
+ }
+
+ /**
+  * @return number of requests currently outstanding
+  */
+ public int getInFlight() {
+   return inFlight.get();
+ }
+
+ /**
+  * @return number of failures since the last success
+  */
+ public int getConsecutiveFailures() {
+   return consecutiveFailures.get();
+ }
+
+ /**
+  * @return total number of requests sent to this host
+  */
+ public long getRequestCount() {
+   return requests.get();
+ }
+
+ /**
+  * @return total number of failures
+  */
+ public long getFailureCount() {
+   return failures.get();
+ }
+
+ /**
+  * @return number of times the host has been ejected
+  */
+ public long getEjectionCount() {
+   return ejections.get();
+ }
+
+ @Override public String toString() {
+   return "HostStats{" +
+       "host='" + host + '\'' +
+       ", state=" + state.get() +
+       ", latencyMillis=" + getLatencyMillis() +
+       ", inFlight=" + inFlight.get() +
+       ", requests=" + requests.get() +
+       ", failures=" + failures.get() +
+       ", ejections=" + ejections.get() +
+       '}';
+ }
+}
@@ -0,0 +1,478 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.Timeout;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.util.EntityUtils;
+
+/**
+* HTTP/2 transport over Apache HttpClient 5. All requests to a gateway are
+* multiplexed as streams over a single connection instead of holding one
+* connection per request in flight. Plaintext gateways are spoken to in h2c
+* with prior knowledge, https gateways negotiate h2 through ALPN.
+*
+* httpclient5 is an optional dependency and only needed when this transport
+* is used. SPNEGO is not supported, authenticate with headers instead.
+*
+* Response bodies are streamed: the response is returned once its head has
+* arrived and its body is piped to the reader with flow control, so that the
+* gateway is at most {@link #BUFFER_SIZE} bytes ahead of the reader. A body
+* larger than the size limit resets its stream. Request bodies are buffered,
+* they are bounded by the multiput chunk size.
+*
+* The streams a client opens per gateway are capped here; the HTTP/2
+* setting of the same name only bounds the streams a peer may open.
+*/
+public class Http2Transport implements Transport {
+ /**
+  * Bytes of a response body received ahead of the reader
+  */
+ static final int BUFFER_SIZE = 65536;
+
+ private final CloseableHttpAsyncClient client;
+ private final int timeout;
+ private final int maxConcurrentStreams;
+ private final int maxResponseSize;
+ private final Map<String, Semaphore> streams = new ConcurrentHashMap<>();
+
+ /**
+  * @param timeout connect and response timeout in milliseconds
+  * @param maxConcurrentStreams streams allowed per connection
+  * @param sslContext context for https, null for the default
+  */
+ public Http2Transport(int timeout, int maxConcurrentStreams, SSLContext sslContext) {
+   this(timeout, maxConcurrentStreams, Client.DEFAULT_MAX_RESPONSE_SIZE, sslContext);
+ }
+
+ /**
+  * @param timeout connect and response timeout in milliseconds, also the
+  * longest a read waits for more of a body
+  * @param maxConcurrentStreams requests in flight to a gateway, over its
+  * single connection; more wait for a stream up to the timeout
+  * @param maxResponseSize largest response body in bytes
+  * @param sslContext context for https, null for the default
+  */
+ public Http2Transport(int timeout, int maxConcurrentStreams, int maxResponseSize,
+     SSLContext sslContext) {
+   this.timeout = timeout;
+   this.maxConcurrentStreams = maxConcurrentStreams;
+   this.maxResponseSize = maxResponseSize;
+   H2AsyncClientBuilder builder = H2AsyncClientBuilder.create()
+       .setH2Config(H2Config.custom()
+           .setPushEnabled(false)
+           .build())
+       .setIOReactorConfig(IOReactorConfig.custom()
+           .setSoTimeout(Timeout.ofMilliseconds(timeout))
+           .build())
+       .setDefaultRequestConfig(RequestConfig.custom()
+           .setConnectTimeout(Timeout.ofMilliseconds(timeout))
+           .setConnectionRequestTimeout(Timeout.ofMilliseconds(timeout))
+           .setResponseTimeout(Timeout.ofMilliseconds(timeout))
+           .build())
+       // The hadoop.auth cookie is replayed per host by Client, retries by RetryPolicy
+       .disableCookieManagement()
+       .disableAutomaticRetries();
+   if (sslContext != null) {
+     builder.setTlsStrategy(ClientTlsStrategyBuilder.create().setSslContext(sslContext).build());
+   }
+   this.client = builder.build();
+   this.client.start();
+ }
+
+ @Override
+ public HttpResponse execute(HttpUriRequest request) throws IOException {
+   return execute(request, 0);
+ }
+
+ /**
+  * The response head must arrive within the given timeout, the stream is
+  * cancelled otherwise. So must each part of the body the reader waits for.
+  */
+ @Override
+ public HttpResponse execute(HttpUriRequest request, int timeout) throws IOException {
+   int wait = timeout > 0 ? timeout : this.timeout;
+   String host = request.getURI().getAuthority();
+   Semaphore slots = streams.computeIfAbsent(host, h -> new Semaphore(maxConcurrentStreams));
+   try {
+     if (!slots.tryAcquire(wait, TimeUnit.MILLISECONDS)) {
+       throw new ConnectionPoolTimeoutException("All " + maxConcurrentStreams +
+         " HTTP/2 streams to " + host + " are in use");
+     }
+   } catch (InterruptedException e) {
+     throw (InterruptedIOException)new InterruptedIOException().initCause(e);
+   }
+   BodyStream body = new BodyStream(maxResponseSize, wait, slots::release);
+   Future<HttpResponse> future;
+   try {
+     future = client.execute(SimpleRequestProducer.create(toHttp2(request)), body, null);
+   } catch (IOException | RuntimeException e) {
+     body.abort();
+     throw e;
+   }
+   if (request instanceof HttpRequestBase) {
+     // Lets HttpRequestBase.abort() cancel the stream, also once the body is being read
+     ((HttpRequestBase) request).setCancellable(() -> {
+       body.abort();
+       return future.cancel(true);
+     });
+   }
+   try {
+     return timeout > 0 ? future.get(timeout, TimeUnit.MILLISECONDS) : future.get();
+   } catch (TimeoutException e) {
+     body.abort();
+     future.cancel(true);
+     throw new SocketTimeoutException(request.getMethod() + " " + request.getURI() +
+       " timed out after " + timeout + " ms");
+   } catch (InterruptedException e) {
+     body.abort();
+     future.cancel(true);
+     throw (InterruptedIOException)new InterruptedIOException().initCause(e);
+   } catch (ExecutionException e) {
+     body.abort();
+     Throwable cause = e.getCause();
+     if (cause instanceof IOException) {
+       throw (IOException) cause;
+     }
+     throw new IOException(cause);
+   } catch (CancellationException e) {
+     body.abort();
+     throw new InterruptedIOException(request.getMethod() + " " + request.getURI() + " aborted");
+   }
+ }
+
+ private static SimpleHttpRequest toHttp2(HttpUriRequest request) throws IOException {
+   SimpleRequestBuilder builder = SimpleRequestBuilder.create(request.getMethod())
+       .setUri(request.getURI());
+   for (Header header : request.getAllHeaders()) {
+     if (!isExcluded(header.getName())) {
+       builder.addHeader(header.getName(), header.getValue());
+     }
+   }
+   if (request instanceof HttpEntityEnclosingRequest) {
+     HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+     if (entity != null) {
+       Header type = request.getFirstHeader("Content-Type");
+       if (type == null) {
+         type = entity.getContentType();
+       }
+       builder.setBody(EntityUtils.toByteArray(entity),
+         type != null ? ContentType.parse(type.getValue()) : ContentType.APPLICATION_OCTET_STREAM);
+       Header encoding = entity.getContentEncoding();
+       if (encoding != null && !request.containsHeader(encoding.getName())) {
+         builder.addHeader(encoding.getName(), encoding.getValue());
+       }
+     }
+   }
+   return builder.build();
+ }
+
+ /*
+  * HTTP/2 forbids connection-specific header fields (RFC 7540 8.1.2.2), host,
+  * length and type are set by HttpClient 5 from the URI and body.
+  */
+ private static boolean isExcluded(String name) {
+   switch (name.toLowerCase(Locale.ROOT)) {
+   case "connection":
+   case "keep-alive":
+   case "proxy-connection":
+   case "transfer-encoding":
+   case "upgrade":
+   case "host":
+   case "content-length":
+   case "content-type":
+     return true;
+   default:
+     return false;
+   }
+ }
+
+ @Override
+ public void close() throws IOException {
+   client.close(CloseMode.GRACEFUL);
+ }
+
+ /**
+  * Completes the exchange with the response head and pipes the body to the
+  * reader as it arrives. The gateway is granted room for as many bytes as the
+  * reader takes, a body past the size limit or abandoned by the reader resets
+  * the stream. The stream's slot is released once the exchange ends.
+  */
+ static final class BodyStream extends InputStream implements AsyncResponseConsumer<HttpResponse> {
+   private final int maxResponseSize;
+   private final long timeoutNanos;
+   private final Runnable onEnd;
+   private final AtomicBoolean ended = new AtomicBoolean();
+   private final ArrayDeque<ByteBuffer> chunks = new ArrayDeque<>();
+   private CapacityChannel capacity;
+   private long received;
+   private boolean complete;
+   private boolean closed;
+   private IOException failure;
+
+   /**
+    * @param maxResponseSize largest body in bytes
+    * @param timeout milliseconds a read waits for more of the body
+    * @param onEnd run once when the exchange is over
+    */
+   BodyStream(int maxResponseSize, int timeout, Runnable onEnd) {
+     this.maxResponseSize = maxResponseSize;
+     this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+     this.onEnd = onEnd;
+   }
+
+   @Override
+   public void consumeResponse(org.apache.hc.core5.http.HttpResponse response,
+       EntityDetails entityDetails, HttpContext context, FutureCallback<HttpResponse> resultCallback) {
+     BasicHttpResponse result = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1,
+       response.getCode(), response.getReasonPhrase()));
+     for (org.apache.hc.core5.http.Header header : response.getHeaders()) {
+       result.addHeader(header.getName(), header.getValue());
+     }
+     if (entityDetails != null) {
+       InputStreamEntity entity = new InputStreamEntity(this, entityDetails.getContentLength());
+       if (entityDetails.getContentType() != null) {
+         entity.setContentType(entityDetails.getContentType());
+       }
+       result.setEntity(entity);
+     } else {
+       synchronized (this) {
+         complete = true;
+       }
+       end();
+     }
+     resultCallback.completed(result);
+   }
+
+   @Override
+   public void informationResponse(org.apache.hc.core5.http.HttpResponse response,
+       HttpContext context) {
+   }
+
+   @Override
+   public void updateCapacity(CapacityChannel capacityChannel) throws IOException {
+     boolean first;
+     synchronized (this) {
+       first = capacity == null;
+       capacity = capacityChannel;
+     }
+     if (first) {
+       capacityChannel.update(BUFFER_SIZE);
+     }
+   }
+
+   @Override
+   public void consume(ByteBuffer src) throws IOException {
+     synchronized (this) {
+       if (closed) {
+         // Resets the stream
+         throw new IOException("Response body abandoned");
+       }
+       received += src.remaining();
+       if (received > maxResponseSize) {
+         failure = new IOException("Response body larger than " + maxResponseSize + " bytes");
+         notifyAll();
+         throw failure;
+       }
+       byte[] bytes = new byte[src.remaining()];
+       src.get(bytes);
+       chunks.add(ByteBuffer.wrap(bytes));
+       notifyAll();
+     }
+   }
+
+   @Override
+   public void streamEnd(List<? extends org.apache.hc.core5.http.Header> trailers) {
+     synchronized (this) {
+       complete = true;
+       notifyAll();
+     }
+     end();
+   }
+
+   @Override
+   public void failed(Exception cause) {
+     synchronized (this) {
+       if (failure == null) {
+         failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+       }
+       notifyAll();
+     }
+     end();
+   }
+
+   @Override
+   public void releaseResources() {
+     synchronized (this) {
+       if (!complete && failure == null) {
+         failure = new IOException("Response stream closed before its end");
+       }
+       notifyAll();
+     }
+     end();
+   }
+
+   private void end() {
+     if (ended.compareAndSet(false, true)) {
+       onEnd.run();
+     }
+   }
+
+   @Override
+   public int read() throws IOException {
+     byte[] b = new byte[1];
+     return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+   }
+
+   @Override
+   public int read(byte[] b, int off, int len) throws IOException {
+     if (len == 0) {
+       return 0;
+     }
+     int n;
+     CapacityChannel channel;
+     synchronized (this) {
+       long deadline = System.nanoTime() + timeoutNanos;
+       while (chunks.isEmpty()) {
+         if (closed) {
+           throw new IOException("Response body closed");
+         }
+         if (failure != null) {
+           throw new IOException(failure.getMessage(), failure);
+         }
+         if (complete) {
+           return -1;
+         }
+         long left = deadline - System.nanoTime();
+         if (left <= 0) {
+           throw new SocketTimeoutException("No response data for " +
+             TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+         }
+         try {
+           TimeUnit.NANOSECONDS.timedWait(this, left);
+         } catch (InterruptedException e) {
+           throw (InterruptedIOException)new InterruptedIOException().initCause(e);
+         }
+       }
+       ByteBuffer chunk = chunks.peek();
+       n = Math.min(len, chunk.remaining());
+       chunk.get(b, off, n);
+       if (!chunk.hasRemaining()) {
+         chunks.poll();
+       }
+       channel = complete ? null : capacity;
+     }
+     if (channel != null) {
+       // Outside the lock, the I/O thread may hold the session's while consuming
+       channel.update(n);
+     }
+     return n;
+   }
+
+   @Override
+   public synchronized int available() {
+     int n = 0;
+     for (ByteBuffer chunk : chunks) {
+       n += chunk.remaining();
+     }
+     return n;
+   }
+
+   /**
+    * Abandon the rest of the body. The gateway is granted room to send more so
+    * that the next data resets the stream.
+    */
+   @Override
+   public void close() {
+     CapacityChannel channel;
+     synchronized (this) {
+       if (closed) {
+         return;
+       }
+       closed = true;
+       chunks.clear();
+       notifyAll();
+       channel = complete || failure != null ? null : capacity;
+     }
+     if (channel != null) {
+       try {
+         channel.update(BUFFER_SIZE);
+       } catch (IOException e) {
+         // The stream is gone already
+       }
+     }
+   }
+
+   /**
+    * Abandon the exchange, i.e. when it is cancelled before it could report
+    * its end, and release its slot now.
+    */
+   void abort() {
+     close();
+     end();
+   }
+ }
+}
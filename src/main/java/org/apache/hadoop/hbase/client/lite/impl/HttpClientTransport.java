@@ -0,0 +1,107 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.Configurable;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+* HTTP/1.1 transport over Apache HttpClient 4, the default.
+*/
+public class HttpClientTransport implements Transport {
+ private final HttpClient httpClient;
+ private final DrainableConnectionManager connectionManager;
+
+ public HttpClientTransport(HttpClient httpClient) {
+   this(httpClient, null);
+ }
+
+ /**
+  * @param connectionManager the pool of the HttpClient, null if unknown
+  */
+ public HttpClientTransport(HttpClient httpClient, DrainableConnectionManager connectionManager) {
+   this.httpClient = httpClient;
+   this.connectionManager = connectionManager;
+ }
+
+ @Override
+ public HttpResponse execute(HttpUriRequest request) throws IOException {
+   return httpClient.execute(request);
+ }
+
+ /**
+  * The timeouts of the request are shortened to the given timeout, starting
+  * from those of the request or else the client's defaults.
+  */
+ @Override
+ public HttpResponse execute(HttpUriRequest request, int timeout) throws IOException {
+   if (timeout > 0 && request instanceof HttpRequestBase) {
+     HttpRequestBase method = (HttpRequestBase) request;
+     RequestConfig config = method.getConfig();
+     if (config == null && httpClient instanceof Configurable) {
+       config = ((Configurable) httpClient).getConfig();
+     }
+     if (config == null) {
+       config = RequestConfig.DEFAULT;
+     }
+     method.setConfig(RequestConfig.copy(config)
+       .setConnectTimeout(shorter(config.getConnectTimeout(), timeout))
+       .setConnectionRequestTimeout(shorter(config.getConnectionRequestTimeout(), timeout))
+       .setSocketTimeout(shorter(config.getSocketTimeout(), timeout))
+       .build());
+   }
+   return httpClient.execute(request);
+ }
+
+ /*
+  * A timeout of 0 or less is infinite
+  */
+ private static int shorter(int configured, int timeout) {
+   return configured > 0 ? Math.min(configured, timeout) : timeout;
+ }
+
+ /**
+  * @return the wrapped HttpClient
+  */
+ public HttpClient getHttpClient() {
+   return httpClient;
+ }
+
+ @Override
+ public void drain(String host) {
+   if (connectionManager != null) {
+     connectionManager.closeIdleConnections(host);
+   }
+ }
+
+ @Override
+ public void close() throws IOException {
+   if (httpClient instanceof Closeable) {
+     ((Closeable) httpClient).close();
+   }
+ }
+}
@@ -0,0 +1,291 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosPrincipal;
+import javax.security.auth.kerberos.KerberosTicket;
+import javax.security.auth.login.AppConfigurationEntry;
+import javax.security.auth.login.Configuration;
+import javax.security.auth.login.LoginContext;
+import javax.security.auth.login.LoginException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+* Owns the Kerberos login of a {@link Client}. The login is performed once and
+* the resulting {@link Subject} is shared by all threads. A background thread
+* logs in again ahead of the TGT expiry so that requests never pay for a keytab
+* read or KDC round trip. Outside of the scheduled renewal a new login is only
+* performed after an authentication failure has been reported through
+* {@link #relogin(Subject)}.
+*/
+public class KerberosCredentialManager {
+ private static final Log LOG = LogFactory.getLog(KerberosCredentialManager.class);
+
+ /**
+  * Fraction of the ticket lifetime after which the login is renewed
+  */
+ private static final float TICKET_RENEW_WINDOW = 0.80f;
+ /**
+  * Lower bound on the delay between renewals, also used to retry a failed renewal
+  */
+ private static final long MIN_RENEW_INTERVAL_MS = 60 * 1000L;
+
+ private final String jaasEntryName;
+ private final String userPrincipal;
+ private final String keyTabLocation;
+
+ private final AtomicLong logins = new AtomicLong();
+ private final AtomicLong renewals = new AtomicLong();
+ private final AtomicLong failures = new AtomicLong();
+
+ private volatile Subject subject;
+ private ScheduledExecutorService renewer;
+ private ScheduledFuture<?> renewal;
+ private boolean shutdown = false;
+
+ /**
+  * Constructor
+  * @param jaasEntryName name of entry in external JAAS configuration, or null
+  * @param userPrincipal Kerberos User Principal, or null to use the ticket cache
+  * @param keyTabLocation Kerberos Keytab file location, or null to use the ticket cache
+  */
+ public KerberosCredentialManager(String jaasEntryName, String userPrincipal, String keyTabLocation) {
+   this.jaasEntryName = jaasEntryName;
+   this.userPrincipal = userPrincipal;
+   this.keyTabLocation = keyTabLocation;
+ }
+
+ /**
+  * @return the shared Subject, logging in first if no login has been performed yet
+  * @throws LoginException if the login fails
+  */
+ public Subject getSubject() throws LoginException {
+   Subject current = subject;
+   if (current != null) {
+     return current;
+   }
+   synchronized (this) {
+     if (subject == null) {
+       subject = login();
+       logins.incrementAndGet();
+       scheduleRenewal(subject);
+     }
+     return subject;
+   }
+ }
+
+ /**
+  * Report an authentication failure for the given Subject and log in again.
+  * Concurrent callers that fail with the same Subject share a single login.
+  * @param failed the Subject that was rejected
+  * @return the Subject to use for the next attempt
+  * @throws LoginException if the login fails
+  */
+ public Subject relogin(Subject failed) throws LoginException {
+   failures.incrementAndGet();
+   synchronized (this) {
+     if (subject == null || subject == failed) {
+       subject = login();
+       logins.incrementAndGet();
+       scheduleRenewal(subject);
+     }
+     return subject;
+   }
+ }
+
+ /**
+  * Stop the background renewal. The current Subject remains usable.
+  */
+ public synchronized void shutdown() {
+   shutdown = true;
+   if (renewer != null) {
+     renewer.shutdownNow();
+     renewer = null;
+   }
+ }
+
+ /**
+  * @return number of logins performed, including logins after a failure
+  */
+ public long getLoginCount() {
+   return logins.get();
+ }
+
+ /**
+  * @return number of successful background renewals
+  */
+ public long getRenewalCount() {
+   return renewals.get();
+ }
+
+ /**
+  * @return number of failed logins, failed renewals and reported authentication failures
+  */
+ public long getFailureCount() {
+   return failures.get();
+ }
+
+ private Subject login() throws LoginException {
+   LoginContext lc;
+   try {
+     // Use external JAAS configuration for location of principal and keytab
+     if (jaasEntryName != null) {
+       lc = new LoginContext(jaasEntryName);
+     } else {
+       // Either use explicit principal/keytab or previously set kinit principal
+       ClientLoginConfig loginConfig = new ClientLoginConfig(keyTabLocation, userPrincipal, null);
+       Set<Principal> princ = new HashSet<Principal>(1);
+       if (userPrincipal != null) {
+         princ.add(new KerberosPrincipal(userPrincipal));
+       }
+       Subject sub = new Subject(false, princ, new HashSet<Object>(), new HashSet<Object>());
+       lc = new LoginContext("", sub, null, loginConfig);
+     }
+     lc.login();
+   } catch (LoginException ex) {
+     failures.incrementAndGet();
+     if (jaasEntryName != null) {
+       if (System.getProperty("java.security.auth.login.config", null) == null) {
+         LOG.error("Missing JAAS Configuration, i.e. -Djava.security.auth.login.config=/etc/config/client_jaas.conf");
+       } else {
+         LOG.error("Using JAAS Config file: " + System.getProperty("java.security.auth.login.config", null));
+       }
+     } else if (userPrincipal == null) {
+       LOG.error("UserPrincipal not specified.  Remember to kinit prior to execution.");
+     }
+     throw ex;
+   }
+   return lc.getSubject();
+ }
+
+ private synchronized void scheduleRenewal(Subject loggedIn) {
+   if (shutdown) {
+     return;
+   }
+   if (renewer == null) {
+     renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+       Thread t = new Thread(r, "hbase-lite-kerberos-renewer");
+       t.setDaemon(true);
+       return t;
+     });
+   }
+   if (renewal != null) {
+     renewal.cancel(false);
+   }
+   long delay = MIN_RENEW_INTERVAL_MS;
+   KerberosTicket tgt = getTGT(loggedIn);
+   if (tgt != null) {
+     long start = tgt.getStartTime().getTime();
+     long end = tgt.getEndTime().getTime();
+     long refreshAt = start + (long)((end - start) * TICKET_RENEW_WINDOW);
+     delay = Math.max(MIN_RENEW_INTERVAL_MS, refreshAt - System.currentTimeMillis());
+   } else {
+     LOG.debug("No TGT found in Subject, checking again in " + delay + " ms");
+   }
+   renewal = renewer.schedule(this::renew, delay, TimeUnit.MILLISECONDS);
+ }
+
+ private void renew() {
+   try {
+     Subject renewed = login();
+     synchronized (this) {
+       subject = renewed;
+       renewals.incrementAndGet();
+       scheduleRenewal(renewed);
+     }
+   } catch (LoginException ex) {
+     // Keep the current Subject, it remains valid until the ticket expires
+     LOG.warn("Kerberos renewal failed, retrying in " + MIN_RENEW_INTERVAL_MS + " ms", ex);
+     synchronized (this) {
+       if (!shutdown) {
+         renewal = renewer.schedule(this::renew, MIN_RENEW_INTERVAL_MS, TimeUnit.MILLISECONDS);
+       }
+     }
+   }
+ }
+
+ private static KerberosTicket getTGT(Subject subject) {
+   for (KerberosTicket ticket : subject.getPrivateCredentials(KerberosTicket.class)) {
+     KerberosPrincipal server = ticket.getServer();
+     if (server.getName().equals("krbtgt/" + server.getRealm() + "@" + server.getRealm())) {
+       return ticket;
+     }
+   }
+   return null;
+ }
+
+ /**
+  * Used for Kerberos configuration
+  */
+ private static class ClientLoginConfig extends Configuration {
+   private final String keyTabLocation;
+   private final String userPrincipal;
+   private final Map<String, Object> loginOptions;
+
+   public ClientLoginConfig(String keyTabLocation, String userPrincipal, Map<String, Object> loginOptions) {
+     super();
+     this.keyTabLocation = keyTabLocation;
+     this.userPrincipal = userPrincipal;
+     this.loginOptions = loginOptions;
+   }
+
+   @Override
+   public AppConfigurationEntry[] getAppConfigurationEntry(String name) {
+     Map<String, Object> options = new HashMap<String, Object>();
+
+     // if we don't have keytab or principal only option is to rely on
+     // credentials cache.
+     if ((keyTabLocation == null) || userPrincipal == null) {
+       // cache
+       options.put("useTicketCache", "true");
+     } else {
+       // keytab
+       options.put("useKeyTab", "true");
+       options.put("keyTab", this.keyTabLocation);
+       options.put("principal", this.userPrincipal);
+       options.put("storeKey", "true");
+     }
+     options.put("doNotPrompt", "true");
+     options.put("isInitiator", "true");
+
+     if (loginOptions != null) {
+       options.putAll(loginOptions);
+     }
+
+     return new AppConfigurationEntry[] { new AppConfigurationEntry(
+         "com.sun.security.auth.module.Krb5LoginModule",
+         AppConfigurationEntry.LoginModuleControlFlag.REQUIRED, options) };
+   }
+ }
+}
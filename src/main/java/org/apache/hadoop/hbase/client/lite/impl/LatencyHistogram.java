@@ -0,0 +1,139 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+* Lock-free histogram of latencies in nanoseconds. Buckets are logarithmic,
+* four to each power of two, so a percentile is within 25% of the true value
+* over the whole range of a long. Each bucket is a striped counter, recording
+* is a few additions without contention between threads.
+*/
+public class LatencyHistogram {
+ private static final int SUB_BUCKET_BITS = 2;
+ private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+ private static final int BUCKETS = (64 - SUB_BUCKET_BITS) << SUB_BUCKET_BITS;
+
+ private final LongAdder[] buckets = new LongAdder[BUCKETS];
+ private final LongAdder count = new LongAdder();
+ private final LongAdder sum = new LongAdder();
+ private final AtomicLong max = new AtomicLong();
+
+ public LatencyHistogram() {
+   for (int i = 0; i < BUCKETS; i++) {
+     buckets[i] = new LongAdder();
+   }
+ }
+
+ /**
+  * @param nanos a latency, negative values count as 0
+  */
+ public void record(long nanos) {
+   if (nanos < 0) {
+     nanos = 0;
+   }
+   buckets[bucket(nanos)].increment();
+   count.increment();
+   sum.add(nanos);
+   // Written only when exceeded, which soon becomes rare
+   long m;
+   while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+   }
+ }
+
+ static int bucket(long nanos) {
+   if (nanos < SUB_BUCKETS) {
+     return (int) nanos;
+   }
+   int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+   int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+   return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub;
+ }
+
+ /*
+  * Largest value falling into a bucket
+  */
+ static long upperBound(int bucket) {
+   if (bucket < SUB_BUCKETS) {
+     return bucket;
+   }
+   int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+   long lower = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+   return lower + (1L << shift) - 1;
+ }
+
+ /**
+  * @return the number of latencies recorded
+  */
+ public long getCount() {
+   return count.sum();
+ }
+
+ /**
+  * @return the mean latency in nanoseconds, 0 if none recorded
+  */
+ public long getMean() {
+   long n = count.sum();
+   return n == 0 ? 0 : sum.sum() / n;
+ }
+
+ /**
+  * @return the highest latency recorded in nanoseconds
+  */
+ public long getMax() {
+   return max.get();
+ }
+
+ /**
+  * @param quantile between 0 and 1, i.e. 0.99
+  * @return upper bound in nanoseconds of the latency at the quantile, 0 if none recorded
+  */
+ public long getPercentile(double quantile) {
+   long[] counts = new long[BUCKETS];
+   long total = 0;
+   for (int i = 0; i < BUCKETS; i++) {
+     counts[i] = buckets[i].sum();
+     total += counts[i];
+   }
+   if (total == 0) {
+     return 0;
+   }
+   long rank = Math.max(1, (long) Math.ceil(quantile * total));
+   long seen = 0;
+   for (int i = 0; i < BUCKETS; i++) {
+     seen += counts[i];
+     if (seen >= rank) {
+       return Math.min(upperBound(i), getMax());
+     }
+   }
+   return getMax();
+ }
+
+ @Override public String toString() {
+   return "LatencyHistogram{" +
+       "count=" + getCount() +
+       ", mean=" + getMean() +
+       ", p99=" + getPercentile(0.99) +
+       ", max=" + getMax() +
+       '}';
+ }
+}
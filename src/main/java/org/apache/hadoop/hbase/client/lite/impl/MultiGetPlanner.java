@@ -0,0 +1,223 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ObjIntConsumer;
+
+import org.apache.hadoop.hbase.client.lite.Get;
+import org.apache.hadoop.hbase.client.lite.TimeRange;
+
+/**
+* Plans the requests of a multi-get. The gateway's multiget takes any number
+* of row keys as query parameters, with the columns in the path and the
+* number of versions as a parameter, both applying to every row. Gets are
+* therefore grouped by columns, time range and versions, and every group is
+* split into requests whose URI stays within a length limit, a row wanted by
+* several gets of a group being asked for once.
+*
+* A time range can only be given as part of the row spec of each row, so the
+* rows of a group with a time range carry their columns and time range
+* instead of the path.
+*
+* Columns in the path of a multiget need a gateway of HBase 1.4, 2.0 or later
+* (HBASE-15870); older gateways ignore them and return every column. When
+* the gateway is not known to support them, the rows of gets restricted to
+* columns or a time range are fetched one row per request with the single
+* row spec, which every gateway honors.
+*/
+final class MultiGetPlanner {
+ static final int DEFAULT_MAX_URL_LENGTH = 4096;
+
+ /**
+  * One multiget request and the gets it answers
+  */
+ static final class Request {
+   final String spec;
+   /**
+    * Positions of the gets in the list passed in
+    */
+   final int[] gets;
+
+   Request(String spec, List<Integer> gets) {
+     this.spec = spec;
+     this.gets = new int[gets.size()];
+     for (int i = 0; i < this.gets.length; i++) {
+       this.gets[i] = gets.get(i);
+     }
+   }
+
+   /**
+    * Match the rows of the response to the gets of the request.
+    * @param rows the rows returned, rows without matching cells are left out
+    * @param all the gets passed in
+    * @param action receives the row of every get of the request, null if
+    * the row was not returned, and the position of the get
+    */
+   void forEach(ResultImpl[] rows, List<Get> all, ObjIntConsumer<ResultImpl> action) {
+     TreeMap<byte[], ResultImpl> byRow = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+     for (ResultImpl row : rows) {
+       byte[] key = row.getRow();
+       if (key != null) {
+         byRow.put(key, row);
+       }
+     }
+     for (int index : gets) {
+       action.accept(byRow.get(all.get(index).getRow()), index);
+     }
+   }
+ }
+
+ private MultiGetPlanner() {
+ }
+
+ /**
+  * @param table the table name
+  * @param gets the gets to plan
+  * @param maxVersions versions to fetch of every get, 0 or less to use those of the gets
+  * @param maxUrlLength most characters in the URI of a request, a single
+  * row over the limit is still sent alone
+  * @param multiGetColumns true if the gateway applies columns and time
+  * ranges to multigets, false to fetch restricted gets one row per request
+  * @return the requests, each group's in the order of its first get
+  */
+ static List<Request> plan(String table, List<Get> gets, int maxVersions, int maxUrlLength,
+     boolean multiGetColumns) {
+   Map<String, Group> groups = new LinkedHashMap<>();
+   StringBuilder columns = new StringBuilder();
+   StringBuilder timeRange = new StringBuilder();
+   for (int i = 0; i < gets.size(); i++) {
+     Get get = gets.get(i);
+     columns.setLength(0);
+     RemoteHTableImpl.appendColumns(columns, get.getFamilyMap());
+     timeRange.setLength(0);
+     TimeRange range = get.getTimeRange();
+     RemoteHTableImpl.appendTimestamps(timeRange, range.getMin(), range.getMax());
+     int versions = maxVersions > 0 ? maxVersions : get.getMaxVersions();
+     String key = columns.toString() + timeRange + "?v=" + versions;
+     Group group = groups.get(key);
+     if (group == null) {
+       group = new Group(columns.toString(), timeRange.toString(), versions);
+       groups.put(key, group);
+     }
+     group.add(get.getRow(), i);
+   }
+   List<Request> requests = new ArrayList<>();
+   for (Group group : groups.values()) {
+     if (multiGetColumns || group.columns.isEmpty() && group.timeRange.isEmpty()) {
+       group.split(table, maxUrlLength, requests);
+     } else {
+       group.singleRows(table, requests);
+     }
+   }
+   return requests;
+ }
+
+ /**
+  * Gets sharing columns, time range and versions, by row
+  */
+ private static final class Group {
+   final String columns;
+   final String timeRange;
+   final int versions;
+   final List<byte[]> rows = new ArrayList<>();
+   final TreeMap<byte[], List<Integer>> getsOfRow = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+
+   Group(String columns, String timeRange, int versions) {
+     this.columns = columns;
+     this.timeRange = timeRange;
+     this.versions = versions;
+   }
+
+   void add(byte[] row, int index) {
+     List<Integer> indices = getsOfRow.get(row);
+     if (indices == null) {
+       indices = new ArrayList<>(1);
+       getsOfRow.put(row, indices);
+       rows.add(row);
+     }
+     indices.add(index);
+   }
+
+   /**
+    * One row get per row, '/table/row/columns/timestamps?v=N' as built for
+    * a single get
+    */
+   void singleRows(String table, List<Request> requests) {
+     StringBuilder sb = new StringBuilder();
+     for (byte[] row : rows) {
+       sb.setLength(0);
+       sb.append('/');
+       sb.append(table);
+       sb.append('/');
+       PercentEncoder.encode(sb, row);
+       sb.append('/');
+       sb.append(columns);
+       sb.append(timeRange);
+       if (versions > 1) {
+         sb.append("?v=");
+         sb.append(versions);
+       }
+       requests.add(new Request(sb.toString(), getsOfRow.get(row)));
+     }
+   }
+
+   void split(String table, int maxUrlLength, List<Request> requests) {
+     boolean perRow = !timeRange.isEmpty();
+     StringBuilder prefix = new StringBuilder();
+     prefix.append('/');
+     prefix.append(table);
+     prefix.append("/multiget/");
+     if (!perRow) {
+       prefix.append(columns);
+     }
+     prefix.append('?');
+     String rowSuffix = perRow ? "/" + columns + timeRange : "";
+     String suffix = "&v=" + versions;
+
+     StringBuilder sb = new StringBuilder(prefix);
+     StringBuilder param = new StringBuilder();
+     List<Integer> current = new ArrayList<>();
+     for (byte[] row : rows) {
+       param.setLength(0);
+       param.append("row=");
+       PercentEncoder.encode(param, row);
+       param.append(rowSuffix);
+       if (!current.isEmpty() &&
+           sb.length() + 1 + param.length() + suffix.length() > maxUrlLength) {
+         requests.add(new Request(sb.append(suffix).toString(), current));
+         sb.setLength(0);
+         sb.append(prefix);
+         current = new ArrayList<>();
+       }
+       if (!current.isEmpty()) {
+         sb.append('&');
+       }
+       sb.append(param);
+       current.addAll(getsOfRow.get(row));
+     }
+     requests.add(new Request(sb.append(suffix).toString(), current));
+   }
+ }
+}
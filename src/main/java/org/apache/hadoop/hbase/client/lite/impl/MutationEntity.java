@@ -0,0 +1,232 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.client.lite.Cell;
+import org.apache.hadoop.hbase.client.lite.Put;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import com.google.protobuf.CodedOutputStream;
+
+/**
+* Request body of a put, multiput or check-and-mutate. The cells of the puts
+* are serialized as a protobuf <tt>CellSet</tt> straight into the connection
+* with chunked transfer encoding, without building the model objects or the
+* message in memory.
+*
+* The entity only references the puts, so it is repeatable and may be sent
+* again on failover or retry. The puts must not be modified until the
+* request has completed.
+*/
+public class MutationEntity extends AbstractHttpEntity {
+ // Tags of the length delimited fields, (field number << 3) | 2
+ private static final int CELLSET_ROWS = 10;
+ private static final int ROW_KEY = 10;
+ private static final int ROW_VALUES = 18;
+ private static final int CELL_COLUMN = 18;
+ private static final int CELL_DATA = 34;
+ // Tag of the varint timestamp, (3 << 3) | 0
+ private static final int CELL_TIMESTAMP = 24;
+
+ private final List<byte[]> rows;
+ private final List<List<Cell>> cells;
+ /**
+  * Timestamp that replaces those of the cells, LATEST_TIMESTAMP if none
+  */
+ private final long timestamp;
+
+ /**
+  * A single put, whose timestamp, if set, applies to all of its cells
+  */
+ public MutationEntity(Put put) {
+   List<Cell> all = new ArrayList<>();
+   for (List<Cell> l : put.getFamilyCellMap().values()) {
+     all.addAll(l);
+   }
+   this.rows = Collections.singletonList(put.getRow());
+   this.cells = Collections.singletonList(all);
+   this.timestamp = put.getTimeStamp();
+   init();
+ }
+
+ /**
+  * Several puts, merged by row. The gateway applies every row of the cell
+  * set, irrespective of the row in the URI.
+  */
+ public MutationEntity(List<Put> puts) {
+   TreeMap<byte[], List<Cell>> map = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+   for (Put put : puts) {
+     List<Cell> row = map.get(put.getRow());
+     if (row == null) {
+       row = new ArrayList<>();
+       map.put(put.getRow(), row);
+     }
+     for (List<Cell> l : put.getFamilyCellMap().values()) {
+       row.addAll(l);
+     }
+   }
+   this.rows = new ArrayList<>(map.size());
+   this.cells = new ArrayList<>(map.size());
+   for (Map.Entry<byte[], List<Cell>> e : map.entrySet()) {
+     rows.add(e.getKey());
+     cells.add(e.getValue());
+   }
+   this.timestamp = HConstants.LATEST_TIMESTAMP;
+   init();
+ }
+
+ private void init() {
+   setContentType(Constants.MIMETYPE_PROTOBUF);
+   setChunked(true);
+ }
+
+ @Override
+ public boolean isRepeatable() {
+   return true;
+ }
+
+ @Override
+ public long getContentLength() {
+   return -1;
+ }
+
+ @Override
+ public boolean isStreaming() {
+   return false;
+ }
+
+ /**
+  * Only used by transports that cannot write to the connection, the whole
+  * message is serialized into memory.
+  */
+ @Override
+ public InputStream getContent() throws IOException {
+   ByteArrayOutputStream out = new ByteArrayOutputStream();
+   writeTo(out);
+   return new ByteArrayInputStream(out.toByteArray());
+ }
+
+ /**
+  * @return the number of bytes the body will be, computed from the cells
+  */
+ public long getSerializedSize() {
+   long size = 0;
+   for (int i = 0; i < rows.size(); i++) {
+     size += bytesSize(rowSize(i));
+   }
+   return size;
+ }
+
+ /**
+  * @return the number of bytes a put adds to the body of a multiput, as a
+  * row of its own
+  */
+ static long serializedSize(Put put) {
+   long ts = put.getTimeStamp();
+   int size = bytesSize(put.getRow().length);
+   for (List<Cell> l : put.getFamilyCellMap().values()) {
+     for (Cell cell : l) {
+       long cellTs = ts != HConstants.LATEST_TIMESTAMP ? ts : cell.getTimestamp();
+       size += bytesSize(cellSize(cell, cellTs));
+     }
+   }
+   return bytesSize(size);
+ }
+
+ @Override
+ public void writeTo(OutputStream out) throws IOException {
+   CodedOutputStream output = CodedOutputStream.newInstance(out);
+   for (int i = 0; i < rows.size(); i++) {
+     byte[] key = rows.get(i);
+     List<Cell> row = cells.get(i);
+     output.writeRawVarint32(CELLSET_ROWS);
+     output.writeRawVarint32(rowSize(i));
+     output.writeRawVarint32(ROW_KEY);
+     output.writeRawVarint32(key.length);
+     output.writeRawBytes(key);
+     for (Cell cell : row) {
+       output.writeRawVarint32(ROW_VALUES);
+       output.writeRawVarint32(cellSize(cell, timestamp(cell)));
+       writeCell(output, cell);
+     }
+   }
+   output.flush();
+ }
+
+ /*
+  * Fields are written in field number order like the generated message:
+  * column, timestamp, data.
+  */
+ private void writeCell(CodedOutputStream output, Cell cell) throws IOException {
+   output.writeRawVarint32(CELL_COLUMN);
+   output.writeRawVarint32(cell.getFamilyLength() + 1 + cell.getQualifierLength());
+   output.writeRawBytes(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength());
+   output.writeRawByte(CellUtil.COLUMN_FAMILY_DELIMITER);
+   output.writeRawBytes(cell.getQualifierArray(), cell.getQualifierOffset(),
+     cell.getQualifierLength());
+   long ts = timestamp(cell);
+   if (ts != HConstants.LATEST_TIMESTAMP) {
+     output.writeRawVarint32(CELL_TIMESTAMP);
+     output.writeRawVarint64(ts);
+   }
+   output.writeRawVarint32(CELL_DATA);
+   output.writeRawVarint32(cell.getValueLength());
+   output.writeRawBytes(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+ }
+
+ private int rowSize(int i) {
+   int size = bytesSize(rows.get(i).length);
+   for (Cell cell : cells.get(i)) {
+     size += bytesSize(cellSize(cell, timestamp(cell)));
+   }
+   return size;
+ }
+
+ private static int cellSize(Cell cell, long ts) {
+   int size = bytesSize(cell.getFamilyLength() + 1 + cell.getQualifierLength()) +
+     bytesSize(cell.getValueLength());
+   if (ts != HConstants.LATEST_TIMESTAMP) {
+     size += 1 + CodedOutputStream.computeRawVarint64Size(ts);
+   }
+   return size;
+ }
+
+ private long timestamp(Cell cell) {
+   return timestamp != HConstants.LATEST_TIMESTAMP ? timestamp : cell.getTimestamp();
+ }
+
+ /*
+  * Size of a length delimited field with a single byte tag
+  */
+ private static int bytesSize(int length) {
+   return 1 + CodedOutputStream.computeRawVarint32Size(length) + length;
+ }
+}
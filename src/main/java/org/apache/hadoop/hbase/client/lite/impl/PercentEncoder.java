@@ -0,0 +1,114 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+/**
+* Percent-encodes binary row keys, families and qualifiers for the path and
+* query of a request, byte by byte and straight into the request's builder.
+*
+* For keys that are valid UTF-8 the output is that of
+* <tt>URLEncoder.encode(new String(key, "UTF-8"), "UTF-8")</tt>: letters,
+* digits and <tt>.-*_</tt> are kept, a space becomes '+' and every other byte
+* becomes <tt>%XX</tt>. Other keys are no longer corrupted by the UTF-8
+* decoding, each of their bytes is encoded as is.
+*/
+final class PercentEncoder {
+ private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+ private static final boolean[] UNRESERVED = new boolean[128];
+ static {
+   for (char c = 'a'; c <= 'z'; c++) {
+     UNRESERVED[c] = true;
+   }
+   for (char c = 'A'; c <= 'Z'; c++) {
+     UNRESERVED[c] = true;
+   }
+   for (char c = '0'; c <= '9'; c++) {
+     UNRESERVED[c] = true;
+   }
+   UNRESERVED['.'] = true;
+   UNRESERVED['-'] = true;
+   UNRESERVED['*'] = true;
+   UNRESERVED['_'] = true;
+ }
+
+ private static final int INITIAL_CAPACITY = 256;
+ /**
+  * A buffer grown beyond this is dropped rather than kept by the thread
+  */
+ private static final int MAX_RETAINED_CAPACITY = 16384;
+ private static final ThreadLocal<StringBuilder> BUFFER =
+   ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_CAPACITY));
+
+ private PercentEncoder() {
+ }
+
+ /**
+  * The calling thread's builder for a path, emptied. It must be turned into
+  * a string before anything else on the thread asks for it.
+  * @return the builder
+  */
+ static StringBuilder buffer() {
+   StringBuilder sb = BUFFER.get();
+   if (sb.capacity() > MAX_RETAINED_CAPACITY) {
+     sb = new StringBuilder(INITIAL_CAPACITY);
+     BUFFER.set(sb);
+   }
+   sb.setLength(0);
+   return sb;
+ }
+
+ /**
+  * @param sb receives the encoded bytes
+  * @param bytes the bytes to encode
+  * @return sb
+  */
+ static StringBuilder encode(StringBuilder sb, byte[] bytes) {
+   return encode(sb, bytes, 0, bytes.length);
+ }
+
+ /**
+  * @param sb receives the encoded bytes
+  * @param bytes the array holding the bytes to encode
+  * @param offset the offset of the first byte
+  * @param length the number of bytes
+  * @return sb
+  */
+ static StringBuilder encode(StringBuilder sb, byte[] bytes, int offset, int length) {
+   for (int i = offset, end = offset + length; i < end; i++) {
+     int b = bytes[i] & 0xff;
+     if (b < 128 && UNRESERVED[b]) {
+       sb.append((char) b);
+     } else if (b == ' ') {
+       sb.append('+');
+     } else {
+       sb.append('%').append(HEX[b >>> 4]).append(HEX[b & 0x0f]);
+     }
+   }
+   return sb;
+ }
+
+ /**
+  * @param bytes the bytes to encode
+  * @return the encoded bytes
+  */
+ static String encode(byte[] bytes) {
+   return encode(new StringBuilder(bytes.length + 16), bytes).toString();
+ }
+}
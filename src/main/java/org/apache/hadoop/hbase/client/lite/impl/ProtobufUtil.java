@@ -18,6 +18,7 @@
 package org.apache.hadoop.hbase.client.lite.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.Message;
@@ -39,4 +40,19 @@ public class ProtobufUtil {
 	    builder.mergeFrom(codedInput);
 	    codedInput.checkLastTagWas(0);
 	  }
+
+	  /**
+	   * Merge a message read from a stream, such as a response body, without first
+	   * buffering it into a byte array
+	   * @param builder current message builder
+	   * @param in stream positioned at the start of the message, read to the end
+	   * @param sizeLimit maximum number of bytes to read
+	   * @throws IOException
+	   */
+	  public static void mergeFrom(Message.Builder builder, InputStream in, int sizeLimit) throws IOException {
+	    final CodedInputStream codedInput = CodedInputStream.newInstance(in);
+	    codedInput.setSizeLimit(sizeLimit);
+	    builder.mergeFrom(codedInput);
+	    codedInput.checkLastTagWas(0);
+	  }
 }
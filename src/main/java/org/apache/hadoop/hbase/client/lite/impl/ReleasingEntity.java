@@ -0,0 +1,113 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+* Runs an action once the body of a response has been consumed: written out,
+* read to the end or closed, or abandoned by closing the response. Holds the
+* {@link ConcurrencyLimiter} slot of a request for as long as its body is on
+* the connection.
+*/
+final class ReleasingEntity extends HttpEntityWrapper {
+ private final Runnable action;
+ private final AtomicBoolean released = new AtomicBoolean();
+
+ ReleasingEntity(HttpEntity wrapped, Runnable action) {
+   super(wrapped);
+   this.action = action;
+ }
+
+ /**
+  * Run the action of a response closed without its body being read.
+  * @param resp the response, its entity possibly a ReleasingEntity
+  */
+ static void release(HttpResponse resp) {
+   if (resp != null && resp.getEntity() instanceof ReleasingEntity) {
+     ((ReleasingEntity) resp.getEntity()).release();
+   }
+ }
+
+ void release() {
+   if (released.compareAndSet(false, true)) {
+     action.run();
+   }
+ }
+
+ @Override
+ public InputStream getContent() throws IOException {
+   InputStream in = wrappedEntity.getContent();
+   if (in == null) {
+     release();
+     return null;
+   }
+   return new ReleasingInputStream(in);
+ }
+
+ @Override
+ public void writeTo(OutputStream out) throws IOException {
+   try {
+     wrappedEntity.writeTo(out);
+   } finally {
+     release();
+   }
+ }
+
+ private final class ReleasingInputStream extends FilterInputStream {
+   ReleasingInputStream(InputStream in) {
+     super(in);
+   }
+
+   @Override
+   public int read() throws IOException {
+     int b = in.read();
+     if (b < 0) {
+       release();
+     }
+     return b;
+   }
+
+   @Override
+   public int read(byte[] b, int off, int len) throws IOException {
+     int n = in.read(b, off, len);
+     if (n < 0) {
+       release();
+     }
+     return n;
+   }
+
+   @Override
+   public void close() throws IOException {
+     try {
+       in.close();
+     } finally {
+       release();
+     }
+   }
+ }
+}
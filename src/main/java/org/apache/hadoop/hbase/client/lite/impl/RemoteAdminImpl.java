@@ -20,10 +20,11 @@
 package org.apache.hadoop.hbase.client.lite.impl;
 
 import java.io.IOException;
-import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import org.apache.hadoop.hbase.client.lite.ClientMetrics.Operation;
 import org.apache.hadoop.hbase.client.lite.RemoteAdmin;
 import org.apache.hadoop.hbase.client.lite.impl.model.TableListModel;
 import org.apache.hadoop.hbase.client.lite.impl.model.TableModel;
@@ -33,8 +34,7 @@ public class RemoteAdminImpl implements RemoteAdmin {
 
  private final Client client;
  private final String accessToken;
- private final int maxRetries;
- private final long sleepTime;
+ private final RetryPolicy retryPolicy;
 
  /**
   * Constructor
@@ -43,10 +43,26 @@ public class RemoteAdminImpl implements RemoteAdmin {
   * @param accessToken
   */
  public RemoteAdminImpl(Client client, String accessToken, int maxRetries, long sleepTime) {
+   this(client, accessToken, new RetryPolicy(maxRetries, sleepTime));
+ }
+
+ /**
+  * Constructor
+  * @param client
+  * @param accessToken
+  * @param retryPolicy retries rejected and failed requests
+  */
+ public RemoteAdminImpl(Client client, String accessToken, RetryPolicy retryPolicy) {
    this.client = client;
    this.accessToken = accessToken;
-   this.maxRetries = maxRetries;
-   this.sleepTime = sleepTime;
+   this.retryPolicy = retryPolicy;
+ }
+
+ /**
+  * @return the policy retrying rejected and failed requests
+  */
+ public RetryPolicy getRetryPolicy() {
+   return retryPolicy;
  }
 
  /**
@@ -75,11 +91,10 @@ public class RemoteAdminImpl implements RemoteAdmin {
 
    path.append("version/rest");
 
-   int code = 0;
-   for (int i = 0; i < maxRetries; i++) {
-     Response response = client.get(path.toString(),
-         Constants.MIMETYPE_PROTOBUF);
-     code = response.getCode();
+   return retryPolicy.execute(Operation.ADMIN, "get request to " + path.toString(), true,
+       client.getOperationTimeout(),
+       () -> client.get(path.toString(), Constants.MIMETYPE_PROTOBUF), response -> {
+     int code = response.getCode();
      switch (code) {
      case 200:
 
@@ -88,19 +103,11 @@ public class RemoteAdminImpl implements RemoteAdmin {
        return v.getRESTVersion();
      case 404:
        throw new IOException("REST version not found");
-     case 509:
-       try {
-         Thread.sleep(sleepTime);
-       } catch (InterruptedException e) {
-         throw (InterruptedIOException)new InterruptedIOException().initCause(e);
-       }
-       break;
      default:
        throw new IOException("get request to " + path.toString()
            + " returned " + code);
      }
-   }
-   throw new IOException("get request to " + path.toString() + " timed out");
+   });
  }
 
  /**
@@ -118,27 +125,19 @@ public class RemoteAdminImpl implements RemoteAdmin {
    path.append(Bytes.toStringBinary(tableName));
    path.append('/');
    path.append("exists");
-   int code = 0;
-   for (int i = 0; i < maxRetries; i++) {
-     Response response = client.get(path.toString(), Constants.MIMETYPE_PROTOBUF);
-     code = response.getCode();
+   return retryPolicy.execute(Operation.ADMIN, "get request to " + path.toString(), true,
+       client.getOperationTimeout(),
+       () -> client.get(path.toString(), Constants.MIMETYPE_PROTOBUF), response -> {
+     int code = response.getCode();
      switch (code) {
      case 200:
        return true;
      case 404:
        return false;
-     case 509:
-       try {
-         Thread.sleep(sleepTime);
-       } catch (InterruptedException e) {
-         throw (InterruptedIOException)new InterruptedIOException().initCause(e);
-       }
-       break;
      default:
        throw new IOException("get request to " + path.toString() + " returned " + code);
      }
-   }
-   throw new IOException("get request to " + path.toString() + " timed out");
+   });
  }
 
  /**
@@ -156,11 +155,10 @@ public class RemoteAdminImpl implements RemoteAdmin {
      path.append('/');
    }
 
-   int code = 0;
-   for (int i = 0; i < maxRetries; i++) {
-     Response response = client.get(path.toString(),
-         Constants.MIMETYPE_PROTOBUF);
-     code = response.getCode();
+   return retryPolicy.execute(Operation.ADMIN, "get request to " + path.toString() + " request", true,
+       client.getOperationTimeout(),
+       () -> client.get(path.toString(), Constants.MIMETYPE_PROTOBUF), response -> {
+     int code = response.getCode();
      switch (code) {
      case 200:
        TableListModel t = new TableListModel();
@@ -176,19 +174,15 @@ public class RemoteAdminImpl implements RemoteAdmin {
        return result;
      case 404:
        throw new IOException("Table list not found");
-     case 509:
-       try {
-         Thread.sleep(sleepTime);
-       } catch (InterruptedException e) {
-         throw (InterruptedIOException)new InterruptedIOException().initCause(e);
-       }
-       break;
      default:
        throw new IOException("get request to " + path.toString()
            + " request returned " + code);
      }
-   }
-   throw new IOException("get request to " + path.toString()
-       + " request timed out");
+   });
+ }
+
+ @Override
+ public CompletableFuture<Void> ready() {
+   return client.ready();
  }
 }
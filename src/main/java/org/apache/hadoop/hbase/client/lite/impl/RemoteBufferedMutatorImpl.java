@@ -0,0 +1,406 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.client.lite.Cell;
+import org.apache.hadoop.hbase.client.lite.Delete;
+import org.apache.hadoop.hbase.client.lite.Mutation;
+import org.apache.hadoop.hbase.client.lite.Put;
+import org.apache.hadoop.hbase.client.lite.RemoteBufferedMutator;
+import org.apache.hadoop.hbase.client.lite.RetriesExhaustedWithDetailsException;
+
+/**
+* Write buffer in front of a remote table. Mutations are appended to the
+* buffer under the monitor of the mutator; a full buffer, or one whose oldest
+* mutation is older than the linger time, is swapped for an empty one and
+* handed to the flush threads, so that callers never wait on the network
+* unless the maximum number of buffers are being flushed.
+*
+* Every row is assigned to one flush thread by the hash of its key, each
+* thread sending its share of the buffers one after the other. The mutations
+* of a row therefore reach the gateway in the order they were buffered, also
+* across buffers, while different rows are sent concurrently.
+*
+* A batch is sent in order, consecutive puts as a multiput and consecutive
+* deletes as a batch delete. The first failure ends the batch: the failed
+* request and everything after it are reported, so the mutations of a row in
+* the batch are not applied out of order. Of a multiput or batch delete sent
+* as several requests only the failed requests are reported. Mutations the
+* listener resubmits are applied after those buffered in the meantime.
+*
+* The listener is called on a thread of its own, one failure after the other,
+* so that it may resubmit or flush without holding up a flush thread. A flush
+* called by the listener waits for the flush threads but not for the listener.
+*/
+public class RemoteBufferedMutatorImpl implements RemoteBufferedMutator {
+ public static final long DEFAULT_WRITE_BUFFER_SIZE = 2 * 1024 * 1024;
+ public static final long DEFAULT_LINGER = 1000;
+ public static final int DEFAULT_MAX_FLUSHES = 4;
+
+ private static final Log LOG = LogFactory.getLog(RemoteBufferedMutator.class);
+
+ /**
+  * Bytes accounted for each cell in addition to its family, qualifier and value
+  */
+ private static final int CELL_OVERHEAD = 16;
+
+ private final RemoteHTableImpl table;
+ private final long writeBufferSize;
+ private final long linger;
+ private final int maxFlushes;
+ private final ExceptionListener listener;
+ private final ScheduledExecutorService timer;
+ /**
+  * Single threaded, the rows of a lane are sent in order
+  */
+ private final ExecutorService[] lanes;
+ /**
+  * Single threaded, calls the listener, null without one
+  */
+ private final ExecutorService notifier;
+ private volatile Thread notifierThread;
+
+ // Guarded by this
+ private List<Mutation> buffer = new ArrayList<>();
+ private long bufferedBytes;
+ /**
+  * Incremented on every flush, so that a linger timer set for an earlier
+  * buffer does not flush the current one early
+  */
+ private long generation;
+ /**
+  * Buffers handed to the flush threads and not yet completed
+  */
+ private int flushing;
+ /**
+  * Failures handed to the listener and not yet handled
+  */
+ private int listening;
+ private boolean closed;
+ /**
+  * Failure kept for the caller when there is no listener
+  */
+ private IOException failure;
+ private int failedCount;
+
+ /**
+  * @param table the table written to, closed with the mutator
+  * @param writeBufferSize bytes buffered before a flush is started
+  * @param linger milliseconds a mutation may wait in the buffer, 0 to only flush full buffers
+  * @param maxFlushes flushes in flight before callers are blocked
+  * @param listener told of failed mutations, null to report them to the caller
+  */
+ public RemoteBufferedMutatorImpl(RemoteHTableImpl table, long writeBufferSize, long linger,
+     int maxFlushes, ExceptionListener listener) {
+   if (writeBufferSize <= 0 || maxFlushes <= 0 || linger < 0) {
+     throw new IllegalArgumentException("Write buffer size and flushes must be positive, linger not negative");
+   }
+   this.table = table;
+   this.writeBufferSize = writeBufferSize;
+   this.linger = linger;
+   this.maxFlushes = maxFlushes;
+   this.listener = listener;
+   this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+     Thread t = new Thread(r, "hbase-lite-mutator-timer");
+     t.setDaemon(true);
+     return t;
+   });
+   this.lanes = new ExecutorService[maxFlushes];
+   for (int i = 0; i < maxFlushes; i++) {
+     lanes[i] = Executors.newSingleThreadExecutor(r -> {
+       Thread t = new Thread(r, "hbase-lite-mutator-flush");
+       t.setDaemon(true);
+       return t;
+     });
+   }
+   this.notifier = listener == null ? null : Executors.newSingleThreadExecutor(r -> {
+     Thread t = new Thread(r, "hbase-lite-mutator-listener");
+     t.setDaemon(true);
+     notifierThread = t;
+     return t;
+   });
+ }
+
+ @Override
+ public String getName() {
+   return table.getName();
+ }
+
+ @Override
+ public long getWriteBufferSize() {
+   return writeBufferSize;
+ }
+
+ /**
+  * @return bytes of the mutations buffered and not yet handed to a flush thread
+  */
+ public synchronized long getBufferedBytes() {
+   return bufferedBytes;
+ }
+
+ @Override
+ public void mutate(Mutation mutation) throws IOException {
+   mutate(Collections.singletonList(mutation));
+ }
+
+ @Override
+ public synchronized void mutate(List<? extends Mutation> mutations) throws IOException {
+   checkOpen();
+   reportFailure();
+   for (Mutation mutation : mutations) {
+     validate(mutation);
+   }
+   for (Mutation mutation : mutations) {
+     // Backpressure: a full buffer waits for a flush thread
+     while (bufferedBytes >= writeBufferSize) {
+       if (flushing < maxFlushes) {
+         dispatch();
+       } else {
+         await();
+         checkOpen();
+       }
+     }
+     if (buffer.isEmpty() && linger > 0) {
+       long current = generation;
+       timer.schedule(() -> lingerExpired(current), linger, TimeUnit.MILLISECONDS);
+     }
+     buffer.add(mutation);
+     bufferedBytes += heapSize(mutation);
+   }
+   if (bufferedBytes >= writeBufferSize && flushing < maxFlushes) {
+     dispatch();
+   }
+ }
+
+ @Override
+ public synchronized void flush() throws IOException {
+   if (!buffer.isEmpty()) {
+     dispatch();
+   }
+   // The listener flushing would otherwise wait for itself
+   boolean notifying = Thread.currentThread() == notifierThread;
+   while (flushing > 0 || (listening > 0 && !notifying)) {
+     await();
+   }
+   reportFailure();
+ }
+
+ @Override
+ public void close() throws IOException {
+   synchronized (this) {
+     if (closed) {
+       return;
+     }
+     closed = true;
+     // Wake callers blocked on a full buffer, they fail as closed
+     notifyAll();
+   }
+   try {
+     flush();
+   } finally {
+     timer.shutdownNow();
+     for (ExecutorService lane : lanes) {
+       lane.shutdown();
+     }
+     if (notifier != null) {
+       notifier.shutdown();
+     }
+     table.close();
+   }
+ }
+
+ private synchronized void lingerExpired(long expected) {
+   if (generation == expected && !buffer.isEmpty()) {
+     dispatch();
+   }
+ }
+
+ private void dispatch() {
+   List<Mutation> batch = buffer;
+   buffer = new ArrayList<>();
+   bufferedBytes = 0;
+   generation++;
+   flushing++;
+   if (lanes.length == 1) {
+     lanes[0].execute(() -> send(batch, new AtomicInteger(1)));
+     return;
+   }
+   List<List<Mutation>> parts = new ArrayList<>(lanes.length);
+   for (int i = 0; i < lanes.length; i++) {
+     parts.add(new ArrayList<>());
+   }
+   for (Mutation mutation : batch) {
+     byte[] row = mutation.getRow();
+     parts.get((Bytes.hashCode(row, 0, row.length) & Integer.MAX_VALUE) % lanes.length)
+       .add(mutation);
+   }
+   // The buffer counts as flushing until its last part has been sent
+   AtomicInteger remaining = new AtomicInteger();
+   for (List<Mutation> part : parts) {
+     if (!part.isEmpty()) {
+       remaining.incrementAndGet();
+     }
+   }
+   for (int i = 0; i < lanes.length; i++) {
+     List<Mutation> part = parts.get(i);
+     if (!part.isEmpty()) {
+       lanes[i].execute(() -> send(part, remaining));
+     }
+   }
+ }
+
+ private void send(List<Mutation> batch, AtomicInteger remaining) {
+   int sent = 0;
+   IOException cause = null;
+   List<Mutation> failed = null;
+   try {
+     while (sent < batch.size()) {
+       boolean put = batch.get(sent) instanceof Put;
+       int end = sent + 1;
+       while (end < batch.size() && (batch.get(end) instanceof Put) == put) {
+         end++;
+       }
+       try {
+         if (put) {
+           List<Put> puts = new ArrayList<>(end - sent);
+           for (int i = sent; i < end; i++) {
+             puts.add((Put) batch.get(i));
+           }
+           table.put(puts);
+         } else {
+           List<Delete> deletes = new ArrayList<>(end - sent);
+           for (int i = sent; i < end; i++) {
+             deletes.add((Delete) batch.get(i));
+           }
+           table.delete(deletes);
+         }
+       } catch (RetriesExhaustedWithDetailsException e) {
+         // The requests that succeeded were applied, only the others and what follows are not
+         failed = new ArrayList<>(e.getRows());
+         failed.addAll(batch.subList(end, batch.size()));
+         throw e;
+       }
+       sent = end;
+     }
+   } catch (IOException e) {
+     cause = e;
+   } catch (RuntimeException e) {
+     cause = new IOException(e);
+   }
+   if (cause != null && failed == null) {
+     failed = batch.subList(sent, batch.size());
+   }
+   synchronized (this) {
+     if (remaining.decrementAndGet() == 0) {
+       flushing--;
+     }
+     if (failed != null) {
+       if (listener == null) {
+         if (failure == null) {
+           failure = cause;
+         }
+         failedCount += failed.size();
+       } else {
+         // Called once the batch no longer counts as in flight, so the listener may resubmit
+         List<Mutation> mutations = new ArrayList<>(failed);
+         IOException reported = cause;
+         listening++;
+         notifier.execute(() -> callListener(mutations, reported));
+       }
+     }
+     notifyAll();
+   }
+ }
+
+ private void callListener(List<Mutation> failed, IOException cause) {
+   try {
+     listener.onException(failed, cause, this);
+   } catch (RuntimeException e) {
+     LOG.warn("Exception listener failed", e);
+   } finally {
+     synchronized (this) {
+       listening--;
+       notifyAll();
+     }
+   }
+ }
+
+ private void checkOpen() throws IOException {
+   if (closed) {
+     throw new IOException("Buffered mutator for " + table.getName() + " is closed");
+   }
+ }
+
+ private void reportFailure() throws IOException {
+   if (failure != null) {
+     IOException e = new IOException(failedCount + " buffered mutations to " +
+       table.getName() + " were not applied", failure);
+     failure = null;
+     failedCount = 0;
+     throw e;
+   }
+ }
+
+ private void await() throws IOException {
+   try {
+     wait();
+   } catch (InterruptedException e) {
+     Thread.currentThread().interrupt();
+     throw (InterruptedIOException)new InterruptedIOException().initCause(e);
+   }
+ }
+
+ private static void validate(Mutation mutation) {
+   if (mutation instanceof Put) {
+     if (mutation.isEmpty()) {
+       throw new IllegalArgumentException("No columns to insert");
+     }
+   } else if (!(mutation instanceof Delete)) {
+     throw new IllegalArgumentException("Only puts and deletes can be buffered");
+   }
+ }
+
+ /**
+  * @return bytes a mutation is accounted for in the write buffer
+  */
+ static long heapSize(Mutation mutation) {
+   long size = mutation.getRow().length;
+   for (List<Cell> cells : mutation.getFamilyCellMap().values()) {
+     for (Cell cell : cells) {
+       size += CELL_OVERHEAD + cell.getFamilyLength() + cell.getQualifierLength() +
+         cell.getValueLength();
+     }
+   }
+   return size;
+ }
+}
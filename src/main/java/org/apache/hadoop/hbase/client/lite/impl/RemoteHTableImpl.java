@@ -22,51 +22,176 @@ package org.apache.hadoop.hbase.client.lite.impl;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hbase.client.lite.Cell;
+import org.apache.hadoop.hbase.client.lite.ClientMetrics.Operation;
 import org.apache.hadoop.hbase.client.lite.Delete;
 import org.apache.hadoop.hbase.client.lite.Get;
 import org.apache.hadoop.hbase.client.lite.Put;
 import org.apache.hadoop.hbase.client.lite.RemoteHTable;
 import org.apache.hadoop.hbase.client.lite.Result;
 import org.apache.hadoop.hbase.client.lite.ResultScanner;
+import org.apache.hadoop.hbase.client.lite.RetriesExhaustedWithDetailsException;
 import org.apache.hadoop.hbase.client.lite.Scan;
 import org.apache.hadoop.hbase.client.lite.TimeRange;
 import org.apache.hadoop.hbase.client.lite.impl.model.CellModel;
 import org.apache.hadoop.hbase.client.lite.impl.model.CellSetModel;
 import org.apache.hadoop.hbase.client.lite.impl.model.RowModel;
 import org.apache.hadoop.hbase.client.lite.impl.model.ScannerModel;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.message.BasicHeader;
 
 import java.io.IOException;
-import java.io.InterruptedIOException;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
 * HTable interface to remote tables accessed via REST gateway
 */
 public class RemoteHTableImpl implements RemoteHTable {
+ public static final long DEFAULT_MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+ public static final int DEFAULT_MAX_CHUNK_ROWS = 10000;
+ public static final int DEFAULT_MAX_URL_LENGTH = MultiGetPlanner.DEFAULT_MAX_URL_LENGTH;
 
  private static final Log LOG = LogFactory.getLog(RemoteHTable.class);
  
  private final Client client;
  private final String name;
- private final int maxRetries;
- private final long sleepTime;
+ private final RetryPolicy retryPolicy;
+ /**
+  * Hedges gets, exists and scanner creation, null if hedging is disabled
+  */
+ private final RequestHedger hedger;
+ /**
+  * Coalesces identical concurrent gets, null if coalescing is disabled
+  */
+ private final RequestCoalescer coalescer;
+ /**
+  * Sends the requests of batch operations, in turn unless set
+  */
+ private volatile BatchExecutor batchExecutor = new BatchExecutor(1);
+ private volatile long maxChunkSize = DEFAULT_MAX_CHUNK_SIZE;
+ private volatile int maxChunkRows = DEFAULT_MAX_CHUNK_ROWS;
+ private volatile int maxUrlLength = DEFAULT_MAX_URL_LENGTH;
+ /**
+  * Whether the gateway applies the columns and time range of a multiget
+  */
+ private volatile boolean multiGetColumns = true;
+ /**
+  * Set once a gateway refused a HEAD request, existence is then checked with
+  * a get of a single version
+  */
+ private volatile boolean headUnsupported;
 
  /**
   * Constructor
   */
  public RemoteHTableImpl(Client client, String name, int maxRetries, long sleepTime) {
+   this(client, name, new RetryPolicy(maxRetries, sleepTime), null);
+ }
+
+ /**
+  * Constructor
+  * @param retryPolicy retries rejected and failed requests
+  * @param hedger hedges idempotent reads across gateways, may be null
+  */
+ public RemoteHTableImpl(Client client, String name, RetryPolicy retryPolicy,
+     RequestHedger hedger) {
+   this(client, name, retryPolicy, hedger, null);
+ }
+
+ /**
+  * Constructor
+  * @param retryPolicy retries rejected and failed requests
+  * @param hedger hedges idempotent reads across gateways, may be null
+  * @param coalescer coalesces identical concurrent gets, may be null
+  */
+ public RemoteHTableImpl(Client client, String name, RetryPolicy retryPolicy,
+     RequestHedger hedger, RequestCoalescer coalescer) {
    this.client = client;
    this.name = name;
-   this.maxRetries = maxRetries;
-   this.sleepTime = sleepTime;
+   this.retryPolicy = retryPolicy;
+   this.hedger = hedger;
+   this.coalescer = coalescer;
+ }
+
+ /**
+  * @return the policy retrying rejected and failed requests
+  */
+ public RetryPolicy getRetryPolicy() {
+   return retryPolicy;
+ }
+
+ /**
+  * @return the hedger of idempotent reads, null if hedging is disabled
+  */
+ public RequestHedger getHedger() {
+   return hedger;
+ }
+
+ /**
+  * @return the coalescer of identical gets, null if coalescing is disabled
+  */
+ public RequestCoalescer getCoalescer() {
+   return coalescer;
+ }
+
+ /**
+  * @return the executor of the requests of batch operations
+  */
+ public BatchExecutor getBatchExecutor() {
+   return batchExecutor;
+ }
+
+ /**
+  * @param batchExecutor sends the requests of batch operations, the previous
+  * one is shut down
+  */
+ public void setBatchExecutor(BatchExecutor batchExecutor) {
+   BatchExecutor previous = this.batchExecutor;
+   this.batchExecutor = batchExecutor;
+   previous.shutdown();
+ }
+
+ /**
+  * Set the most a multiput request may carry, larger lists of puts are split
+  * into chunks sent as separate requests.
+  * @param maxChunkSize most bytes of cells in a request
+  * @param maxChunkRows most rows in a request
+  */
+ public void setMaxChunkSize(long maxChunkSize, int maxChunkRows) {
+   if (maxChunkSize <= 0 || maxChunkRows <= 0) {
+     throw new IllegalArgumentException("Chunk size and rows must be positive");
+   }
+   this.maxChunkSize = maxChunkSize;
+   this.maxChunkRows = maxChunkRows;
+ }
+
+ /**
+  * @param maxUrlLength most characters in the URI of a multiget request,
+  * more rows are fetched with several requests
+  */
+ public void setMaxUrlLength(int maxUrlLength) {
+   if (maxUrlLength <= 0) {
+     throw new IllegalArgumentException("URL length must be positive");
+   }
+   this.maxUrlLength = maxUrlLength;
+ }
+
+ /**
+  * @param multiGetColumns true if the gateway applies columns and time ranges
+  * to multigets (HBase 1.4, 2.0 or later), false to fetch gets restricted to
+  * columns or a time range one row per request
+  */
+ public void setMultiGetColumns(boolean multiGetColumns) {
+   this.multiGetColumns = multiGetColumns;
  }
 
  @Override
@@ -103,17 +228,27 @@ public class RemoteHTableImpl implements RemoteHTable {
 //   throw new IOException("schema request timed out");
 // }
 
+ @Override
+ public CompletableFuture<Void> ready() {
+   return client.ready();
+ }
+
  @Override
  public void close() throws IOException {
+   if (hedger != null) {
+     hedger.shutdown();
+   }
+   batchExecutor.shutdown();
    client.shutdown();
  }
 
  @Override
  public Result get(Get get) throws IOException {
    TimeRange range = get.getTimeRange();
-   String spec = buildRowSpec(get.getRow(), get.getFamilyMap(), range.getMin(), range.getMax(), get.getMaxVersions());
+   String spec = buildRowSpec(name, get.getRow(), get.getFamilyMap(), range.getMin(), range.getMax(), get.getMaxVersions());
 
-   ResultImpl[] results = getResults(spec);
+   ResultImpl[] results = getResults(Operation.GET, spec, get.getCompressResponse(),
+     client.getOperationTimeout(get.getOperationTimeout()));
    if (results.length > 0) {
      if (results.length > 1) {
        LOG.warn("too many results for get (" + results.length + ")");
@@ -124,160 +259,342 @@ public class RemoteHTableImpl implements RemoteHTable {
    }
  }
 
+ /**
+  * Gets with the same columns, time range and versions are sent together as
+  * multigets no longer than the URL length limit, concurrently. The results
+  * are in the order of the gets, empty for rows that do not exist. Unless the
+  * gateway supports columns in multigets, see {@link #setMultiGetColumns},
+  * restricted gets are sent one row per request.
+  */
  @Override
  public Result[] get(List<Get> gets) throws IOException {
-   byte[][] rows = new byte[gets.size()][];
-   int maxVersions = 1;
-   int count = 0;
-
-   for(Get g:gets) {
-
-     if ( count == 0 ) {
-       maxVersions = g.getMaxVersions();
-     } else if (g.getMaxVersions() != maxVersions) {
-       LOG.warn("MaxVersions on Gets do not match, using the first in the list ("+maxVersions+")");
+   Result[] results = new Result[gets.size()];
+   if (gets.isEmpty()) {
+     return results;
+   }
+   List<MultiGetPlanner.Request> requests = MultiGetPlanner.plan(name, gets, 0, maxUrlLength,
+     multiGetColumns);
+   Boolean compressResponse = gets.get(0).getCompressResponse();
+   IOException[] failures = batchExecutor.execute(requests.size(),
+     client.getOperationTimeout(gets.get(0).getOperationTimeout()), i -> {
+       MultiGetPlanner.Request request = requests.get(i);
+       ResultImpl[] rows = getResults(Operation.MULTIGET, request.spec, compressResponse,
+         batchTimeout());
+       request.forEach(rows, gets, (row, index) -> results[index] = row != null ? row : new ResultImpl());
+     });
+   for (IOException failure : failures) {
+     if (failure != null) {
+       throw failure;
      }
-
-     rows[count] = g.getRow();
-     count ++;
    }
-
-   String spec = buildMultiRowSpec(rows, maxVersions);
-
-   return getResults(spec);
+   return results;
  }
 
+ /**
+  * Sent as a HEAD request for the latest version of the columns of the get,
+  * the gateway answers it as it would the get but without the body.
+  */
  @Override
  public boolean exists(Get get) throws IOException {
-   LOG.warn("exists() is really get(), just use get()");
-   Result result = get(get);
-   return (result != null && !(result.isEmpty()));
+   TimeRange range = get.getTimeRange();
+   String spec = buildRowSpec(name, get.getRow(), get.getFamilyMap(), range.getMin(), range.getMax(), 1);
+   long timeout = client.getOperationTimeout(get.getOperationTimeout());
+   if (!headUnsupported) {
+     Boolean exists = retryPolicy.execute(Operation.EXISTS, "exists request", true, timeout,
+         () -> head(spec), response -> {
+       int code = response.getCode();
+       switch (code) {
+         case 200:
+           return Boolean.TRUE;
+         case 404:
+           return Boolean.FALSE;
+         case HttpStatus.SC_METHOD_NOT_ALLOWED:
+         case HttpStatus.SC_NOT_IMPLEMENTED:
+           return null;
+         default:
+           throw new IOException("exists request returned " + code);
+       }
+     });
+     if (exists != null) {
+       return exists;
+     }
+     LOG.info("HEAD not supported by the gateway, checking existence with get");
+     headUnsupported = true;
+   }
+   return fetchResults(Operation.EXISTS, spec, get.getCompressResponse(), timeout).length > 0;
  }
 
+ /**
+  * Checked with multigets of a single version of the columns of the gets,
+  * planned like {@link #get(List)} and sent concurrently.
+  */
  @Override
  public boolean[] exists(List<Get> gets) throws IOException {
-   LOG.warn("exists(List<Get>) is really list of get() calls, just use get()");
    boolean[] results = new boolean[gets.size()];
-   for (int i = 0; i < results.length; i++) {
-     results[i] = exists(gets.get(i));
+   if (gets.isEmpty()) {
+     return results;
+   }
+   List<MultiGetPlanner.Request> requests = MultiGetPlanner.plan(name, gets, 1, maxUrlLength,
+     multiGetColumns);
+   Boolean compressResponse = gets.get(0).getCompressResponse();
+   IOException[] failures = batchExecutor.execute(requests.size(),
+     client.getOperationTimeout(gets.get(0).getOperationTimeout()), i -> {
+       MultiGetPlanner.Request request = requests.get(i);
+       ResultImpl[] rows = fetchResults(Operation.EXISTS, request.spec, compressResponse,
+         batchTimeout());
+       request.forEach(rows, gets, (row, index) -> results[index] = row != null && !row.isEmpty());
+     });
+   for (IOException failure : failures) {
+     if (failure != null) {
+       throw failure;
+     }
    }
    return results;
  }
 
+ /**
+  * @return milliseconds left of the deadline the batch executor shares with
+  * its workers, 0 if the batch has none
+  */
+ private static long batchTimeout() {
+   Deadline deadline = Deadline.current();
+   return deadline != null ? deadline.attemptTimeout() : 0;
+ }
+
  @Override
  public void put(Put put) throws IOException {
-   CellSetModel model = buildModelFromPut(put);
+   HttpEntity entity = client.encode(new MutationEntity(put), put.getCompressRequest());
    StringBuilder sb = new StringBuilder();
    sb.append('/');
    sb.append(name);
    sb.append('/');
-   sb.append(toURLEncodedBytes(put.getRow()));
-   for (int i = 0; i < maxRetries; i++) {
-     Response response = client.put(sb.toString(), Constants.MIMETYPE_PROTOBUF,
-       model.createProtobufOutput());
+   PercentEncoder.encode(sb, put.getRow());
+   retryPolicy.execute(Operation.PUT, "put request", false,
+       client.getOperationTimeout(put.getOperationTimeout()), () -> client.put(sb.toString(),
+       Constants.MIMETYPE_PROTOBUF, entity), response -> {
      int code = response.getCode();
-     switch (code) {
-     case 200:
-       return;
-     case 509:
-       try {
-         Thread.sleep(sleepTime);
-       } catch (InterruptedException e) {
-         throw (InterruptedIOException)new InterruptedIOException().initCause(e);
-       }
-       break;
-     default:
+     if (code != 200) {
        throw new IOException("put request failed with " + code);
      }
-   }
-   throw new IOException("put request timed out");
+     return null;
+   });
  }
 
+ /**
+  * Puts are sent as chunks bounded by {@link #setMaxChunkSize(long, int)},
+  * concurrently through the batch executor. The puts of a row go in the same
+  * chunk so that they are applied in order. Only the chunks that failed are
+  * reported, with a {@link RetriesExhaustedWithDetailsException} listing
+  * their puts; a list sent as a single chunk fails with the failure of its
+  * request.
+  */
  @Override
  public void put(List<Put> puts) throws IOException {
-   // this is a trick: The gateway accepts multiple rows in a cell set and
-   // ignores the row specification in the URI
-
-   // separate puts by row
-   TreeMap<byte[],List<Cell>> map = new TreeMap<>(Bytes.BYTES_COMPARATOR);
-   for (Put put: puts) {
-     byte[] row = put.getRow();
-     List<Cell> cells = map.get(row);
-     if (cells == null) {
-       cells = new ArrayList<>();
-       map.put(row, cells);
+   if (puts.isEmpty()) {
+     return;
+   }
+   long timeout = client.getOperationTimeout(puts.get(0).getOperationTimeout());
+   long start = System.nanoTime();
+   List<Chunk> chunks = chunk(puts);
+   IOException[] failures = batchExecutor.execute(chunks.size(), timeout,
+     i -> putChunk(chunks.get(i).puts));
+   long nanos = System.nanoTime() - start;
+   if (chunks.size() == 1) {
+     retryPolicy.getMetrics().onBatch(Operation.MULTIPUT, puts.size(),
+       failures[0] == null ? 0 : puts.size(), nanos);
+     if (failures[0] != null) {
+       throw failures[0];
      }
-     for (List<Cell> l: put.getFamilyCellMap().values()) {
-       cells.addAll(l);
+     return;
+   }
+   // Report the puts of the failed chunks in the order they were passed in
+   TreeMap<Integer, Integer> failed = new TreeMap<>();
+   int failedChunks = 0;
+   for (int i = 0; i < chunks.size(); i++) {
+     if (failures[i] != null) {
+       failedChunks++;
+       for (int index : chunks.get(i).indices) {
+         failed.put(index, i);
+       }
      }
    }
+   retryPolicy.getMetrics().onBatch(Operation.MULTIPUT, puts.size(), failed.size(), nanos);
+   if (failedChunks == 0) {
+     return;
+   }
+   List<Throwable> exceptions = new ArrayList<>(failed.size());
+   List<Put> actions = new ArrayList<>(failed.size());
+   int[] requests = new int[failed.size()];
+   int n = 0;
+   for (Map.Entry<Integer, Integer> e : failed.entrySet()) {
+     exceptions.add(failures[e.getValue()]);
+     actions.add(puts.get(e.getKey()));
+     requests[n++] = e.getValue();
+   }
+   throw new RetriesExhaustedWithDetailsException(exceptions, actions, requests, failedChunks,
+     chunks.size());
+ }
 
-   // build the cell set
-   CellSetModel model = new CellSetModel();
-   for (Map.Entry<byte[], List<Cell>> e: map.entrySet()) {
-     RowModel row = new RowModel(e.getKey());
-     for (Cell cell: e.getValue()) {
-       row.addCell(new CellModel(cell));
+ /*
+  * A chunk is closed once it reaches the row or byte limit, a put of a row
+  * already in an earlier chunk is added to that chunk regardless.
+  */
+ private List<Chunk> chunk(List<Put> puts) {
+   long maxSize = maxChunkSize;
+   int maxRows = maxChunkRows;
+   long[] sizes = new long[puts.size()];
+   long total = 0;
+   for (int i = 0; i < sizes.length; i++) {
+     sizes[i] = MutationEntity.serializedSize(puts.get(i));
+     total += sizes[i];
+   }
+   List<Chunk> chunks = new ArrayList<>();
+   if (total <= maxSize && puts.size() <= maxRows) {
+     Chunk chunk = new Chunk(puts.size());
+     for (int i = 0; i < sizes.length; i++) {
+       chunk.add(puts.get(i), i, sizes[i]);
      }
-     model.addRow(row);
+     chunks.add(chunk);
+     return chunks;
    }
+   TreeMap<byte[], Chunk> chunkOfRow = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+   Chunk current = null;
+   for (int i = 0; i < sizes.length; i++) {
+     Put put = puts.get(i);
+     Chunk chunk = chunkOfRow.get(put.getRow());
+     if (chunk == null) {
+       if (current == null || current.puts.size() >= maxRows ||
+           current.size + sizes[i] > maxSize) {
+         current = new Chunk(Math.min(maxRows, puts.size() - i));
+         chunks.add(current);
+       }
+       chunk = current;
+       chunkOfRow.put(put.getRow(), chunk);
+     }
+     chunk.add(put, i, sizes[i]);
+   }
+   return chunks;
+ }
+
+ /*
+  * A chunk the gateway rejects as too large is split in two, the halves are
+  * sent in turn so the puts of a row split between them stay in order.
+  */
+ private void putChunk(List<Put> puts) throws IOException {
+   // this is a trick: The gateway accepts multiple rows in a cell set and
+   // ignores the row specification in the URI
+   HttpEntity entity = client.encode(new MutationEntity(puts), puts.get(0).getCompressRequest());
 
    // build path for multiput
    StringBuilder sb = new StringBuilder();
    sb.append('/');
-   //sb.append(Bytes.toString(name));
    sb.append(name);
    sb.append("/$multiput"); // can be any nonexistent row
-   for (int i = 0; i < maxRetries; i++) {
-     Response response = client.put(sb.toString(), Constants.MIMETYPE_PROTOBUF,
-       model.createProtobufOutput());
-     int code = response.getCode();
-     switch (code) {
-     case 200:
-       return;
-     case 509:
-       try {
-         Thread.sleep(sleepTime);
-       } catch (InterruptedException e) {
-         throw (InterruptedIOException)new InterruptedIOException().initCause(e);
-       }
-       break;
-     default:
-       throw new IOException("multiput request failed with " + code);
+   int code = retryPolicy.execute(Operation.MULTIPUT, "multiput request", false, 0,
+       () -> client.put(sb.toString(), Constants.MIMETYPE_PROTOBUF, entity), response -> {
+     int status = response.getCode();
+     if (status == HttpStatus.SC_REQUEST_TOO_LONG && puts.size() > 1) {
+       return status;
      }
+     if (status != 200) {
+       throw new IOException("multiput request failed with " + status);
+     }
+     return status;
+   });
+   if (code == HttpStatus.SC_REQUEST_TOO_LONG) {
+     int half = puts.size() / 2;
+     LOG.debug("multiput of " + puts.size() + " rows too large, splitting");
+     putChunk(puts.subList(0, half));
+     putChunk(puts.subList(half, puts.size()));
+   }
+ }
+
+ /**
+  * Puts sent as one multiput request, with their positions in the list
+  * passed in
+  */
+ private static final class Chunk {
+   final List<Put> puts;
+   final List<Integer> indices;
+   long size;
+
+   Chunk(int capacity) {
+     puts = new ArrayList<>(capacity);
+     indices = new ArrayList<>(capacity);
+   }
+
+   void add(Put put, int index, long putSize) {
+     puts.add(put);
+     indices.add(index);
+     size += putSize;
    }
-   throw new IOException("multiput request timed out");
  }
 
  @Override
  public void delete(Delete delete) throws IOException {
-   String spec = buildRowSpec(delete.getRow(), delete.getFamilyCellMap(),
+   delete(delete, client.getOperationTimeout(delete.getOperationTimeout()));
+ }
+
+ private void delete(Delete delete, long timeout) throws IOException {
+   String spec = buildRowSpec(name, delete.getRow(), delete.getFamilyCellMap(),
      delete.getTimeStamp(), delete.getTimeStamp(), 1);
-   for (int i = 0; i < maxRetries; i++) {
-     Response response = client.delete(spec);
+   retryPolicy.execute(Operation.DELETE, "delete request", true,
+       timeout, () -> client.delete(spec), response -> {
      int code = response.getCode();
-     switch (code) {
-     case 200:
-       return;
-     case 509:
-       try {
-         Thread.sleep(sleepTime);
-       } catch (InterruptedException e) {
-         throw (InterruptedIOException)new InterruptedIOException().initCause(e);
-       }
-       break;
-     default:
+     if (code != 200) {
        throw new IOException("delete request failed with " + code);
      }
-   }
-   throw new IOException("delete request timed out");
+     return null;
+   });
  }
 
+ /**
+  * The gateway deletes one row per request, the requests are sent
+  * concurrently through the batch executor. Every delete is attempted: those
+  * that failed are reported together with a
+  * {@link RetriesExhaustedWithDetailsException}, and are all that is left in
+  * the list if it can be modified. A single delete fails with the failure of
+  * its request.
+  */
  @Override
  public void delete(List<Delete> deletes) throws IOException {
-   for (Delete delete: deletes) {
-     delete(delete);
+   if (deletes.isEmpty()) {
+     return;
+   }
+   long timeout = client.getOperationTimeout(deletes.get(0).getOperationTimeout());
+   long start = System.nanoTime();
+   IOException[] failures = batchExecutor.execute(deletes.size(), timeout,
+     i -> delete(deletes.get(i), 0));
+   long nanos = System.nanoTime() - start;
+   List<Throwable> exceptions = new ArrayList<>();
+   List<Delete> actions = new ArrayList<>();
+   int[] requests = new int[failures.length];
+   for (int i = 0; i < failures.length; i++) {
+     if (failures[i] != null) {
+       requests[exceptions.size()] = i;
+       exceptions.add(failures[i]);
+       actions.add(deletes.get(i));
+     }
+   }
+   retryPolicy.getMetrics().onBatch(Operation.DELETE, deletes.size(), actions.size(), nanos);
+   if (LOG.isDebugEnabled()) {
+     LOG.debug("deleted " + (deletes.size() - actions.size()) + " of " + deletes.size() +
+       " rows in " + nanos / 1000000 + " ms");
+   }
+   if (actions.isEmpty()) {
+     return;
    }
+   if (deletes.size() == 1) {
+     throw failures[0];
+   }
+   try {
+     deletes.clear();
+     deletes.addAll(actions);
+   } catch (UnsupportedOperationException e) {
+     // An unmodifiable list is left as it was, the exception lists the failures
+   }
+   throw new RetriesExhaustedWithDetailsException(exceptions, actions,
+     Arrays.copyOf(requests, actions.size()), actions.size(), failures.length);
  }
 
  @Override
@@ -306,35 +623,27 @@ public class RemoteHTableImpl implements RemoteHTable {
    // column to check-the-value
    put.add(new KeyValue(row, family, qualifier, value));
 
-   CellSetModel model = buildModelFromPut(put);
+   HttpEntity entity = client.encode(new MutationEntity(put), put.getCompressRequest());
    StringBuilder sb = new StringBuilder();
    sb.append('/');
    sb.append(name);
    sb.append('/');
-   sb.append(toURLEncodedBytes(put.getRow()));
+   PercentEncoder.encode(sb, put.getRow());
    sb.append("?check=put");
 
-   for (int i = 0; i < maxRetries; i++) {
-     Response response = client.put(sb.toString(),
-       Constants.MIMETYPE_PROTOBUF, model.createProtobufOutput());
+   return retryPolicy.execute(Operation.CHECK_AND_MUTATE, "checkAndPut request", false,
+       client.getOperationTimeout(put.getOperationTimeout()), () -> client.put(sb.toString(),
+       Constants.MIMETYPE_PROTOBUF, entity), response -> {
      int code = response.getCode();
      switch (code) {
      case 200:
        return true;
      case 304: // NOT-MODIFIED
        return false;
-     case 509:
-       try {
-         Thread.sleep(sleepTime);
-       } catch (final InterruptedException e) {
-         throw (InterruptedIOException)new InterruptedIOException().initCause(e);
-       }
-       break;
      default:
        throw new IOException("checkAndPut request failed with " + code);
      }
-   }
-   throw new IOException("checkAndPut request timed out");
+   });
  }
 
  @Override
@@ -342,43 +651,41 @@ public class RemoteHTableImpl implements RemoteHTable {
      byte[] value, Delete delete) throws IOException {
    Put put = new Put(row);
    put.setFamilyCellMap(delete.getFamilyCellMap());
+   put.setCompressRequest(delete.getCompressRequest());
+   put.setOperationTimeout(delete.getOperationTimeout());
    // column to check-the-value
    put.add(new KeyValue(row, family, qualifier, value));
-   CellSetModel model = buildModelFromPut(put);
+   HttpEntity entity = client.encode(new MutationEntity(put), put.getCompressRequest());
    StringBuilder sb = new StringBuilder();
    sb.append('/');
    sb.append(name);
    sb.append('/');
-   sb.append(toURLEncodedBytes(row));
+   PercentEncoder.encode(sb, row);
    sb.append("?check=delete");
 
-   for (int i = 0; i < maxRetries; i++) {
-     Response response = client.put(sb.toString(),
-       Constants.MIMETYPE_PROTOBUF, model.createProtobufOutput());
+   return retryPolicy.execute(Operation.CHECK_AND_MUTATE, "checkAndDelete request", false,
+       client.getOperationTimeout(put.getOperationTimeout()), () -> client.put(sb.toString(),
+       Constants.MIMETYPE_PROTOBUF, entity), response -> {
      int code = response.getCode();
      switch (code) {
      case 200:
        return true;
      case 304: // NOT-MODIFIED
        return false;
-     case 509:
-       try {
-         Thread.sleep(sleepTime);
-       } catch (final InterruptedException e) {
-         throw (InterruptedIOException)new InterruptedIOException().initCause(e);
-       }
-       break;
      default:
        throw new IOException("checkAndDelete request failed with " + code);
      }
-   }
-   throw new IOException("checkAndDelete request timed out");
+   });
  }
 
  class Scanner implements ResultScanner {
    String uri;
+   Header[] headers;
+   long timeout;
 
    public Scanner(Scan scan) throws IOException {
+     headers = acceptHeaders(scan.getCompressResponse());
+     timeout = client.getOperationTimeout(scan.getOperationTimeout());
      ScannerModel model;
      try {
        model = ScannerModel.fromScan(scan);
@@ -390,26 +697,16 @@ public class RemoteHTableImpl implements RemoteHTable {
      sb.append(name);
      sb.append('/');
      sb.append("scanner");
-     for (int i = 0; i < maxRetries; i++) {
-       Response response = client.post(sb.toString(),
-         Constants.MIMETYPE_PROTOBUF, model.createProtobufOutput());
-       int code = response.getCode();
-       switch (code) {
-       case 201:
-         uri = response.getLocation();
-         return;
-       case 509:
-         try {
-           Thread.sleep(sleepTime);
-         } catch (InterruptedException e) {
-           throw (InterruptedIOException)new InterruptedIOException().initCause(e);
+     byte[] content = model.createProtobufOutput();
+     uri = retryPolicy.execute(Operation.SCANNER_OPEN, "scan request", false, timeout,
+       () -> post(sb.toString(), content),
+       response -> {
+         int code = response.getCode();
+         if (code != 201) {
+           throw new IOException("scan request failed with " + code);
          }
-         break;
-       default:
-         throw new IOException("scan request failed with " + code);
-       }
-     }
-     throw new IOException("scan request timed out");
+         return response.getLocation();
+       });
    }
 
    @Override
@@ -417,30 +714,64 @@ public class RemoteHTableImpl implements RemoteHTable {
      StringBuilder sb = new StringBuilder(uri);
      sb.append("?n=");
      sb.append(nbRows);
-     for (int i = 0; i < maxRetries; i++) {
-       Response response = client.get(sb.toString(),
-         Constants.MIMETYPE_PROTOBUF);
-       int code = response.getCode();
-       switch (code) {
-       case 200:
-         CellSetModel model = new CellSetModel();
-         model.getObjectFromMessage(response.getBody());
-         return buildResultFromModel(model);
-       case 204:
-       case 206:
-         return null;
-       case 509:
-         try {
-           Thread.sleep(sleepTime);
-         } catch (InterruptedException e) {
-           throw (InterruptedIOException)new InterruptedIOException().initCause(e);
+     Object event = FlightRecorderEvents.beginScannerChunk();
+     // Not idempotent, a repeated request would skip the rows of a lost response
+     ResultImpl[] results = retryPolicy.execute(Operation.SCANNER_NEXT, "scanner.next request", false,
+       timeout, () -> client.getAsStream(sb.toString(), headers), response -> {
+         int code = response.getCode();
+         switch (code) {
+         case 200:
+           return CellSetDecoder.decode(response, client.getMaxResponseSize());
+         case 204:
+         case 206:
+           return null;
+         default:
+           throw new IOException("scanner.next request failed with " + code);
          }
-         break;
-       default:
-         throw new IOException("scanner.next request failed with " + code);
-       }
+       });
+     FlightRecorderEvents.commitScannerChunk(event, name, results);
+     return results;
+   }
+
+   /**
+    * The rows are decoded from the response stream and handed over one by
+    * one, a page is never held in memory as a whole.
+    */
+   @Override
+   public int next(int nbRows, Consumer<? super Result> consumer) throws IOException {
+     StringBuilder sb = new StringBuilder(uri);
+     sb.append("?n=");
+     sb.append(nbRows);
+     Object event = FlightRecorderEvents.beginScannerChunk();
+     // Cells and bytes are only counted for the event
+     long[] counts = event != null ? new long[2] : null;
+     // Not idempotent, a repeated request would skip the rows of a lost response
+     int rows = retryPolicy.execute(Operation.SCANNER_NEXT, "scanner.next request", false,
+       timeout, () -> client.getAsStream(sb.toString(), headers), response -> {
+         int code = response.getCode();
+         switch (code) {
+         case 200:
+           return CellSetDecoder.decode(response, client.getMaxResponseSize(), row -> {
+             if (counts != null) {
+               for (Cell cell : row.rawCells()) {
+                 counts[0]++;
+                 counts[1] += cell.getRowLength() + cell.getFamilyLength() +
+                   cell.getQualifierLength() + cell.getValueLength();
+               }
+             }
+             consumer.accept(row);
+           });
+         case 204:
+         case 206:
+           return 0;
+         default:
+           throw new IOException("scanner.next request failed with " + code);
+         }
+       });
+     if (counts != null) {
+       FlightRecorderEvents.commitScannerChunk(event, name, rows, (int) counts[0], counts[1]);
      }
-     throw new IOException("scanner.next request timed out");
+     return rows;
    }
 
    @Override
@@ -497,24 +828,88 @@ public class RemoteHTableImpl implements RemoteHTable {
 
    @Override
    public void close() {
+     Operation previous = RetryPolicy.setOperation(Operation.SCANNER_CLOSE);
      try {
        client.delete(uri);
      } catch (IOException e) {
 //	       LOG.warn(StringUtils.stringifyException(e));
          LOG.warn(e.getMessage(),e);
+     } finally {
+       RetryPolicy.setOperation(previous);
      }
    }
  }
 
- private ResultImpl[] getResults(String spec) throws IOException {
-   for (int i = 0; i < maxRetries; i++) {
-     Response response = client.get(spec, Constants.MIMETYPE_PROTOBUF);
+ /*
+  * Scanner creation is hedged like a read, a scanner created by the losing
+  * request is deleted again.
+  */
+ private Response post(String path, byte[] content) throws IOException {
+   if (hedger == null) {
+     return client.post(path, Constants.MIMETYPE_PROTOBUF, content);
+   }
+   Header[] headers = { new BasicHeader("Content-Type", Constants.MIMETYPE_PROTOBUF) };
+   return hedger.execute(client.getCluster(),
+     (hosts, handle) -> client.post(hosts, path, headers, content, handle),
+     response -> {
+       if (response.getCode() == 201 && response.getLocation() != null) {
+         try {
+           client.delete(response.getLocation());
+         } catch (IOException e) {
+           LOG.warn("Unable to delete scanner created by hedged request", e);
+         }
+       }
+     });
+ }
+
+ /*
+  * Existence checks are hedged like gets.
+  */
+ private Response head(String spec) throws IOException {
+   if (hedger == null) {
+     return client.head(client.getCluster(), spec, null);
+   }
+   return hedger.execute(client.getCluster(),
+     (hosts, handle) -> client.head(hosts, spec, null, handle), null);
+ }
+
+ /*
+  * The body is left on the connection to be decoded as it arrives, a hedged
+  * response that lost the race is closed unread.
+  */
+ private Response get(String spec, Boolean compressResponse) throws IOException {
+   Header[] headers = acceptHeaders(compressResponse);
+   if (hedger == null) {
+     return client.getAsStream(spec, headers);
+   }
+   return hedger.execute(client.getCluster(),
+     (hosts, handle) -> client.getAsStream(hosts, spec, headers, handle),
+     response -> {
+       try {
+         response.close();
+       } catch (IOException e) {
+         LOG.debug("Unable to close response of hedged request", e);
+       }
+     });
+ }
+
+ private ResultImpl[] getResults(Operation operation, String spec, Boolean compressResponse,
+     long timeout) throws IOException {
+   if (coalescer != null) {
+     return coalescer.execute(spec, timeout,
+       remaining -> fetchResults(operation, spec, compressResponse, remaining));
+   }
+   return fetchResults(operation, spec, compressResponse, timeout);
+ }
+
+ private ResultImpl[] fetchResults(Operation operation, String spec, Boolean compressResponse,
+     long timeout) throws IOException {
+   return retryPolicy.execute(operation, "get request", true, timeout,
+       () -> get(spec, compressResponse), response -> {
      int code = response.getCode();
      switch (code) {
        case 200:
-         CellSetModel model = new CellSetModel();
-         model.getObjectFromMessage(response.getBody());
-         ResultImpl[] results = buildResultFromModel(model);
+         ResultImpl[] results = CellSetDecoder.decode(response, client.getMaxResponseSize());
          if ( results.length > 0) {
            return results;
          }
@@ -522,62 +917,76 @@ public class RemoteHTableImpl implements RemoteHTable {
        case 404:
          return new ResultImpl[0];
 
-       case 509:
-         try {
-           Thread.sleep(sleepTime);
-         } catch (InterruptedException e) {
-           throw (InterruptedIOException)new InterruptedIOException().initCause(e);
-         }
-         break;
        default:
          throw new IOException("get request returned " + code);
      }
-   }
-   throw new IOException("get request timed out");
+   });
  }
 
  @SuppressWarnings("rawtypes")
- private String buildRowSpec(final byte[] row, final Map familyMap,
+ static String buildRowSpec(final String name, final byte[] row, final Map familyMap,
      final long startTime, final long endTime, final int maxVersions) {
-   StringBuffer sb = new StringBuffer();
+   StringBuilder sb = PercentEncoder.buffer();
    sb.append('/');
    sb.append(name);
    sb.append('/');
-   sb.append(toURLEncodedBytes(row));
-   Set families = familyMap.entrySet();
-   if (families != null) {
-     Iterator i = familyMap.entrySet().iterator();
-     sb.append('/');
-     while (i.hasNext()) {
-       Map.Entry e = (Map.Entry)i.next();
-       Collection quals = (Collection)e.getValue();
-       if (quals == null || quals.isEmpty()) {
-         // this is an unqualified family. append the family name and NO ':'
-         sb.append(toURLEncodedBytes((byte[])e.getKey()));
-       } else {
-         Iterator ii = quals.iterator();
-         while (ii.hasNext()) {
-           sb.append(toURLEncodedBytes((byte[])e.getKey()));
-           sb.append(':');
-           Object o = ii.next();
-           // Puts use byte[] but Deletes use KeyValue
-           if (o instanceof byte[]) {
-             sb.append(toURLEncodedBytes((byte[])o));
-           } else if (o instanceof KeyValue) {
-             sb.append(toURLEncodedBytes(CellUtil.cloneQualifier((KeyValue)o)));
-           } else {
-             throw new RuntimeException("object type not handled");
-           }
-           if (ii.hasNext()) {
-             sb.append(',');
-           }
+   PercentEncoder.encode(sb, row);
+   sb.append('/');
+   appendColumns(sb, familyMap);
+   appendTimestamps(sb, startTime, endTime);
+   if (maxVersions > 1) {
+     sb.append("?v=");
+     sb.append(maxVersions);
+   }
+   return sb.toString();
+ }
+
+ /**
+  * Append the columns of a family map as 'family:qualifier,family', nothing
+  * for all columns.
+  */
+ @SuppressWarnings("rawtypes")
+ static void appendColumns(StringBuilder sb, final Map familyMap) {
+   Iterator i = familyMap.entrySet().iterator();
+   while (i.hasNext()) {
+     Map.Entry e = (Map.Entry)i.next();
+     byte[] family = (byte[])e.getKey();
+     Collection quals = (Collection)e.getValue();
+     if (quals == null || quals.isEmpty()) {
+       // this is an unqualified family. append the family name and NO ':'
+       PercentEncoder.encode(sb, family);
+     } else {
+       Iterator ii = quals.iterator();
+       while (ii.hasNext()) {
+         PercentEncoder.encode(sb, family);
+         sb.append(':');
+         Object o = ii.next();
+         // Puts use byte[] but Deletes use cells
+         if (o instanceof byte[]) {
+           PercentEncoder.encode(sb, (byte[])o);
+         } else if (o instanceof Cell) {
+           Cell cell = (Cell)o;
+           PercentEncoder.encode(sb, cell.getQualifierArray(), cell.getQualifierOffset(),
+             cell.getQualifierLength());
+         } else {
+           throw new RuntimeException("object type not handled");
+         }
+         if (ii.hasNext()) {
+           sb.append(',');
          }
-       }
-       if (i.hasNext()) {
-         sb.append(',');
        }
      }
+     if (i.hasNext()) {
+       sb.append(',');
+     }
    }
+ }
+
+ /**
+  * Append the timestamp segment of a row spec, '/start,end' or '/timestamp',
+  * nothing without an upper bound.
+  */
+ static void appendTimestamps(StringBuilder sb, final long startTime, final long endTime) {
    if (startTime >= 0 && endTime != Long.MAX_VALUE) {
      sb.append('/');
      sb.append(startTime);
@@ -589,37 +998,9 @@ public class RemoteHTableImpl implements RemoteHTable {
      sb.append('/');
      sb.append(endTime);
    }
-   if (maxVersions > 1) {
-     sb.append("?v=");
-     sb.append(maxVersions);
-   }
-   return sb.toString();
  }
 
- private String buildMultiRowSpec(final byte[][] rows, int maxVersions) {
-   StringBuilder sb = new StringBuilder();
-   sb.append('/');
-   sb.append(name);
-   sb.append("/multiget/");
-   if (rows == null || rows.length == 0) {
-     return sb.toString();
-   }
-   sb.append("?");
-   for(int i=0; i<rows.length; i++) {
-     byte[] rk = rows[i];
-     if (i != 0) {
-       sb.append('&');
-     }
-     sb.append("row=");
-     sb.append(toURLEncodedBytes(rk));
-   }
-   sb.append("&v=");
-   sb.append(maxVersions);
-
-   return sb.toString();
- }
-
- private ResultImpl[] buildResultFromModel(final CellSetModel model) {
+ static ResultImpl[] buildResultFromModel(final CellSetModel model) {
    List<ResultImpl> results = new ArrayList<>();
    for (RowModel row: model.getRows()) {
      List<Cell> kvs = new ArrayList<>(row.getCells().size());
@@ -642,19 +1023,17 @@ public class RemoteHTableImpl implements RemoteHTable {
    return results.toArray(new ResultImpl[results.size()]);
  }
 
- private CellSetModel buildModelFromPut(Put put) {
-   RowModel row = new RowModel(put.getRow());
-   long ts = put.getTimeStamp();
-   for (List<Cell> cells: put.getFamilyCellMap().values()) {
-     for (Cell cell: cells) {
-       row.addCell(new CellModel(CellUtil.cloneFamily(cell), CellUtil.cloneQualifier(cell),
-         ts != HConstants.LATEST_TIMESTAMP ? ts : cell.getTimestamp(),
-         CellUtil.cloneValue(cell)));
-     }
+ /*
+  * Protobuf Accept header, with an Accept-Encoding header if the operation
+  * overrides the client's response compression.
+  */
+ static Header[] acceptHeaders(Boolean compressResponse) {
+   Header accept = new BasicHeader("Accept", Constants.MIMETYPE_PROTOBUF);
+   if (compressResponse == null) {
+     return new Header[] { accept };
    }
-   CellSetModel model = new CellSetModel();
-   model.addRow(row);
-   return model;
+   return new Header[] { accept, new BasicHeader(ContentCoding.ACCEPT_ENCODING,
+     compressResponse ? ContentCoding.ACCEPTED : ContentCoding.IDENTITY) };
  }
 
  /*
@@ -664,11 +1043,7 @@ public class RemoteHTableImpl implements RemoteHTable {
   * escaping. Table names are ok because they can only contain alphanumeric, ".","_", and "-"
   * which are valid characters in URLs.
   */
- private static String toURLEncodedBytes(byte[] row) {
-   try {
-     return URLEncoder.encode(new String(row, "UTF-8"), "UTF-8");
-   } catch (UnsupportedEncodingException e) {
-     throw new IllegalStateException("URLEncoder doesn't support UTF-8", e);
-   }
+ static String toURLEncodedBytes(byte[] row) {
+   return PercentEncoder.encode(row);
  }
 }
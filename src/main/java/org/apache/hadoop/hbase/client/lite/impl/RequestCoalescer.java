@@ -0,0 +1,153 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.hbase.client.lite.OperationTimeoutException;
+
+/**
+* Single-flight execution of gets. A get arriving while an identical get is
+* in flight waits for it and receives the same results instead of sending a
+* request of its own. Nothing is kept once the request has completed, a get
+* arriving afterwards is sent to the gateway again.
+*
+* Every caller receives Results of its own, only the immutable cells are
+* shared, so a caller modifying its Results does not affect the others.
+*/
+public class RequestCoalescer {
+ private final ConcurrentHashMap<String, CompletableFuture<ResultImpl[]>> inFlight =
+   new ConcurrentHashMap<>();
+ private final AtomicLong requests = new AtomicLong();
+ private final AtomicLong coalesced = new AtomicLong();
+
+ /**
+  * Execute a get, or join the identical get in flight. A joining caller whose
+  * leader timed out or was interrupted sends the get itself, or joins the
+  * next one, within what is left of its own timeout.
+  * @param spec the row spec, identical gets have identical specs
+  * @param timeout milliseconds the caller waits at most, 0 for no limit
+  * @param request performs the get when none is in flight
+  * @return the results of the get
+  * @throws IOException if the get failed or the wait timed out
+  */
+ ResultImpl[] execute(String spec, long timeout, Request request) throws IOException {
+   long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+   boolean joined = false;
+   while (true) {
+     long remaining = timeout;
+     if (timeout > 0) {
+       remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+       if (remaining <= 0) {
+         throw timeout(timeout);
+       }
+     }
+     CompletableFuture<ResultImpl[]> future = new CompletableFuture<>();
+     CompletableFuture<ResultImpl[]> leader = inFlight.putIfAbsent(spec, future);
+     if (leader == null) {
+       requests.incrementAndGet();
+       try {
+         ResultImpl[] results = request.execute(remaining);
+         // Joining callers copy from a snapshot the leader never hands out
+         future.complete(copy(results));
+         return results;
+       } catch (IOException | RuntimeException e) {
+         future.completeExceptionally(e);
+         throw e;
+       } finally {
+         inFlight.remove(spec, future);
+       }
+     }
+     if (!joined) {
+       coalesced.incrementAndGet();
+       joined = true;
+     }
+     try {
+       return copy(timeout > 0 ? leader.get(remaining, TimeUnit.MILLISECONDS) : leader.get());
+     } catch (ExecutionException e) {
+       Throwable cause = e.getCause();
+       if (!(cause instanceof OperationTimeoutException || cause instanceof InterruptedIOException)) {
+         // A new exception, the leader's is thrown to its own caller as well
+         throw new IOException("coalesced get request failed: " + cause.getMessage(), cause);
+       }
+       // The leader ran out of its time, which says nothing about this caller's
+       inFlight.remove(spec, leader);
+     } catch (TimeoutException e) {
+       throw timeout(timeout);
+     } catch (InterruptedException e) {
+       Thread.currentThread().interrupt();
+       throw (InterruptedIOException)new InterruptedIOException().initCause(e);
+     }
+   }
+ }
+
+ private static OperationTimeoutException timeout(long timeout) {
+   return new OperationTimeoutException("coalesced get request exceeded its deadline of " +
+     timeout + " ms", timeout, null);
+ }
+
+ private static ResultImpl[] copy(ResultImpl[] results) {
+   ResultImpl[] copies = new ResultImpl[results.length];
+   for (int i = 0; i < results.length; i++) {
+     copies[i] = results[i] != null ? results[i].copy() : null;
+   }
+   return copies;
+ }
+
+ /**
+  * @return number of gets sent to the gateway
+  */
+ public long getRequestCount() {
+   return requests.get();
+ }
+
+ /**
+  * @return number of gets that joined an identical get in flight instead
+  */
+ public long getCoalescedCount() {
+   return coalesced.get();
+ }
+
+ /**
+  * @return number of distinct gets currently in flight
+  */
+ public int getInFlightCount() {
+   return inFlight.size();
+ }
+
+ /**
+  * Performs the get of the caller that arrived first
+  */
+ interface Request {
+   /**
+    * @param timeout milliseconds left of the caller's timeout, 0 for no limit
+    * @return the results of the get
+    * @throws IOException if the get failed
+    */
+   ResultImpl[] execute(long timeout) throws IOException;
+ }
+}
@@ -0,0 +1,65 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+* Lets another thread abort a request that fails over between hosts, whichever
+* host it is currently talking to.
+*/
+final class RequestHandle {
+ private volatile boolean aborted = false;
+ private volatile HttpUriRequest current;
+
+ /**
+  * Track the method about to be executed, aborting it at once if the
+  * request has already been aborted.
+  */
+ void attach(HttpUriRequest method) {
+   current = method;
+   if (aborted) {
+     method.abort();
+   }
+ }
+
+ void abort() {
+   aborted = true;
+   HttpUriRequest method = current;
+   if (method != null) {
+     method.abort();
+   }
+ }
+
+ boolean isAborted() {
+   return aborted;
+ }
+
+ /**
+  * Return the connection of the last attempt to the pool.
+  */
+ void release() {
+   HttpUriRequest method = current;
+   if (method instanceof HttpRequestBase) {
+     ((HttpRequestBase) method).releaseConnection();
+   }
+ }
+}
@@ -0,0 +1,315 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.client.lite.ClientMetrics.Operation;
+
+/**
+* Hedged execution of idempotent requests. The request is sent to the
+* preferred gateway on the calling thread; if no response has arrived after
+* the hedge delay a duplicate is sent to the next gateway. The first complete
+* response wins and the other request is aborted.
+*
+* The delay is either fixed or derived from a percentile of recently observed
+* latencies. Every request earns a fraction of a hedge and every hedge spends
+* a whole one, so hedges never exceed that fraction of the traffic even when
+* the whole cluster slows down.
+*/
+public class RequestHedger {
+ private static final Log LOG = LogFactory.getLog(RequestHedger.class);
+
+ private static final int WINDOW = 256;
+ private static final int MIN_SAMPLES = 32;
+ private static final int RECOMPUTE_INTERVAL = 32;
+ /**
+  * Hedge budget in thousandths of a hedge
+  */
+ private static final long TOKEN = 1000;
+ private static final long MAX_TOKENS = 10 * TOKEN;
+
+ private static final int PENDING = 0;
+ private static final int HEDGING = 1;
+ private static final int DONE = 2;
+
+ private final long fixedDelayNanos;
+ private final double percentile;
+ private final long tokensPerRequest;
+
+ private final AtomicLongArray samples = new AtomicLongArray(WINDOW);
+ private final AtomicLong sampleCount = new AtomicLong();
+ private volatile long percentileDelayNanos = -1;
+ private final AtomicLong tokens = new AtomicLong(MAX_TOKENS);
+
+ private final AtomicLong hedges = new AtomicLong();
+ private final AtomicLong hedgesWon = new AtomicLong();
+ private final AtomicLong suppressed = new AtomicLong();
+
+ private final ScheduledExecutorService timer;
+ private final ExecutorService executor;
+
+ /**
+  * @param delayMillis fixed hedge delay, or -1 to use the percentile
+  * @param percentile latency percentile (0-100) used as the delay when no fixed delay is set
+  * @param maxHedgeRatio maximum fraction of requests that may be hedged
+  */
+ public RequestHedger(long delayMillis, double percentile, double maxHedgeRatio) {
+   if (delayMillis < 0 && (percentile <= 0 || percentile >= 100)) {
+     throw new IllegalArgumentException("A hedge delay or a percentile between 0 and 100 is required");
+   }
+   this.fixedDelayNanos = delayMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(delayMillis);
+   this.percentile = percentile;
+   this.tokensPerRequest = Math.max(0, Math.round(maxHedgeRatio * TOKEN));
+   this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+     Thread t = new Thread(r, "hbase-lite-hedge-timer");
+     t.setDaemon(true);
+     return t;
+   });
+   this.executor = Executors.newCachedThreadPool(r -> {
+     Thread t = new Thread(r, "hbase-lite-hedge");
+     t.setDaemon(true);
+     return t;
+   });
+ }
+
+ /**
+  * Execute a request, hedging it against a second gateway if it is slow.
+  * @param cluster the cluster to select gateways from
+  * @param exchange performs the request against the gateways in the given order
+  * @param discard receives a losing result that completed anyway, may be null
+  * @return the first result to complete
+  * @throws IOException if both requests failed
+  */
+ <T> T execute(Cluster cluster, Exchange<T> exchange, Consumer<T> discard)
+     throws IOException {
+   String[] hosts = cluster.selectHosts();
+   // The hedge runs on another thread but within the same deadline and operation
+   Deadline deadline = Deadline.current();
+   Operation operation = RetryPolicy.currentOperation();
+   long delay = getDelayNanos();
+   tokens.accumulateAndGet(tokensPerRequest, (t, x) -> Math.min(MAX_TOKENS, t + x));
+   long start = System.nanoTime();
+   if (hosts.length < 2 || delay < 0) {
+     T result = exchange.run(hosts, new RequestHandle());
+     record(System.nanoTime() - start);
+     return result;
+   }
+
+   // The hedge starts at the next gateway in order of preference
+   String[] rotated = new String[hosts.length];
+   System.arraycopy(hosts, 1, rotated, 0, hosts.length - 1);
+   rotated[hosts.length - 1] = hosts[0];
+
+   HedgedCall<T> call = new HedgedCall<>();
+   ScheduledFuture<?> trigger;
+   try {
+     trigger = timer.schedule(() -> hedge(call, rotated, exchange, discard, deadline, operation),
+       delay, TimeUnit.NANOSECONDS);
+   } catch (RejectedExecutionException e) {
+     throw new IOException("hedger is shut down");
+   }
+   T result;
+   try {
+     result = exchange.run(hosts, call.primary);
+   } catch (IOException e) {
+     if (call.state.compareAndSet(PENDING, DONE)) {
+       trigger.cancel(false);
+       throw e;
+     }
+     call.fail(e);
+     return call.await();
+   }
+   record(System.nanoTime() - start);
+   if (call.state.compareAndSet(PENDING, DONE)) {
+     trigger.cancel(false);
+     return result;
+   }
+   if (call.winner.complete(result)) {
+     call.hedge.abort();
+     return result;
+   }
+   // The hedge won while this response was being read
+   if (discard != null) {
+     discard.accept(result);
+   }
+   return call.await();
+ }
+
+ private <T> void hedge(HedgedCall<T> call, String[] hosts, Exchange<T> exchange,
+     Consumer<T> discard, Deadline deadline, Operation operation) {
+   if (call.state.get() != PENDING) {
+     return;
+   }
+   if (!acquireToken()) {
+     suppressed.incrementAndGet();
+     return;
+   }
+   if (!call.state.compareAndSet(PENDING, HEDGING)) {
+     tokens.addAndGet(TOKEN);
+     return;
+   }
+   hedges.incrementAndGet();
+   try {
+     executor.execute(() -> {
+       Deadline previous = Deadline.set(deadline);
+       Operation previousOperation = RetryPolicy.setOperation(operation);
+       try {
+         T result = exchange.run(hosts, call.hedge);
+         if (call.winner.complete(result)) {
+           hedgesWon.incrementAndGet();
+           call.primary.abort();
+         } else if (discard != null) {
+           discard.accept(result);
+         }
+       } catch (IOException e) {
+         call.fail(e);
+       } finally {
+         Deadline.set(previous);
+         RetryPolicy.setOperation(previousOperation);
+       }
+     });
+   } catch (RejectedExecutionException e) {
+     call.fail(new IOException("hedger is shut down"));
+   }
+ }
+
+ private boolean acquireToken() {
+   long current;
+   do {
+     current = tokens.get();
+     if (current < TOKEN) {
+       return false;
+     }
+   } while (!tokens.compareAndSet(current, current - TOKEN));
+   return true;
+ }
+
+ private void record(long latencyNanos) {
+   long n = sampleCount.getAndIncrement();
+   samples.set((int) (n % WINDOW), latencyNanos);
+   if (fixedDelayNanos < 0 && n + 1 >= MIN_SAMPLES && (n + 1) % RECOMPUTE_INTERVAL == 0) {
+     int size = (int) Math.min(n + 1, WINDOW);
+     long[] sorted = new long[size];
+     for (int i = 0; i < size; i++) {
+       sorted[i] = samples.get(i);
+     }
+     Arrays.sort(sorted);
+     int index = (int) Math.min(size - 1, Math.ceil(percentile / 100.0 * size) - 1);
+     percentileDelayNanos = sorted[Math.max(0, index)];
+     if (LOG.isTraceEnabled()) {
+       LOG.trace("hedge delay is now " + TimeUnit.NANOSECONDS.toMillis(percentileDelayNanos) + " ms");
+     }
+   }
+ }
+
+ /**
+  * @return the current hedge delay in nanoseconds, -1 until enough latencies have been observed
+  */
+ public long getDelayNanos() {
+   return fixedDelayNanos >= 0 ? fixedDelayNanos : percentileDelayNanos;
+ }
+
+ /**
+  * @return number of hedged requests sent
+  */
+ public long getHedgeCount() {
+   return hedges.get();
+ }
+
+ /**
+  * @return number of hedged requests that completed before the original request
+  */
+ public long getHedgeWinCount() {
+   return hedgesWon.get();
+ }
+
+ /**
+  * @return number of hedges not sent because the hedge budget was exhausted
+  */
+ public long getSuppressedCount() {
+   return suppressed.get();
+ }
+
+ public void shutdown() {
+   timer.shutdownNow();
+   executor.shutdownNow();
+ }
+
+ /**
+  * Performs a request against the gateways in the given order
+  */
+ interface Exchange<T> {
+   T run(String[] hosts, RequestHandle handle) throws IOException;
+ }
+
+ private static final class HedgedCall<T> {
+   final AtomicInteger state = new AtomicInteger(PENDING);
+   final RequestHandle primary = new RequestHandle();
+   final RequestHandle hedge = new RequestHandle();
+   final CompletableFuture<T> winner = new CompletableFuture<>();
+   final AtomicInteger failures = new AtomicInteger();
+   volatile IOException firstFailure;
+
+   /*
+    * The call fails once both the original and the hedge have failed, with
+    * the exception of whichever failed first.
+    */
+   void fail(IOException e) {
+     if (failures.incrementAndGet() == 1) {
+       firstFailure = e;
+     } else {
+       winner.completeExceptionally(firstFailure != null ? firstFailure : e);
+     }
+   }
+
+   T await() throws IOException {
+     try {
+       return winner.get();
+     } catch (InterruptedException e) {
+       primary.abort();
+       hedge.abort();
+       throw (InterruptedIOException)new InterruptedIOException().initCause(e);
+     } catch (ExecutionException e) {
+       Throwable cause = e.getCause();
+       if (cause instanceof IOException) {
+         throw (IOException) cause;
+       }
+       throw new IOException(cause);
+     }
+   }
+ }
+}
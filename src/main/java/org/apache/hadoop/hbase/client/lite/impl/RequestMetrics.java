@@ -0,0 +1,223 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+* Counters and latency histograms of the requests of one operation type or to
+* one gateway, kept by {@link DefaultClientMetrics}.
+*/
+public class RequestMetrics implements RequestMetricsMXBean {
+ private static final int SC_BANDWIDTH_LIMIT_EXCEEDED = 509;
+ private static final double NANOS_PER_MILLI = 1000000.0;
+ private static final double NANOS_PER_SECOND = 1000000000.0;
+ private static final int MAX_STATUS = 599;
+
+ private final LatencyHistogram requestLatency = new LatencyHistogram();
+ private final LatencyHistogram operationLatency = new LatencyHistogram();
+ /**
+  * Counters by status code, created on first use
+  */
+ private final AtomicReferenceArray<LongAdder> statuses = new AtomicReferenceArray<>(MAX_STATUS + 1);
+ private final LongAdder failedRequests = new LongAdder();
+ private final LongAdder bandwidthLimitExceeded = new LongAdder();
+ private final LongAdder failedOperations = new LongAdder();
+ private final LongAdder retries = new LongAdder();
+ private final LongAdder bytesSent = new LongAdder();
+ private final LongAdder bytesReceived = new LongAdder();
+ private final LongAdder batchRows = new LongAdder();
+ private final LongAdder failedBatchRows = new LongAdder();
+ private final LongAdder batchNanos = new LongAdder();
+
+ void request(int status, long nanos) {
+   requestLatency.record(nanos);
+   if (status == 0) {
+     failedRequests.increment();
+     return;
+   }
+   if (status == SC_BANDWIDTH_LIMIT_EXCEEDED) {
+     bandwidthLimitExceeded.increment();
+   }
+   int index = Math.min(Math.max(status, 0), MAX_STATUS);
+   LongAdder counter = statuses.get(index);
+   if (counter == null) {
+     statuses.compareAndSet(index, null, new LongAdder());
+     counter = statuses.get(index);
+   }
+   counter.increment();
+ }
+
+ void operation(long nanos, boolean failed) {
+   operationLatency.record(nanos);
+   if (failed) {
+     failedOperations.increment();
+   }
+ }
+
+ void batch(int rows, int failedRows, long nanos) {
+   batchRows.add(rows);
+   failedBatchRows.add(failedRows);
+   batchNanos.add(nanos);
+ }
+
+ void retry() {
+   retries.increment();
+ }
+
+ void sent(long bytes) {
+   bytesSent.add(bytes);
+ }
+
+ void received(long bytes) {
+   bytesReceived.add(bytes);
+ }
+
+ /**
+  * @return latencies of single requests, from sending to the response headers
+  */
+ public LatencyHistogram getRequestLatency() {
+   return requestLatency;
+ }
+
+ /**
+  * @return latencies of operations across all of their attempts
+  */
+ public LatencyHistogram getOperationLatency() {
+   return operationLatency;
+ }
+
+ @Override public long getRequestCount() {
+   return requestLatency.getCount();
+ }
+
+ @Override public long getFailedRequestCount() {
+   return failedRequests.sum();
+ }
+
+ @Override public long getBandwidthLimitExceededCount() {
+   return bandwidthLimitExceeded.sum();
+ }
+
+ @Override public Map<Integer, Long> getStatusCounts() {
+   Map<Integer, Long> counts = new TreeMap<>();
+   for (int i = 0; i < statuses.length(); i++) {
+     LongAdder counter = statuses.get(i);
+     if (counter != null) {
+       counts.put(i, counter.sum());
+     }
+   }
+   return counts;
+ }
+
+ @Override public double getRequestLatencyMean() {
+   return requestLatency.getMean() / NANOS_PER_MILLI;
+ }
+
+ @Override public double getRequestLatency50thPercentile() {
+   return requestLatency.getPercentile(0.5) / NANOS_PER_MILLI;
+ }
+
+ @Override public double getRequestLatency99thPercentile() {
+   return requestLatency.getPercentile(0.99) / NANOS_PER_MILLI;
+ }
+
+ @Override public double getRequestLatency999thPercentile() {
+   return requestLatency.getPercentile(0.999) / NANOS_PER_MILLI;
+ }
+
+ @Override public double getRequestLatencyMax() {
+   return requestLatency.getMax() / NANOS_PER_MILLI;
+ }
+
+ @Override public long getOperationCount() {
+   return operationLatency.getCount();
+ }
+
+ @Override public long getFailedOperationCount() {
+   return failedOperations.sum();
+ }
+
+ @Override public long getRetryCount() {
+   return retries.sum();
+ }
+
+ @Override public double getOperationLatencyMean() {
+   return operationLatency.getMean() / NANOS_PER_MILLI;
+ }
+
+ @Override public double getOperationLatency50thPercentile() {
+   return operationLatency.getPercentile(0.5) / NANOS_PER_MILLI;
+ }
+
+ @Override public double getOperationLatency99thPercentile() {
+   return operationLatency.getPercentile(0.99) / NANOS_PER_MILLI;
+ }
+
+ @Override public double getOperationLatency999thPercentile() {
+   return operationLatency.getPercentile(0.999) / NANOS_PER_MILLI;
+ }
+
+ @Override public double getOperationLatencyMax() {
+   return operationLatency.getMax() / NANOS_PER_MILLI;
+ }
+
+ @Override public long getBytesSent() {
+   return bytesSent.sum();
+ }
+
+ @Override public long getBytesReceived() {
+   return bytesReceived.sum();
+ }
+
+ @Override public long getBatchRowCount() {
+   return batchRows.sum();
+ }
+
+ @Override public long getFailedBatchRowCount() {
+   return failedBatchRows.sum();
+ }
+
+ @Override public double getBatchRowsPerSecond() {
+   long nanos = batchNanos.sum();
+   return nanos == 0 ? 0 : batchRows.sum() * NANOS_PER_SECOND / nanos;
+ }
+
+ @Override public String toString() {
+   return "RequestMetrics{" +
+       "requests=" + getRequestCount() +
+       ", failedRequests=" + getFailedRequestCount() +
+       ", statuses=" + getStatusCounts() +
+       ", requestLatency=" + requestLatency +
+       ", operations=" + getOperationCount() +
+       ", failedOperations=" + getFailedOperationCount() +
+       ", retries=" + getRetryCount() +
+       ", operationLatency=" + operationLatency +
+       ", bytesSent=" + getBytesSent() +
+       ", bytesReceived=" + getBytesReceived() +
+       ", batchRows=" + getBatchRowCount() +
+       ", failedBatchRows=" + getFailedBatchRowCount() +
+       ", batchRowsPerSecond=" + getBatchRowsPerSecond() +
+       '}';
+ }
+}
@@ -0,0 +1,92 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.util.Map;
+
+/**
+* JMX view of the requests of one operation type or to one gateway, exported
+* by {@link DefaultClientMetrics}. Latencies are in milliseconds; operation
+* figures span all attempts and retries and are only kept per operation type.
+*/
+public interface RequestMetricsMXBean {
+ long getRequestCount();
+
+ /**
+  * @return requests that received no response
+  */
+ long getFailedRequestCount();
+
+ /**
+  * @return requests the gateway rejected with 509 Bandwidth Limit Exceeded
+  */
+ long getBandwidthLimitExceededCount();
+
+ /**
+  * @return number of requests by HTTP status code
+  */
+ Map<Integer, Long> getStatusCounts();
+
+ double getRequestLatencyMean();
+
+ double getRequestLatency50thPercentile();
+
+ double getRequestLatency99thPercentile();
+
+ double getRequestLatency999thPercentile();
+
+ double getRequestLatencyMax();
+
+ long getOperationCount();
+
+ long getFailedOperationCount();
+
+ long getRetryCount();
+
+ double getOperationLatencyMean();
+
+ double getOperationLatency50thPercentile();
+
+ double getOperationLatency99thPercentile();
+
+ double getOperationLatency999thPercentile();
+
+ double getOperationLatencyMax();
+
+ long getBytesSent();
+
+ long getBytesReceived();
+
+ /**
+  * @return rows passed to batch operations
+  */
+ long getBatchRowCount();
+
+ /**
+  * @return rows of batch operations not applied or fetched
+  */
+ long getFailedBatchRowCount();
+
+ /**
+  * @return rows of batch operations per second of time spent in them, the
+  * throughput of a single caller running batches back to back
+  */
+ double getBatchRowsPerSecond();
+}
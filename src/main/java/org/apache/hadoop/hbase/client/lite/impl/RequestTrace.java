@@ -0,0 +1,205 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import org.apache.hadoop.hbase.client.lite.ClientMetrics.Operation;
+import org.apache.hadoop.hbase.client.lite.RequestTiming;
+
+/**
+* Collects the phase timestamps of an operation for a
+* {@link org.apache.hadoop.hbase.client.lite.RequestListener}. Like the
+* deadline it is kept on the calling thread, set by {@link RetryPolicy} and
+* stamped by {@link Client} and the connection manager as the attempt
+* progresses. Only exists while a listener is installed.
+*
+* The response body may be read to the end on another thread, e.g. by a
+* hedged request, so the fields are volatile.
+*/
+final class RequestTrace implements RequestTiming {
+ private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+
+ private final Operation operation;
+ private final long start;
+ private volatile String host;
+ private volatile int status;
+ private volatile int attempts;
+ private volatile Throwable failure;
+ private volatile long requestBytes;
+ private volatile long responseBytes;
+ private volatile long authNanos;
+ private volatile long attempt;
+ private volatile long leased;
+ private volatile long connected;
+ private volatile long written;
+ private volatile long firstByte;
+ private volatile long bodyRead;
+ private volatile long end;
+
+ RequestTrace(Operation operation) {
+   this.operation = operation;
+   this.start = System.nanoTime();
+ }
+
+ /**
+  * @return the trace of the calling thread's operation, null if none
+  */
+ static RequestTrace current() {
+   return CURRENT.get();
+ }
+
+ /**
+  * Make a trace that of the calling thread's operation.
+  * @param trace the trace, null for none
+  * @return the previous trace, to be restored when the operation ends
+  */
+ static RequestTrace set(RequestTrace trace) {
+   RequestTrace previous = CURRENT.get();
+   if (trace != null) {
+     CURRENT.set(trace);
+   } else {
+     CURRENT.remove();
+   }
+   return previous;
+ }
+
+ /**
+  * A new exchange begins, forgetting the phases of the previous one
+  */
+ void attempt(String host) {
+   this.host = host;
+   attempts++;
+   status = 0;
+   requestBytes = -1;
+   responseBytes = -1;
+   authNanos = 0;
+   leased = 0;
+   connected = 0;
+   written = 0;
+   firstByte = 0;
+   bodyRead = 0;
+   attempt = System.nanoTime();
+ }
+
+ void leased() {
+   leased = System.nanoTime();
+ }
+
+ void connected() {
+   connected = System.nanoTime();
+ }
+
+ void written(long bytes) {
+   written = System.nanoTime();
+   requestBytes = bytes;
+ }
+
+ /**
+  * The exchange was rejected with 401 and is sent again with new
+  * credentials, the time so far is spent on authentication
+  */
+ void reauthenticate() {
+   long now = System.nanoTime();
+   authNanos += now - attempt;
+   attempt = now;
+   leased = 0;
+   connected = 0;
+   written = 0;
+   requestBytes = -1;
+ }
+
+ void firstByte(int status) {
+   firstByte = System.nanoTime();
+   this.status = status;
+ }
+
+ void bodyRead(long bytes) {
+   bodyRead = System.nanoTime();
+   responseBytes = bytes;
+ }
+
+ void end(Throwable failure) {
+   this.failure = failure;
+   end = System.nanoTime();
+ }
+
+ @Override public Operation getOperation() {
+   return operation;
+ }
+
+ @Override public String getHost() {
+   return host;
+ }
+
+ @Override public int getStatus() {
+   return status;
+ }
+
+ @Override public int getAttempts() {
+   return attempts;
+ }
+
+ @Override public Throwable getFailure() {
+   return failure;
+ }
+
+ @Override public long getRequestBytes() {
+   return requestBytes;
+ }
+
+ @Override public long getResponseBytes() {
+   return responseBytes;
+ }
+
+ @Override public long getAuthNanos() {
+   return authNanos;
+ }
+
+ @Override public long getStartNanos() {
+   return start;
+ }
+
+ @Override public long getAttemptNanos() {
+   return attempt;
+ }
+
+ @Override public long getLeasedNanos() {
+   return leased;
+ }
+
+ @Override public long getConnectedNanos() {
+   return connected;
+ }
+
+ @Override public long getWrittenNanos() {
+   return written;
+ }
+
+ @Override public long getFirstByteNanos() {
+   return firstByte;
+ }
+
+ @Override public long getBodyReadNanos() {
+   return bodyRead;
+ }
+
+ @Override public long getEndNanos() {
+   return end;
+ }
+}
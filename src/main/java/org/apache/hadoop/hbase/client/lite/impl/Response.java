@@ -18,6 +18,7 @@
 */
 
 package org.apache.hadoop.hbase.client.lite.impl;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -26,13 +27,17 @@ import org.apache.http.HttpResponse;
 
 /**
 * The HTTP result code, response headers, and body of a HTTP response.
+*
+* A response created from a stream holds on to its connection until it is
+* closed, closing a buffered response does nothing.
 */
-public class Response {
+public class Response implements Closeable {
  private int code;
  private Header[] headers;
  private byte[] body;
  private HttpResponse resp;
  private InputStream stream;
+ private boolean abandoned;
 
  /**
   * Constructor
@@ -159,4 +164,39 @@ public class Response {
  public void setBody(byte[] body) {
    this.body = body;
  }
+
+ /**
+  * Mark the body of a streamed response as not worth reading to the end, i.e.
+  * because it exceeded the size limit, so that closing the response closes
+  * its connection instead.
+  */
+ void abandon() {
+   abandoned = true;
+ }
+
+ /**
+  * Release the connection of a streamed response. The rest of the body is
+  * read so that the connection goes back to the pool, unless the response
+  * was {@link #abandon() abandoned}, which closes the connection.
+  */
+ @Override
+ public void close() throws IOException {
+   InputStream in = stream;
+   stream = null;
+   try {
+     if (in != null && !abandoned) {
+       in.close();
+     }
+   } finally {
+     try {
+       if (resp instanceof Closeable) {
+         // Discards the connection unless closing the stream released it
+         ((Closeable) resp).close();
+       }
+     } finally {
+       // A body abandoned with the connection no longer holds its limiter slot
+       ReleasingEntity.release(resp);
+     }
+   }
+ }
 }
@@ -72,9 +72,9 @@ public class ResultImpl implements Result {
  private boolean mayHaveMoreCellsInRow = false;
  // We're not using java serialization.  Transient here is just a marker to say
  // that this is where we cache row if we're ever asked for it.
- private transient byte [] row = null;
+ private transient volatile byte [] row = null;
  // Ditto for familyMap.  It can be composed on fly from passed in kvs.
- private transient NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>>
+ private transient volatile NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>>
      familyMap = null;
 
  private static ThreadLocal<byte[]> localBuffer = new ThreadLocal<>();
@@ -158,6 +158,14 @@ public class ResultImpl implements Result {
    this.readonly = false;
  }
 
+ /**
+  * @return a Result of the same cells with an array of its own, which can be
+  * modified without affecting this one
+  */
+ ResultImpl copy() {
+   return new ResultImpl(cells != null ? cells.clone() : null, exists, stale, mayHaveMoreCellsInRow);
+ }
+
  /**
   * Method for retrieving the row key that corresponds to
   * the row from which this Result was created.
@@ -743,7 +751,9 @@ public boolean containsColumn(String family, String qualifier) {
    if(isEmpty()) {
      return null;
    }
-   this.familyMap = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+   // Built aside and then published, a Result may be shared between threads
+   NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>> familyMap =
+     new TreeMap<>(Bytes.BYTES_COMPARATOR);
    for(Cell kv : this.cells) {
      byte [] family = CellUtil.cloneFamily(kv);
      NavigableMap<byte[], NavigableMap<Long, byte[]>> columnMap = familyMap.get(family);
@@ -767,7 +777,8 @@ public boolean containsColumn(String family, String qualifier) {
 
      versionMap.put(timestamp, value);
    }
-   return this.familyMap;
+   this.familyMap = familyMap;
+   return familyMap;
  }
 
  /**
@@ -0,0 +1,109 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* Token bucket limiting retries to a fraction of the requests made by a
+* client. Every request deposits a fraction of a token and every retry
+* withdraws a whole one; a small number of retries per second is always
+* allowed so that a quiet client can still retry. When the gateways are
+* overloaded the budget runs dry and failures are returned to the caller
+* instead of multiplying the load.
+*/
+public class RetryBudget {
+ public static final double DEFAULT_RETRY_RATIO = 0.2;
+ public static final int DEFAULT_MIN_RETRIES_PER_SECOND = 10;
+
+ /**
+  * Balance is kept in thousandths of a token
+  */
+ private static final long TOKEN = 1000;
+
+ private final long depositPerRequest;
+ private final long minRetriesPerSecond;
+ private final long capacity;
+ private final AtomicLong balance;
+ private final AtomicLong lastRefill = new AtomicLong(System.nanoTime());
+
+ public RetryBudget() {
+   this(DEFAULT_RETRY_RATIO, DEFAULT_MIN_RETRIES_PER_SECOND);
+ }
+
+ /**
+  * @param retryRatio retries allowed per request, e.g. 0.2 for one retry every five requests
+  * @param minRetriesPerSecond retries allowed per second regardless of the request rate
+  */
+ public RetryBudget(double retryRatio, int minRetriesPerSecond) {
+   this.depositPerRequest = Math.max(0, Math.round(retryRatio * TOKEN));
+   this.minRetriesPerSecond = Math.max(0, minRetriesPerSecond);
+   this.capacity = TOKEN * Math.max(10, this.minRetriesPerSecond);
+   this.balance = new AtomicLong(capacity);
+ }
+
+ /**
+  * Record a new (non-retry) request.
+  */
+ public void onRequest() {
+   deposit(depositPerRequest);
+ }
+
+ /**
+  * @return true if a retry may be made, in which case its token was withdrawn
+  */
+ public boolean tryAcquire() {
+   refill();
+   long current;
+   do {
+     current = balance.get();
+     if (current < TOKEN) {
+       return false;
+     }
+   } while (!balance.compareAndSet(current, current - TOKEN));
+   return true;
+ }
+
+ /**
+  * @return number of retries currently available
+  */
+ public double getAvailable() {
+   refill();
+   return balance.get() / (double) TOKEN;
+ }
+
+ /*
+  * One token per second is one thousandth of a token per millisecond
+  */
+ private void refill() {
+   long now = System.nanoTime();
+   long last = lastRefill.get();
+   long elapsedMillis = (now - last) / 1000000L;
+   if (elapsedMillis > 0 && lastRefill.compareAndSet(last, last + elapsedMillis * 1000000L)) {
+     deposit(elapsedMillis * minRetriesPerSecond);
+   }
+ }
+
+ private void deposit(long amount) {
+   if (amount > 0) {
+     balance.accumulateAndGet(amount, (b, x) -> Math.min(capacity, b + x));
+   }
+ }
+}
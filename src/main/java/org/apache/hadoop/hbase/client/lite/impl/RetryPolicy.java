@@ -0,0 +1,442 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.client.lite.BackoffPolicy;
+import org.apache.hadoop.hbase.client.lite.ClientMetrics;
+import org.apache.hadoop.hbase.client.lite.ClientMetrics.Operation;
+import org.apache.hadoop.hbase.client.lite.ConcurrencyLimitExceededException;
+import org.apache.hadoop.hbase.client.lite.ExponentialBackoff;
+import org.apache.hadoop.hbase.client.lite.OperationTimeoutException;
+import org.apache.hadoop.hbase.client.lite.RequestListener;
+import org.apache.http.Header;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+
+/**
+* Retries requests the gateway rejected or that failed in transit, shared by
+* the blocking and the non-blocking tables.
+*
+* <ul>
+* <li>509, 429 and 503 responses were rejected before any work was done and
+* are always retried.</li>
+* <li>500, 502 and 504 responses, read timeouts and dropped connections may
+* have been applied by the gateway and are only retried for idempotent
+* operations.</li>
+* <li>A failure to connect never reached a gateway and is always retried.</li>
+* </ul>
+*
+* The wait before each retry comes from the {@link BackoffPolicy}, or the
+* gateway's <tt>Retry-After</tt> header if that is longer. Every retry also
+* needs a token from the client-wide {@link RetryBudget}.
+*
+* An operation may be given a deadline spanning all of its attempts. It is
+* checked before each attempt, bounds the timeouts of the attempt, and a
+* retry whose wait would overrun it fails at once with an
+* {@link OperationTimeoutException}.
+*/
+public class RetryPolicy {
+ private static final Log LOG = LogFactory.getLog(RetryPolicy.class);
+
+ public static final long DEFAULT_MAX_BACKOFF_TIME = 30000;
+ /**
+  * Longest Retry-After honoured, a gateway asking for more is retried sooner
+  */
+ public static final long MAX_RETRY_AFTER = 60000;
+
+ private static final int SC_TOO_MANY_REQUESTS = 429;
+ private static final int SC_BANDWIDTH_LIMIT_EXCEEDED = 509;
+
+ private final int maxRetries;
+ private final BackoffPolicy backoff;
+ private final RetryBudget budget;
+
+ /**
+  * Operation in progress on the calling thread, read by {@link Client} to
+  * attribute each exchange to its operation
+  */
+ private static final ThreadLocal<Operation> OPERATION = new ThreadLocal<>();
+
+ private volatile ClientMetrics metrics = ClientMetrics.NOOP;
+ private volatile RequestListener listener;
+
+ private final AtomicLong retries = new AtomicLong();
+ private final AtomicLong waitMillis = new AtomicLong();
+ private final AtomicLong budgetExhausted = new AtomicLong();
+
+ /**
+  * Exponential backoff from <tt>sleepTime</tt> with the default retry budget
+  * @param maxRetries number of times to attempt a request
+  * @param sleepTime upper bound in milliseconds of the delay before the first retry
+  */
+ public RetryPolicy(int maxRetries, long sleepTime) {
+   this(maxRetries, new ExponentialBackoff(sleepTime, Math.max(sleepTime, DEFAULT_MAX_BACKOFF_TIME)),
+     new RetryBudget());
+ }
+
+ /**
+  * @param maxRetries number of times to attempt a request
+  * @param backoff delay before each retry
+  * @param budget limits retries across all operations of the client
+  */
+ public RetryPolicy(int maxRetries, BackoffPolicy backoff, RetryBudget budget) {
+   this.maxRetries = maxRetries;
+   this.backoff = backoff;
+   this.budget = budget;
+ }
+
+ /**
+  * Execute a request until it succeeds, fails with a non-retryable error or
+  * runs out of retries.
+  * @param description used in failures, i.e. "put request"
+  * @param idempotent true if repeating a request that may have been applied is harmless
+  * @param request performs a single attempt
+  * @param handler converts the final response into the result, the response
+  * is closed once it returns
+  * @return the result of the handler
+  * @throws IOException
+  */
+ public <T> T execute(String description, boolean idempotent, Request request,
+     ResponseHandler<T> handler) throws IOException {
+   return execute(description, idempotent, 0, request, handler);
+ }
+
+ /**
+  * Execute a request until it succeeds, fails with a non-retryable error,
+  * runs out of retries or exceeds its deadline.
+  * @param description used in failures, i.e. "put request"
+  * @param idempotent true if repeating a request that may have been applied is harmless
+  * @param timeout milliseconds the operation may take in all, 0 for no deadline
+  * @param request performs a single attempt
+  * @param handler converts the final response into the result, the response
+  * is closed once it returns
+  * @return the result of the handler
+  * @throws OperationTimeoutException if the deadline was exceeded
+  * @throws IOException
+  */
+ public <T> T execute(String description, boolean idempotent, long timeout, Request request,
+     ResponseHandler<T> handler) throws IOException {
+   return execute(Operation.OTHER, description, idempotent, timeout, request, handler);
+ }
+
+ /**
+  * Execute a request until it succeeds, fails with a non-retryable error,
+  * runs out of retries or exceeds its deadline.
+  * @param operation the kind of operation, for the metrics
+  * @param description used in failures, i.e. "put request"
+  * @param idempotent true if repeating a request that may have been applied is harmless
+  * @param timeout milliseconds the operation may take in all, 0 for no deadline
+  * @param request performs a single attempt
+  * @param handler converts the final response into the result, the response
+  * is closed once it returns
+  * @return the result of the handler
+  * @throws OperationTimeoutException if the deadline was exceeded
+  * @throws IOException
+  */
+ public <T> T execute(Operation operation, String description, boolean idempotent, long timeout,
+     Request request, ResponseHandler<T> handler) throws IOException {
+   Deadline deadline = timeout > 0 ? Deadline.after(timeout) : Deadline.current();
+   Deadline previous = Deadline.set(deadline);
+   Operation previousOperation = setOperation(operation);
+   RequestListener listener = this.listener;
+   RequestTrace trace = null;
+   RequestTrace previousTrace = null;
+   if (listener != null) {
+     trace = new RequestTrace(operation);
+     previousTrace = RequestTrace.set(trace);
+   }
+   Object event = FlightRecorderEvents.beginOperation();
+   long start = System.nanoTime();
+   boolean failed = true;
+   int retries = 0;
+   Throwable thrown = null;
+   try {
+     onRequest();
+     IOException failure = null;
+     for (int retry = 1; ; retry++) {
+       if (deadline != null && deadline.isExpired()) {
+         throw deadline.timeout(description, failure);
+       }
+       failure = null;
+       long retryAfter = -1;
+       Response response = null;
+       try {
+         response = request.execute();
+       } catch (OperationTimeoutException e) {
+         throw e;
+       } catch (IOException e) {
+         if (deadline != null && deadline.isExpired()) {
+           throw deadline.timeout(description, e);
+         }
+         if (!isRetryable(e, idempotent)) {
+           throw e;
+         }
+         failure = e;
+       }
+       if (response != null) {
+         try {
+           if (!isRetryable(response.getCode(), idempotent)) {
+             T result = handler.handle(response);
+             failed = false;
+             return result;
+           }
+           retryAfter = getRetryAfter(response.getHeaders());
+         } finally {
+           response.close();
+         }
+       }
+       long delay = nextDelay(description, retry, retryAfter, failure);
+       if (deadline != null && delay >= deadline.remaining()) {
+         // Waiting would only end in a timeout
+         throw deadline.timeout(description, failure);
+       }
+       metrics.onRetry(operation);
+       retries++;
+       if (delay > 0) {
+         try {
+           Thread.sleep(delay);
+         } catch (InterruptedException e) {
+           throw (InterruptedIOException)new InterruptedIOException().initCause(e);
+         }
+       }
+     }
+   } catch (IOException | RuntimeException e) {
+     thrown = e;
+     throw e;
+   } finally {
+     Deadline.set(previous);
+     setOperation(previousOperation);
+     metrics.onOperation(operation, System.nanoTime() - start, failed);
+     FlightRecorderEvents.commitOperation(event, operation, description, retries, failed);
+     if (trace != null) {
+       RequestTrace.set(previousTrace);
+       trace.end(thrown);
+       try {
+         listener.onRequestComplete(trace);
+       } catch (RuntimeException e) {
+         LOG.warn("Request listener failed", e);
+       }
+     }
+   }
+ }
+
+ /**
+  * @return the operation in progress on the calling thread, OTHER if none
+  */
+ static Operation currentOperation() {
+   Operation operation = OPERATION.get();
+   return operation != null ? operation : Operation.OTHER;
+ }
+
+ /**
+  * Make an operation that in progress on the calling thread.
+  * @param operation the operation, null for none
+  * @return the previous operation, to be restored when the operation ends
+  */
+ static Operation setOperation(Operation operation) {
+   Operation previous = OPERATION.get();
+   if (operation != null) {
+     OPERATION.set(operation);
+   } else {
+     OPERATION.remove();
+   }
+   return previous;
+ }
+
+ /**
+  * @param metrics receives the latency of each operation and its retries
+  */
+ public void setMetrics(ClientMetrics metrics) {
+   this.metrics = metrics != null ? metrics : ClientMetrics.NOOP;
+ }
+
+ /**
+  * @return receives the latency of each operation and its retries
+  */
+ public ClientMetrics getMetrics() {
+   return metrics;
+ }
+
+ /**
+  * @param listener told of the phases of every operation, null for none
+  */
+ public void setRequestListener(RequestListener listener) {
+   this.listener = listener;
+ }
+
+ /**
+  * @return told of the phases of every operation, null if none
+  */
+ public RequestListener getRequestListener() {
+   return listener;
+ }
+
+ /**
+  * Record a new operation, which earns the retry budget a fraction of a retry.
+  */
+ public void onRequest() {
+   budget.onRequest();
+ }
+
+ /**
+  * Decide on a retry after a retryable failure.
+  * @param description used in failures, i.e. "put request"
+  * @param retry the number of the retry about to be made, starting at 1
+  * @param retryAfter milliseconds requested by the gateway, -1 if none
+  * @param failure the I/O failure of the last attempt, null if the gateway rejected it
+  * @return milliseconds to wait before the retry
+  * @throws IOException if no retry may be made
+  */
+ public long nextDelay(String description, int retry, long retryAfter, IOException failure)
+     throws IOException {
+   if (retry >= maxRetries) {
+     throw new IOException(description + " timed out", failure);
+   }
+   if (!budget.tryAcquire()) {
+     budgetExhausted.incrementAndGet();
+     throw new IOException(description + " failed, retry budget exhausted", failure);
+   }
+   long delay = Math.max(backoff.getDelay(retry), Math.min(retryAfter, MAX_RETRY_AFTER));
+   retries.incrementAndGet();
+   waitMillis.addAndGet(delay);
+   if (LOG.isDebugEnabled()) {
+     LOG.debug(description + " retry " + retry + " in " + delay + " ms" +
+       (failure != null ? " after " + failure : ""));
+   }
+   return delay;
+ }
+
+ /**
+  * @return true if a response with the given status code should be retried
+  */
+ public static boolean isRetryable(int code, boolean idempotent) {
+   switch (code) {
+   case SC_BANDWIDTH_LIMIT_EXCEEDED:
+   case SC_TOO_MANY_REQUESTS:
+   case 503:
+     return true;
+   case 500:
+   case 502:
+   case 504:
+     return idempotent;
+   default:
+     return false;
+   }
+ }
+
+ /**
+  * @return true if a request failing with the given exception should be retried
+  */
+ public static boolean isRetryable(IOException e, boolean idempotent) {
+   if (e instanceof ConnectException || e instanceof ConnectTimeoutException ||
+       e instanceof ConcurrencyLimitExceededException) {
+     // never reached the gateway
+     return true;
+   }
+   if (e instanceof SocketTimeoutException || e instanceof NoHttpResponseException ||
+       e instanceof SocketException) {
+     // may have been applied by the gateway
+     return idempotent;
+   }
+   return false;
+ }
+
+ /**
+  * @param headers the response headers
+  * @return milliseconds requested by a Retry-After header, -1 if there is none
+  */
+ public static long getRetryAfter(Header[] headers) {
+   if (headers == null) {
+     return -1;
+   }
+   for (Header header : headers) {
+     if (!header.getName().equalsIgnoreCase("Retry-After")) {
+       continue;
+     }
+     String value = header.getValue().trim();
+     try {
+       return Math.max(0, Long.parseLong(value) * 1000L);
+     } catch (NumberFormatException e) {
+       Date date = DateUtils.parseDate(value);
+       if (date != null) {
+         return Math.max(0, date.getTime() - System.currentTimeMillis());
+       }
+     }
+   }
+   return -1;
+ }
+
+ /**
+  * @return the retry budget shared by all operations of the client
+  */
+ public RetryBudget getBudget() {
+   return budget;
+ }
+
+ public int getMaxRetries() {
+   return maxRetries;
+ }
+
+ /**
+  * @return total number of retries made
+  */
+ public long getRetryCount() {
+   return retries.get();
+ }
+
+ /**
+  * @return total milliseconds spent waiting before retries
+  */
+ public long getRetryWaitMillis() {
+   return waitMillis.get();
+ }
+
+ /**
+  * @return number of failures returned because the retry budget was exhausted
+  */
+ public long getBudgetExhaustedCount() {
+   return budgetExhausted.get();
+ }
+
+ /**
+  * Performs a single attempt of a request
+  */
+ public interface Request {
+   Response execute() throws IOException;
+ }
+
+ /**
+  * Converts a final (non-retried) response into the operation result
+  */
+ public interface ResponseHandler<T> {
+   T handle(Response response) throws IOException;
+ }
+}
@@ -0,0 +1,66 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+* The HTTP implementation beneath {@link Client}. Requests and responses are
+* expressed in HttpClient 4 types whichever library carries them, so that the
+* rest of the client is unaware of the wire protocol.
+*
+* Implementations must be thread-safe.
+*/
+public interface Transport extends Closeable {
+ /**
+  * Execute a request. The response entity must be consumed or the request
+  * released by the caller.
+  * @param request the request with a complete URI
+  * @return the response
+  * @throws IOException
+  */
+ HttpResponse execute(HttpUriRequest request) throws IOException;
+
+ /**
+  * Execute a request within the time left to its operation.
+  * @param request the request with a complete URI
+  * @param timeout milliseconds the connect, the wait for a pooled connection
+  * and the wait for the response may each take at most, 0 for the transport's
+  * own timeouts
+  * @return the response
+  * @throws IOException
+  */
+ default HttpResponse execute(HttpUriRequest request, int timeout) throws IOException {
+   return execute(request);
+ }
+
+ /**
+  * Close the idle connections to a host removed from the cluster, once no
+  * request is in flight to it. Transports that cannot do so rely on idle
+  * connection eviction.
+  * @param host the service location in 'host:port' format
+  */
+ default void drain(String host) {
+ }
+}
@@ -0,0 +1,231 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import org.apache.hadoop.hbase.client.lite.Cell;
+import org.apache.hadoop.hbase.client.lite.ClientMetrics.Operation;
+
+/**
+* Emits Java Flight Recorder events for HTTP exchanges, operations and scanner
+* pages, so that client latency can be lined up with GC and safepoints in the
+* same recording.
+*
+* This is the Java 11 version, packaged in <tt>META-INF/versions/11</tt> of the
+* multi-release jar in place of the no-op Java 8 version, whose methods it
+* must keep. An event is only created while its type is enabled in a
+* recording, otherwise each call costs a volatile read.
+*/
+final class FlightRecorderEvents {
+ private static final String CATEGORY = "HBase Lite REST Client";
+
+ private static final EventType EXCHANGE = EventType.getEventType(ExchangeEvent.class);
+ private static final EventType OPERATION = EventType.getEventType(OperationEvent.class);
+ private static final EventType SCANNER_CHUNK = EventType.getEventType(ScannerChunkEvent.class);
+
+ private FlightRecorderEvents() {
+ }
+
+ static Object beginExchange() {
+   if (!EXCHANGE.isEnabled()) {
+     return null;
+   }
+   ExchangeEvent event = new ExchangeEvent();
+   event.begin();
+   return event;
+ }
+
+ static void commitExchange(Object event, Operation operation, String host, String method,
+     String path, int status, long requestBytes, long responseBytes) {
+   if (event == null) {
+     return;
+   }
+   ExchangeEvent e = (ExchangeEvent) event;
+   e.end();
+   if (e.shouldCommit()) {
+     e.operation = operation.name();
+     e.table = table(path);
+     e.host = host;
+     e.method = method;
+     e.status = status;
+     e.requestBytes = requestBytes;
+     e.responseBytes = responseBytes;
+     e.commit();
+   }
+ }
+
+ static Object beginOperation() {
+   if (!OPERATION.isEnabled()) {
+     return null;
+   }
+   OperationEvent event = new OperationEvent();
+   event.begin();
+   return event;
+ }
+
+ static void commitOperation(Object event, Operation operation, String description, int retries,
+     boolean failed) {
+   if (event == null) {
+     return;
+   }
+   OperationEvent e = (OperationEvent) event;
+   e.end();
+   if (e.shouldCommit()) {
+     e.operation = operation.name();
+     e.description = description;
+     e.retries = retries;
+     e.failed = failed;
+     e.commit();
+   }
+ }
+
+ static Object beginScannerChunk() {
+   if (!SCANNER_CHUNK.isEnabled()) {
+     return null;
+   }
+   ScannerChunkEvent event = new ScannerChunkEvent();
+   event.begin();
+   return event;
+ }
+
+ static void commitScannerChunk(Object event, String table, ResultImpl[] rows) {
+   if (event == null) {
+     return;
+   }
+   int cells = 0;
+   long bytes = 0;
+   if (rows != null) {
+     for (ResultImpl row : rows) {
+       for (Cell cell : row.rawCells()) {
+         cells++;
+         bytes += cell.getRowLength() + cell.getFamilyLength() + cell.getQualifierLength() +
+           cell.getValueLength();
+       }
+     }
+   }
+   commitScannerChunk(event, table, rows != null ? rows.length : 0, cells, bytes);
+ }
+
+ static void commitScannerChunk(Object event, String table, int rows, int cells, long bytes) {
+   if (event == null) {
+     return;
+   }
+   ScannerChunkEvent e = (ScannerChunkEvent) event;
+   e.end();
+   if (e.shouldCommit()) {
+     e.table = table;
+     e.rows = rows;
+     e.cells = cells;
+     e.bytes = bytes;
+     e.commit();
+   }
+ }
+
+ /*
+  * The table is the first segment of a path or of the path of a URI
+  */
+ private static String table(String path) {
+   int start = path.startsWith("/") ? 1 : path.indexOf('/', path.indexOf("//") + 2) + 1;
+   if (start <= 0) {
+     return null;
+   }
+   int end = start;
+   while (end < path.length() && "/?".indexOf(path.charAt(end)) < 0) {
+     end++;
+   }
+   return path.substring(start, end);
+ }
+
+ @Name("org.apache.hadoop.hbase.client.lite.Exchange")
+ @Label("REST Exchange")
+ @Description("HTTP exchange with a REST gateway, up to the response headers")
+ @Category(CATEGORY)
+ static final class ExchangeEvent extends Event {
+   @Label("Operation")
+   String operation;
+
+   @Label("Table")
+   String table;
+
+   @Label("Host")
+   String host;
+
+   @Label("Method")
+   String method;
+
+   @Label("Status")
+   @Description("HTTP status code, 0 if no response was received")
+   int status;
+
+   @Label("Request Bytes")
+   @DataAmount
+   long requestBytes;
+
+   @Label("Response Bytes")
+   @Description("Content length of the response, -1 if not known in advance")
+   @DataAmount
+   long responseBytes;
+ }
+
+ @Name("org.apache.hadoop.hbase.client.lite.Operation")
+ @Label("REST Operation")
+ @Description("Operation across all of its attempts, failovers and retries")
+ @Category(CATEGORY)
+ static final class OperationEvent extends Event {
+   @Label("Operation")
+   String operation;
+
+   @Label("Description")
+   String description;
+
+   @Label("Retries")
+   int retries;
+
+   @Label("Failed")
+   boolean failed;
+ }
+
+ @Name("org.apache.hadoop.hbase.client.lite.ScannerChunk")
+ @Label("REST Scanner Chunk")
+ @Description("Page of rows fetched and decoded by a scanner")
+ @Category(CATEGORY)
+ static final class ScannerChunkEvent extends Event {
+   @Label("Table")
+   String table;
+
+   @Label("Rows")
+   int rows;
+
+   @Label("Cells")
+   int cells;
+
+   @Label("Bytes")
+   @Description("Size of the row keys, columns and values decoded")
+   @DataAmount
+   long bytes;
+ }
+}
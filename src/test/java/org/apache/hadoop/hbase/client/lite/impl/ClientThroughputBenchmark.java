@@ -0,0 +1,112 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.client.lite.Get;
+import org.apache.hadoop.hbase.client.lite.RemoteHTable;
+import org.apache.hadoop.hbase.client.lite.RemoteHTableBuilder;
+import org.apache.hadoop.hbase.client.lite.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+* Throughput of gets through a single table shared by 1 to 256 threads,
+* against a stub gateway. With a service time the gateway is the bottleneck
+* and throughput should grow with the threads until the pool is exhausted,
+* without one the client's own overhead and contention are measured.
+*
+* Run with main, which prints the operations per second for each thread count.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientThroughputBenchmark {
+ private static final int MAX_THREADS = 256;
+
+ /**
+  * Gateway service time in microseconds
+  */
+ @Param({"0", "1000"})
+ public long serviceMicros;
+
+ private StubGateway gateway;
+ private RemoteHTable table;
+
+ @Setup
+ public void setUp() throws IOException {
+   gateway = new StubGateway(StubGateway.cellSet(1, 10, 64, true), serviceMicros);
+   table = RemoteHTableBuilder.create("benchmark")
+       .addHost(gateway.getHost())
+       .withMaxConnections(MAX_THREADS)
+       .withMaxConnectionsPerHost(MAX_THREADS)
+       .build();
+ }
+
+ @TearDown
+ public void tearDown() throws IOException {
+   table.close();
+   gateway.close();
+ }
+
+ @Benchmark
+ public Result get() throws IOException {
+   return table.get(new Get(Bytes.toBytes("row")));
+ }
+
+ public static void main(String[] args) throws RunnerException {
+   List<String> lines = new ArrayList<>();
+   for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+     Options options = new OptionsBuilder()
+         .include(ClientThroughputBenchmark.class.getName())
+         .threads(threads)
+         .build();
+     for (RunResult result : new Runner(options).run()) {
+       lines.add(String.format("%6s %7d %12.0f", result.getParams().getParam("serviceMicros"),
+         threads, result.getPrimaryResult().getScore()));
+     }
+   }
+   System.out.println("service threads        ops/s");
+   lines.sort(null);
+   lines.forEach(System.out::println);
+ }
+}
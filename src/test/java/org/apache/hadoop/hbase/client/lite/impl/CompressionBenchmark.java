@@ -0,0 +1,169 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+* CPU spent compressing and decompressing CellSet bodies through
+* {@link ContentCoding} against the bytes saved, for tuning the request
+* compression threshold. Rows have ten cells of 100 bytes, either JSON-like
+* text or random binary values that do not compress.
+*
+* Run with main, which prints per payload the plain and gzip sizes, the time
+* to send and receive each, and the microseconds of CPU paid per kilobyte
+* saved. Compression pays when that is below the time a kilobyte takes on the
+* link, about 80us at 100Mbit/s.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+ private static final int COLUMNS = 10;
+ private static final int VALUE_SIZE = 100;
+
+ @Param({"1", "10", "100", "1000"})
+ public int rows;
+
+ @Param({"text", "binary"})
+ public String values;
+
+ private ByteArrayEntity plain;
+ private byte[] gzipped;
+ private ByteArrayOutputStream out;
+ private final byte[] buffer = new byte[8192];
+
+ @Setup
+ public void setUp() throws IOException {
+   byte[] cells = StubGateway.cellSet(rows, COLUMNS, VALUE_SIZE, "text".equals(values));
+   plain = new ByteArrayEntity(cells, ContentType.create(Constants.MIMETYPE_PROTOBUF));
+   out = new ByteArrayOutputStream(cells.length);
+   gzipped = gzip(plain);
+ }
+
+ @Benchmark
+ public int sendPlain() throws IOException {
+   out.reset();
+   ContentCoding.encode(plain, -1, null).writeTo(out);
+   return out.size();
+ }
+
+ @Benchmark
+ public int sendGzip() throws IOException {
+   out.reset();
+   ContentCoding.encode(plain, 0, null).writeTo(out);
+   return out.size();
+ }
+
+ @Benchmark
+ public long receivePlain() throws IOException {
+   return receive(plain);
+ }
+
+ @Benchmark
+ public long receiveGzip() throws IOException {
+   ByteArrayEntity entity = new ByteArrayEntity(gzipped, ContentType.create(Constants.MIMETYPE_PROTOBUF));
+   entity.setContentEncoding("gzip");
+   return receive(entity);
+ }
+
+ private long receive(ByteArrayEntity entity) throws IOException {
+   HttpResponse resp = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+   resp.setEntity(entity);
+   ContentCoding.decode(resp);
+   long total = 0;
+   try (InputStream in = resp.getEntity().getContent()) {
+     for (int n; (n = in.read(buffer)) != -1; ) {
+       total += n;
+     }
+   }
+   return total;
+ }
+
+ private static byte[] gzip(ByteArrayEntity entity) throws IOException {
+   ByteArrayOutputStream out = new ByteArrayOutputStream();
+   ContentCoding.encode(entity, 0, null).writeTo(out);
+   return out.toByteArray();
+ }
+
+ public static void main(String[] args) throws RunnerException, IOException {
+   Options options = new OptionsBuilder()
+       .include(CompressionBenchmark.class.getName())
+       .build();
+   Map<String, Double> times = new HashMap<>();
+   for (RunResult result : new Runner(options).run()) {
+     String benchmark = result.getParams().getBenchmark();
+     times.put(benchmark.substring(benchmark.lastIndexOf('.') + 1) + '/' +
+       result.getParams().getParam("values") + '/' + result.getParams().getParam("rows"),
+       result.getPrimaryResult().getScore());
+   }
+   List<String> lines = new ArrayList<>();
+   for (String values : new String[] {"text", "binary"}) {
+     for (int rows : new int[] {1, 10, 100, 1000}) {
+       byte[] cells = StubGateway.cellSet(rows, COLUMNS, VALUE_SIZE, "text".equals(values));
+       int plainSize = cells.length;
+       int gzipSize = gzip(new ByteArrayEntity(cells)).length;
+       String key = '/' + values + '/' + rows;
+       double cpu = times.get("sendGzip" + key) - times.get("sendPlain" + key) +
+         times.get("receiveGzip" + key) - times.get("receivePlain" + key);
+       double savedKb = (plainSize - gzipSize) / 1024.0;
+       lines.add(String.format("%-6s %5d %9d %9d %8.1f %8.1f %8.1f %8.1f %10s",
+         values, rows, plainSize, gzipSize, times.get("sendPlain" + key), times.get("sendGzip" + key),
+         times.get("receivePlain" + key), times.get("receiveGzip" + key),
+         savedKb > 0 ? String.format("%.1f", cpu / savedKb) : "never"));
+     }
+   }
+   System.out.println("values  rows     plain      gzip send(us)   gz(us) recv(us)   gz(us) us/KB saved");
+   lines.forEach(System.out::println);
+ }
+}
@@ -0,0 +1,143 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ConcurrencyLimiterTest {
+ private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+ @Test
+ public void overloadCutsTheLimitOncePerRoundTrip() throws Exception {
+   ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 100, 0, 2.0);
+   for (int i = 0; i < 3; i++) {
+     assertTrue(limiter.acquire("a", 0));
+   }
+   long start = System.nanoTime();
+   limiter.onResponse("a", start, MILLIS, 509);
+   assertEquals(9, limiter.getLimit("a"));
+   // Sent before the cut, a burst of rejections counts once
+   limiter.onResponse("a", start, MILLIS, 429);
+   limiter.onFailure("a", start, true);
+   assertEquals(9, limiter.getLimit("a"));
+   assertEquals(0, limiter.getInFlight("a"));
+
+   assertTrue(limiter.acquire("a", 0));
+   limiter.onResponse("a", System.nanoTime(), MILLIS, 503);
+   assertEquals(8, limiter.getLimit("a"));
+ }
+
+ @Test
+ public void limitNeverDropsBelowOne() throws Exception {
+   ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 100, 0, 2.0);
+   for (int i = 0; i < 20; i++) {
+     assertTrue(limiter.acquire("a", 0));
+     limiter.onFailure("a", System.nanoTime(), true);
+   }
+   assertEquals(1, limiter.getLimit("a"));
+ }
+
+ @Test
+ public void risingLatencyCutsTheLimit() throws Exception {
+   ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 100, 0, 2.0);
+   for (int i = 0; i < 50; i++) {
+     assertTrue(limiter.acquire("a", 0));
+     limiter.onResponse("a", System.nanoTime(), (i < 5 ? 1 : 10) * MILLIS, 200);
+   }
+   assertTrue(limiter.getLimit("a") < 10);
+ }
+
+ @Test
+ public void limitGrowsWhileInUse() throws Exception {
+   ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 8, 0, 2.0);
+   for (int round = 0; round < 100; round++) {
+     int taken = 0;
+     while (limiter.acquire("a", 0)) {
+       taken++;
+     }
+     for (int i = 0; i < taken; i++) {
+       limiter.onResponse("a", System.nanoTime(), MILLIS, 200);
+     }
+   }
+   assertEquals(8, limiter.getLimit("a"));
+ }
+
+ @Test
+ public void unusedLimitDoesNotGrow() throws Exception {
+   ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 100, 0, 2.0);
+   for (int i = 0; i < 100; i++) {
+     assertTrue(limiter.acquire("a", 0));
+     limiter.onResponse("a", System.nanoTime(), MILLIS, 200);
+   }
+   assertEquals(10, limiter.getLimit("a"));
+ }
+
+ @Test
+ public void waitForSlotTimesOut() throws Exception {
+   ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 50, 2.0);
+   assertTrue(limiter.acquire("a", 0));
+   assertTrue(limiter.acquire("b", 0));
+   // Not waiting is not a rejection, the request moves on to the next host
+   assertFalse(limiter.acquire("a", 0));
+   assertEquals(0, limiter.getRejectedCount());
+
+   long start = System.nanoTime();
+   assertFalse(limiter.acquire("a", 50));
+   assertTrue(System.nanoTime() - start >= 50 * MILLIS);
+   assertEquals(1, limiter.getRejectedCount());
+
+   assertNull(limiter.acquire(new String[] {"a", "b"}, 50));
+   assertEquals(2, limiter.getRejectedCount());
+   assertEquals(0, limiter.getQueueDepth("a"));
+   assertEquals(0, limiter.getQueueDepth("b"));
+ }
+
+ @Test
+ public void releaseWakesWaiterOnAnyHost() throws Exception {
+   ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 0, 2.0);
+   assertTrue(limiter.acquire("a", 0));
+   assertTrue(limiter.acquire("b", 0));
+   CompletableFuture<String> waiter = CompletableFuture.supplyAsync(() -> {
+     try {
+       return limiter.acquire(new String[] {"a", "b"}, 10000);
+     } catch (Exception e) {
+       throw new IllegalStateException(e);
+     }
+   });
+   while (limiter.getQueueDepth("b") == 0) {
+     Thread.sleep(1);
+   }
+   long start = System.nanoTime();
+   limiter.onResponse("b", System.nanoTime(), MILLIS, 200);
+   assertEquals("b", waiter.get(5, TimeUnit.SECONDS));
+   assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+   assertEquals(1, limiter.getInFlight("a"));
+   assertEquals(1, limiter.getInFlight("b"));
+   assertEquals(0, limiter.getRejectedCount());
+ }
+}
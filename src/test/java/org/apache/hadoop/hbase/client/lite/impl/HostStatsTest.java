@@ -0,0 +1,65 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HostStatsTest {
+ private static final int THRESHOLD = 3;
+
+ @Test
+ public void serverErrorsEjectTheHost() {
+   HostStats stats = new HostStats("a:8080");
+   for (int i = 0; i < THRESHOLD; i++) {
+     stats.completed(stats.begin(), 503, THRESHOLD);
+   }
+   assertEquals(HostStats.State.OPEN, stats.getState());
+   assertEquals(THRESHOLD, stats.getFailureCount());
+   assertEquals(0.0, stats.getLatencyMillis(), 0.0);
+   assertEquals(0, stats.getInFlight());
+ }
+
+ @Test
+ public void busyAndClientErrorsAreSuccesses() {
+   HostStats stats = new HostStats("a:8080");
+   for (int code : new int[] {200, 404, 429, 509}) {
+     stats.completed(stats.begin(), code, 1);
+   }
+   assertTrue(stats.isAvailable());
+   assertEquals(0, stats.getFailureCount());
+   assertTrue(stats.getLatencyMillis() > 0.0);
+ }
+
+ @Test
+ public void successResetsConsecutiveFailures() {
+   HostStats stats = new HostStats("a:8080");
+   stats.completed(stats.begin(), 500, THRESHOLD);
+   stats.completed(stats.begin(), 502, THRESHOLD);
+   stats.completed(stats.begin(), 200, THRESHOLD);
+   stats.completed(stats.begin(), 504, THRESHOLD);
+   assertTrue(stats.isAvailable());
+   assertEquals(1, stats.getConsecutiveFailures());
+   assertFalse(HostStats.isServerError(509));
+ }
+}
@@ -0,0 +1,141 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.client.lite.Get;
+import org.apache.hadoop.hbase.client.lite.RemoteHTable;
+import org.apache.hadoop.hbase.client.lite.RemoteHTableBuilder;
+import org.apache.hadoop.hbase.client.lite.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.util.Statistics;
+
+/**
+* Small gets over the pooled HTTP/1.1 transport against the HTTP/2 transport
+* (h2c), both talking to the same stub gateway. Throughput is measured in one
+* run and the latency distribution in another, and the connections the
+* gateway accepted are printed when each run ends.
+*
+* Run with main, which tries 8, 64 and 256 threads and prints throughput, tail
+* latency and connection counts side by side.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Http2TransportBenchmark {
+ private static final int[] THREADS = {8, 64, 256};
+ private static final String CONNECTIONS = "connections: ";
+
+ @Param({"http1", "h2c"})
+ public String transport;
+
+ /**
+  * Gateway service time in microseconds
+  */
+ @Param({"0", "1000"})
+ public long serviceMicros;
+
+ private StubGateway gateway;
+ private RemoteHTable table;
+
+ @Setup
+ public void setUp() throws IOException {
+   gateway = new StubGateway(StubGateway.cellSet(1, 3, 32, true), serviceMicros);
+   table = RemoteHTableBuilder.create("benchmark")
+       .addHost(gateway.getHost())
+       .withHttp2("h2c".equals(transport))
+       .withMaxConcurrentStreams(1024)
+       .withMaxConnections(1024)
+       .withMaxConnectionsPerHost(1024)
+       .build();
+ }
+
+ @TearDown
+ public void tearDown() throws IOException {
+   table.close();
+   // Read back by main from the output of the forked JVM
+   System.out.println(CONNECTIONS + gateway.getConnections());
+   gateway.close();
+ }
+
+ @Benchmark
+ public Result get() throws IOException {
+   return table.get(new Get(Bytes.toBytes("row")));
+ }
+
+ public static void main(String[] args) throws RunnerException {
+   List<String> lines = new ArrayList<>();
+   for (int threads : THREADS) {
+     Options options = new OptionsBuilder()
+         .include(Http2TransportBenchmark.class.getName())
+         .threads(threads)
+         .build();
+     Collection<RunResult> results = new Runner(options).run();
+     Map<String, Double> throughput = new HashMap<>();
+     for (RunResult result : results) {
+       if (result.getParams().getMode() == Mode.Throughput) {
+         throughput.put(key(result), result.getPrimaryResult().getScore() * 1000000);
+       }
+     }
+     for (RunResult result : results) {
+       if (result.getParams().getMode() == Mode.SampleTime) {
+         Statistics latency = result.getPrimaryResult().getStatistics();
+         lines.add(String.format("%-9s %7s %7d %12.0f %9.0f %9.0f %9.0f",
+           result.getParams().getParam("transport"), result.getParams().getParam("serviceMicros"),
+           threads, throughput.get(key(result)), latency.getPercentile(50),
+           latency.getPercentile(99), latency.getPercentile(99.9)));
+       }
+     }
+   }
+   System.out.println("transport service threads        ops/s   p50(us)   p99(us) p99.9(us)");
+   lines.forEach(System.out::println);
+   System.out.println("See the '" + CONNECTIONS + "' lines above for the connections of each run");
+ }
+
+ private static String key(RunResult result) {
+   return result.getParams().getParam("transport") + '/' + result.getParams().getParam("serviceMicros");
+ }
+}
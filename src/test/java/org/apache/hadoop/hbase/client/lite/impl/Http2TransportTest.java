@@ -0,0 +1,181 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.http.HttpResponse;
+import org.junit.Test;
+
+public class Http2TransportTest {
+ private final AtomicInteger ended = new AtomicInteger();
+ private final AtomicInteger granted = new AtomicInteger();
+
+ private Http2Transport.BodyStream stream(int maxResponseSize) throws IOException {
+   Http2Transport.BodyStream body = new Http2Transport.BodyStream(maxResponseSize, 200,
+     ended::incrementAndGet);
+   body.updateCapacity(granted::addAndGet);
+   return body;
+ }
+
+ private static HttpResponse head(Http2Transport.BodyStream body) {
+   AtomicReference<HttpResponse> result = new AtomicReference<>();
+   body.consumeResponse(new org.apache.hc.core5.http.message.BasicHttpResponse(200), new EntityDetails() {
+     @Override public long getContentLength() { return -1; }
+     @Override public String getContentType() { return "application/x-protobuf"; }
+     @Override public String getContentEncoding() { return null; }
+     @Override public boolean isChunked() { return true; }
+     @Override public Set<String> getTrailerNames() { return Collections.emptySet(); }
+   }, null, new FutureCallback<HttpResponse>() {
+     @Override public void completed(HttpResponse response) { result.set(response); }
+     @Override public void failed(Exception ex) { }
+     @Override public void cancelled() { }
+   });
+   return result.get();
+ }
+
+ @Test
+ public void bodyIsReadAsItArrives() throws Exception {
+   Http2Transport.BodyStream body = stream(1024);
+   HttpResponse response = head(body);
+   assertNotNull(response.getEntity());
+   assertEquals(Http2Transport.BUFFER_SIZE, granted.get());
+   InputStream in = response.getEntity().getContent();
+   body.consume(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+   byte[] b = new byte[8];
+   assertEquals(3, in.read(b));
+   // Room is granted back as the reader takes the bytes
+   assertEquals(Http2Transport.BUFFER_SIZE + 3, granted.get());
+   body.consume(ByteBuffer.wrap(new byte[] {4}));
+   body.streamEnd(null);
+   body.releaseResources();
+   assertEquals(4, in.read());
+   assertEquals(-1, in.read());
+   assertEquals(1, ended.get());
+ }
+
+ @Test
+ public void readWaitsForData() throws Exception {
+   Http2Transport.BodyStream body = stream(1024);
+   InputStream in = head(body).getEntity().getContent();
+   Thread producer = new Thread(() -> {
+     try {
+       Thread.sleep(50);
+       body.consume(ByteBuffer.wrap(new byte[] {7, 8}));
+       body.streamEnd(null);
+     } catch (Exception e) {
+       throw new IllegalStateException(e);
+     }
+   });
+   producer.start();
+   ByteArrayOutputStream out = new ByteArrayOutputStream();
+   for (int b; (b = in.read()) != -1; ) {
+     out.write(b);
+   }
+   producer.join();
+   assertArrayEquals(new byte[] {7, 8}, out.toByteArray());
+ }
+
+ @Test
+ public void stalledBodyTimesOut() throws Exception {
+   Http2Transport.BodyStream body = stream(1024);
+   InputStream in = head(body).getEntity().getContent();
+   try {
+     in.read();
+     fail("read should time out");
+   } catch (SocketTimeoutException e) {
+     // expected
+   }
+ }
+
+ @Test
+ public void bodyPastTheLimitResetsTheStream() throws Exception {
+   Http2Transport.BodyStream body = stream(4);
+   InputStream in = head(body).getEntity().getContent();
+   body.consume(ByteBuffer.wrap(new byte[3]));
+   try {
+     body.consume(ByteBuffer.wrap(new byte[2]));
+     fail("consume should fail past the limit");
+   } catch (IOException e) {
+     assertTrue(e.getMessage().contains("larger than 4"));
+   }
+   body.failed(new IOException("reset"));
+   body.releaseResources();
+   assertEquals(3, in.read(new byte[8]));
+   try {
+     in.read();
+     fail("read should report the limit");
+   } catch (IOException e) {
+     assertTrue(e.getMessage().contains("larger than 4"));
+   }
+   assertEquals(1, ended.get());
+ }
+
+ @Test
+ public void abandonedBodyResetsTheStream() throws Exception {
+   Http2Transport.BodyStream body = stream(1024);
+   InputStream in = head(body).getEntity().getContent();
+   body.consume(ByteBuffer.wrap(new byte[10]));
+   in.close();
+   // The gateway is let send again so that its next data ends the stream
+   assertEquals(2 * Http2Transport.BUFFER_SIZE, granted.get());
+   try {
+     body.consume(ByteBuffer.wrap(new byte[10]));
+     fail("consume should fail once abandoned");
+   } catch (IOException e) {
+     // expected
+   }
+   body.failed(new IOException("reset"));
+   body.releaseResources();
+   assertEquals(1, ended.get());
+ }
+
+ @Test
+ public void bodilessResponseEndsAtOnce() {
+   Http2Transport.BodyStream body = new Http2Transport.BodyStream(1024, 200, ended::incrementAndGet);
+   AtomicReference<HttpResponse> result = new AtomicReference<>();
+   body.consumeResponse(new org.apache.hc.core5.http.message.BasicHttpResponse(404), null, null,
+     new FutureCallback<HttpResponse>() {
+       @Override public void completed(HttpResponse response) { result.set(response); }
+       @Override public void failed(Exception ex) { }
+       @Override public void cancelled() { }
+     });
+   body.releaseResources();
+   assertEquals(404, result.get().getStatusLine().getStatusCode());
+   assertEquals(null, result.get().getEntity());
+   assertEquals(1, ended.get());
+ }
+}
@@ -0,0 +1,116 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.client.lite.ClientMetrics;
+import org.apache.hadoop.hbase.client.lite.ClientMetrics.Operation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+* Cost of the recording path of {@link LatencyHistogram} and
+* {@link DefaultClientMetrics}, with a single histogram and metrics instance
+* shared by all threads as in a client, against the no-op metrics.
+*
+* Run with main, which measures one thread and then as many threads as there
+* are processors, with the GC profiler to show that recording allocates
+* nothing.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+ private static final String HOST = "gateway.example.com:8080";
+
+ private final LatencyHistogram histogram = new LatencyHistogram();
+ private final DefaultClientMetrics metrics = new DefaultClientMetrics();
+
+ /**
+  * Latencies from 100us to about 1s, spread evenly over the buckets
+  */
+ @State(Scope.Thread)
+ public static class Latencies {
+   private static final int SIZE = 1024;
+   private final long[] nanos = new long[SIZE];
+   private int next;
+
+   @Setup
+   public void setUp() {
+     Random random = new Random(Thread.currentThread().getId());
+     for (int i = 0; i < SIZE; i++) {
+       nanos[i] = (long) (100000 * Math.pow(10, random.nextDouble() * 4));
+     }
+   }
+
+   long next() {
+     return nanos[next++ & (SIZE - 1)];
+   }
+ }
+
+ @Benchmark
+ public void histogramRecord(Latencies latencies) {
+   histogram.record(latencies.next());
+ }
+
+ @Benchmark
+ public void onRequest(Latencies latencies) {
+   metrics.onRequest(Operation.GET, HOST, 200, latencies.next());
+ }
+
+ @Benchmark
+ public void onBytesReceived(Latencies latencies) {
+   metrics.onBytesReceived(Operation.GET, HOST, latencies.next());
+ }
+
+ @Benchmark
+ public void noopOnRequest(Latencies latencies) {
+   ClientMetrics.NOOP.onRequest(Operation.GET, HOST, 200, latencies.next());
+ }
+
+ public static void main(String[] args) throws RunnerException {
+   for (int threads : new int[] {1, Runtime.getRuntime().availableProcessors()}) {
+     Options options = new OptionsBuilder()
+         .include(MetricsBenchmark.class.getName())
+         .threads(threads)
+         .addProfiler(GCProfiler.class)
+         .build();
+     new Runner(options).run();
+   }
+ }
+}
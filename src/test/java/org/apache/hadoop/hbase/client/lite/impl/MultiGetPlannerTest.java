@@ -0,0 +1,165 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hbase.client.lite.Cell;
+import org.apache.hadoop.hbase.client.lite.Get;
+import org.junit.Test;
+
+public class MultiGetPlannerTest {
+ private static List<String> specs(List<MultiGetPlanner.Request> requests) {
+   List<String> specs = new ArrayList<>();
+   for (MultiGetPlanner.Request request : requests) {
+     specs.add(request.spec);
+   }
+   return specs;
+ }
+
+ private static ResultImpl row(String row) {
+   return ResultImpl.create(new Cell[] {new KeyValue(Bytes.toBytes(row), Bytes.toBytes("f"),
+     Bytes.toBytes("a"), 1L, Bytes.toBytes("v"))});
+ }
+
+ @Test
+ public void getsAreGroupedByColumns() {
+   List<Get> gets = Arrays.asList(new Get("r1"), new Get("r2").addColumn("f", "a"),
+     new Get("r3"), new Get("r4").addColumn("f", "a"), new Get("r5").addFamily("f"));
+   List<MultiGetPlanner.Request> requests = MultiGetPlanner.plan("t", gets, 0, 4096, true);
+   assertEquals(Arrays.asList(
+     "/t/multiget/?row=r1&row=r3&v=1",
+     "/t/multiget/f:a?row=r2&row=r4&v=1",
+     "/t/multiget/f?row=r5&v=1"), specs(requests));
+   assertArrayEquals(new int[] {0, 2}, requests.get(0).gets);
+   assertArrayEquals(new int[] {1, 3}, requests.get(1).gets);
+   assertArrayEquals(new int[] {4}, requests.get(2).gets);
+ }
+
+ @Test
+ public void versionsSplitGroups() throws IOException {
+   List<Get> gets = Arrays.asList(new Get("r1"), new Get("r2").readVersions(3));
+   assertEquals(Arrays.asList("/t/multiget/?row=r1&v=1", "/t/multiget/?row=r2&v=3"),
+     specs(MultiGetPlanner.plan("t", gets, 0, 4096, true)));
+   // Versions passed in apply to every get
+   assertEquals(Arrays.asList("/t/multiget/?row=r1&row=r2&v=1"),
+     specs(MultiGetPlanner.plan("t", gets, 1, 4096, true)));
+ }
+
+ @Test
+ public void rowKeysAreEncoded() {
+   List<Get> gets = Arrays.asList(new Get(new byte[] {'a', '/', 0, (byte) 0xff}));
+   assertEquals(Arrays.asList("/t/multiget/?row=a%2F%00%FF&v=1"),
+     specs(MultiGetPlanner.plan("t", gets, 0, 4096, true)));
+ }
+
+ @Test
+ public void duplicateRowsMapToEveryGet() {
+   List<Get> gets = Arrays.asList(new Get("r1"), new Get("r2"), new Get("r1"), new Get("r3"));
+   List<MultiGetPlanner.Request> requests = MultiGetPlanner.plan("t", gets, 0, 4096, true);
+   assertEquals(Arrays.asList("/t/multiget/?row=r1&row=r2&row=r3&v=1"), specs(requests));
+   assertArrayEquals(new int[] {0, 2, 1, 3}, requests.get(0).gets);
+
+   // r3 does not exist, the gateway leaves it out
+   ResultImpl r1 = row("r1");
+   ResultImpl r2 = row("r2");
+   ResultImpl[] results = new ResultImpl[gets.size()];
+   List<Integer> seen = new ArrayList<>();
+   requests.get(0).forEach(new ResultImpl[] {r2, r1}, gets, (row, index) -> {
+     results[index] = row;
+     seen.add(index);
+   });
+   assertEquals(Arrays.asList(0, 2, 1, 3), seen);
+   assertSame(r1, results[0]);
+   assertSame(r2, results[1]);
+   assertSame(r1, results[2]);
+   assertNull(results[3]);
+ }
+
+ @Test
+ public void requestsAreSplitAtTheUrlLimit() {
+   List<Get> gets = new ArrayList<>();
+   for (int i = 0; i < 10; i++) {
+     gets.add(new Get("row" + i));
+   }
+   // "/t/multiget/?row=row0&row=row1&v=1" is 35 characters, a third row makes 44
+   List<MultiGetPlanner.Request> requests = MultiGetPlanner.plan("t", gets, 0, 40, true);
+   assertEquals(5, requests.size());
+   assertEquals("/t/multiget/?row=row0&row=row1&v=1", requests.get(0).spec);
+   int next = 0;
+   for (MultiGetPlanner.Request request : requests) {
+     assertTrue(request.spec.length() <= 40);
+     for (int index : request.gets) {
+       assertEquals(next++, index);
+     }
+   }
+   assertEquals(10, next);
+ }
+
+ @Test
+ public void rowOverTheLimitIsSentAlone() {
+   List<Get> gets = Arrays.asList(new Get("r1"), new Get("r2"));
+   assertEquals(Arrays.asList("/t/multiget/?row=r1&v=1", "/t/multiget/?row=r2&v=1"),
+     specs(MultiGetPlanner.plan("t", gets, 0, 10, true)));
+ }
+
+ @Test
+ public void timeRangeIsGivenPerRow() throws IOException {
+   List<Get> gets = Arrays.asList(
+     new Get("r1").addColumn("f", "a").setTimeRange(1, 5),
+     new Get("r2").addColumn("f", "a").setTimeRange(1, 5),
+     new Get("r3").addColumn("f", "a").setTimeRange(2, 5),
+     new Get("r4").setTimeRange(1, 5));
+   assertEquals(Arrays.asList(
+     "/t/multiget/?row=r1/f:a/1,5&row=r2/f:a/1,5&v=1",
+     "/t/multiget/?row=r3/f:a/2,5&v=1",
+     "/t/multiget/?row=r4//1,5&v=1"), specs(MultiGetPlanner.plan("t", gets, 0, 4096, true)));
+ }
+
+ @Test
+ public void restrictedGetsFallBackToSingleRows() throws IOException {
+   List<Get> gets = Arrays.asList(
+     new Get("r1").addColumn("f", "a"),
+     new Get("r2"),
+     new Get("r3").addColumn("f", "a").readVersions(3),
+     new Get("r4").setTimeRange(1, 5),
+     new Get("r1").addColumn("f", "a"),
+     new Get("r5"));
+   List<MultiGetPlanner.Request> requests = MultiGetPlanner.plan("t", gets, 0, 4096, false);
+   assertEquals(Arrays.asList(
+     "/t/r1/f:a",
+     "/t/multiget/?row=r2&row=r5&v=1",
+     "/t/r3/f:a?v=3",
+     "/t/r4//1,5"), specs(requests));
+   assertArrayEquals(new int[] {0, 4}, requests.get(0).gets);
+   assertArrayEquals(new int[] {1, 5}, requests.get(1).gets);
+   assertArrayEquals(new int[] {2}, requests.get(2).gets);
+   assertArrayEquals(new int[] {3}, requests.get(3).gets);
+ }
+}
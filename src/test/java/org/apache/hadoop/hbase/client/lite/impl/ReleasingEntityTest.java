@@ -0,0 +1,112 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+public class ReleasingEntityTest {
+ private final AtomicInteger releases = new AtomicInteger();
+
+ private ReleasingEntity entity() {
+   return new ReleasingEntity(new ByteArrayEntity(new byte[100]), releases::incrementAndGet);
+ }
+
+ private Response response(ReleasingEntity entity) throws IOException {
+   HttpResponse resp = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+   resp.setEntity(entity);
+   return new Response(200, resp.getAllHeaders(), resp, entity.getContent());
+ }
+
+ @Test
+ public void readToEndReleasesOnce() throws IOException {
+   ReleasingEntity entity = entity();
+   Response response = response(entity);
+   InputStream in = response.getStream();
+   byte[] buffer = new byte[30];
+   while (in.read(buffer) >= 0) {
+     assertEquals(0, releases.get());
+   }
+   assertEquals(1, releases.get());
+   assertEquals(-1, in.read());
+   in.close();
+   response.close();
+   assertEquals(1, releases.get());
+ }
+
+ @Test
+ public void closingStreamReleasesOnce() throws IOException {
+   Response response = response(entity());
+   response.getStream().read();
+   response.getStream().close();
+   assertEquals(1, releases.get());
+   response.close();
+   assertEquals(1, releases.get());
+ }
+
+ @Test
+ public void closingResponseReleasesOnce() throws IOException {
+   Response response = response(entity());
+   response.getStream().read();
+   response.close();
+   assertEquals(1, releases.get());
+   response.close();
+   assertEquals(1, releases.get());
+ }
+
+ @Test
+ public void abandonedResponseReleasesOnce() throws IOException {
+   Response response = response(entity());
+   response.getStream().read();
+   response.abandon();
+   response.close();
+   assertEquals(1, releases.get());
+ }
+
+ @Test
+ public void unreadResponseReleasesOnce() {
+   ReleasingEntity entity = entity();
+   HttpResponse resp = new BasicHttpResponse(HttpVersion.HTTP_1_1, 503, "Unavailable");
+   resp.setEntity(entity);
+   ReleasingEntity.release(resp);
+   ReleasingEntity.release(resp);
+   assertEquals(1, releases.get());
+ }
+
+ @Test
+ public void writtenEntityReleasesOnce() throws IOException {
+   ReleasingEntity entity = entity();
+   entity.writeTo(new ByteArrayOutputStream());
+   assertEquals(1, releases.get());
+   ReleasingEntity.release(new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK"));
+   entity.release();
+   assertEquals(1, releases.get());
+ }
+}
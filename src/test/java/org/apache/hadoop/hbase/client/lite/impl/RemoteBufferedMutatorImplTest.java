@@ -0,0 +1,96 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.client.lite.Put;
+import org.junit.Test;
+
+public class RemoteBufferedMutatorImplTest {
+ /**
+  * Fails the first multiput, applies the others
+  */
+ private static final class FlakyTable extends RemoteHTableImpl {
+   final AtomicInteger calls = new AtomicInteger();
+   final List<Put> applied = Collections.synchronizedList(new ArrayList<>());
+
+   FlakyTable() {
+     super(null, "t", new RetryPolicy(0, 0), null);
+   }
+
+   @Override
+   public void put(List<Put> puts) throws IOException {
+     if (calls.getAndIncrement() == 0) {
+       throw new IOException("gateway unavailable");
+     }
+     applied.addAll(puts);
+   }
+
+   @Override
+   public void close() {
+   }
+ }
+
+ private static Put put(int row) {
+   Put put = new Put("row" + row);
+   put.addColumn(Bytes.toBytes("f"), Bytes.toBytes("c"), new byte[10]);
+   return put;
+ }
+
+ @Test
+ public void listenerMayResubmitAndFlush() throws Exception {
+   FlakyTable table = new FlakyTable();
+   List<String> threads = Collections.synchronizedList(new ArrayList<>());
+   // A one byte buffer and one flush in flight, so every resubmit waits for the flush thread
+   RemoteBufferedMutatorImpl mutator = new RemoteBufferedMutatorImpl(table, 1, 0, 1,
+     (failed, cause, m) -> {
+       threads.add(Thread.currentThread().getName());
+       try {
+         for (int i = 0; i < 3; i++) {
+           m.mutate(failed);
+         }
+         m.flush();
+       } catch (IOException e) {
+         throw new IllegalStateException(e);
+       }
+     });
+   CompletableFuture.runAsync(() -> {
+     try {
+       mutator.mutate(put(1));
+       mutator.flush();
+       mutator.close();
+     } catch (IOException e) {
+       throw new IllegalStateException(e);
+     }
+   }).get(10, TimeUnit.SECONDS);
+   assertEquals(Collections.singletonList("hbase-lite-mutator-listener"), threads);
+   assertEquals(3, table.applied.size());
+   assertEquals(4, table.calls.get());
+ }
+}
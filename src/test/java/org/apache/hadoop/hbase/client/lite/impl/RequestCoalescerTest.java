@@ -0,0 +1,112 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.client.lite.OperationTimeoutException;
+import org.junit.Test;
+
+public class RequestCoalescerTest {
+ private final RequestCoalescer coalescer = new RequestCoalescer();
+ private final CountDownLatch release = new CountDownLatch(1);
+
+ /**
+  * Start a leader whose get fails with the given exception once released, and
+  * a caller joining it.
+  */
+ private CompletableFuture<ResultImpl[]> join(IOException leaderFailure, long timeout)
+     throws InterruptedException {
+   CompletableFuture<Void> leader = CompletableFuture.runAsync(() -> {
+     try {
+       coalescer.execute("/t/r", 0, remaining -> {
+         try {
+           release.await();
+         } catch (InterruptedException e) {
+           throw new InterruptedIOException();
+         }
+         throw leaderFailure;
+       });
+     } catch (IOException e) {
+       // expected
+     }
+   });
+   while (coalescer.getInFlightCount() == 0) {
+     Thread.sleep(1);
+   }
+   CompletableFuture<ResultImpl[]> joiner = new CompletableFuture<>();
+   new Thread(() -> {
+     try {
+       joiner.complete(coalescer.execute("/t/r", timeout, remaining -> {
+         assertTrue(timeout == 0 ? remaining == 0 : remaining > 0 && remaining <= timeout);
+         return new ResultImpl[0];
+       }));
+     } catch (Throwable e) {
+       joiner.completeExceptionally(e);
+     }
+   }).start();
+   while (coalescer.getCoalescedCount() == 0) {
+     Thread.sleep(1);
+   }
+   release.countDown();
+   leader.join();
+   return joiner;
+ }
+
+ @Test
+ public void joinerSendsItsOwnGetAfterLeaderTimeout() throws Exception {
+   ResultImpl[] results = join(new OperationTimeoutException("leader timed out", 10, null), 5000)
+     .get(5, TimeUnit.SECONDS);
+   assertEquals(0, results.length);
+   assertEquals(2, coalescer.getRequestCount());
+   assertEquals(0, coalescer.getInFlightCount());
+ }
+
+ @Test
+ public void joinerWithoutTimeoutSendsItsOwnGet() throws Exception {
+   join(new OperationTimeoutException("leader timed out", 10, null), 0).get(5, TimeUnit.SECONDS);
+   assertEquals(2, coalescer.getRequestCount());
+ }
+
+ @Test
+ public void joinerGetsItsOwnExceptionForOtherFailures() throws Exception {
+   IOException failure = new IOException("get request returned 500");
+   try {
+     join(failure, 5000).get(5, TimeUnit.SECONDS);
+   } catch (ExecutionException e) {
+     assertTrue(e.getCause() instanceof IOException);
+     assertNotSame(failure, e.getCause());
+     assertSame(failure, e.getCause().getCause());
+     assertEquals(1, coalescer.getRequestCount());
+     return;
+   }
+   throw new AssertionError("joiner should fail");
+ }
+}
@@ -0,0 +1,159 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hadoop.hbase.client.lite.Put;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class ResponseTest {
+ private HttpServer server;
+ private PoolingHttpClientConnectionManager pool;
+ private CloseableHttpClient client;
+ private String base;
+
+ @Before
+ public void setUp() throws IOException {
+   server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+   server.createContext("/", exchange -> {
+     byte[] body = new byte[Integer.parseInt(exchange.getRequestURI().getQuery())];
+     exchange.sendResponseHeaders(404, body.length);
+     try (OutputStream out = exchange.getResponseBody()) {
+       out.write(body);
+     }
+   });
+   server.createContext("/gzip", exchange -> {
+     String query = exchange.getRequestURI().getQuery();
+     byte[] body = gzip(query == null ? cellSet(50) : new byte[Integer.parseInt(query)]);
+     exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+     exchange.sendResponseHeaders(query == null ? 200 : 503, body.length);
+     try (OutputStream out = exchange.getResponseBody()) {
+       out.write(body);
+     }
+   });
+   server.start();
+   base = "http://127.0.0.1:" + server.getAddress().getPort() + "/?";
+   pool = new PoolingHttpClientConnectionManager();
+   client = HttpClients.custom().setConnectionManager(pool).disableContentCompression().build();
+ }
+
+ private static byte[] cellSet(int rows) throws IOException {
+   List<Put> puts = new ArrayList<>(rows);
+   for (int i = 0; i < rows; i++) {
+     Put put = new Put("row" + i);
+     put.addColumn(Bytes.toBytes("f"), Bytes.toBytes("c"), new byte[100]);
+     puts.add(put);
+   }
+   ByteArrayOutputStream out = new ByteArrayOutputStream();
+   new MutationEntity(puts).writeTo(out);
+   return out.toByteArray();
+ }
+
+ private static byte[] gzip(byte[] body) throws IOException {
+   ByteArrayOutputStream out = new ByteArrayOutputStream();
+   try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+     gzip.write(body);
+   }
+   return out.toByteArray();
+ }
+
+ @After
+ public void tearDown() throws IOException {
+   client.close();
+   server.stop(0);
+ }
+
+ private Response get(int size) throws IOException {
+   return get(base + size);
+ }
+
+ private Response get(String uri) throws IOException {
+   CloseableHttpResponse resp = client.execute(new HttpGet(uri));
+   ContentCoding.decode(resp);
+   HttpEntity entity = resp.getEntity();
+   return new Response(resp.getStatusLine().getStatusCode(), resp.getAllHeaders(), resp,
+     entity.getContent());
+ }
+
+ @Test
+ public void unreadBodyKeepsTheConnection() throws IOException {
+   for (int i = 0; i < 3; i++) {
+     get(1000).close();
+     PoolStats stats = pool.getTotalStats();
+     assertEquals(0, stats.getLeased());
+     assertEquals(1, stats.getAvailable());
+   }
+ }
+
+ @Test
+ public void abandonedBodyClosesTheConnection() throws IOException {
+   Response response = get(1 << 20);
+   response.getStream().read(new byte[100]);
+   response.abandon();
+   response.close();
+   PoolStats stats = pool.getTotalStats();
+   assertEquals(0, stats.getLeased());
+   assertEquals(0, stats.getAvailable());
+ }
+ @Test
+ public void decodedGzipBodyReleasesTheConnection() throws IOException {
+   for (int i = 0; i < 3; i++) {
+     try (Response response = get(base.replace("/?", "/gzip"))) {
+       assertEquals(50, CellSetDecoder.decode(response, 1 << 20).length);
+       PoolStats stats = pool.getTotalStats();
+       assertEquals(0, stats.getLeased());
+       assertEquals(1, stats.getAvailable());
+     }
+   }
+ }
+
+ @Test
+ public void unreadGzipBodyKeepsTheConnection() throws IOException {
+   for (int i = 0; i < 3; i++) {
+     Response response = get(base.replace("/?", "/gzip?") + 1000);
+     assertEquals(503, response.getCode());
+     response.close();
+     PoolStats stats = pool.getTotalStats();
+     assertEquals(0, stats.getLeased());
+     assertEquals(1, stats.getAvailable());
+   }
+ }
+}
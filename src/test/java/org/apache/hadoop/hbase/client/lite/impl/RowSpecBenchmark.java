@@ -0,0 +1,206 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.client.lite.Get;
+import org.apache.hadoop.hbase.client.lite.TimeRange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+* Building the request URI of a get with three columns and a time range,
+* through {@link PercentEncoder} and a cached per-host base URI, against the
+* former path: a StringBuffer, <tt>URLEncoder</tt> over a decoded String for
+* every key, family and qualifier, and the whole URI concatenated and parsed
+* again for every attempt.
+*
+* Run with main, which adds the GC profiler; gc.alloc.rate.norm is the
+* number of bytes allocated per operation.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowSpecBenchmark {
+ private static final String TABLE = "namespace:table";
+ private static final String HOST = "gateway.example.com:8080";
+
+ /**
+  * Row keys of printable ASCII or random bytes
+  */
+ @Param({"ascii", "binary"})
+ public String key;
+
+ /**
+  * Attempts per request, more than one when failing over or retrying
+  */
+ @Param({"1", "3"})
+ public int attempts;
+
+ private Get get;
+ private Client client;
+
+ @Setup
+ public void setUp() throws IOException {
+   byte[] row;
+   if ("ascii".equals(key)) {
+     row = Bytes.toBytes("user00012345|2018-07-01");
+   } else {
+     row = new byte[16];
+     new Random(42).nextBytes(row);
+   }
+   get = new Get(row)
+       .addColumn("info", "name")
+       .addColumn("info", "e-mail address")
+       .addColumn("stats", "visits");
+   get.setTimeRange(1530403200000L, 1533081600000L);
+   client = new Client(new Cluster(), "http", (Transport) null, false, false, null, null, null);
+ }
+
+ @Benchmark
+ public String rowSpec() {
+   TimeRange range = get.getTimeRange();
+   return RemoteHTableImpl.buildRowSpec(TABLE, get.getRow(), get.getFamilyMap(), range.getMin(),
+     range.getMax(), get.getMaxVersions());
+ }
+
+ @Benchmark
+ public String legacyRowSpec() {
+   TimeRange range = get.getTimeRange();
+   return legacyBuildRowSpec(TABLE, get.getRow(), get.getFamilyMap(), range.getMin(),
+     range.getMax(), get.getMaxVersions());
+ }
+
+ @Benchmark
+ public void uri(Blackhole blackhole) throws URISyntaxException {
+   URI path = new URI(rowSpec());
+   for (int i = 0; i < attempts; i++) {
+     blackhole.consume(client.resolve(HOST, path));
+   }
+ }
+
+ @Benchmark
+ public void legacyUri(Blackhole blackhole) throws URISyntaxException {
+   String path = legacyRowSpec();
+   for (int i = 0; i < attempts; i++) {
+     StringBuilder sb = new StringBuilder();
+     sb.append("http");
+     sb.append("://");
+     sb.append(HOST);
+     sb.append(path);
+     blackhole.consume(new URI(sb.toString()));
+   }
+ }
+
+ /*
+  * RemoteHTableImpl.buildRowSpec as it was before PercentEncoder
+  */
+ @SuppressWarnings("rawtypes")
+ private static String legacyBuildRowSpec(final String name, final byte[] row, final Map familyMap,
+     final long startTime, final long endTime, final int maxVersions) {
+   StringBuffer sb = new StringBuffer();
+   sb.append('/');
+   sb.append(name);
+   sb.append('/');
+   sb.append(toURLEncodedBytes(row));
+   Iterator i = familyMap.entrySet().iterator();
+   sb.append('/');
+   while (i.hasNext()) {
+     Map.Entry e = (Map.Entry)i.next();
+     Collection quals = (Collection)e.getValue();
+     if (quals == null || quals.isEmpty()) {
+       sb.append(toURLEncodedBytes((byte[])e.getKey()));
+     } else {
+       Iterator ii = quals.iterator();
+       while (ii.hasNext()) {
+         sb.append(toURLEncodedBytes((byte[])e.getKey()));
+         sb.append(':');
+         sb.append(toURLEncodedBytes((byte[])ii.next()));
+         if (ii.hasNext()) {
+           sb.append(',');
+         }
+       }
+     }
+     if (i.hasNext()) {
+       sb.append(',');
+     }
+   }
+   if (startTime >= 0 && endTime != Long.MAX_VALUE) {
+     sb.append('/');
+     sb.append(startTime);
+     if (startTime != endTime) {
+       sb.append(',');
+       sb.append(endTime);
+     }
+   } else if (endTime != Long.MAX_VALUE) {
+     sb.append('/');
+     sb.append(endTime);
+   }
+   if (maxVersions > 1) {
+     sb.append("?v=");
+     sb.append(maxVersions);
+   }
+   return sb.toString();
+ }
+
+ private static String toURLEncodedBytes(byte[] row) {
+   try {
+     return URLEncoder.encode(new String(row, "UTF-8"), "UTF-8");
+   } catch (UnsupportedEncodingException e) {
+     throw new IllegalStateException("URLEncoder doesn't support UTF-8", e);
+   }
+ }
+
+ public static void main(String[] args) throws RunnerException {
+   Options options = new OptionsBuilder()
+       .include(RowSpecBenchmark.class.getName())
+       .addProfiler(GCProfiler.class)
+       .build();
+   new Runner(options).run();
+ }
+}
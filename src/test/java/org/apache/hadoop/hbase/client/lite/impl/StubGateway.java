@@ -0,0 +1,243 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.hadoop.hbase.client.lite.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.client.lite.Put;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncResponseProducer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.entity.AsyncEntityProducers;
+import org.apache.hc.core5.http.nio.entity.DiscardingEntityConsumer;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.nio.support.BasicResponseProducer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.reactor.IOSession;
+import org.apache.hc.core5.reactor.IOSessionListener;
+import org.apache.hc.core5.reactor.ListenerEndpoint;
+
+/**
+* Local stand-in for a REST gateway, for the benchmarks. HTTP/1.1 and h2c are
+* served on the same port. Every GET is answered with the same CellSet and
+* anything else with an empty 200, after a fixed service time standing in for
+* the region server. Accepted connections are counted.
+*/
+final class StubGateway implements Closeable {
+ private static final ContentType PROTOBUF = ContentType.create(Constants.MIMETYPE_PROTOBUF);
+ private static final String[] WORDS = {"alpha", "bravo", "charlie", "delta", "echo", "foxtrot",
+   "golf", "hotel", "india", "juliet", "kilo", "lima", "mike", "november", "oscar", "papa"};
+ private static final String[] STATUS = {"ACTIVE", "SUSPENDED", "CLOSED", "PENDING"};
+
+ private final byte[] body;
+ private final long serviceMicros;
+ private final ScheduledExecutorService timer;
+ private final HttpAsyncServer server;
+ private final AtomicInteger connections = new AtomicInteger();
+ private final String host;
+
+ /**
+  * @param body the CellSet returned to every GET
+  * @param serviceMicros delay before each response is sent, 0 for none
+  */
+ StubGateway(byte[] body, long serviceMicros) throws IOException {
+   this.body = body;
+   this.serviceMicros = serviceMicros;
+   this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+     Thread t = new Thread(r, "hbase-lite-stub-gateway");
+     t.setDaemon(true);
+     return t;
+   });
+   this.server = H2ServerBootstrap.bootstrap()
+       .setIOReactorConfig(IOReactorConfig.custom()
+           .setIoThreadCount(Math.max(2, Runtime.getRuntime().availableProcessors() / 2))
+           .build())
+       .setH2Config(H2Config.custom().setMaxConcurrentStreams(1024).build())
+       .setIOSessionListener(new ConnectionCounter())
+       .register("*", new Handler())
+       .create();
+   server.start();
+   try {
+     ListenerEndpoint endpoint = server.listen(new InetSocketAddress("localhost", 0),
+       URIScheme.HTTP).get();
+     host = "localhost:" + ((InetSocketAddress) endpoint.getAddress()).getPort();
+   } catch (InterruptedException e) {
+     close();
+     throw (InterruptedIOException) new InterruptedIOException().initCause(e);
+   } catch (ExecutionException e) {
+     close();
+     throw new IOException("Stub gateway failed to listen", e.getCause());
+   }
+ }
+
+ /**
+  * @return the gateway in 'host:port' format
+  */
+ String getHost() {
+   return host;
+ }
+
+ /**
+  * @return the number of connections accepted so far
+  */
+ int getConnections() {
+   return connections.get();
+ }
+
+ @Override
+ public void close() {
+   server.close(CloseMode.IMMEDIATE);
+   timer.shutdownNow();
+ }
+
+ /**
+  * Build a CellSet as the gateway would return it, one family 'f' with
+  * qualifiers 'c0', 'c1'... Text values are JSON-like records of about the
+  * given size, binary values random bytes which do not compress.
+  * @param rows the number of rows
+  * @param columns the number of cells per row
+  * @param valueSize the approximate size of each value in bytes
+  * @param text true for text values, false for binary
+  * @return the serialized CellSet
+  */
+ static byte[] cellSet(int rows, int columns, int valueSize, boolean text) {
+   Random random = new Random(rows * 31 + columns);
+   List<Put> puts = new ArrayList<>(rows);
+   for (int i = 0; i < rows; i++) {
+     Put put = new Put(String.format("user%08d", random.nextInt(100000000)));
+     for (int j = 0; j < columns; j++) {
+       put.addColumn(Bytes.toBytes("f"), Bytes.toBytes("c" + j),
+         text ? record(random, valueSize) : bytes(random, valueSize));
+     }
+     puts.add(put);
+   }
+   ByteArrayOutputStream out = new ByteArrayOutputStream();
+   try {
+     new MutationEntity(puts).writeTo(out);
+   } catch (IOException e) {
+     throw new IllegalStateException(e);
+   }
+   return out.toByteArray();
+ }
+
+ private static byte[] record(Random random, int size) {
+   StringBuilder sb = new StringBuilder(size + 64);
+   sb.append("{\"id\":").append(random.nextInt(1000000))
+     .append(",\"status\":\"").append(STATUS[random.nextInt(STATUS.length)])
+     .append("\",\"updated\":\"2018-0").append(1 + random.nextInt(9)).append('-')
+     .append(10 + random.nextInt(18)).append("T12:").append(10 + random.nextInt(50))
+     .append(":00Z\",\"tags\":\"");
+   while (sb.length() < size - 2) {
+     sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+   }
+   sb.append("\"}");
+   return sb.toString().getBytes(StandardCharsets.UTF_8);
+ }
+
+ private static byte[] bytes(Random random, int size) {
+   byte[] bytes = new byte[size];
+   random.nextBytes(bytes);
+   return bytes;
+ }
+
+ private final class Handler implements AsyncServerRequestHandler<Message<HttpRequest, Void>> {
+   @Override
+   public AsyncRequestConsumer<Message<HttpRequest, Void>> prepare(HttpRequest request,
+       EntityDetails entityDetails, HttpContext context) {
+     return new BasicRequestConsumer<>(new DiscardingEntityConsumer<>());
+   }
+
+   @Override
+   public void handle(Message<HttpRequest, Void> message, ResponseTrigger trigger,
+       HttpContext context) throws HttpException, IOException {
+     AsyncResponseProducer producer = "GET".equals(message.getHead().getMethod()) ?
+       new BasicResponseProducer(HttpStatus.SC_OK, AsyncEntityProducers.create(body, PROTOBUF)) :
+       new BasicResponseProducer(new BasicHttpResponse(HttpStatus.SC_OK));
+     if (serviceMicros <= 0) {
+       trigger.submitResponse(producer, context);
+       return;
+     }
+     timer.schedule(() -> {
+       try {
+         trigger.submitResponse(producer, context);
+       } catch (HttpException | IOException e) {
+         // The client went away
+       }
+     }, serviceMicros, TimeUnit.MICROSECONDS);
+   }
+ }
+
+ private final class ConnectionCounter implements IOSessionListener {
+   @Override
+   public void connected(IOSession session) {
+     connections.incrementAndGet();
+   }
+
+   @Override
+   public void startTls(IOSession session) {
+   }
+
+   @Override
+   public void inputReady(IOSession session) {
+   }
+
+   @Override
+   public void outputReady(IOSession session) {
+   }
+
+   @Override
+   public void timeout(IOSession session) {
+   }
+
+   @Override
+   public void exception(IOSession session, Exception ex) {
+   }
+
+   @Override
+   public void disconnected(IOSession session) {
+   }
+ }
+}